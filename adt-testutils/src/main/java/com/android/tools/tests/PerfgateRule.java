@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.tests;
+
+import com.android.tools.perflogger.BenchmarkLogger;
+import com.android.tools.perflogger.BenchmarkLogger.Benchmark;
+import com.android.tools.perflogger.BenchmarkLogger.MetricSample;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Assume;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.time.Instant;
+
+/**
+ * Class rule of the benchmarks that report to perfgate. The benchmarks of the class, including their set up, only run when the
+ * {@value #PERFGATE_PROPERTY} system property is true, so they are skipped by the regular unit test runs. All the samples logged while
+ * the class runs share one timestamp and are committed once the class finished.
+ *
+ * <pre>
+ * &#64;ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+ * ...
+ * ourPerfgate.logSample("Some Operation (ms)", elapsedMs);
+ * </pre>
+ */
+public class PerfgateRule implements TestRule {
+  public static final String PERFGATE_PROPERTY = "enable.perfgate";
+
+  private BenchmarkLogger myLogger;
+  private long myTimestamp;
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(PERFGATE_PROPERTY);
+  }
+
+  @Override
+  public Statement apply(@NotNull Statement base, @NotNull Description description) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        Assume.assumeTrue("Benchmarks only run with -D" + PERFGATE_PROPERTY + "=true", isEnabled());
+        Class<?> testClass = description.getTestClass();
+        myLogger = new BenchmarkLogger(testClass != null ? testClass.getSimpleName() : description.getDisplayName());
+        myTimestamp = Instant.now().toEpochMilli();
+        try {
+          base.evaluate();
+        }
+        finally {
+          myLogger.commit();
+          myLogger = null;
+        }
+      }
+    };
+  }
+
+  /**
+   * Adds a sample of the given benchmark, e.g. "Resource Folder Load (ms)", to the ones committed after the test class.
+   */
+  public void logSample(@NotNull String benchmark, long value) {
+    assert myLogger != null : "logSample called outside of the test class";
+    myLogger.addSamples(new Benchmark(benchmark), new MetricSample(myTimestamp, value));
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.android.tools.adtui.model.updater.DataFetcher;
+import com.android.tools.adtui.model.updater.DurationHistogram;
+import com.android.tools.adtui.model.updater.Updater;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DataSeries} wrapping one that is slow to query, e.g. through blocking gRPC calls, so that the data of a given range, usually
+ * the view range, is queried on the {@link Updater}'s fetch executor rather than on the UI thread.
+ *
+ * Reading the data of that range returns the data fetched last, and asks the {@link Updater} to fetch the data of the range's current
+ * bounds at the start of the next frame. At most one fetch is running at a time: the bounds requested meanwhile are coalesced into one
+ * fetch of the latest ones, started when the running one is done. Other ranges are read from the data fetched last if it covers them, and
+ * from the wrapped series otherwise, as is everything if the {@link Updater} doesn't fetch ahead of time.
+ */
+public final class AsyncDataSeries<E> implements DataSeries<E>, DataFetcher {
+  @NotNull private final DataSeries<E> myDataSeries;
+  @NotNull private final Range myRange;
+  @NotNull private final Updater myUpdater;
+
+  @Nullable private volatile Snapshot<E> mySnapshot;
+
+  /**
+   * Whether a fetch is running, and the range to fetch once it is done, if any.
+   */
+  private boolean myFetching;
+  @Nullable private double[] myPendingRange;
+
+  /**
+   * @param range the range whose data is fetched ahead of time.
+   */
+  public AsyncDataSeries(@NotNull DataSeries<E> dataSeries, @NotNull Range range, @NotNull Updater updater) {
+    myDataSeries = dataSeries;
+    myRange = range;
+    myUpdater = updater;
+  }
+
+  @Override
+  public List<SeriesData<E>> getDataForXRange(Range xRange) {
+    if (!myUpdater.isFetchingAhead()) {
+      return myDataSeries.getDataForXRange(xRange);
+    }
+
+    Snapshot<E> snapshot = mySnapshot;
+    if (xRange == myRange) {
+      myUpdater.requestFetch(this);
+      if (snapshot == null) {
+        // Don't leave the charts empty until the first fetch is done.
+        List<SeriesData<E>> data = myDataSeries.getDataForXRange(xRange);
+        mySnapshot = new Snapshot<>(xRange.getMin(), xRange.getMax(), data);
+        return data;
+      }
+      return snapshot.getData(xRange);
+    }
+    return snapshot != null && snapshot.covers(xRange) ? snapshot.getData(xRange) : myDataSeries.getDataForXRange(xRange);
+  }
+
+  @Override
+  public void fetch(@NotNull Executor executor, @NotNull DurationHistogram histogram) {
+    double min = myRange.getMin();
+    double max = myRange.getMax();
+    synchronized (this) {
+      if (myFetching) {
+        myPendingRange = new double[]{min, max};
+        return;
+      }
+      myFetching = true;
+    }
+    startFetch(executor, histogram, min, max);
+  }
+
+  private void startFetch(@NotNull Executor executor, @NotNull DurationHistogram histogram, double min, double max) {
+    executor.execute(() -> {
+      long startTimeNs = System.nanoTime();
+      try {
+        mySnapshot = new Snapshot<>(min, max, myDataSeries.getDataForXRange(new Range(min, max)));
+        histogram.record(System.nanoTime() - startTimeNs);
+      }
+      finally {
+        double[] pendingRange;
+        synchronized (this) {
+          pendingRange = myPendingRange;
+          myPendingRange = null;
+          myFetching = pendingRange != null;
+        }
+        if (pendingRange != null) {
+          startFetch(executor, histogram, pendingRange[0], pendingRange[1]);
+        }
+      }
+    });
+  }
+
+  private static final class Snapshot<E> {
+    private final double myMin;
+    private final double myMax;
+    @NotNull private final List<SeriesData<E>> myData;
+
+    private Snapshot(double min, double max, @NotNull List<SeriesData<E>> data) {
+      myMin = min;
+      myMax = max;
+      myData = data;
+    }
+
+    private boolean covers(@NotNull Range range) {
+      return myMin <= range.getMin() && range.getMax() <= myMax;
+    }
+
+    /**
+     * Returns the data in the given range, along with the closest data before and after it, as data series usually do so that the lines
+     * reach the edges of the range. Returns all the fetched data if the range is the fetched one.
+     */
+    @NotNull
+    private List<SeriesData<E>> getData(@NotNull Range range) {
+      if (range.getMin() == myMin && range.getMax() == myMax) {
+        return myData;
+      }
+      int from = Math.max(0, indexOfFirstAfter((long)range.getMin()) - 1);
+      int to = Math.min(myData.size(), indexOfFirstAfter((long)Math.ceil(range.getMax())) + 1);
+      return from == 0 && to == myData.size() ? myData : myData.subList(from, Math.max(from, to));
+    }
+
+    /**
+     * Returns the index of the first data with an X greater than or equal to the given one, the data being sorted by X.
+     */
+    private int indexOfFirstAfter(long x) {
+      int low = 0;
+      int high = myData.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myData.get(mid).x < x) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a level-of-detail version of a series of samples, so that a {@link DataSeries} queried over a long range returns a number of
+ * points proportional to the number of pixels it is drawn on rather than to the number of samples in the range.
+ *
+ * Samples must be added in x order. Samples inside the x range are grouped into buckets, each of which is reduced to one or two points
+ * by the {@link Aggregation}. Samples outside of the range (e.g. the padding that data series request around the visible range) are kept
+ * as is.
+ *
+ * Bucket widths are powers of two and buckets are aligned to multiples of their width, so the same samples fall into the same buckets
+ * while the range slides. Neither the buckets nor the number and x of the points of a bucket depend on the values, so series sharing the
+ * same sample timestamps produce points at the same indices, as stacked line charts expect.
+ *
+ * The reduction happens on the studio side, after the datastore returned every sample of the requested range. Precomputed per-resolution
+ * pyramids in the datastore would also save the transfer, but the sample request protos ship prebuilt and cannot carry a resolution yet.
+ */
+public final class DownsampledSeriesBuilder {
+  public enum Aggregation {
+    /**
+     * Keeps the peaks of the series, e.g. for usage graphs where a spike should never disappear when zooming out.
+     */
+    MAX,
+    /**
+     * Keeps both the lowest and the highest value of the series, e.g. for memory graphs where both a spike and the drop of a garbage
+     * collection should stay visible. A bucket of several samples becomes two points, at the x of its first and of its last sample, with
+     * its minimum and maximum in the order they occurred.
+     */
+    MIN_MAX
+  }
+
+  /**
+   * Approximately the width in pixels of a timeline, which is enough resolution for a series drawn across it.
+   */
+  public static final int DEFAULT_TARGET_POINTS = 1000;
+
+  private final long myMin;
+  private final long myMax;
+  private final long myBucketWidth;
+  @NotNull private final Aggregation myAggregation;
+  @NotNull private final List<SeriesData<Long>> myResult = new ArrayList<>();
+
+  private long myBucket = Long.MIN_VALUE;
+  private long myBucketFirstX;
+  private long myBucketLastX;
+  private long myBucketMin;
+  private long myBucketMax;
+  private boolean myBucketMinFirst;
+  private int myBucketCount;
+
+  public DownsampledSeriesBuilder(@NotNull Range xRange, @NotNull Aggregation aggregation) {
+    this(xRange, DEFAULT_TARGET_POINTS, aggregation);
+  }
+
+  public DownsampledSeriesBuilder(@NotNull Range xRange, int targetPoints, @NotNull Aggregation aggregation) {
+    myMin = (long)xRange.getMin();
+    myMax = (long)xRange.getMax();
+    myAggregation = aggregation;
+    long idealWidth = Math.max(1, (myMax - myMin) / Math.max(1, targetPoints));
+    myBucketWidth = Long.highestOneBit(idealWidth) == idealWidth ? idealWidth : Long.highestOneBit(idealWidth) << 1;
+  }
+
+  public void add(long x, long value) {
+    if (x < myMin || x > myMax) {
+      flushBucket();
+      myResult.add(new SeriesData<>(x, value));
+      return;
+    }
+
+    long bucket = Math.floorDiv(x, myBucketWidth);
+    if (bucket != myBucket) {
+      flushBucket();
+      myBucket = bucket;
+      myBucketFirstX = x;
+      myBucketLastX = x;
+      myBucketMin = value;
+      myBucketMax = value;
+      myBucketMinFirst = true;
+      myBucketCount = 1;
+      return;
+    }
+    myBucketLastX = x;
+    if (value < myBucketMin) {
+      myBucketMin = value;
+      myBucketMinFirst = false;
+    }
+    if (value > myBucketMax) {
+      myBucketMax = value;
+      myBucketMinFirst = true;
+    }
+    myBucketCount++;
+  }
+
+  @NotNull
+  public List<SeriesData<Long>> build() {
+    flushBucket();
+    return myResult;
+  }
+
+  private void flushBucket() {
+    if (myBucketCount == 0) {
+      return;
+    }
+    if (myAggregation == Aggregation.MAX || myBucketCount == 1) {
+      myResult.add(new SeriesData<>(myBucketFirstX, myBucketMax));
+    }
+    else {
+      myResult.add(new SeriesData<>(myBucketFirstX, myBucketMinFirst ? myBucketMin : myBucketMax));
+      myResult.add(new SeriesData<>(myBucketLastX, myBucketMinFirst ? myBucketMax : myBucketMin));
+    }
+    myBucket = Long.MIN_VALUE;
+    myBucketCount = 0;
+  }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.updater;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches data that is slow to get, e.g. from the device, away from the UI thread. A {@link DataFetcher} asks to be run with
+ * {@link Updater#requestFetch(DataFetcher)}, and the {@link Updater} runs it at the start of its next frame, before updating its
+ * {@link Updatable}s.
+ */
+public interface DataFetcher {
+  /**
+   * Starts fetching the data on the given executor. Called on the same thread as {@link Updatable#update(long)}.
+   *
+   * @param histogram where to record how long fetching the data took.
+   */
+  void fetch(@NotNull Executor executor, @NotNull DurationHistogram histogram);
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model.updater;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations, with a bucket per power of two nanoseconds, which the {@link Updater} uses to keep track of how long its
+ * frames and data fetches take. Durations can be recorded from any thread.
+ */
+public final class DurationHistogram {
+  /**
+   * Bucket 0 counts the durations of 0ns, and bucket i > 0 the ones in [2^(i-1), 2^i)ns.
+   */
+  private static final int BUCKET_COUNT = Long.SIZE + 1;
+
+  private final AtomicLongArray myCounts = new AtomicLongArray(BUCKET_COUNT);
+
+  public void record(long durationNs) {
+    myCounts.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, durationNs)));
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      count += myCounts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the recorded durations, within a factor of two, or 0 if none was recorded.
+   *
+   * @param percentile in [0, 100].
+   */
+  public long getPercentileNs(double percentile) {
+    assert percentile >= 0 && percentile <= 100;
+    long count = getCount();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(count * percentile / 100));
+    long seen = 0;
+    int bucket = 0;
+    for (; bucket < BUCKET_COUNT - 1; bucket++) {
+      seen += myCounts.get(bucket);
+      if (seen >= rank) {
+        break;
+      }
+    }
+    return bucket == Long.SIZE ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+  public void clear() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      myCounts.set(i, 0);
+    }
+  }
+}
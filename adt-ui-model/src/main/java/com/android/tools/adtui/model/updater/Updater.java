@@ -19,14 +19,21 @@ package com.android.tools.adtui.model.updater;
 import com.android.tools.adtui.model.StopwatchTimer;
 import com.google.common.annotations.VisibleForTesting;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * An auxiliary object that synchronizes a group of {@link Updatable} via a simple update loop
  * running at a specific frame rate. This ensures all UI components and model classes are reading
  * and displaying consistent information at any given time.
+ *
+ * Each frame has two phases. First, the {@link DataFetcher}s that asked for it start fetching their data on the fetch executor, if any.
+ * Then, the {@link Updatable}s are updated, reading the data that was fetched last rather than waiting for the new fetches.
  */
 public class Updater implements StopwatchTimer.TickHandler {
 
@@ -41,7 +48,21 @@ public class Updater implements StopwatchTimer.TickHandler {
 
   private boolean mUpdating;
 
+  @Nullable private final Executor myFetchExecutor;
+  @NotNull private final Set<DataFetcher> myFetchRequests = new LinkedHashSet<>();
+  @NotNull private final DurationHistogram myFrameTimeHistogram = new DurationHistogram();
+  @NotNull private final DurationHistogram myFetchLatencyHistogram = new DurationHistogram();
+
   public Updater(@NotNull StopwatchTimer timer) {
+    this(timer, null);
+  }
+
+  /**
+   * @param fetchExecutor the executor on which {@link DataFetcher}s fetch their data, or null if data shouldn't be fetched ahead of time,
+   *                      in which case it is read when needed.
+   */
+  public Updater(@NotNull StopwatchTimer timer, @Nullable Executor fetchExecutor) {
+    myFetchExecutor = fetchExecutor;
     mComponents = new LinkedList<>();
     mToRegister = new LinkedList<>();
     mToUnregister = new LinkedList<>();
@@ -80,6 +101,39 @@ public class Updater implements StopwatchTimer.TickHandler {
     }
   }
 
+  /**
+   * Whether data is fetched ahead of time, in which case {@link DataFetcher}s should call {@link #requestFetch(DataFetcher)} to get
+   * up-to-date data.
+   */
+  public boolean isFetchingAhead() {
+    return myFetchExecutor != null;
+  }
+
+  /**
+   * Asks for the fetcher to be run at the start of the next frame. Requests made before then are coalesced.
+   */
+  public void requestFetch(@NotNull DataFetcher fetcher) {
+    if (myFetchExecutor != null) {
+      myFetchRequests.add(fetcher);
+    }
+  }
+
+  /**
+   * Returns the histogram of the time spent in each frame, on the thread driving the timer.
+   */
+  @NotNull
+  public DurationHistogram getFrameTimeHistogram() {
+    return myFrameTimeHistogram;
+  }
+
+  /**
+   * Returns the histogram of the time taken by {@link DataFetcher}s to fetch their data.
+   */
+  @NotNull
+  public DurationHistogram getFetchLatencyHistogram() {
+    return myFetchLatencyHistogram;
+  }
+
   public void stop() {
     if (mTimer.isRunning()) {
       mTimer.stop();
@@ -96,6 +150,16 @@ public class Updater implements StopwatchTimer.TickHandler {
 
   @Override
   public void onTick(long elapsedNs) {
+    long startTimeNs = System.nanoTime();
+    if (myFetchExecutor != null && !myFetchRequests.isEmpty()) {
+      // Copy the requests, as fetchers run on a direct executor can request the next fetch right away.
+      DataFetcher[] fetchers = myFetchRequests.toArray(new DataFetcher[0]);
+      myFetchRequests.clear();
+      for (DataFetcher fetcher : fetchers) {
+        fetcher.fetch(myFetchExecutor, myFetchLatencyHistogram);
+      }
+    }
+
     mUpdating = true;
     if (mReset) {
       mComponents.forEach(Updatable::reset);
@@ -111,6 +175,7 @@ public class Updater implements StopwatchTimer.TickHandler {
 
     mToUnregister.clear();
     mToRegister.clear();
+    myFrameTimeHistogram.record(System.nanoTime() - startTimeNs);
   }
 
   /**
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.android.tools.adtui.model.updater.Updater;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AsyncDataSeriesTest {
+  private final DefaultDataSeries<Long> myDataSeries = new DefaultDataSeries<>();
+  private final List<Runnable> myPendingFetches = new ArrayList<>();
+  private final Range myViewRange = new Range(0, 10);
+
+  private FakeTimer myTimer;
+  private AsyncDataSeries<Long> myAsyncSeries;
+
+  @Before
+  public void setUp() {
+    for (int i = 0; i <= 100; i++) {
+      myDataSeries.add(i, (long)i);
+    }
+    myTimer = new FakeTimer();
+    Updater updater = new Updater(myTimer, myPendingFetches::add);
+    myAsyncSeries = new AsyncDataSeries<>(myDataSeries, myViewRange, updater);
+  }
+
+  @Test
+  public void firstReadIsSynchronous() {
+    assertThat(getXs(myAsyncSeries.getDataForXRange(myViewRange))).isEqualTo(getXs(myDataSeries.getDataForXRange(myViewRange)));
+  }
+
+  @Test
+  public void readsReturnTheDataFetchedLast() {
+    myAsyncSeries.getDataForXRange(myViewRange);
+
+    myViewRange.set(20, 30);
+    myTimer.tick(1);
+    // The fetch of the new range hasn't run yet.
+    assertThat(getXs(myAsyncSeries.getDataForXRange(myViewRange))).doesNotContain(25L);
+    assertThat(myPendingFetches).hasSize(1);
+
+    myPendingFetches.remove(0).run();
+    assertThat(getXs(myAsyncSeries.getDataForXRange(myViewRange))).isEqualTo(getXs(myDataSeries.getDataForXRange(myViewRange)));
+  }
+
+  @Test
+  public void fetchesAreCoalescedWhileOneIsRunning() {
+    myAsyncSeries.getDataForXRange(myViewRange);
+    myTimer.tick(1);
+    assertThat(myPendingFetches).hasSize(1);
+
+    myAsyncSeries.getDataForXRange(myViewRange);
+    myViewRange.set(40, 50);
+    myTimer.tick(1);
+    myAsyncSeries.getDataForXRange(myViewRange);
+    myViewRange.set(60, 70);
+    myTimer.tick(1);
+    assertThat(myPendingFetches).hasSize(1);
+
+    // Once the running fetch is done, only the latest range is fetched.
+    myPendingFetches.remove(0).run();
+    assertThat(myPendingFetches).hasSize(1);
+    myPendingFetches.remove(0).run();
+    assertThat(myPendingFetches).isEmpty();
+    assertThat(getXs(myAsyncSeries.getDataForXRange(myViewRange))).isEqualTo(getXs(myDataSeries.getDataForXRange(myViewRange)));
+  }
+
+  @Test
+  public void otherRangesAreReadFromTheFetchedDataOnlyIfCovered() {
+    myAsyncSeries.getDataForXRange(myViewRange);
+
+    // The fetched data covering the range may include one more point before and after it.
+    Range covered = new Range(4, 6);
+    assertThat(getXs(myAsyncSeries.getDataForXRange(covered))).containsAllIn(getXs(myDataSeries.getDataForXRange(covered)));
+    assertThat(getXs(myAsyncSeries.getDataForXRange(covered)).size()).isAtMost(5);
+    Range notCovered = new Range(50, 55);
+    assertThat(getXs(myAsyncSeries.getDataForXRange(notCovered))).isEqualTo(getXs(myDataSeries.getDataForXRange(notCovered)));
+
+    // Reading other ranges doesn't fetch them.
+    myTimer.tick(1);
+    myPendingFetches.remove(0).run();
+    assertThat(myPendingFetches).isEmpty();
+  }
+
+  @Test
+  public void readsAreSynchronousWithoutFetchExecutor() {
+    AsyncDataSeries<Long> series = new AsyncDataSeries<>(myDataSeries, myViewRange, new Updater(new FakeTimer()));
+    series.getDataForXRange(myViewRange);
+    myViewRange.set(20, 30);
+    assertThat(getXs(series.getDataForXRange(myViewRange))).isEqualTo(getXs(myDataSeries.getDataForXRange(myViewRange)));
+  }
+
+  @NotNull
+  private static List<Long> getXs(@NotNull List<SeriesData<Long>> data) {
+    return data.stream().map(d -> d.x).collect(Collectors.toList());
+  }
+}
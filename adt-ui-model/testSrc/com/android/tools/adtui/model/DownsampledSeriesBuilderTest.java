@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DownsampledSeriesBuilderTest {
+  @Test
+  public void sparseSamplesAreKept() {
+    DownsampledSeriesBuilder builder = new DownsampledSeriesBuilder(new Range(0, 1000), 100, DownsampledSeriesBuilder.Aggregation.MAX);
+    for (int i = 0; i <= 1000; i += 100) {
+      builder.add(i, i);
+    }
+    List<SeriesData<Long>> result = builder.build();
+    assertThat(result).hasSize(11);
+    for (int i = 0; i < result.size(); i++) {
+      assertThat(result.get(i).x).isEqualTo(i * 100L);
+      assertThat(result.get(i).value).isEqualTo(i * 100L);
+    }
+  }
+
+  @Test
+  public void denseSamplesAreReducedPerBucket() {
+    // 1000us over 10 points gives 100us, rounded up to 128us buckets.
+    DownsampledSeriesBuilder max = new DownsampledSeriesBuilder(new Range(0, 1023), 10, DownsampledSeriesBuilder.Aggregation.MAX);
+    DownsampledSeriesBuilder minMax = new DownsampledSeriesBuilder(new Range(0, 1023), 10, DownsampledSeriesBuilder.Aggregation.MIN_MAX);
+    for (int i = 0; i < 1024; i++) {
+      long value = i % 128 == 64 ? 1000 : 500;
+      max.add(i, value);
+      minMax.add(i, value);
+    }
+
+    List<SeriesData<Long>> maxResult = max.build();
+    List<SeriesData<Long>> minMaxResult = minMax.build();
+    assertThat(maxResult).hasSize(8);
+    assertThat(minMaxResult).hasSize(16);
+    for (int i = 0; i < 8; i++) {
+      assertThat(maxResult.get(i).x).isEqualTo(i * 128L);
+      assertThat(maxResult.get(i).value).isEqualTo(1000L);
+      assertThat(minMaxResult.get(2 * i).x).isEqualTo(i * 128L);
+      assertThat(minMaxResult.get(2 * i).value).isEqualTo(500L);
+      assertThat(minMaxResult.get(2 * i + 1).x).isEqualTo(i * 128L + 127);
+      assertThat(minMaxResult.get(2 * i + 1).value).isEqualTo(1000L);
+    }
+  }
+
+  @Test
+  public void minMaxKeepsTheOrderOfTheExtremes() {
+    DownsampledSeriesBuilder builder = new DownsampledSeriesBuilder(new Range(0, 1023), 10, DownsampledSeriesBuilder.Aggregation.MIN_MAX);
+    // A peak followed by a drop, then a drop followed by a peak.
+    builder.add(0, 5);
+    builder.add(10, 9);
+    builder.add(20, 1);
+    builder.add(30, 5);
+    builder.add(128, 5);
+    builder.add(138, 1);
+    builder.add(148, 9);
+    builder.add(158, 5);
+    // A single sample stays a single point.
+    builder.add(256, 7);
+    List<SeriesData<Long>> result = builder.build();
+    assertThat(result).hasSize(5);
+    assertThat(result.get(0).x).isEqualTo(0L);
+    assertThat(result.get(0).value).isEqualTo(9L);
+    assertThat(result.get(1).x).isEqualTo(30L);
+    assertThat(result.get(1).value).isEqualTo(1L);
+    assertThat(result.get(2).x).isEqualTo(128L);
+    assertThat(result.get(2).value).isEqualTo(1L);
+    assertThat(result.get(3).x).isEqualTo(158L);
+    assertThat(result.get(3).value).isEqualTo(9L);
+    assertThat(result.get(4).x).isEqualTo(256L);
+    assertThat(result.get(4).value).isEqualTo(7L);
+  }
+
+  @Test
+  public void minMaxPointsDoNotDependOnValues() {
+    DownsampledSeriesBuilder flat = new DownsampledSeriesBuilder(new Range(0, 1023), 10, DownsampledSeriesBuilder.Aggregation.MIN_MAX);
+    DownsampledSeriesBuilder varying = new DownsampledSeriesBuilder(new Range(0, 1023), 10, DownsampledSeriesBuilder.Aggregation.MIN_MAX);
+    for (int i = 0; i < 1024; i += 16) {
+      flat.add(i, 3);
+      varying.add(i, i % 48);
+    }
+    List<SeriesData<Long>> flatResult = flat.build();
+    List<SeriesData<Long>> varyingResult = varying.build();
+    assertThat(flatResult).hasSize(varyingResult.size());
+    for (int i = 0; i < flatResult.size(); i++) {
+      assertThat(flatResult.get(i).x).isEqualTo(varyingResult.get(i).x);
+    }
+  }
+
+  @Test
+  public void samplesOutsideOfRangeAreKept() {
+    DownsampledSeriesBuilder builder = new DownsampledSeriesBuilder(new Range(100, 200), 1, DownsampledSeriesBuilder.Aggregation.MAX);
+    builder.add(50, 1);
+    builder.add(150, 2);
+    builder.add(160, 3);
+    builder.add(250, 4);
+    List<SeriesData<Long>> result = builder.build();
+    assertThat(result).hasSize(3);
+    assertThat(result.get(0).value).isEqualTo(1L);
+    assertThat(result.get(1).x).isEqualTo(150L);
+    assertThat(result.get(1).value).isEqualTo(3L);
+    assertThat(result.get(2).value).isEqualTo(4L);
+  }
+}
@@ -150,6 +150,49 @@ public class UpdaterTest {
     assertEquals(Arrays.asList(updatableA, updatableB), reset);
   }
 
+  @Test
+  public void fetchersRunBeforeUpdatables() {
+    List<Object> events = new ArrayList<>();
+    Updater updater = new Updater(new FakeTimer(), Runnable::run);
+    DataFetcher fetcher = (executor, histogram) -> events.add("fetch");
+    updater.register(elapsedNs -> {
+      events.add("update");
+      updater.requestFetch(fetcher);
+    });
+
+    updater.getTimer().tick(1);
+    assertEquals(Collections.singletonList("update"), events);
+
+    events.clear();
+    updater.getTimer().tick(1);
+    assertEquals(Arrays.asList("fetch", "update"), events);
+    assertEquals(2, updater.getFrameTimeHistogram().getCount());
+  }
+
+  @Test
+  public void fetchRequestsAreCoalesced() {
+    List<DataFetcher> fetched = new ArrayList<>();
+    Updater updater = new Updater(new FakeTimer(), Runnable::run);
+    DataFetcher fetcher = (executor, histogram) -> fetched.add(null);
+    updater.requestFetch(fetcher);
+    updater.requestFetch(fetcher);
+
+    updater.getTimer().tick(1);
+    assertEquals(1, fetched.size());
+    updater.getTimer().tick(1);
+    assertEquals(1, fetched.size());
+  }
+
+  @Test
+  public void fetchRequestsAreIgnoredWithoutFetchExecutor() {
+    List<DataFetcher> fetched = new ArrayList<>();
+    assertFalse(myUpdater.isFetchingAhead());
+    myUpdater.requestFetch((executor, histogram) -> fetched.add(null));
+
+    myUpdater.getTimer().tick(1);
+    assertTrue(fetched.isEmpty());
+  }
+
   private static class FakeUpdatable implements Updatable {
     private final List<Updatable> myUpdated;
 
@@ -31,10 +31,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Queue;
 
 /**
  * A chart which renders nodes using a horizontal flow. That is, while normal trees are vertical,
@@ -75,26 +75,48 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
   @NotNull
   private final Range myYRange;
 
+  /**
+   * The nodes of the tree grouped by depth, from the lowest depth to the highest one, so that only the nodes in the visible area are
+   * visited when drawing. Rebuilt when the tree changes, rather than when the visible area does.
+   */
   @NotNull
-  private final List<Rectangle2D.Float> myRectangles;
+  private final List<NodeRow<N>> myRows;
 
-  @NotNull
-  private final List<N> myNodes;
+  private int myNodeCount;
 
   private boolean myRootVisible;
 
   @Nullable
   private N myFocusedNode;
 
+  /**
+   * The drawn rectangles and their nodes, row by row, each row sorted by X. The ones of {@code myRows.get(i)} are in
+   * [{@code myDrawnRowStarts[i]}, {@code myDrawnRowStarts[i + 1]}).
+   */
   @NotNull
   private final List<Rectangle2D.Float> myDrawnRectangles;
 
   @NotNull
   private final List<N> myDrawnNodes;
 
+  @NotNull
+  private int[] myDrawnRowStarts = new int[1];
+
+  /**
+   * Rectangles reused from one canvas render to the next.
+   */
+  @NotNull
+  private final List<Rectangle2D.Float> myRectanglePool = new ArrayList<>();
+
   @NotNull
   private final HTreeChartReducer<N> myReducer;
 
+  /**
+   * Whether nodes narrower than a pixel are combined while the rows are traversed, skipping the nodes in between, rather than only by the
+   * reducer. Only done for the default reducer, as others expect to get every node in the visible area.
+   */
+  private final boolean myCombineSubPixelNodes;
+
   @Nullable
   private Image myCanvas;
 
@@ -113,14 +135,14 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
    */
   @VisibleForTesting
   public HTreeChart(@Nullable Range globalXRange, @NotNull Range viewXRange, Orientation orientation, @NotNull HTreeChartReducer<N> reducer) {
-    myRectangles = new ArrayList<>();
-    myNodes = new ArrayList<>();
+    myRows = new ArrayList<>();
     myDrawnNodes = new ArrayList<>();
     myDrawnRectangles = new ArrayList<>();
     myGlobalXRange = globalXRange != null ? globalXRange : new Range(-Double.MAX_VALUE, Double.MAX_VALUE);
     myXRange = viewXRange;
     myRoot = null;
     myReducer = reducer;
+    myCombineSubPixelNodes = reducer instanceof DefaultHTreeChartReducer;
     myYRange = new Range(INITIAL_Y_POSITION, INITIAL_Y_POSITION);
     myOrientation = orientation;
     myRootVisible = true;
@@ -140,6 +162,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
 
   public void setRootVisible(boolean rootVisible) {
     myRootVisible = rootVisible;
+    updateRows();
     changed();
   }
 
@@ -157,7 +180,6 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
 
   private void changed() {
     myDataUpdated = true;
-    myCachedMaxHeight = calculateMaximumHeight();
     opaqueRepaint();
   }
 
@@ -166,7 +188,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     long startTime = System.nanoTime();
     if (myDataUpdated) {
       // Nulling out the canvas will trigger a render pass, below
-      updateNodesAndClearCanvas();
+      myCanvas = null;
       myDataUpdated = false;
     }
     g.setFont(getFont());
@@ -189,7 +211,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     }
     UIUtil.drawImage(g, myCanvas, 0, 0, null);
     addDebugInfo("Draw time %.2fms", (System.nanoTime() - startTime) / 1e6);
-    addDebugInfo("# of nodes %d", myNodes.size());
+    addDebugInfo("# of nodes %d", myNodeCount);
     addDebugInfo("# of reduced nodes %d", myDrawnNodes.size());
   }
 
@@ -204,83 +226,176 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
       g = (Graphics2D)myCanvas.getGraphics();
     }
     g.setFont(getFont());
-    myDrawnNodes.clear();
-    myDrawnNodes.addAll(myNodes);
+    updateDrawnNodes(dim);
 
-    myDrawnRectangles.clear();
-    // Transform
-    for (Rectangle2D.Float rect : myRectangles) {
-      Rectangle2D.Float newRect = new Rectangle2D.Float();
-      newRect.x = rect.x * (float)dim.getWidth();
-      newRect.y = rect.y;
-      newRect.width = Math.max(0, rect.width * (float)dim.getWidth() - BORDER_PLUS_PADDING);
-      newRect.height = rect.height;
+    assert myRenderer != null;
+    for (int i = 0; i < myDrawnNodes.size(); ++i) {
+      N node = myDrawnNodes.get(i);
+      myRenderer.render(g, node, myDrawnRectangles.get(i), node == myFocusedNode);
+    }
 
+    g.dispose();
+  }
+
+  /**
+   * Collects the nodes to draw and their rectangles, in screen coordinates. Only the rows in the visible area are visited, and within a
+   * row only the nodes that overlap the X range, which are found by binary search.
+   */
+  private void updateDrawnNodes(@NotNull Dimension dim) {
+    myDrawnNodes.clear();
+    myDrawnRectangles.clear();
+    int pooledRectangles = 0;
+    float width = (float)dim.getWidth();
+    int rowHeight = mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING;
+
+    for (int row = 0; row < myRows.size(); ++row) {
+      myDrawnRowStarts[row] = myDrawnNodes.size();
+      NodeRow<N> nodeRow = myRows.get(row);
+      float y = (float)(rowHeight * nodeRow.myDepth - getYRange().getMin());
       if (myOrientation == HTreeChart.Orientation.BOTTOM_UP) {
-        newRect.y = (float)(dim.getHeight() - newRect.y - newRect.getHeight());
+        y = (float)(dim.getHeight() - y - mDefaultFontMetrics.getHeight());
+      }
+      if (y + mDefaultFontMetrics.getHeight() < 0 || y > dim.getHeight()) {
+        continue;
       }
 
-      myDrawnRectangles.add(newRect);
-    }
+      int rowStart = myDrawnNodes.size();
+      int index = nodeRow.firstEndingAtOrAfter(myXRange.getMin());
+      while (index < nodeRow.myNodes.size()) {
+        N node = nodeRow.myNodes.get(index);
+        if (node.getStart() > myXRange.getMax()) {
+          break;
+        }
+        if (!inRange(node)) {
+          ++index;
+          continue;
+        }
 
-    myReducer.reduce(myDrawnRectangles, myDrawnNodes);
+        if (pooledRectangles == myRectanglePool.size()) {
+          myRectanglePool.add(new Rectangle2D.Float());
+        }
+        Rectangle2D.Float rect = myRectanglePool.get(pooledRectangles++);
+        rect.x = getLeft(node) * width;
+        rect.y = y;
+        rect.width = getDrawnWidth(node, width);
+        rect.height = mDefaultFontMetrics.getHeight();
+
+        int pixel = (int)Math.floor(rect.getMaxX());
+        if (myCombineSubPixelNodes && Math.floor(rect.getMinX()) == pixel) {
+          // Like the reducer, combine this node with the following ones that end in the same pixel, without visiting the ones in between.
+          int last = findLastEndingInPixel(nodeRow, index, pixel, width);
+          if (last > index) {
+            rect.width = (float)(getDrawnMaxX(nodeRow.myNodes.get(last), width) - rect.getMinX());
+          }
+          index = last;
+        }
+        myDrawnNodes.add(node);
+        myDrawnRectangles.add(rect);
+        ++index;
+      }
 
-    assert myDrawnRectangles.size() == myDrawnNodes.size();
-    assert myRenderer != null;
-    for (int i = 0; i < myDrawnNodes.size(); ++i) {
-      N node = myDrawnNodes.get(i);
-      myRenderer.render(g, node, myDrawnRectangles.get(i), node == myFocusedNode);
+      // Each row is reduced separately, so that it stays sorted by X.
+      myReducer.reduce(myDrawnRectangles.subList(rowStart, myDrawnRectangles.size()), myDrawnNodes.subList(rowStart, myDrawnNodes.size()));
+      assert myDrawnRectangles.size() == myDrawnNodes.size();
     }
+    myDrawnRowStarts[myRows.size()] = myDrawnNodes.size();
+  }
 
-    g.dispose();
+  /**
+   * Returns the index of the last node of the row, starting at {@code index}, whose rectangle ends in the given pixel. Rectangles end at
+   * increasing X coordinates within a row, so this gallops then binary searches rather than visiting every node.
+   */
+  private int findLastEndingInPixel(@NotNull NodeRow<N> nodeRow, int index, int pixel, float width) {
+    int low = index;
+    int step = 1;
+    int high = index + step;
+    while (high < nodeRow.myNodes.size() && endsInPixel(nodeRow.myNodes.get(high), pixel, width)) {
+      low = high;
+      step *= 2;
+      high = index + step;
+    }
+    high = Math.min(high, nodeRow.myNodes.size());
+    // The node at low ends in the pixel and the one at high, if any, doesn't.
+    while (high - low > 1) {
+      int mid = (low + high) >>> 1;
+      if (endsInPixel(nodeRow.myNodes.get(mid), pixel, width)) {
+        low = mid;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private boolean endsInPixel(@NotNull N node, int pixel, float width) {
+    return node.getStart() <= myXRange.getMax() && Math.floor(getDrawnMaxX(node, width)) == pixel;
   }
 
-  private void updateNodesAndClearCanvas() {
-    myNodes.clear();
-    myRectangles.clear();
-    myCanvas = null;
+  /**
+   * Groups the nodes of the tree by depth, and computes the height of the tree.
+   */
+  private void updateRows() {
+    myRows.clear();
+    myNodeCount = 0;
+    myCachedMaxHeight = 0;
     if (myRoot == null) {
+      myDrawnRowStarts = new int[1];
       return;
     }
 
-    if (inRange(myRoot)) {
-      myNodes.add(myRoot);
-      myRectangles.add(createRectangle(myRoot));
-    }
-
-    int head = 0;
-    while (head < myNodes.size()) {
-      N curNode = myNodes.get(head++);
+    List<List<N>> nodesByDepth = new ArrayList<>();
+    int maxDepth = -1;
+    ArrayDeque<N> queue = new ArrayDeque<>();
+    queue.add(myRoot);
+    while (!queue.isEmpty()) {
+      N node = queue.poll();
+      maxDepth = Math.max(maxDepth, node.getDepth());
+      for (int i = 0; i < node.getChildCount(); ++i) {
+        queue.add(node.getChildAt(i));
+      }
+      if (node == myRoot && !myRootVisible) {
+        continue;
+      }
 
-      for (int i = 0; i < curNode.getChildCount(); ++i) {
-        N child = curNode.getChildAt(i);
-        if (inRange(child)) {
-          myNodes.add(child);
-          myRectangles.add(createRectangle(child));
-        }
+      int row = node.getDepth() - myRoot.getDepth();
+      while (nodesByDepth.size() <= row) {
+        nodesByDepth.add(new ArrayList<>());
       }
+      nodesByDepth.get(row).add(node);
+      ++myNodeCount;
     }
-    if (!myRootVisible && !myNodes.isEmpty()) {
-      myNodes.remove(0);
-      myRectangles.remove(0);
+    myCachedMaxHeight = (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * (maxDepth + 1);
+
+    for (List<N> nodes : nodesByDepth) {
+      if (!nodes.isEmpty()) {
+        myRows.add(new NodeRow<>(nodes));
+      }
     }
+    myDrawnRowStarts = new int[myRows.size() + 1];
   }
 
   private boolean inRange(@NotNull N node) {
     return node.getStart() <= myXRange.getMax() && node.getEnd() >= myXRange.getMin();
   }
 
-  @NotNull
-  private Rectangle2D.Float createRectangle(@NotNull N node) {
-    float left = (float)Math.max(0, (node.getStart() - myXRange.getMin()) / myXRange.getLength());
+  /**
+   * Returns the X coordinate of the left of the node, in [0, 1].
+   */
+  private float getLeft(@NotNull N node) {
+    return (float)Math.max(0, (node.getStart() - myXRange.getMin()) / myXRange.getLength());
+  }
+
+  /**
+   * Returns the width of the node's rectangle, in pixels, leaving room for its border.
+   */
+  private float getDrawnWidth(@NotNull N node, float width) {
     float right = (float)Math.min(1, (node.getEnd() - myXRange.getMin()) / myXRange.getLength());
-    Rectangle2D.Float rect = new Rectangle2D.Float();
-    rect.x = left;
-    rect.y = (float)((mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * node.getDepth()
-                     - getYRange().getMin());
-    rect.width = right - left;
-    rect.height = mDefaultFontMetrics.getHeight();
-    return rect;
+    return Math.max(0, (right - getLeft(node)) * width - BORDER_PLUS_PADDING);
+  }
+
+  private double getDrawnMaxX(@NotNull N node, float width) {
+    return (double)(getLeft(node) * width) + getDrawnWidth(node, width);
   }
 
   private double positionToRange(double x) {
@@ -293,17 +408,36 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
 
   public void setHTree(@Nullable N root) {
     this.myRoot = root;
+    updateRows();
     changed();
   }
 
   @Nullable
   public N getNodeAt(Point point) {
-    if (point != null) {
-      for (int i = 0; i < myDrawnNodes.size(); ++i) {
-        if (contains(myDrawnRectangles.get(i), point)) {
-          return myDrawnNodes.get(i);
+    if (point == null) {
+      return null;
+    }
+    for (int row = 0; row < myDrawnRowStarts.length - 1; ++row) {
+      int start = myDrawnRowStarts[row];
+      int end = myDrawnRowStarts[row + 1];
+      // The rectangles of a row all have the same Y coordinates.
+      if (start == end || !(myDrawnRectangles.get(start).getMinY() <= point.getY() &&
+                            point.getY() <= myDrawnRectangles.get(start).getMaxY())) {
+        continue;
+      }
+      // Find the last rectangle of the row starting at or before the point.
+      int low = start - 1;
+      int high = end - 1;
+      while (low < high) {
+        int mid = (low + high + 1) >>> 1;
+        if (myDrawnRectangles.get(mid).getMinX() <= point.getX()) {
+          low = mid;
+        }
+        else {
+          high = mid - 1;
         }
       }
+      return low >= start && contains(myDrawnRectangles.get(low), point) ? myDrawnNodes.get(low) : null;
     }
     return null;
   }
@@ -443,27 +577,44 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     return myCachedMaxHeight;
   }
 
-  private int calculateMaximumHeight() {
-    if (myRoot == null) {
-      return 0;
-    }
-
-    int maxDepth = -1;
-    Queue<N> queue = new LinkedList<>();
-    queue.add(myRoot);
-
-    while (!queue.isEmpty()) {
-      N n = queue.poll();
-      if (n.getDepth() > maxDepth) {
-        maxDepth = n.getDepth();
+  /**
+   * The nodes of a depth, sorted by start, along with the maximum end of the nodes up to each of them, so that the first node of the row
+   * in a range can be found by binary search.
+   */
+  private static final class NodeRow<N extends HNode<N>> {
+    private final int myDepth;
+    @NotNull private final List<N> myNodes;
+    @NotNull private final long[] myMaxEnds;
+
+    private NodeRow(@NotNull List<N> nodes) {
+      nodes.sort(Comparator.comparingLong(HNode::getStart));
+      myDepth = nodes.get(0).getDepth();
+      myNodes = nodes;
+      myMaxEnds = new long[nodes.size()];
+      long maxEnd = Long.MIN_VALUE;
+      for (int i = 0; i < nodes.size(); ++i) {
+        maxEnd = Math.max(maxEnd, nodes.get(i).getEnd());
+        myMaxEnds[i] = maxEnd;
       }
+    }
 
-      for (int i = 0; i < n.getChildCount(); ++i) {
-        queue.add(n.getChildAt(i));
+    /**
+     * Returns the index of the first node such that no node before it ends at or after {@code x}.
+     */
+    private int firstEndingAtOrAfter(double x) {
+      int low = 0;
+      int high = myMaxEnds.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myMaxEnds[mid] < x) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
       }
+      return low;
     }
-    maxDepth += 1;
-    return (mDefaultFontMetrics.getHeight() + BORDER_PLUS_PADDING) * maxDepth;
   }
 
   public enum Orientation {TOP_DOWN, BOTTOM_UP}
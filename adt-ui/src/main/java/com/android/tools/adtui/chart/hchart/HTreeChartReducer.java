@@ -28,6 +28,9 @@ public interface HTreeChartReducer<N extends HNode<N>> {
    * reduced. When the {@link HTreeChart} is drawn using modified {@code rectangles} and {@code nodes}, it should be visually similar
    * as if it was drawn without reducing.
    *
+   * The chart reduces the nodes of each depth separately, sorted by X, and expects them to stay sorted. Only the nodes in its visible area
+   * are passed.
+   *
    * {@link HTreeChart} will throw an {@link AssertionError} if the reducer does not ensure that the
    * length of {@code nodes} is the same as the length of {@code rectangles}.
    */
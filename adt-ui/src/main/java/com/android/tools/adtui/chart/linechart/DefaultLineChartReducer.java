@@ -18,6 +18,7 @@ package com.android.tools.adtui.chart.linechart;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.util.ArrayList;
@@ -31,6 +32,14 @@ class DefaultLineChartReducer implements LineChartReducer {
    */
   private static int PATH_ITERATOR_COORDS_COUNT = 6;
 
+  /**
+   * The last point of the path being reduced, tracked here as {@link Path2D#getCurrentPoint()} allocates. This makes the reducer
+   * unsuitable for reducing several paths at once, which {@link LineChart} never does.
+   */
+  private boolean myHasCurrentPoint;
+  private float myCurrentX;
+  private float myCurrentY;
+
   /**
    * A simple reducer which reduces when,
    * 1. When the data is for a stepped line and if two consecutive values are equal (except for the last two points),
@@ -59,21 +68,51 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  @NotNull
+  @Override
+  public Path2D reducePath(@NotNull Path2D path, @NotNull LineConfig config) {
+    if (path.getCurrentPoint() == null) {
+      return path;
+    }
+
+    LineCoordinates line = new LineCoordinates();
+    float[] coords = new float[PATH_ITERATOR_COORDS_COUNT];
+    for (PathIterator iterator = path.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+      int segType = iterator.currentSegment(coords);
+      assert segType == PathIterator.SEG_MOVETO || segType == PathIterator.SEG_LINETO;
+      line.add(coords[0], coords[1]);
+    }
+    Path2D.Float resultPath = new Path2D.Float();
+    reducePath(line, new AffineTransform(), config, resultPath);
+    return resultPath;
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
   * the points with minimum and maximum Y coordinates within a pixel.
   * It draws similar shape with the original, because of the fact that width of a line is 1px.
+  *
+  * The points are transformed while they are read, and the reduced ones are written straight into the result path, so this doesn't
+  * allocate once the result path is large enough.
   */
-  @NotNull
   @Override
-  public Path2D reducePath(@NotNull Path2D path, @NotNull LineConfig config) {
-    if (path.getCurrentPoint() == null) {
-      return path;
+  public void reducePath(@NotNull LineCoordinates line,
+                         @NotNull AffineTransform transform,
+                         @NotNull LineConfig config,
+                         @NotNull Path2D.Float resultPath) {
+    // LineChart only scales and translates its lines.
+    assert transform.getShearX() == 0 && transform.getShearY() == 0;
+    resultPath.reset();
+    myHasCurrentPoint = false;
+    if (line.isEmpty()) {
+      return;
     }
 
-    Path2D resultPath = new Path2D.Float();
-    float[] coords = new float[PATH_ITERATOR_COORDS_COUNT];
+    double scaleX = transform.getScaleX();
+    double scaleY = transform.getScaleY();
+    double translateX = transform.getTranslateX();
+    double translateY = transform.getTranslateY();
     float pixel = -1;
     float minX = -1, minY = -1;
     float maxX = -1, maxY = -1;
@@ -81,15 +120,11 @@ class DefaultLineChartReducer implements LineChartReducer {
     int minIndex = -1, maxIndex = -1;
     int curIndex = 0;
 
-    PathIterator iterator = path.getPathIterator(null);
-    while (!iterator.isDone()) {
-      int segType = iterator.currentSegment(coords);
-      assert segType == PathIterator.SEG_MOVETO || segType == PathIterator.SEG_LINETO;
-
+    for (; curIndex < line.size(); curIndex++) {
       float previousX = curX;
       float previousY = curY;
-      curX = coords[0];
-      curY = coords[1];
+      curX = (float)(line.getX(curIndex) * scaleX + translateX);
+      curY = (float)(line.getY(curIndex) * scaleY + translateY);
 
       if (curIndex > 0 && curX < previousX) {
         // This can happen only for a filled line
@@ -129,9 +164,6 @@ class DefaultLineChartReducer implements LineChartReducer {
           maxY = curY;
         }
       }
-
-      iterator.next();
-      curIndex++;
     }
 
     addMinMaxPoints(resultPath, config, minIndex, minX, minY, maxIndex, maxX, maxY);
@@ -139,58 +171,64 @@ class DefaultLineChartReducer implements LineChartReducer {
 
     if (config.isStepped()) {
       // The last point won't be added if Y value is the same with previous point, so let's add it
-      if (resultPath.getCurrentPoint() == null || equals((float)resultPath.getCurrentPoint().getY(), curY)) {
+      if (!myHasCurrentPoint || equals(myCurrentY, curY)) {
         addToPath(resultPath, curX, curY);
       }
     }
-    return resultPath;
   }
 
-  private static void addMinMaxPoints(@NotNull Path2D path,
-                               @NotNull LineConfig config,
-                               int minIndex, float minX, float minY,
-                               int maxIndex, float maxX, float maxY) {
+  private void addMinMaxPoints(@NotNull Path2D path,
+                             @NotNull LineConfig config,
+                             int minIndex, float minX, float minY,
+                             int maxIndex, float maxX, float maxY) {
     if (minIndex < maxIndex) {
-      addToResultPath(path, config, minX, minY, maxX, maxY);
+      addToResultPath(path, config, minX, minY);
+      addToResultPath(path, config, maxX, maxY);
     } else {
-      addToResultPath(path, config, maxX, maxY, minX, minY);
+      addToResultPath(path, config, maxX, maxY);
+      addToResultPath(path, config, minX, minY);
     }
   }
 
-  private static void addToResultPath(@NotNull Path2D path, @NotNull LineConfig config, float ...coords) {
-    assert coords.length % 2 == 0;
-    for (int i = 0; i < coords.length; i += 2) {
-      float x = coords[i], y = coords[i + 1];
-      if (config.isStepped()) {
-        addToSteppedLinePath(path, x, y);
-      } else {
-        addToPath(path, x, y);
-      }
+  private void addToResultPath(@NotNull Path2D path, @NotNull LineConfig config, float x, float y) {
+    if (config.isStepped()) {
+      addToSteppedLinePath(path, x, y);
+    } else {
+      addToPath(path, x, y);
     }
   }
 
-  private static void addToSteppedLinePath(@NotNull Path2D path, float x, float y) {
-    if (path.getCurrentPoint() == null) {
-      path.moveTo(x, y);
+  private void addToSteppedLinePath(@NotNull Path2D path, float x, float y) {
+    if (!myHasCurrentPoint) {
+      moveTo(path, x, y);
     } else {
-      if (!equals(y, (float)path.getCurrentPoint().getY())) {
-        addToPath(path, x, (float)path.getCurrentPoint().getY());
+      if (!equals(y, myCurrentY)) {
+        addToPath(path, x, myCurrentY);
         addToPath(path, x, y);
       }
     }
   }
 
-  private static void addToPath(@NotNull Path2D path, float x, float y) {
-    if (path.getCurrentPoint() == null) {
-      path.moveTo(x, y);
+  private void addToPath(@NotNull Path2D path, float x, float y) {
+    if (!myHasCurrentPoint) {
+      moveTo(path, x, y);
     } else {
       // Don't repeat the current point
-      if (!equals((float)path.getCurrentPoint().getX(), x) || !equals((float)path.getCurrentPoint().getY(), y)) {
+      if (!equals(myCurrentX, x) || !equals(myCurrentY, y)) {
         path.lineTo(x, y);
+        myCurrentX = x;
+        myCurrentY = y;
       }
     }
   }
 
+  private void moveTo(@NotNull Path2D path, float x, float y) {
+    path.moveTo(x, y);
+    myHasCurrentPoint = true;
+    myCurrentX = x;
+    myCurrentY = y;
+  }
+
   private static boolean equals(float a, float b) {
     return Math.abs(a - b) <= EPS;
   }
@@ -38,13 +38,15 @@ public class LineChart extends AnimatedComponent {
 
   static final float EPSILON = 1e-4f;
 
+  private static final Stroke MAX_LINE_STROKE = new BasicStroke(1, CAP_SQUARE, JOIN_MITER, 10, new float[]{3.0f, 3.0f}, 0.0f);
+
   // Helper structure to cache dash-related info used in a previous frame, so we can compensate for where the dash starts in the next frame.
   private static class DashInfo {
     double myPreviousFirstX;
     double myPreviousXMin;
     double myPreviousXLength;
     double myPreviousYLength;
-    Path2D myPreviousDashPath;
+    final LineCoordinates myPreviousDashCoordinates = new LineCoordinates();
   }
 
   @NotNull final LineChartModel myModel;
@@ -56,12 +58,54 @@ public class LineChart extends AnimatedComponent {
   @NotNull
   private final Map<RangedContinuousSeries, LineConfig> myLinesConfig = new LinkedHashMap<>();
 
+  /**
+   * The lines to draw, in [0, 1] coordinates, and their series, in drawing order. The coordinates are taken from
+   * {@link #myCoordinatesPool} and only recomputed when the model changes.
+   */
   @NotNull
-  private final ArrayList<Path2D> myLinePaths;
+  private final ArrayList<LineCoordinates> myLineCoordinates;
 
   @NotNull
   private final ArrayList<RangedContinuousSeries> myLinePathSeries;
 
+  /**
+   * The lines that aren't filled, which are drawn after the filled ones, while they are being computed.
+   */
+  @NotNull
+  private final ArrayList<LineCoordinates> myUnfilledLineCoordinates = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<RangedContinuousSeries> myUnfilledLineSeries = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<LineCoordinates> myCoordinatesPool = new ArrayList<>();
+
+  /**
+   * The running sums of the stacked series being computed, in objects taken from {@link #myStackedSeriesPool}. The sums are never made
+   * in the data of the series, as a series may return the same data objects every time it is read, e.g. an
+   * {@link com.android.tools.adtui.model.AsyncDataSeries} between two fetches.
+   */
+  @NotNull
+  private final ArrayList<SeriesData<Long>> myStackedSeries = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<SeriesData<Long>> myStackedSeriesPool = new ArrayList<>();
+
+  /**
+   * The lines in screen coordinates, the paths of which are reused from frame to frame, and their configs.
+   */
+  @NotNull
+  private final ArrayList<Path2D> myTransformedPaths = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<Path2D.Float> myTransformedPathsPool = new ArrayList<>();
+
+  @NotNull
+  private final ArrayList<LineConfig> myConfigs = new ArrayList<>();
+
+  @NotNull
+  private final AffineTransform myTransform = new AffineTransform();
+
   @NotNull
   private final List<LineChartCustomRenderer> myCustomRenderers = new ArrayList<>();
 
@@ -111,7 +155,7 @@ public class LineChart extends AnimatedComponent {
 
   @VisibleForTesting
   public LineChart(@NotNull LineChartModel model, @NotNull LineChartReducer reducer) {
-    myLinePaths = new ArrayList<>();
+    myLineCoordinates = new ArrayList<>();
     myLinePathSeries = new ArrayList<>();
     myReducer = reducer;
     myModel = model;
@@ -166,10 +210,14 @@ public class LineChart extends AnimatedComponent {
 
     // Store the last stacked series to use them to increment the Y values
     // of the current stacked series.
-    List<SeriesData<Long>> lastStackedSeries = null;
+    boolean hasStackedSeries = false;
+    myStackedSeries.clear();
 
-    Deque<Path2D> orderedPaths = new ArrayDeque<>(myLinesConfig.size());
-    Deque<RangedContinuousSeries> orderedSeries = new ArrayDeque<>(myLinesConfig.size());
+    myLineCoordinates.clear();
+    myLinePathSeries.clear();
+    myUnfilledLineCoordinates.clear();
+    myUnfilledLineSeries.clear();
+    int lineCount = 0;
 
     for (RangedContinuousSeries ranged : myModel.getSeries()) {
       if (ranged.getXRange().isEmpty() || ranged.getXRange().isPoint()
@@ -180,8 +228,18 @@ public class LineChart extends AnimatedComponent {
 
       List<SeriesData<Long>> seriesList = ranged.getSeries();
       if (config.isStacked()) {
-        if (lastStackedSeries == null) {
-          lastStackedSeries = new ArrayList<>(seriesList);
+        if (!hasStackedSeries) {
+          hasStackedSeries = true;
+          for (int i = 0; i < seriesList.size(); ++i) {
+            SeriesData<Long> data = seriesList.get(i);
+            if (i == myStackedSeriesPool.size()) {
+              myStackedSeriesPool.add(new SeriesData<>(data.x, data.value));
+            }
+            SeriesData<Long> sum = myStackedSeriesPool.get(i);
+            sum.x = data.x;
+            sum.value = data.value;
+            myStackedSeries.add(sum);
+          }
         }
         else {
           // If the current series is stacked, increment its value by the value of the last stacked
@@ -189,15 +247,19 @@ public class LineChart extends AnimatedComponent {
           // points than the last stacked series (meaning that the last one was populated in a
           // prior iteration). In this case, ignore the new points (i.e. we take only the intersection
           // across all series).
-          for (int i = 0; i < seriesList.size() && i < lastStackedSeries.size(); ++i) {
+          for (int i = 0; i < seriesList.size() && i < myStackedSeries.size(); ++i) {
             // An assumption is made here that the x values across series are aligned.
-            lastStackedSeries.get(i).value += seriesList.get(i).value;
+            myStackedSeries.get(i).value += seriesList.get(i).value;
           }
-          seriesList = lastStackedSeries;
         }
+        seriesList = myStackedSeries;
       }
 
-      Path2D path = new Path2D.Float();
+      if (lineCount == myCoordinatesPool.size()) {
+        myCoordinatesPool.add(new LineCoordinates());
+      }
+      LineCoordinates line = myCoordinatesPool.get(lineCount++);
+      line.clear();
       double xMin = ranged.getXRange().getMin();
       double xLength = ranged.getXRange().getLength();
       double yMin = ranged.getYRange().getMin();
@@ -214,8 +276,8 @@ public class LineChart extends AnimatedComponent {
         // Swing's (0, 0) coordinate is in top-left. As we use bottom-left (0, 0), we need to adjust the y coordinate.
         double yd = 1 - (data.value - yMin) / yLength;
 
-        if (path.getCurrentPoint() == null) {
-          path.moveTo(xd, yd);
+        if (line.isEmpty()) {
+          line.add(xd, yd);
           firstXd = xd;
           firstX = data.x;
         }
@@ -224,34 +286,33 @@ public class LineChart extends AnimatedComponent {
           // point (e.g. (x0, y0)) to the destination's X value (e.g. (x1, y0)) before
           // drawing a line to the destination point itself (e.g. (x1, y1)).
           if (config.isStepped()) {
-            float y = (float)path.getCurrentPoint().getY();
-            path.lineTo(xd, y);
+            line.add(xd, line.getLastY());
           }
-          path.lineTo(xd, yd);
+          line.add(xd, yd);
         }
       }
 
-      if (myFillEndGap && path.getCurrentPoint() != null) {
+      if (myFillEndGap && !line.isEmpty()) {
         // Extends the last point on the path to the end
-        path.lineTo(Math.max(path.getCurrentPoint().getX(), 1f), path.getCurrentPoint().getY());
+        line.add(Math.max(line.getLastX(), 1f), line.getLastY());
       }
 
-      if (config.isFilled() && path.getCurrentPoint() != null) {
+      if (config.isFilled() && !line.isEmpty()) {
         // If the chart is filled, draw a line from the last point to X
         // axis and another one from this new point to the first destination point.
-        path.lineTo(path.getCurrentPoint().getX(), 1f);
-        path.lineTo(firstXd, 1f);
+        line.add(line.getLastX(), 1f);
+        line.add(firstXd, 1f);
       }
 
       if (config.isFilled()) {
         // Draw the filled lines first, otherwise other lines won't be visible.
         // Also, to draw stacked and filled lines correctly, they need to be drawn in reverse order to their adding order.
-        orderedPaths.addFirst(path);
-        orderedSeries.addFirst(ranged);
+        myLineCoordinates.add(line);
+        myLinePathSeries.add(ranged);
       }
       else {
-        orderedPaths.addLast(path);
-        orderedSeries.addLast(ranged);
+        myUnfilledLineCoordinates.add(line);
+        myUnfilledLineSeries.add(ranged);
       }
 
       if (config.isDash() && config.isAdjustDash()) {
@@ -263,24 +324,25 @@ public class LineChart extends AnimatedComponent {
         }
         else {
           dashInfo = myDashInfoCache.get(config);
-          computeAdjustedDashPhase(dashInfo, config, path, dim, firstX, xMin, xLength, yLength);
+          computeAdjustedDashPhase(dashInfo, config, line, dim, firstX, xMin, xLength, yLength);
         }
         dashInfo.myPreviousFirstX = firstX;
         dashInfo.myPreviousXMin = xMin;
         dashInfo.myPreviousXLength = xLength;
         dashInfo.myPreviousYLength = yLength;
-        dashInfo.myPreviousDashPath = path;
+        dashInfo.myPreviousDashCoordinates.copyFrom(line);
       }
       else {
         myDashInfoCache.remove(config);
       }
     }
 
-    myLinePaths.clear();
-    myLinePaths.addAll(orderedPaths);
-
-    myLinePathSeries.clear();
-    myLinePathSeries.addAll(orderedSeries);
+    Collections.reverse(myLineCoordinates);
+    Collections.reverse(myLinePathSeries);
+    for (int i = 0; i < myUnfilledLineCoordinates.size(); i++) {
+      myLineCoordinates.add(myUnfilledLineCoordinates.get(i));
+      myLinePathSeries.add(myUnfilledLineSeries.get(i));
+    }
 
     addDebugInfo("postAnimate time: %d ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - duration));
   }
@@ -310,24 +372,27 @@ public class LineChart extends AnimatedComponent {
     addDebugInfo("Redraws in the last second %d", myLastRedraws);
 
     g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-    AffineTransform scale = new AffineTransform(dim.getWidth(), 0, 0, dim.getHeight() - myTopPadding, myXOffset, myYOffset + myTopPadding);
+    myTransform.setTransform(dim.getWidth(), 0, 0, dim.getHeight() - myTopPadding, myXOffset, myYOffset + myTopPadding);
 
     if (myShowMaxLine) {
       g2d.setColor(myMaxLineColor);
-      g2d.setStroke(new BasicStroke(1, CAP_SQUARE, JOIN_MITER, 10, new float[]{3.0f, 3.0f}, 0.0f));
+      g2d.setStroke(MAX_LINE_STROKE);
       g2d.drawLine(myMaxLineMargin, 0, dim.width, 0);
     }
 
     // Cache the transformed line paths for reuse below.
-    List<Path2D> transformedPaths = new ArrayList<>(myLinePaths.size());
-    List<LineConfig> configs = new ArrayList<>(myLinePaths.size());
+    myTransformedPaths.clear();
+    myConfigs.clear();
 
-    for (int i = 0; i < myLinePaths.size(); ++i) {
-      Path2D scaledPath = new Path2D.Float(myLinePaths.get(i), scale);
+    for (int i = 0; i < myLineCoordinates.size(); ++i) {
+      if (i == myTransformedPathsPool.size()) {
+        myTransformedPathsPool.add(new Path2D.Float());
+      }
+      Path2D.Float scaledPath = myTransformedPathsPool.get(i);
       LineConfig config = getLineConfig(myLinePathSeries.get(i));
-      configs.add(config);
-      scaledPath = myReducer.reducePath(scaledPath, config);
-      transformedPaths.add(scaledPath);
+      myConfigs.add(config);
+      myReducer.reducePath(myLineCoordinates.get(i), myTransform, config, scaledPath);
+      myTransformedPaths.add(scaledPath);
 
       if (isDrawDebugInfo()) {
         int count = 0;
@@ -341,10 +406,12 @@ public class LineChart extends AnimatedComponent {
     }
 
     // 1st pass - draw all the lines in the background.
-    drawLines(g2d, transformedPaths, configs);
+    drawLines(g2d, myTransformedPaths, myConfigs);
 
     // 2nd pass - call each custom renderer instances to redraw any regions/lines as needed.
-    myCustomRenderers.forEach(renderer -> renderer.renderLines(this, g2d, transformedPaths, myLinePathSeries));
+    for (int i = 0; i < myCustomRenderers.size(); i++) {
+      myCustomRenderers.get(i).renderLines(this, g2d, myTransformedPaths, myLinePathSeries);
+    }
 
     addDebugInfo("Draw time: %.2fms", (System.nanoTime() - drawStartTime) / 1e6);
   }
@@ -394,7 +461,7 @@ public class LineChart extends AnimatedComponent {
    */
   private void computeAdjustedDashPhase(@NotNull DashInfo dashInfo,
                                         @NotNull LineConfig config,
-                                        @NotNull Path2D path,
+                                        @NotNull LineCoordinates line,
                                         @NotNull Dimension dim,
                                         double firstX,
                                         double xMin,
@@ -411,22 +478,22 @@ public class LineChart extends AnimatedComponent {
       return;
     }
 
-    Path2D pathToUse = null;
+    LineCoordinates lineToUse = null;
     double firstXd = 0;
     boolean newPathIsAhead = false;
     if (xMin - dashInfo.myPreviousXMin > EPSILON) {
       // If the new xMin is ahead, then calculate the pixel length between myPreviousX and xMin on the OLD path
-      pathToUse = dashInfo.myPreviousDashPath;
+      lineToUse = dashInfo.myPreviousDashCoordinates;
       firstXd = (firstX - dashInfo.myPreviousXMin) / xLength;
       newPathIsAhead = true;
     }
     else if (dashInfo.myPreviousXMin - xMin > EPSILON) {
       // If the new xMin is trailing, then calculate the pixel length between xMin and myPreviousX on the NEW path
-      pathToUse = path;
+      lineToUse = line;
       firstXd = (dashInfo.myPreviousFirstX - xMin) / xLength;
     }
 
-    if (pathToUse == null || pathToUse.getCurrentPoint() == null) {
+    if (lineToUse == null || lineToUse.isEmpty()) {
       return;
     }
 
@@ -437,22 +504,17 @@ public class LineChart extends AnimatedComponent {
 
     // Starting from the beginning of the path. Accumulate the path length until we've reached firstXd - the path length tells us
     // how much we need to adjust the dash phase by.
-    PathIterator iterator = pathToUse.getPathIterator(null);
-    float[] coords = new float[6];
-    int segType = iterator.currentSegment(coords);
-    assert segType == PathIterator.SEG_MOVETO;
     // Special case first point - if the x coordinate for the first point has not changed, use the same dash phase.
-    if (Math.abs(coords[0] - firstXd) < EPSILON) {
+    if (Math.abs(lineToUse.getX(0) - firstXd) < EPSILON) {
       return;
     }
 
-    double prevX = coords[0];
-    double prevY = coords[1];
-    iterator.next();
-    while (!iterator.isDone()) {
-      segType = iterator.currentSegment(coords);
-      assert segType == PathIterator.SEG_LINETO;
-      if (coords[0] - firstXd >= EPSILON) {
+    double prevX = lineToUse.getX(0);
+    double prevY = lineToUse.getY(0);
+    for (int i = 1; i < lineToUse.size(); i++) {
+      float x = lineToUse.getX(i);
+      float y = lineToUse.getY(i);
+      if (x - firstXd >= EPSILON) {
         // Special case: firstXd could have been reduced away from the series data list if it holds the same y value.
         // Here we make sure the length from firstXd - prevX is accounted for.
         if (firstXd - prevX >= EPSILON) {
@@ -462,15 +524,13 @@ public class LineChart extends AnimatedComponent {
       }
 
       if (config.isStepped()) {
-        deltaPathLength += Math.abs(coords[0] - prevX) * dim.width + Math.abs(coords[1] - prevY) * dim.height;
+        deltaPathLength += Math.abs(x - prevX) * dim.width + Math.abs(y - prevY) * dim.height;
       }
       else {
-        deltaPathLength += Math.hypot((coords[0] - prevX) * dim.width, (coords[1] - prevY) * dim.height);
+        deltaPathLength += Math.hypot((x - prevX) * dim.width, (y - prevY) * dim.height);
       }
-      prevX = coords[0];
-      prevY = coords[1];
-
-      iterator.next();
+      prevX = x;
+      prevY = y;
     }
 
     // Update dash phase.
@@ -16,7 +16,9 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.model.SeriesData;
+import org.jetbrains.annotations.NotNull;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.util.List;
 
@@ -36,4 +38,17 @@ public interface LineChartReducer {
    * The result shouldn't affect the looking of the line when it's drawn.
    */
   Path2D reducePath(Path2D path, LineConfig config);
+
+  /**
+   * Reduces the given line, transformed to screen coordinates by {@code transform}, in a pixel level like
+   * {@link #reducePath(Path2D, LineConfig)}, and replaces the content of {@code result} with it. {@link LineChart} calls this on every
+   * frame with the same result paths, so implementations should avoid allocating.
+   */
+  default void reducePath(@NotNull LineCoordinates line,
+                          @NotNull AffineTransform transform,
+                          @NotNull LineConfig config,
+                          @NotNull Path2D.Float result) {
+    result.reset();
+    result.append(reducePath(line.toPath(transform), config), false);
+  }
 }
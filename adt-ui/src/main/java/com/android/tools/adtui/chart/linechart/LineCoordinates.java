@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * The points of a polyline, stored as a growable array of float coordinates. {@link LineChart} keeps one per line and refills it when
+ * its data changes, so building the lines of a frame doesn't allocate once the arrays are large enough.
+ *
+ * Coordinates are floats, like the ones of a {@link Path2D.Float}: the first point is where the line starts and each following point is
+ * where a segment ends.
+ */
+public final class LineCoordinates {
+  private static final int INITIAL_POINT_CAPACITY = 64;
+
+  @NotNull private float[] myCoords = new float[INITIAL_POINT_CAPACITY * 2];
+  private int mySize;
+
+  public void clear() {
+    mySize = 0;
+  }
+
+  public void add(double x, double y) {
+    if (mySize * 2 == myCoords.length) {
+      myCoords = Arrays.copyOf(myCoords, myCoords.length * 2);
+    }
+    myCoords[mySize * 2] = (float)x;
+    myCoords[mySize * 2 + 1] = (float)y;
+    mySize++;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public float getX(int index) {
+    assert index < mySize;
+    return myCoords[index * 2];
+  }
+
+  public float getY(int index) {
+    assert index < mySize;
+    return myCoords[index * 2 + 1];
+  }
+
+  public float getLastX() {
+    return getX(mySize - 1);
+  }
+
+  public float getLastY() {
+    return getY(mySize - 1);
+  }
+
+  public void copyFrom(@NotNull LineCoordinates other) {
+    if (myCoords.length < other.mySize * 2) {
+      myCoords = new float[other.myCoords.length];
+    }
+    System.arraycopy(other.myCoords, 0, myCoords, 0, other.mySize * 2);
+    mySize = other.mySize;
+  }
+
+  /**
+   * Returns a new path going through the points, transformed by the given transform if any.
+   */
+  @NotNull
+  public Path2D.Float toPath(@Nullable AffineTransform transform) {
+    Path2D.Float path = new Path2D.Float(Path2D.WIND_NON_ZERO, Math.max(mySize, 1));
+    for (int i = 0; i < mySize; i++) {
+      if (i == 0) {
+        path.moveTo(getX(i), getY(i));
+      }
+      else {
+        path.lineTo(getX(i), getY(i));
+      }
+    }
+    if (transform != null) {
+      path.transform(transform);
+    }
+    return path;
+  }
+}
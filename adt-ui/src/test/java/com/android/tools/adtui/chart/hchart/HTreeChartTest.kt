@@ -22,6 +22,10 @@ import com.google.common.truth.Truth.assertThat
 import org.junit.Before
 import org.junit.Test
 import java.awt.Dimension
+import java.awt.Graphics2D
+import java.awt.Point
+import java.awt.geom.Rectangle2D
+import java.awt.image.BufferedImage
 
 class HTreeChartTest {
   private lateinit var myUi: FakeUi
@@ -303,4 +307,39 @@ class HTreeChartTest {
   companion object {
     private const val EPSILON = 1e-3
   }
+
+  @Test
+  fun testNodeAt() {
+    setUp(HTreeChart.Orientation.TOP_DOWN)
+    // The chart is 100 pixels wide, so a pixel is 100 units long.
+    myRange.set(0.0, 10000.0)
+    val root = DefaultHNode("root", 0, 10000)
+    val left = DefaultHNode("left", 0, 5000)
+    val right = DefaultHNode("right", 6000, 10000)
+    left.depth = 1
+    right.depth = 1
+    root.addChild(left)
+    root.addChild(right)
+    // Sub-pixel nodes, which are combined into the first one.
+    for (i in 0 until 100) {
+      val child = DefaultHNode("child$i", 6000L + i, 6000L + i + 1)
+      child.depth = 2
+      right.addChild(child)
+    }
+    myChart.setHTree(root)
+    myChart.yRange.set(0.0, 0.0)
+    myChart.setHRenderer(object : HRenderer<DefaultHNode<String>> {
+      override fun render(g: Graphics2D, node: DefaultHNode<String>, drawingArea: Rectangle2D, isFocused: Boolean) {}
+    })
+    myChart.size = Dimension(100, myChart.maximumHeight)
+    myChart.paint(BufferedImage(100, myChart.maximumHeight, BufferedImage.TYPE_INT_ARGB).createGraphics())
+
+    val rowHeight = myChart.maximumHeight / 3
+    assertThat(myChart.getNodeAt(Point(30, 1))).isSameAs(root)
+    assertThat(myChart.getNodeAt(Point(30, rowHeight + 1))).isSameAs(left)
+    assertThat(myChart.getNodeAt(Point(80, rowHeight + 1))).isSameAs(right)
+    assertThat(myChart.getNodeAt(Point(55, rowHeight + 1))).isNull()
+    assertThat(myChart.getNodeAt(Point(60, 2 * rowHeight + 1))).isSameAs(right.getChildAt(0))
+    assertThat(myChart.getNodeAt(Point(30, 2 * rowHeight + 1))).isNull()
+  }
 }
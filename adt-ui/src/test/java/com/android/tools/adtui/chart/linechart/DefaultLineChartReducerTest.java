@@ -21,6 +21,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
@@ -188,6 +189,31 @@ public class DefaultLineChartReducerTest {
     assertPointsEquals(expected, result);
   }
 
+  @Test
+  public void reduceLineCoordinatesMatchesReducingTheTransformedPath() {
+    float[][] given = {{0, 0.4f}, {0.005f, 0.5f}, {0.011f, 0}, {0.012f, 0}, {0.013f, 0.5f}, {0.02f, 0.1f}, {0.5f, 0.3f}, {1, 0.2f}};
+    AffineTransform transform = new AffineTransform(100, 0, 0, 50, 10, 5);
+    LineCoordinates line = new LineCoordinates();
+    for (float[] point : given) {
+      line.add(point[0], point[1]);
+    }
+    Path2D transformedPath = convertToPath(given);
+    transformedPath.transform(transform);
+
+    // Reduce into a non-empty path, to check that its previous content is replaced.
+    Path2D.Float result = (Path2D.Float)convertToPath(given);
+    myReducer.reducePath(line, transform, myConfig, result);
+    assertPointsEquals(convertToArray(myReducer.reducePath(transformedPath, myConfig)), convertToArray(result));
+
+    myConfig.setStepped(true);
+    myReducer.reducePath(line, transform, myConfig, result);
+    assertPointsEquals(convertToArray(myReducer.reducePath(transformedPath, myConfig)), convertToArray(result));
+
+    line.clear();
+    myReducer.reducePath(line, transform, myConfig, result);
+    assertThat(result.getCurrentPoint()).isNull();
+  }
+
   private static void convertToScreenCoordinates(float[][] points) {
     for (int i = 0; i < points.length; ++i) {
       points[i][1] = FAKE_HEIGHT - points[i][1];
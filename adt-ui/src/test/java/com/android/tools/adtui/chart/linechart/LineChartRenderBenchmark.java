@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.linechart;
+
+import com.android.tools.adtui.model.DefaultDataSeries;
+import com.android.tools.adtui.model.LineChartModel;
+import com.android.tools.adtui.model.Range;
+import com.android.tools.adtui.model.RangedContinuousSeries;
+import com.android.tools.tests.PerfgateRule;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time and the memory {@link LineChart} takes to render a frame of {@link #SERIES_COUNT} stacked and filled series of
+ * {@link #POINT_COUNT} points each, like the ones of the profilers' monitors, both when only the frame is repainted and when the data
+ * changed since the previous frame.
+ */
+public class LineChartRenderBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final int SERIES_COUNT = 10;
+  private static final int POINT_COUNT = 10_000;
+  private static final int WIDTH = 1920;
+  private static final int HEIGHT = 200;
+
+  private static final int WARMUP_FRAMES = 200;
+  private static final int MEASURED_FRAMES = 500;
+
+  private LineChartModel myModel;
+  private LineChart myChart;
+  private BufferedImage myImage;
+  private Graphics2D myGraphics;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(0);
+    Range xRange = new Range(0, POINT_COUNT);
+    Range yRange = new Range(0, SERIES_COUNT * 100);
+    myModel = new LineChartModel();
+    myChart = new LineChart(myModel);
+    for (int i = 0; i < SERIES_COUNT; i++) {
+      DefaultDataSeries<Long> series = new DefaultDataSeries<>();
+      for (int j = 0; j < POINT_COUNT; j++) {
+        series.add(j, (long)random.nextInt(100));
+      }
+      RangedContinuousSeries ranged = new RangedContinuousSeries("Series" + i, xRange, yRange, series);
+      myModel.add(ranged);
+      myChart.configure(ranged, new LineConfig(LineConfig.getColor(i)).setStacked(true).setFilled(true));
+    }
+    myChart.setSize(WIDTH, HEIGHT);
+    myImage = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+    myGraphics = myImage.createGraphics();
+  }
+
+  @After
+  public void tearDown() {
+    myGraphics.dispose();
+  }
+
+  @Test
+  public void benchmarkRepaint() {
+    report("Repaint", false);
+  }
+
+  @Test
+  public void benchmarkUpdateAndRepaint() {
+    report("Update and Repaint", true);
+  }
+
+  private void report(@NotNull String name, boolean changeData) {
+    for (int i = 0; i < WARMUP_FRAMES; i++) {
+      renderFrame(changeData);
+    }
+
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+    long startNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_FRAMES; i++) {
+      renderFrame(changeData);
+    }
+    long frameNs = (System.nanoTime() - startNs) / MEASURED_FRAMES;
+    long frameBytes = (threadBean.getThreadAllocatedBytes(threadId) - startBytes) / MEASURED_FRAMES;
+
+    ourPerfgate.logSample("LineChart " + name + " Frame Time (us)", TimeUnit.NANOSECONDS.toMicros(frameNs));
+    ourPerfgate.logSample("LineChart " + name + " Frame Allocations (KB)", frameBytes / 1024);
+  }
+
+  private void renderFrame(boolean changeData) {
+    if (changeData) {
+      // Marks the model as changed, so the chart recomputes its lines from the data.
+      myModel.update(TimeUnit.MILLISECONDS.toNanos(16));
+    }
+    myGraphics.setColor(Color.WHITE);
+    myGraphics.fillRect(0, 0, WIDTH, HEIGHT);
+    myChart.paint(myGraphics);
+  }
+}
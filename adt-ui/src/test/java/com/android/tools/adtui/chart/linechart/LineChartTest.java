@@ -21,6 +21,9 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static java.awt.BasicStroke.CAP_SQUARE;
@@ -207,6 +210,43 @@ public class LineChartTest {
     Assert.assertEquals(0, config.getAdjustedDashPhase(), LineChart.EPSILON);
   }
 
+  @Test
+  public void testStackedSeriesAreSummedWithoutModifyingTheirData() throws Exception {
+    LineChartModel model = new LineChartModel();
+    Range xRange = new Range(0, 10);
+    Range yRange = new Range(0, 100);
+    // Series returning the same data objects on every read, like an AsyncDataSeries between two fetches.
+    List<SeriesData<Long>> bottomData = Arrays.asList(new SeriesData<>(0, 10L), new SeriesData<>(10, 10L));
+    List<SeriesData<Long>> topData = Arrays.asList(new SeriesData<>(0, 20L), new SeriesData<>(10, 20L));
+    RangedContinuousSeries bottom = new RangedContinuousSeries("bottom", xRange, yRange, range -> bottomData);
+    RangedContinuousSeries top = new RangedContinuousSeries("top", xRange, yRange, range -> topData);
+    model.add(bottom);
+    model.add(top);
+
+    LineChart chart = new LineChart(model);
+    chart.configure(bottom, new LineConfig(Color.BLACK).setStacked(true));
+    chart.configure(top, new LineConfig(Color.WHITE).setStacked(true));
+    chart.setSize(100, 100);
+    Graphics2D fakeGraphics = mock(Graphics2D.class);
+    when(fakeGraphics.create()).thenReturn(fakeGraphics);
+    // The paths are reused from frame to frame, so record their top as they are drawn.
+    List<Double> drawnTops = new ArrayList<>();
+    doAnswer(invocation -> drawnTops.add(((Shape)invocation.getArguments()[0]).getBounds2D().getMinY()))
+      .when(fakeGraphics).draw(any(Shape.class));
+
+    model.update(FakeTimer.ONE_SECOND_IN_NS);
+    chart.paint(fakeGraphics);
+    model.update(FakeTimer.ONE_SECOND_IN_NS);
+    chart.paint(fakeGraphics);
+
+    // The top line is drawn at the sum of both series, 30, in both frames.
+    Assert.assertEquals(4, drawnTops.size());
+    Assert.assertEquals(70, drawnTops.get(1), LineChart.EPSILON);
+    Assert.assertEquals(70, drawnTops.get(3), LineChart.EPSILON);
+    Assert.assertEquals(10L, (long)bottomData.get(0).value);
+    Assert.assertEquals(20L, (long)topData.get(0).value);
+  }
+
   private void shiftRangeAndRepaintChart(@NotNull LineChart chart,
                                          @NotNull LineChartModel model,
                                          @NotNull Range range,
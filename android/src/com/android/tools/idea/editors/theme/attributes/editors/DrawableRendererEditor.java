@@ -23,6 +23,7 @@ import com.android.tools.idea.editors.theme.ThemeEditorUtils;
 import com.android.tools.idea.editors.theme.datamodels.EditedStyleItem;
 import com.android.tools.idea.editors.theme.preview.AndroidThemePreviewPanel;
 import com.android.tools.idea.editors.theme.ui.ResourceComponent;
+import com.android.tools.idea.rendering.RenderExecutor;
 import com.android.tools.idea.rendering.RenderLogger;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.rendering.RenderTask;
@@ -65,6 +66,7 @@ public class DrawableRendererEditor extends GraphicalResourceRendererEditor {
     RenderTask task = service.createTask(null, configuration, logger, null);
     assert task != null;
     task.getLayoutlibCallback().setLogger(logger);
+    task.setPriority(RenderExecutor.Priority.THUMBNAIL);
     return task;
   }
 
@@ -93,9 +93,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
   }
 
   public final void updateLogcatFilter(@Nullable AndroidLogcatFilter filter) {
+    setLogcatFilter(filter);
+    fireTextFilterChange();
+  }
+
+  /**
+   * Same as {@link #updateLogcatFilter(AndroidLogcatFilter)}, but doesn't ask the console to re-filter its output, for callers that
+   * repopulate the console with the lines the filter accepts themselves.
+   */
+  public final void setLogcatFilter(@Nullable AndroidLogcatFilter filter) {
     saveConfiguredFilterName(filter != null ? filter.getName() : "");
     myConfiguredFilter = filter;
-    fireTextFilterChange();
   }
 
   protected abstract void saveConfiguredFilterName(String filterName);
@@ -17,15 +17,20 @@
 package com.android.tools.idea.logcat;
 
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
 import com.android.ddmlib.logcat.LogCatHeader;
 import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.ddmlib.logcat.LogCatMessageParser;
+import com.android.ddmlib.logcat.LogCatTimestamp;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An {@link AndroidOutputReceiver} which receives output from logcat and processes each line,
  * searching for callstacks and reformatting the final output before it is printed to the
@@ -33,6 +38,9 @@ import org.jetbrains.annotations.Nullable;
  *
  * This class expects the logcat format to be 'logcat -v long' (which prints out a header and then
  * 1+ lines of log text below, for each log message).
+ *
+ * The lines received together from the device are delivered to the listener together, with
+ * {@link AndroidLogcatService.LogcatListener#onLogLinesReceived(List)}.
  */
 public final class AndroidLogcatReceiver extends AndroidOutputReceiver implements Disposable {
 
@@ -58,12 +66,33 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
   @Nullable private LogCatHeader myActiveHeader;
   private int myLineIndex;
 
+  /**
+   * The lines to deliver to the listener once all the lines received together are processed, or null if lines are delivered as soon as
+   * they are processed.
+   */
+  @Nullable private List<LogCatMessage> myPendingLines;
+
   public AndroidLogcatReceiver(@NotNull IDevice device, @NotNull AndroidLogcatService.LogcatListener logcatListener) {
     myDevice = device;
     myLogcatListener = logcatListener;
     myStackTraceExpander = new StackTraceExpander(STACK_TRACE_LINE_PREFIX, STACK_TRACE_CAUSE_LINE_PREFIX);
   }
 
+  @Override
+  public void processNewLines(@NotNull String[] lines) {
+    myPendingLines = new ArrayList<>(lines.length);
+    try {
+      super.processNewLines(lines);
+    }
+    finally {
+      List<LogCatMessage> pendingLines = myPendingLines;
+      myPendingLines = null;
+      if (!pendingLines.isEmpty()) {
+        myLogcatListener.onLogLinesReceived(pendingLines);
+      }
+    }
+  }
+
   @Override
   public void processNewLine(@NotNull String line) {
     // Really, the user's log should never put any system characters in it ever - that will cause
@@ -77,14 +106,14 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
     // both external to Android Studio. In fact, the latest adb/logcat versions have already fixed
     // this issue! But we still need to run properly with older versions. Also, putting this fix in
     // MultilineReceiver isn't right either because it is used for more than just receiving logcat.
-    line = line.replaceAll("\\r", "");
+    line = removeCarriageReturns(line);
 
     if (line.isEmpty()) {
       myDelayedNewlineCount++;
       return;
     }
 
-    LogCatHeader header = myParser.processLogHeader(line, myDevice);
+    LogCatHeader header = parseHeader(line);
     if (header != null) {
       myStackTraceExpander.reset();
       myActiveHeader = header;
@@ -111,10 +140,158 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
 
   // This method is package protected so other Logcat components can feed receiver processed log lines if they need to
   void notifyLine(@NotNull LogCatHeader header, @NotNull String line) {
-    myLogcatListener.onLogLineReceived(new LogCatMessage(header, line));
+    LogCatMessage message = new LogCatMessage(header, line);
+    if (myPendingLines != null) {
+      myPendingLines.add(message);
+    }
+    else {
+      myLogcatListener.onLogLineReceived(message);
+    }
     myLineIndex++;
   }
 
+  @NotNull
+  private static String removeCarriageReturns(@NotNull String line) {
+    int index = line.indexOf('\r');
+    if (index == -1) {
+      return line;
+    }
+    StringBuilder builder = new StringBuilder(line.length() - 1);
+    builder.append(line, 0, index);
+    for (int i = index + 1; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c != '\r') {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Returns the header in the given line, or null if the line isn't a header.
+   *
+   * Headers look like "[ 08-18 16:39:11.439 1493:1595 W/EDMNativeHelper     ]". They are scanned by hand rather than matched by
+   * {@link LogCatMessageParser}'s regular expression, as every line logcat outputs is to be scanned. Lines that start and end like headers
+   * but don't exactly look like that, e.g. without a pid, are left to the parser.
+   */
+  @Nullable
+  private LogCatHeader parseHeader(@NotNull String line) {
+    int length = line.length();
+    if (length < 2 || line.charAt(0) != '[' || !isWhitespace(line.charAt(1)) || line.charAt(length - 1) != ']') {
+      return null;
+    }
+
+    // The timestamp, "MM-dd HH:mm:ss.SSS".
+    int index = 2;
+    if (length < index + 16 ||
+        !isDigits(line, index, 2) || line.charAt(index + 2) != '-' ||
+        !isDigits(line, index + 3, 2) || !isWhitespace(line.charAt(index + 5)) ||
+        !isDigits(line, index + 6, 2) || line.charAt(index + 8) != ':' ||
+        !isDigits(line, index + 9, 2) || line.charAt(index + 11) != ':' ||
+        !isDigits(line, index + 12, 2) || line.charAt(index + 14) != '.' ||
+        !isDigits(line, index + 15, 1)) {
+      return myParser.processLogHeader(line, myDevice);
+    }
+    int timestampStart = index;
+    index += 16;
+    while (index < length && isDigit(line.charAt(index))) {
+      index++;
+    }
+    int timestampEnd = index;
+
+    // The pid and the tid, "1493:1595", "495:  234" or "495:0x1ef".
+    int separatorStart = index;
+    while (index < length && isWhitespace(line.charAt(index))) {
+      index++;
+    }
+    int pidStart = index;
+    while (index < length && isDigit(line.charAt(index))) {
+      index++;
+    }
+    int pidEnd = index;
+    if (separatorStart == pidStart || index >= length || line.charAt(index) != ':') {
+      return myParser.processLogHeader(line, myDevice);
+    }
+    index++;
+    while (index < length && isWhitespace(line.charAt(index))) {
+      index++;
+    }
+    int tidStart = index;
+    while (index < length && !isWhitespace(line.charAt(index))) {
+      index++;
+    }
+    int tidEnd = index;
+
+    // The log level and the tag, "W/EDMNativeHelper     ]".
+    if (pidStart == pidEnd || pidEnd - pidStart > 9 || tidStart == tidEnd || index + 3 >= length || line.charAt(index + 2) != '/') {
+      return myParser.processLogHeader(line, myDevice);
+    }
+    LogLevel logLevel = getLogLevel(line.charAt(index + 1));
+    int tagStart = index + 3;
+    int tagEnd = length - 1;
+    while (tagEnd > tagStart && isWhitespace(line.charAt(tagEnd - 1))) {
+      tagEnd--;
+    }
+    if (logLevel == null || tagEnd == tagStart || tagEnd == length - 1) {
+      return myParser.processLogHeader(line, myDevice);
+    }
+
+    int tid;
+    try {
+      tid = line.startsWith("0x", tidStart)
+            ? Integer.parseInt(line.substring(tidStart + 2, tidEnd), 16)
+            : Integer.parseInt(line.substring(tidStart, tidEnd));
+    }
+    catch (NumberFormatException e) {
+      return myParser.processLogHeader(line, myDevice);
+    }
+    int pid = Integer.parseInt(line.substring(pidStart, pidEnd));
+    String appName = myDevice.getClientName(pid);
+    return new LogCatHeader(logLevel, pid, tid, appName == null || appName.isEmpty() ? "?" : appName, line.substring(tagStart, tagEnd),
+                            LogCatTimestamp.fromString(line.substring(timestampStart, timestampEnd)));
+  }
+
+  @Nullable
+  private static LogLevel getLogLevel(char letter) {
+    switch (letter) {
+      case 'V':
+        return LogLevel.VERBOSE;
+      case 'D':
+        return LogLevel.DEBUG;
+      case 'I':
+        return LogLevel.INFO;
+      case 'W':
+        return LogLevel.WARN;
+      case 'E':
+        return LogLevel.ERROR;
+      case 'A':
+      case 'F':
+        return LogLevel.ASSERT;
+      default:
+        return null;
+    }
+  }
+
+  private static boolean isDigits(@NotNull String line, int start, int count) {
+    for (int i = start; i < start + count; i++) {
+      if (!isDigit(line.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * Whether the character is whitespace, as {@code \s} in a regular expression.
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
   private void processAnyDelayedNewlines(@NotNull LogCatHeader header) {
     if (myDelayedNewlineCount == 0) {
       return;
@@ -57,30 +57,18 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   public interface LogcatListener {
     default void onLogLineReceived(@NotNull LogCatMessage line) {
     }
 
+    /**
+     * Called with lines that were received together, in order. Listeners that can handle many lines at once more efficiently than one
+     * by one should override this.
+     */
+    default void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      lines.forEach(this::onLogLineReceived);
+    }
+
     default void onCleared() {
     }
   }
@@ -122,7 +110,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       connect(device);
       final AndroidLogcatReceiver receiver = createReceiver(device);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, new LogcatBuffer(ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : 0));
       myExecutors.get(device).submit(() -> executeLogcatWithLongOutputFormat(device, receiver));
     }
   }
@@ -152,7 +140,21 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
             }
           }
           if (myLogBuffers.containsKey(device)) {
-            myLogBuffers.get(device).addMessage(line);
+            myLogBuffers.get(device).addLine(line);
+          }
+        }
+      }
+
+      @Override
+      public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+        synchronized (myLock) {
+          if (myListeners.containsKey(device)) {
+            for (LogcatListener listener : myListeners.get(device)) {
+              listener.onLogLinesReceived(lines);
+            }
+          }
+          if (myLogBuffers.containsKey(device)) {
+            lines.forEach(myLogBuffers.get(device)::addLine);
           }
         }
       }
@@ -249,9 +251,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
     synchronized (myLock) {
       if (addOldLogs && myLogBuffers.containsKey(device)) {
-        for (LogCatMessage line : myLogBuffers.get(device).getMessages()) {
-          listener.onLogLineReceived(line);
-        }
+        myLogBuffers.get(device).forEachLine(listener::onLogLineReceived);
       }
 
       if (!myListeners.containsKey(device)) {
@@ -273,6 +273,24 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     addListener(device, listener, false);
   }
 
+  /**
+   * Notifies the listener of the log lines received so far from the specified device that the filter accepts. Lines are looked up in an
+   * index of the received lines, which is much faster than testing every line when filtering by pid, tag or package.
+   * {@code beforeReplay} is run first, under the same lock as the notification of the received lines, so that a listener that clears
+   * its output in it doesn't get a line both from the device and from the replay.
+   */
+  public void replayLogLines(@NotNull IDevice device,
+                             @NotNull LogcatListener listener,
+                             @NotNull AndroidLogcatFilter filter,
+                             @NotNull Runnable beforeReplay) {
+    synchronized (myLock) {
+      beforeReplay.run();
+      if (myLogBuffers.containsKey(device)) {
+        myLogBuffers.get(device).forEachLine(filter, listener::onLogLineReceived);
+      }
+    }
+  }
+
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
     synchronized (myLock) {
       if (myListeners.containsKey(device)) {
@@ -367,7 +367,22 @@ public class AndroidLogcatView implements Disposable {
       ProgressManager.getInstance().run(new Task.Backgroundable(myProject, "Applying Filter...") {
         @Override
         public void run(@NotNull ProgressIndicator indicator) {
-          myLogFilterModel.updateLogcatFilter((AndroidLogcatFilter)filter);
+          IDevice device = myDevice;
+          if (device == null) {
+            myLogFilterModel.updateLogcatFilter((AndroidLogcatFilter)filter);
+            return;
+          }
+
+          // Rather than having the console parse and filter all of its output again, repopulate it with the lines the filter accepts,
+          // which the logcat service looks up in its index.
+          myLogFilterModel.setLogcatFilter((AndroidLogcatFilter)filter);
+          AndroidLogcatService.getInstance().replayLogLines(device, myLogcatReceiver, (AndroidLogcatFilter)filter, () -> {
+            // We check for null, because myLogConsole.clear() depends on myLogConsole.getConsole() not being null
+            if (myLogConsole.getConsole() != null) {
+              myLogConsole.clear();
+            }
+            myLogFilterModel.processingStarted();
+          });
         }
       });
     }
@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * The log lines received from a device, kept by {@link AndroidLogcatService} so that listeners can be notified of the lines received
+ * before they were added.
+ *
+ * Lines are kept in a ring buffer of columns rather than as {@link LogCatMessage}s: the header fields are stored in primitive arrays,
+ * with the tags and the app names interned, and only the text of the line is stored as a string. The oldest lines are dropped once the
+ * text of the lines gets longer than {@code maxTextLength}, or than {@link #DEFAULT_MAX_TEXT_LENGTH} if it isn't positive, along with
+ * the tags, app names and pids no other line refers to.
+ *
+ * Lines are also indexed by tag and by pid, so that {@link #forEachLine(AndroidLogcatFilter, Consumer)} only tests the tag and package
+ * patterns of a {@link DefaultAndroidLogcatFilter} once per distinct tag and app name, and only visits the lines of the filtered pid.
+ *
+ * This class isn't thread safe.
+ */
+final class LogcatBuffer {
+  private static final int INITIAL_CAPACITY = 1024;
+  /**
+   * The max text length when the console doesn't use a cycle buffer, so that a device left connected doesn't grow the buffer forever.
+   */
+  static final int DEFAULT_MAX_TEXT_LENGTH = 16 * 1024 * 1024;
+  private static final LogLevel[] LOG_LEVELS = LogLevel.values();
+
+  private final int myMaxTextLength;
+
+  /**
+   * Lines are identified by the order in which they were added: line n is at index n & (capacity - 1) of the columns, capacity being a
+   * power of two, and the lines in [myFirstLine, myEndLine) are the ones kept.
+   */
+  private long myFirstLine;
+  private long myEndLine;
+  private int myTextLength;
+
+  @NotNull private byte[] myLogLevels = new byte[INITIAL_CAPACITY];
+  @NotNull private int[] myPids = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myTids = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myAppNameIds = new int[INITIAL_CAPACITY];
+  @NotNull private int[] myTagIds = new int[INITIAL_CAPACITY];
+  @NotNull private LogCatTimestamp[] myTimestamps = new LogCatTimestamp[INITIAL_CAPACITY];
+  @NotNull private String[] myTexts = new String[INITIAL_CAPACITY];
+  /**
+   * Whether a line has the same header as the previous one, i.e. is another line of the same message.
+   */
+  @NotNull private boolean[] myContinuations = new boolean[INITIAL_CAPACITY];
+
+  @NotNull private final StringTable myAppNames = new StringTable();
+  @NotNull private final StringTable myTags = new StringTable();
+  @NotNull private final List<LineList> myLinesByTagId = new ArrayList<>();
+  @NotNull private final TIntObjectHashMap<LineList> myLinesByPid = new TIntObjectHashMap<>();
+
+  @Nullable private LogCatHeader myLastHeader;
+
+  LogcatBuffer(int maxTextLength) {
+    myMaxTextLength = maxTextLength > 0 ? maxTextLength : DEFAULT_MAX_TEXT_LENGTH;
+  }
+
+  void addLine(@NotNull LogCatMessage line) {
+    LogCatHeader header = line.getHeader();
+    if (getSize() == myTexts.length) {
+      grow();
+    }
+
+    long lineNumber = myEndLine++;
+    int index = getIndex(lineNumber);
+    boolean continuation = header == myLastHeader && lineNumber > myFirstLine;
+    int tagId;
+    if (continuation) {
+      int previousIndex = getIndex(lineNumber - 1);
+      myLogLevels[index] = myLogLevels[previousIndex];
+      myPids[index] = myPids[previousIndex];
+      myTids[index] = myTids[previousIndex];
+      myAppNameIds[index] = myAppNameIds[previousIndex];
+      myAppNames.retain(myAppNameIds[index]);
+      tagId = myTagIds[previousIndex];
+      myTags.retain(tagId);
+    }
+    else {
+      myLogLevels[index] = (byte)header.getLogLevel().ordinal();
+      myPids[index] = header.getPid();
+      myTids[index] = header.getTid();
+      myAppNameIds[index] = myAppNames.acquire(header.getAppName());
+      tagId = myTags.acquire(header.getTag());
+      if (tagId == myLinesByTagId.size()) {
+        myLinesByTagId.add(new LineList());
+      }
+      else if (myLinesByTagId.get(tagId) == null) {
+        myLinesByTagId.set(tagId, new LineList());
+      }
+    }
+    myTagIds[index] = tagId;
+    myTimestamps[index] = header.getTimestamp();
+    myTexts[index] = line.getMessage();
+    myContinuations[index] = continuation;
+    myLastHeader = header;
+
+    myLinesByTagId.get(tagId).add(lineNumber);
+    LineList pidLines = myLinesByPid.get(header.getPid());
+    if (pidLines == null) {
+      pidLines = new LineList();
+      myLinesByPid.put(header.getPid(), pidLines);
+    }
+    pidLines.add(lineNumber);
+
+    myTextLength += line.getMessage().length();
+    while (myTextLength > myMaxTextLength && myFirstLine < myEndLine) {
+      removeFirstLine();
+    }
+  }
+
+  int getSize() {
+    return (int)(myEndLine - myFirstLine);
+  }
+
+  /**
+   * Calls the consumer with every line, oldest first.
+   */
+  void forEachLine(@NotNull Consumer<LogCatMessage> consumer) {
+    LineVisitor visitor = new LineVisitor(consumer);
+    for (long line = myFirstLine; line < myEndLine; line++) {
+      visitor.visit(line);
+    }
+  }
+
+  /**
+   * Calls the consumer with every line the filter accepts, oldest first.
+   */
+  void forEachLine(@NotNull AndroidLogcatFilter filter, @NotNull Consumer<LogCatMessage> consumer) {
+    LineVisitor visitor = new LineVisitor(consumer);
+    if (!(filter instanceof DefaultAndroidLogcatFilter)) {
+      for (long line = myFirstLine; line < myEndLine; line++) {
+        int index = getIndex(line);
+        if (filter.isApplicable(myTexts[index], myTags.getString(myTagIds[index]), myAppNames.getString(myAppNameIds[index]),
+                                myPids[index], LOG_LEVELS[myLogLevels[index]])) {
+          visitor.visit(line);
+        }
+      }
+      return;
+    }
+
+    DefaultAndroidLogcatFilter defaultFilter = (DefaultAndroidLogcatFilter)filter;
+    boolean[] acceptedTagIds = myTags.match(defaultFilter.getTagPattern());
+    boolean[] acceptedAppNameIds = myAppNames.match(defaultFilter.getPackagePattern());
+    Pattern messagePattern = defaultFilter.getMessagePattern();
+    LogLevel logLevel = defaultFilter.getLogLevel();
+    int minLogLevelPriority = logLevel != null ? logLevel.getPriority() : Integer.MIN_VALUE;
+
+    LineList candidates = null;
+    Integer pid = null;
+    String pidString = defaultFilter.getPid();
+    if (pidString != null && !pidString.isEmpty()) {
+      try {
+        pid = Integer.parseInt(pidString);
+      }
+      catch (NumberFormatException e) {
+        return;
+      }
+      candidates = myLinesByPid.get(pid);
+      if (candidates == null || !Integer.toString(pid).equals(pidString)) {
+        return;
+      }
+    }
+    else if (acceptedTagIds != null) {
+      candidates = getLinesOfTags(acceptedTagIds);
+    }
+
+    int candidateCount = candidates != null ? candidates.size() : getSize();
+    for (int i = 0; i < candidateCount; i++) {
+      long line = candidates != null ? candidates.get(i) : myFirstLine + i;
+      int index = getIndex(line);
+      if ((acceptedTagIds == null || acceptedTagIds[myTagIds[index]]) &&
+          (acceptedAppNameIds == null || acceptedAppNameIds[myAppNameIds[index]]) &&
+          LOG_LEVELS[myLogLevels[index]].getPriority() >= minLogLevelPriority &&
+          (pid == null || myPids[index] == pid) &&
+          (messagePattern == null || messagePattern.matcher(myTexts[index]).find())) {
+        visitor.visit(line);
+      }
+    }
+  }
+
+  /**
+   * Returns the lines of the accepted tags, in order, merging the lines of each tag.
+   */
+  @NotNull
+  private LineList getLinesOfTags(@NotNull boolean[] acceptedTagIds) {
+    LineList lines = new LineList();
+    List<LineList> tagLines = new ArrayList<>();
+    for (int tagId = 0; tagId < acceptedTagIds.length; tagId++) {
+      if (acceptedTagIds[tagId]) {
+        tagLines.add(myLinesByTagId.get(tagId));
+      }
+    }
+    if (tagLines.size() == 1) {
+      return tagLines.get(0);
+    }
+    int[] positions = new int[tagLines.size()];
+    while (true) {
+      int next = -1;
+      for (int i = 0; i < tagLines.size(); i++) {
+        if (positions[i] < tagLines.get(i).size() &&
+            (next == -1 || tagLines.get(i).get(positions[i]) < tagLines.get(next).get(positions[next]))) {
+          next = i;
+        }
+      }
+      if (next == -1) {
+        return lines;
+      }
+      lines.add(tagLines.get(next).get(positions[next]++));
+    }
+  }
+
+  private void removeFirstLine() {
+    int index = getIndex(myFirstLine);
+    myTextLength -= myTexts[index].length();
+
+    // The line is the oldest of its tag and of its pid, so it's the first of their lists.
+    int tagId = myTagIds[index];
+    myLinesByTagId.get(tagId).removeFirst();
+    if (myTags.release(tagId)) {
+      myLinesByTagId.set(tagId, null);
+    }
+    LineList pidLines = myLinesByPid.get(myPids[index]);
+    pidLines.removeFirst();
+    if (pidLines.size() == 0) {
+      myLinesByPid.remove(myPids[index]);
+    }
+    myAppNames.release(myAppNameIds[index]);
+
+    myTimestamps[index] = null;
+    myTexts[index] = null;
+    myFirstLine++;
+    if (myFirstLine == myEndLine) {
+      myLastHeader = null;
+    }
+  }
+
+  private int getIndex(long line) {
+    return (int)(line & (myTexts.length - 1));
+  }
+
+  private void grow() {
+    int capacity = myTexts.length * 2;
+    byte[] logLevels = new byte[capacity];
+    int[] pids = new int[capacity];
+    int[] tids = new int[capacity];
+    int[] appNameIds = new int[capacity];
+    int[] tagIds = new int[capacity];
+    LogCatTimestamp[] timestamps = new LogCatTimestamp[capacity];
+    String[] texts = new String[capacity];
+    boolean[] continuations = new boolean[capacity];
+    for (long line = myFirstLine; line < myEndLine; line++) {
+      int from = getIndex(line);
+      int to = (int)(line & (capacity - 1));
+      logLevels[to] = myLogLevels[from];
+      pids[to] = myPids[from];
+      tids[to] = myTids[from];
+      appNameIds[to] = myAppNameIds[from];
+      tagIds[to] = myTagIds[from];
+      timestamps[to] = myTimestamps[from];
+      texts[to] = myTexts[from];
+      continuations[to] = myContinuations[from];
+    }
+    myLogLevels = logLevels;
+    myPids = pids;
+    myTids = tids;
+    myAppNameIds = appNameIds;
+    myTagIds = tagIds;
+    myTimestamps = timestamps;
+    myTexts = texts;
+    myContinuations = continuations;
+  }
+
+  /**
+   * Creates the {@link LogCatMessage}s of the visited lines, with the lines of a message sharing the same header.
+   */
+  private final class LineVisitor {
+    @NotNull private final Consumer<LogCatMessage> myConsumer;
+    private long myPreviousLine = -1;
+    @Nullable private LogCatHeader myHeader;
+
+    private LineVisitor(@NotNull Consumer<LogCatMessage> consumer) {
+      myConsumer = consumer;
+    }
+
+    private void visit(long line) {
+      int index = getIndex(line);
+      if (myHeader == null || !myContinuations[index] || myPreviousLine != line - 1) {
+        myHeader = new LogCatHeader(LOG_LEVELS[myLogLevels[index]], myPids[index], myTids[index], myAppNames.getString(myAppNameIds[index]),
+                                    myTags.getString(myTagIds[index]), myTimestamps[index]);
+      }
+      myPreviousLine = line;
+      myConsumer.accept(new LogCatMessage(myHeader, myTexts[index]));
+    }
+  }
+
+  /**
+   * Interned strings, counting the lines that refer to each of them. The id of a string no line refers to anymore is reused for the next
+   * new string.
+   */
+  private static final class StringTable {
+    @NotNull private final TObjectIntHashMap<String> myIds = new TObjectIntHashMap<>();
+    /**
+     * The strings, indexed by id, with null for the ids that are free.
+     */
+    @NotNull private final List<String> myStrings = new ArrayList<>();
+    @NotNull private final TIntArrayList myReferenceCounts = new TIntArrayList();
+    @NotNull private final TIntArrayList myFreeIds = new TIntArrayList();
+
+    /**
+     * Returns the id of the string, adding a reference to it.
+     */
+    private int acquire(@NotNull String string) {
+      int id = myIds.get(string);
+      if (id == 0 && !myIds.containsKey(string)) {
+        if (myFreeIds.isEmpty()) {
+          id = myStrings.size();
+          myStrings.add(string);
+          myReferenceCounts.add(0);
+        }
+        else {
+          id = myFreeIds.remove(myFreeIds.size() - 1);
+          myStrings.set(id, string);
+        }
+        myIds.put(string, id);
+      }
+      retain(id);
+      return id;
+    }
+
+    private void retain(int id) {
+      myReferenceCounts.set(id, myReferenceCounts.get(id) + 1);
+    }
+
+    /**
+     * Removes a reference to the string, and returns whether it was the last one, in which case its id is freed.
+     */
+    private boolean release(int id) {
+      int referenceCount = myReferenceCounts.get(id) - 1;
+      myReferenceCounts.set(id, referenceCount);
+      if (referenceCount > 0) {
+        return false;
+      }
+      myIds.remove(myStrings.get(id));
+      myStrings.set(id, null);
+      myFreeIds.add(id);
+      return true;
+    }
+
+    @NotNull
+    private String getString(int id) {
+      return myStrings.get(id);
+    }
+
+    /**
+     * Returns whether each string is found by the pattern, indexed by id, or null if there's no pattern. Free ids aren't matched.
+     */
+    @Nullable
+    private boolean[] match(@Nullable Pattern pattern) {
+      if (pattern == null) {
+        return null;
+      }
+      boolean[] matches = new boolean[myStrings.size()];
+      for (int id = 0; id < matches.length; id++) {
+        String string = myStrings.get(id);
+        matches[id] = string != null && pattern.matcher(string).find();
+      }
+      return matches;
+    }
+  }
+
+  /**
+   * An increasing list of line numbers, from which the lines are removed, oldest first, as they are dropped from the buffer.
+   */
+  private static final class LineList {
+    @NotNull private long[] myLines = new long[16];
+    private int myStart;
+    private int myEnd;
+
+    private void add(long line) {
+      if (myEnd == myLines.length) {
+        int size = myEnd - myStart;
+        long[] lines = size * 2 > myLines.length ? new long[myLines.length * 2] : myLines;
+        System.arraycopy(myLines, myStart, lines, 0, size);
+        myLines = lines;
+        myStart = 0;
+        myEnd = size;
+      }
+      myLines[myEnd++] = line;
+    }
+
+    private void removeFirst() {
+      myStart++;
+      if (myStart == myEnd) {
+        myStart = 0;
+        myEnd = 0;
+      }
+    }
+
+    private int size() {
+      return myEnd - myStart;
+    }
+
+    private long get(int index) {
+      return myLines[myStart + index];
+    }
+  }
+}
@@ -78,6 +78,7 @@ class DrawableRenderer implements Disposable {
         RenderTask renderTask = service.createTask(null, configuration, logger, null, myParserFactory);
         assert renderTask != null;
         renderTask.getLayoutlibCallback().setLogger(logger);
+        renderTask.setPriority(RenderExecutor.Priority.THUMBNAIL);
         if (logger.hasProblems()) {
           getLog().error(RenderProblem.format(logger.getMessages()));
         }
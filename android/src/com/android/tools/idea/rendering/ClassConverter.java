@@ -47,6 +47,12 @@ import java.util.Collection;
  * This way we avoid custom views breaking the rendering.
  */
 public class ClassConverter {
+  /**
+   * Version of the rewriting done by {@link #rewriteClass}. Bump it whenever the rewritten bytes change for the same input, so that the
+   * classes rewritten by earlier versions and cached by {@link RewrittenClassCache} aren't used anymore.
+   */
+  public static final int VERSION = 1;
+
   private static final String ORIGINAL_SUFFIX = "_Original";
   private static final String ERROR_METHOD_DESCRIPTION;
   private static final Remapper TYPE_REMAPPER =
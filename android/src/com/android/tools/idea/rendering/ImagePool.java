@@ -3,21 +3,21 @@ package com.android.tools.idea.rendering;
 import com.android.annotations.VisibleForTesting;
 import com.google.common.base.FinalizablePhantomReference;
 import com.google.common.base.FinalizableReferenceQueue;
-import com.google.common.collect.EvictingQueue;
-import com.google.common.collect.ForwardingQueue;
 import com.google.common.collect.Sets;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.ImageObserver;
 import java.awt.image.WritableRaster;
 import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -25,7 +25,12 @@ import java.util.function.Function;
 /**
  * Class that offers a pool of {@link BufferedImage}s. The returned {@link Image} do not offer a direct access
  * to the underlying {@link BufferedImage} to avoid clients holding references to it.
- * Once the {@link Image} is not being referenced anymore, it will be automatically returned to the pool.
+ * Once the {@link Image} is not being referenced anymore, it will be automatically returned to the pool. Clients that know when they are
+ * done with an image should release it explicitly with {@link Image#dispose()} so it can be reused right away.
+ * <p>
+ * Images are pooled in buckets by size class and type. The buckets are lock-free and keep strong references to the pooled images, within
+ * a hard memory budget: when releasing an image would go over the budget, the images of the least recently used buckets are evicted
+ * first.
  */
 @SuppressWarnings("ALL")
 public class ImagePool {
@@ -58,9 +63,14 @@ public class ImagePool {
   };
   private static final boolean DEBUG = false;
   private static final Bucket NULL_BUCKET = new Bucket(0, 0, 0);
+  /** Number of {@link BufferedImage} types, from TYPE_CUSTOM to TYPE_BYTE_INDEXED */
+  private static final int TYPE_COUNT = BufferedImage.TYPE_BYTE_INDEXED + 1;
   private final int[] myBucketSizes;
-  private final HashMap<String, Bucket> myPool = new HashMap<>();
+  /** Buckets indexed by width bucket, height bucket and image type. See {@link #getBucketIndex} */
+  private final AtomicReferenceArray<Bucket> myPool;
   private final BiFunction<Integer, Integer, Function<Integer, Integer>> myBucketSizingPolicy;
+  private final long myMaxPooledBytes;
+  private final Stats myStats = new Stats();
   @SuppressWarnings("IOResourceOpenedButNotSafelyClosed")
   private final FinalizableReferenceQueue myFinalizableReferenceQueue = new FinalizableReferenceQueue();
   private final Set<Reference<?>> myReferences = Sets.newConcurrentHashSet();
@@ -68,38 +78,37 @@ public class ImagePool {
   /**
    * Constructs a new {@link ImagePool} with a custom queue sizing policy. The passed bucketSizingPolicy will be called
    * every time that a new cache is needed for a given (width, height) -> (imageType).
-   * The return value from calling that function will be the size of the EvictingQueue used for caching the pooled
-   * images.
+   * The return value from calling that function will be the maximum number of images pooled in that bucket.
    * @param bucketSizes Array containing a list of the allowed bucket sizes. The images will be allocated into a bucket that fits its two
    *                    dimensions. If an image contains one dimension bigger than the biggest given bucket size, the image won't be
    *                    allocated into the pool.
    * @param bucketSizingPolicy Function that returns the maximum size for a given bucket. The bucket is defined by width, height and image
    *                           type. If the returned size is 0, no pooling will be done for that bucket size.
+   * @param maxPooledBytes Maximum memory used by the images waiting in the pool to be reused. Images in use do not count.
    */
-  public ImagePool(@NotNull int[] bucketSizes, @NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> bucketSizingPolicy) {
+  public ImagePool(@NotNull int[] bucketSizes,
+                   @NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> bucketSizingPolicy,
+                   long maxPooledBytes) {
     if (DEBUG) {
       System.out.println("New ImagePool");
     }
     myBucketSizes = bucketSizes;
     Arrays.sort(myBucketSizes);
     myBucketSizingPolicy = bucketSizingPolicy;
+    myMaxPooledBytes = maxPooledBytes;
+    myPool = new AtomicReferenceArray<>(myBucketSizes.length * myBucketSizes.length * TYPE_COUNT);
   }
-  private boolean isDisposed = false;
 
   /**
-   * Returns the key to be used for indexing the {@link EvictingQueue}.
+   * Constructs a new {@link ImagePool} with a custom queue sizing policy and the default memory budget.
+   * See {@link #ImagePool(int[], BiFunction, long)}.
    */
-  @NotNull
-  private static String getPoolKey(int w, int h, int type) {
-    return new StringBuilder()
-      .append(w)
-      .append('x')
-      .append(h)
-      .append('-')
-      .append(type)
-      .toString();
+  public ImagePool(@NotNull int[] bucketSizes, @NotNull BiFunction<Integer, Integer, Function<Integer, Integer>> bucketSizingPolicy) {
+    this(bucketSizes, bucketSizingPolicy, getDefaultMaxPooledBytes());
   }
 
+  private volatile boolean isDisposed = false;
+
   public ImagePool() {
     this(new int[]{50, 500, 1000, 1500, 2000, 5000}, (w, h) -> (type) -> {
       // Images below 1k, do not pool
@@ -111,6 +120,41 @@ public class ImagePool {
     });
   }
 
+  /**
+   * Returns the default memory budget of the pool, a tenth of the maximum heap size. Since the pooled images are strongly referenced, the
+   * default budget is meant for a single pool shared by the whole application.
+   */
+  private static long getDefaultMaxPooledBytes() {
+    return Runtime.getRuntime().maxMemory() / 10;
+  }
+
+  /**
+   * Returns the size in bytes of the raster of the given image.
+   */
+  private static long getSizeInBytes(@NotNull BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long)buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
+  /**
+   * Returns the index in {@link #myPool} of the bucket of the given width bucket index, height bucket index and type.
+   */
+  private int getBucketIndex(int widthBucketIndex, int heightBucketIndex, int type) {
+    return (widthBucketIndex * myBucketSizes.length + heightBucketIndex) * TYPE_COUNT + type;
+  }
+
+  /**
+   * Returns the index in {@link #myBucketSizes} of the smallest bucket size bigger than the given dimension, or -1 if there is none.
+   */
+  private int getSizeClass(int dimension) {
+    for (int i = 0; i < myBucketSizes.length; i++) {
+      if (dimension < myBucketSizes[i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   /**
    * Returns the queue to be used to store images of the given width, height and type.
    *
@@ -118,50 +162,30 @@ public class ImagePool {
    */
   @NotNull
   private Bucket getTypeBucket(int w, int h, int type) {
-    if (myBucketSizingPolicy.apply(w, h).apply(type) == 0) {
+    if (type < 0 || type >= TYPE_COUNT || myBucketSizingPolicy.apply(w, h).apply(type) == 0) {
       // Do not cache
       return NULL_BUCKET;
     }
 
     // Find the bucket sizes for both dimensions
-    int widthBucket = -1;
-    int heightBucket = -1;
-
-    for (int bucketMinSize : myBucketSizes) {
-      if (widthBucket == -1 && w < bucketMinSize) {
-        widthBucket = bucketMinSize;
-
-        if (heightBucket != -1) {
-          break;
-        }
-      }
-      if (heightBucket == -1 && h < bucketMinSize) {
-        heightBucket = bucketMinSize;
-
-        if (widthBucket != -1) {
-          break;
-        }
-      }
-    }
-
-    if (widthBucket == -1 || heightBucket == -1) {
+    int widthBucketIndex = getSizeClass(w);
+    int heightBucketIndex = getSizeClass(h);
+    if (widthBucketIndex == -1 || heightBucketIndex == -1) {
       return NULL_BUCKET;
     }
 
-    String poolKey = getPoolKey(widthBucket, heightBucket, type);
-
-    int finalWidthBucket = widthBucket;
-    int finalHeightBucket = heightBucket;
-    return myPool.computeIfAbsent(poolKey, (k) -> {
-      int size = myBucketSizingPolicy.apply(finalWidthBucket, finalHeightBucket).apply(type);
-
-      if (size == 0) {
-        // For size 0, do not allocate extra memory for a new EvictingQueue.
-        return NULL_BUCKET;
-      }
+    int index = getBucketIndex(widthBucketIndex, heightBucketIndex, type);
+    Bucket bucket = myPool.get(index);
+    if (bucket != null) {
+      return bucket;
+    }
 
-      return new Bucket(finalWidthBucket, finalHeightBucket, size);
-    });
+    int widthBucket = myBucketSizes[widthBucketIndex];
+    int heightBucket = myBucketSizes[heightBucketIndex];
+    int size = myBucketSizingPolicy.apply(widthBucket, heightBucket).apply(type);
+    // For size 0, do not allocate a new bucket.
+    Bucket newBucket = size == 0 ? NULL_BUCKET : new Bucket(widthBucket, heightBucket, size);
+    return myPool.compareAndSet(index, null, newBucket) ? newBucket : myPool.get(index);
   }
 
   @VisibleForTesting
@@ -169,19 +193,16 @@ public class ImagePool {
   ImageImpl create(final int w, final int h, final int type, @Nullable Consumer<BufferedImage> freedCallback) {
     assert !isDisposed : "ImagePool already disposed";
 
-    // To avoid creating a large number of EvictingQueues, we distribute the images in buckets and use that
+    // To avoid creating a large number of queues, we distribute the images in buckets and use that
     Bucket bucket = getTypeBucket(w, h, type);
     if (DEBUG) {
       System.out.printf("create(%dx%d-%d) in bucket (%dx%d)\n", w, h, type, bucket.myMinWidth, bucket.myMinHeight);
     }
 
-    BufferedImage image;
-    SoftReference<BufferedImage> imageRef;
-    try {
-      imageRef = bucket.remove();
-      while ((image = imageRef.get()) == null) {
-        imageRef = bucket.remove();
-      }
+    BufferedImage image = bucket.poll();
+    if (image != null) {
+      myStats.myPooledBytes.addAndGet(-getSizeInBytes(image));
+      myStats.myReusedCount.incrementAndGet();
       if (DEBUG) {
         long totalSize = image.getWidth() * image.getHeight();
         double wasted = (totalSize - w * h);
@@ -196,10 +217,11 @@ public class ImagePool {
       g.fillRect(0, 0, w, h);
       g.dispose();
     }
-    catch (NoSuchElementException e) {
+    else {
       if (DEBUG) {
         System.out.printf("  New image %dx%d - %d\n", w, h, type);
       }
+      myStats.myAllocatedCount.incrementAndGet();
       //noinspection UndesirableClassUsage
       image = new BufferedImage(Math.max(bucket.myMinWidth, w), Math.max(bucket.myMinHeight, h), type);
     }
@@ -211,7 +233,7 @@ public class ImagePool {
       public void finalizeReferent() {
         // This method might be called twice if the user has manually called the free() method. The second call will have no effect.
         if (myReferences.remove(this)) {
-          boolean accepted = bucket.offer(new SoftReference<>(imagePointer));
+          boolean accepted = release(bucket, imagePointer);
           if (DEBUG) {
             System.out.printf("%s image (%dx%d-%d) in bucket (%dx%d)\n",
                               accepted ? "Released" : "Rejected",
@@ -229,24 +251,162 @@ public class ImagePool {
     return pooledImage;
   }
 
-  private static class Bucket extends ForwardingQueue<SoftReference<BufferedImage>> {
-    private final Queue<SoftReference<BufferedImage>> myDelegate;
-    private final AtomicLong myLastAccess = new AtomicLong(System.currentTimeMillis());
+  /**
+   * Returns the given image to its bucket, evicting the images of the least recently used buckets if the pool goes over its memory budget.
+   *
+   * @return whether the image was accepted by the pool
+   */
+  private boolean release(@NotNull Bucket bucket, @NotNull BufferedImage image) {
+    long size = getSizeInBytes(image);
+    if (isDisposed || size > myMaxPooledBytes || !bucket.offer(image)) {
+      return false;
+    }
+    long pooledBytes = myStats.myPooledBytes.addAndGet(size);
+    while (pooledBytes > myMaxPooledBytes) {
+      BufferedImage evicted = evictLeastRecentlyUsed();
+      if (evicted == null) {
+        break;
+      }
+      myStats.myEvictedCount.incrementAndGet();
+      pooledBytes = myStats.myPooledBytes.addAndGet(-getSizeInBytes(evicted));
+    }
+    return true;
+  }
+
+  /**
+   * Removes the oldest image of the least recently used bucket that is not empty.
+   */
+  @Nullable
+  private BufferedImage evictLeastRecentlyUsed() {
+    while (true) {
+      Bucket leastRecentlyUsed = null;
+      for (int i = 0; i < myPool.length(); i++) {
+        Bucket bucket = myPool.get(i);
+        if (bucket != null && !bucket.isEmpty() &&
+            (leastRecentlyUsed == null || bucket.myLastAccess.get() < leastRecentlyUsed.myLastAccess.get())) {
+          leastRecentlyUsed = bucket;
+        }
+      }
+      if (leastRecentlyUsed == null) {
+        return null;
+      }
+      BufferedImage evicted = leastRecentlyUsed.pollEldest();
+      if (evicted != null) {
+        return evicted;
+      }
+      // The bucket was emptied concurrently, look again
+    }
+  }
+
+  /**
+   * Drops all the images waiting in the pool to be reused, e.g. when memory is low. Images in use are still returned to the pool.
+   */
+  public void releasePooledImages() {
+    for (int i = 0; i < myPool.length(); i++) {
+      Bucket bucket = myPool.get(i);
+      if (bucket == null) {
+        continue;
+      }
+      BufferedImage evicted;
+      while ((evicted = bucket.pollEldest()) != null) {
+        myStats.myEvictedCount.incrementAndGet();
+        myStats.myPooledBytes.addAndGet(-getSizeInBytes(evicted));
+      }
+    }
+  }
+
+  /**
+   * Returns the statistics of this pool.
+   */
+  @NotNull
+  public Stats getStats() {
+    return myStats;
+  }
+
+  /**
+   * Lock-free stack of the pooled images of one size class and type. The most recently released images are reused first, while the
+   * eviction takes the oldest ones.
+   */
+  private static class Bucket {
+    private final Deque<BufferedImage> myImages = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger mySize = new AtomicInteger();
+    private final AtomicLong myLastAccess = new AtomicLong(System.nanoTime());
     private final int myMinWidth;
     private final int myMinHeight;
+    private final int myMaxSize;
 
     public Bucket(int minWidth, int minHeight, int maxSize) {
       myMinWidth = minWidth;
       myMinHeight = minHeight;
-      myDelegate = maxSize == 0 ?
-                   EvictingQueue.create(0)
-                   : new ArrayBlockingQueue<SoftReference<BufferedImage>>(maxSize);
+      myMaxSize = maxSize;
     }
 
-    @Override
-    protected Queue<SoftReference<BufferedImage>> delegate() {
-      myLastAccess.set(System.currentTimeMillis());
-      return myDelegate;
+    @Nullable
+    BufferedImage poll() {
+      myLastAccess.set(System.nanoTime());
+      BufferedImage image = myImages.pollFirst();
+      if (image != null) {
+        mySize.decrementAndGet();
+      }
+      return image;
+    }
+
+    @Nullable
+    BufferedImage pollEldest() {
+      BufferedImage image = myImages.pollLast();
+      if (image != null) {
+        mySize.decrementAndGet();
+      }
+      return image;
+    }
+
+    boolean offer(@NotNull BufferedImage image) {
+      if (mySize.incrementAndGet() > myMaxSize) {
+        mySize.decrementAndGet();
+        return false;
+      }
+      myLastAccess.set(System.nanoTime());
+      myImages.offerFirst(image);
+      return true;
+    }
+
+    boolean isEmpty() {
+      return myImages.isEmpty();
+    }
+
+    void clear() {
+      myImages.clear();
+      mySize.set(0);
+    }
+  }
+
+  /**
+   * Counters of the allocations of an {@link ImagePool}.
+   */
+  public static final class Stats {
+    private final AtomicLong myAllocatedCount = new AtomicLong();
+    private final AtomicLong myReusedCount = new AtomicLong();
+    private final AtomicLong myEvictedCount = new AtomicLong();
+    private final AtomicLong myPooledBytes = new AtomicLong();
+
+    /** Returns the number of images that had to be allocated because there was no pooled image to reuse. */
+    public long getAllocatedCount() {
+      return myAllocatedCount.get();
+    }
+
+    /** Returns the number of images that reused a pooled image. */
+    public long getReusedCount() {
+      return myReusedCount.get();
+    }
+
+    /** Returns the number of pooled images dropped to keep the pool within its memory budget, or because memory was low. */
+    public long getEvictedCount() {
+      return myEvictedCount.get();
+    }
+
+    /** Returns the memory used by the images waiting in the pool to be reused. */
+    public long getPooledBytes() {
+      return myPooledBytes.get();
     }
   }
 
@@ -284,7 +444,13 @@ public class ImagePool {
     isDisposed = true;
     myFinalizableReferenceQueue.close();
     myReferences.clear();
-    myPool.clear();
+    for (int i = 0; i < myPool.length(); i++) {
+      Bucket bucket = myPool.getAndSet(i, null);
+      if (bucket != null) {
+        bucket.clear();
+      }
+    }
+    myStats.myPooledBytes.set(0);
   }
 
   /**
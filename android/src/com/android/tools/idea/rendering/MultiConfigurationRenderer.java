@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
+import com.android.tools.idea.configurations.Configuration;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Renders a layout in several configurations at once, like the devices of a multi-device preview (see
+ * {@link com.android.tools.idea.rendering.multi.RenderPreviewMode}).
+ *
+ * <p>Configurations with the same render inputs (folder configuration, device, theme, target and activity) are rendered only once and
+ * share their {@link RenderResult}. The resources of the other ones are resolved up front, sharing the resolvers of configurations that
+ * only differ in ways that do not affect resource resolution. Then each configuration gets its own {@link RenderTask}, created in parallel
+ * on pooled threads and sent to its own render thread, so that with several render threads (see the layoutlib.render.threads property)
+ * the configurations render concurrently instead of one after another. Layoutlib still runs the session calls of all the threads under its
+ * own lock.
+ */
+public class MultiConfigurationRenderer {
+  private static final ListeningExecutorService ourTaskCreationExecutor =
+    MoreExecutors.listeningDecorator(AppExecutorUtil.createBoundedApplicationPoolExecutor("MultiConfigurationRenderer", 4));
+
+  private MultiConfigurationRenderer() {
+  }
+
+  /**
+   * Renders the given layout in all the given configurations.
+   *
+   * @return a future with the results, in the order of the configurations. The result of a configuration that could not be rendered is a
+   * blank {@link RenderResult}.
+   */
+  @NotNull
+  public static ListenableFuture<List<RenderResult>> render(@NotNull RenderService renderService,
+                                                            @NotNull XmlFile file,
+                                                            @NotNull List<Configuration> configurations,
+                                                            @NotNull RenderExecutor.Priority priority) {
+    return render(renderService, file, configurations, priority, null);
+  }
+
+  /**
+   * Like {@link #render(RenderService, XmlFile, List, RenderExecutor.Priority)}, calling the given callback on every new task before it
+   * renders.
+   */
+  @VisibleForTesting
+  @NotNull
+  static ListenableFuture<List<RenderResult>> render(@NotNull RenderService renderService,
+                                                     @NotNull XmlFile file,
+                                                     @NotNull List<Configuration> configurations,
+                                                     @NotNull RenderExecutor.Priority priority,
+                                                     @Nullable Consumer<RenderTask> setupTask) {
+    // Index of the render of each configuration
+    int[] renderIndexes = new int[configurations.size()];
+    Map<Object, Integer> renderKeys = new HashMap<>();
+    List<Configuration> renderedConfigurations = new ArrayList<>();
+    for (int i = 0; i < configurations.size(); i++) {
+      Configuration configuration = configurations.get(i);
+      Object renderKey = getRenderKey(configuration);
+      Integer renderIndex = renderKeys.get(renderKey);
+      if (renderIndex == null) {
+        renderIndex = renderedConfigurations.size();
+        renderKeys.put(renderKey, renderIndex);
+        renderedConfigurations.add(configuration);
+      }
+      renderIndexes[i] = renderIndex;
+    }
+
+    // The resource resolver cache is not thread safe, so resolve the resources of all the configurations on one thread first. The tasks
+    // created in parallel then find their resolvers in the cache.
+    ListenableFuture<?> resourcesResolved = ourTaskCreationExecutor.submit(() -> {
+      for (Configuration configuration : renderedConfigurations) {
+        configuration.getResourceResolver();
+      }
+    });
+
+    List<ListenableFuture<RenderResult>> renders = new ArrayList<>(renderedConfigurations.size());
+    for (int i = 0; i < renderedConfigurations.size(); i++) {
+      Configuration configuration = renderedConfigurations.get(i);
+      // Spread the renders over the render threads
+      Object shardKey = Arrays.asList(renderService.getFacet().getModule(), i);
+      ListenableFuture<RenderTask> futureTask = Futures.transform(resourcesResolved, (Function<Object, RenderTask>)ignored -> {
+        RenderTask task = renderService.createTask(file, configuration, renderService.createLogger(), null);
+        if (task != null) {
+          task.setPriority(priority).setShardKey(shardKey);
+          if (setupTask != null) {
+            setupTask.accept(task);
+          }
+        }
+        return task;
+      }, ourTaskCreationExecutor);
+      renders.add(Futures.transformAsync(futureTask, task -> render(task, file), MoreExecutors.directExecutor()));
+    }
+
+    return Futures.transform(Futures.allAsList(renders), (Function<List<RenderResult>, List<RenderResult>>)results -> {
+      List<RenderResult> configurationResults = new ArrayList<>(renderIndexes.length);
+      for (int renderIndex : renderIndexes) {
+        configurationResults.add(results.get(renderIndex));
+      }
+      return configurationResults;
+    }, MoreExecutors.directExecutor());
+  }
+
+  @NotNull
+  private static ListenableFuture<RenderResult> render(@Nullable RenderTask task, @NotNull XmlFile file) {
+    if (task == null) {
+      return Futures.immediateFuture(RenderResult.createBlank(file));
+    }
+    ListenableFuture<RenderResult> futureResult = task.render();
+    futureResult.addListener(task::dispose, MoreExecutors.directExecutor());
+    return Futures.transform(futureResult,
+                             (Function<RenderResult, RenderResult>)result -> result != null ? result : RenderResult.createBlank(file),
+                             MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Returns a key of the values of the given configuration that affect the render, equal for configurations that render the same.
+   */
+  @NotNull
+  private static Object getRenderKey(@NotNull Configuration configuration) {
+    Device device = configuration.getDevice();
+    State deviceState = configuration.getDeviceState();
+    IAndroidTarget target = configuration.getTarget();
+    return Arrays.asList(
+      configuration.getFullConfig().getQualifierString(),
+      device != null ? device.getId() : null,
+      deviceState != null ? deviceState.getName() : null,
+      target != null ? target.hashString() : null,
+      configuration.getTheme(),
+      configuration.getActivity());
+  }
+}
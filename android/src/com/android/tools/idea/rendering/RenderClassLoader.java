@@ -181,7 +181,8 @@ public abstract class RenderClassLoader extends ClassLoader {
 
   @NotNull
   protected byte[] convertClass(@NotNull byte[] data) {
-    return ClassConverter.rewriteClass(data);
+    RewrittenClassCache cache = RewrittenClassCache.getInstance();
+    return cache != null ? cache.rewriteClass(data) : ClassConverter.rewriteClass(data);
   }
 
   @NotNull
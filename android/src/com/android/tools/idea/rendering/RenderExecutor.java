@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs render actions on a fixed set of render workers, each of them a single thread.
+ *
+ * <p>Layoutlib sessions keep per-thread state, so all the actions of a session have to run on the same worker: actions are assigned to a
+ * worker by a shard key, normally the module, which also owns the class loader of the custom views. Within a worker, queued actions run
+ * by {@link Priority} first and then in submission order. An action submitted with a coalescing key replaces the queued action with the
+ * same key, if it hasn't started yet, and the future of the replaced action completes with the result of the new one.
+ */
+public class RenderExecutor {
+  /**
+   * The priority classes of render actions, from the most to the least urgent.
+   */
+  public enum Priority {
+    /** Renders of the layout editor, that the user is waiting for. */
+    INTERACTIVE,
+    /** Renders of the layout preview. */
+    PREVIEW,
+    /** Thumbnails, like the ones of the palette or of the resource pickers. */
+    THUMBNAIL
+  }
+
+  private final Worker[] myWorkers;
+  private final AtomicLong mySequence = new AtomicLong();
+  private final Object myLock = new Object();
+  @GuardedBy("myLock")
+  private final Map<Object, Request<?>> myQueuedRequests = new HashMap<>();
+  private final Map<Priority, QueueMetrics> myMetrics = new EnumMap<>(Priority.class);
+
+  /**
+   * @param threadName    the name of the worker threads, followed by the index of the worker if there's more than one
+   * @param workerCount   the number of render workers
+   * @param idleTimeoutMs how long an idle worker keeps its thread
+   */
+  public RenderExecutor(@NotNull String threadName, int workerCount, long idleTimeoutMs) {
+    assert workerCount > 0;
+    myWorkers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      myWorkers[i] = new Worker(workerCount == 1 ? threadName : threadName + " #" + i, idleTimeoutMs);
+    }
+    for (Priority priority : Priority.values()) {
+      myMetrics.put(priority, new QueueMetrics());
+    }
+  }
+
+  public int getWorkerCount() {
+    return myWorkers.length;
+  }
+
+  /**
+   * Queues the given action on the worker of the given shard key.
+   *
+   * @param shardKey      the key that selects the worker, or null for the first worker
+   * @param coalescingKey if not null, the queued action with the same key is replaced by this one if it hasn't started yet
+   */
+  @NotNull
+  public <T> ListenableFuture<T> submit(@NotNull Callable<T> callable,
+                                        @NotNull Priority priority,
+                                        @Nullable Object shardKey,
+                                        @Nullable Object coalescingKey) {
+    Worker worker = getWorker(shardKey);
+    Request<T> request;
+    synchronized (myLock) {
+      Request<?> queued = coalescingKey != null ? myQueuedRequests.get(coalescingKey) : null;
+      if (queued != null && queued.myWorker == worker && worker.myExecutor.remove(queued)) {
+        // Run the replacing action no later than the replaced one would have run.
+        Priority highestPriority = priority.compareTo(queued.myPriority) <= 0 ? priority : queued.myPriority;
+        request = new Request<>(callable, coalescingKey, worker, highestPriority, queued.mySequence);
+        //noinspection unchecked
+        ((Request<T>)queued).myFuture.setFuture(Futures.nonCancellationPropagating(request.myFuture));
+        myMetrics.get(queued.myPriority).myCoalesced.incrementAndGet();
+      }
+      else {
+        request = new Request<>(callable, coalescingKey, worker, priority, mySequence.getAndIncrement());
+      }
+      if (coalescingKey != null) {
+        myQueuedRequests.put(coalescingKey, request);
+      }
+      myMetrics.get(request.myPriority).mySubmitted.incrementAndGet();
+      worker.myExecutor.execute(request);
+    }
+    return request.myFuture;
+  }
+
+  /**
+   * Returns the thread of the worker of the given shard key, or null if it has none at the moment.
+   */
+  @Nullable
+  public Thread getThread(@Nullable Object shardKey) {
+    return getWorker(shardKey).myThread.get();
+  }
+
+  @NotNull
+  public QueueMetrics getMetrics(@NotNull Priority priority) {
+    return myMetrics.get(priority);
+  }
+
+  /**
+   * Cancels the queued actions and interrupts the running ones.
+   */
+  public void shutdownNow() {
+    for (Worker worker : myWorkers) {
+      for (Runnable request : worker.myExecutor.shutdownNow()) {
+        ((Request<?>)request).myFuture.cancel(false);
+      }
+      Thread thread = worker.myThread.getAndSet(null);
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * Waits at most the given time for the running actions of all the workers to finish, after {@link #shutdownNow}.
+   */
+  public void awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    long deadlineNs = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.awaitTermination(Math.max(0, deadlineNs - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @NotNull
+  private Worker getWorker(@Nullable Object shardKey) {
+    return shardKey == null ? myWorkers[0] : myWorkers[Math.floorMod(shardKey.hashCode(), myWorkers.length)];
+  }
+
+  /**
+   * Counters of the render actions of one {@link Priority}.
+   */
+  public static final class QueueMetrics {
+    private final AtomicLong mySubmitted = new AtomicLong();
+    private final AtomicLong myCoalesced = new AtomicLong();
+    private final AtomicLong myCompleted = new AtomicLong();
+    private final AtomicLong myTotalWaitNs = new AtomicLong();
+    private final AtomicLong myMaxWaitNs = new AtomicLong();
+    private final AtomicLong myTotalRunNs = new AtomicLong();
+
+    /** Returns the number of actions submitted, including the ones replaced by a later action before they started. */
+    public long getSubmittedCount() {
+      return mySubmitted.get();
+    }
+
+    /** Returns the number of actions that were replaced by a later action with the same coalescing key before they started. */
+    public long getCoalescedCount() {
+      return myCoalesced.get();
+    }
+
+    /** Returns the number of actions that have run, successfully or not. */
+    public long getCompletedCount() {
+      return myCompleted.get();
+    }
+
+    /** Returns the number of actions that are queued or running. */
+    public long getPendingCount() {
+      return mySubmitted.get() - myCoalesced.get() - myCompleted.get();
+    }
+
+    /** Returns the total time the completed actions spent in the queue. */
+    public long getTotalWaitTimeNs() {
+      return myTotalWaitNs.get();
+    }
+
+    /** Returns the longest time a completed action spent in the queue. */
+    public long getMaxWaitTimeNs() {
+      return myMaxWaitNs.get();
+    }
+
+    /** Returns the total time the completed actions spent running. */
+    public long getTotalRunTimeNs() {
+      return myTotalRunNs.get();
+    }
+
+    private void completed(long waitNs, long runNs) {
+      myCompleted.incrementAndGet();
+      myTotalWaitNs.addAndGet(waitNs);
+      myMaxWaitNs.accumulateAndGet(waitNs, Math::max);
+      myTotalRunNs.addAndGet(runNs);
+    }
+  }
+
+  private static final class Worker {
+    private final ThreadPoolExecutor myExecutor;
+    private final AtomicReference<Thread> myThread = new AtomicReference<>();
+
+    private Worker(@NotNull String threadName, long idleTimeoutMs) {
+      myExecutor = new ThreadPoolExecutor(0, 1, idleTimeoutMs, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), (Runnable r) -> {
+        Thread thread = new Thread(null, r, threadName);
+        thread.setDaemon(true);
+        myThread.set(thread);
+        return thread;
+      });
+    }
+  }
+
+  private final class Request<T> implements Runnable, Comparable<Request<?>> {
+    private final Callable<T> myCallable;
+    @Nullable private final Object myCoalescingKey;
+    private final Worker myWorker;
+    private final Priority myPriority;
+    private final long mySequence;
+    private final long mySubmitTimeNs = System.nanoTime();
+    private final SettableFuture<T> myFuture = SettableFuture.create();
+
+    private Request(@NotNull Callable<T> callable,
+                    @Nullable Object coalescingKey,
+                    @NotNull Worker worker,
+                    @NotNull Priority priority,
+                    long sequence) {
+      myCallable = callable;
+      myCoalescingKey = coalescingKey;
+      myWorker = worker;
+      myPriority = priority;
+      mySequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      if (myCoalescingKey != null) {
+        synchronized (myLock) {
+          myQueuedRequests.remove(myCoalescingKey, this);
+        }
+      }
+      long startTimeNs = System.nanoTime();
+      try {
+        if (!myFuture.isCancelled()) {
+          myFuture.set(myCallable.call());
+        }
+      }
+      catch (Throwable t) {
+        myFuture.setException(t);
+      }
+      finally {
+        myMetrics.get(myPriority).completed(startTimeNs - mySubmitTimeNs, System.nanoTime() - startTimeNs);
+      }
+    }
+
+    @Override
+    public int compareTo(@NotNull Request<?> other) {
+      int result = myPriority.compareTo(other.myPriority);
+      return result != 0 ? result : Long.compare(mySequence, other.mySequence);
+    }
+  }
+}
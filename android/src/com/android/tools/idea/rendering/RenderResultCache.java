@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the most recently used successful {@link RenderResult}s of a layout, keyed by a fingerprint of everything the render
+ * depends on: the layout file, the resources and the configuration. It lets a render whose inputs are identical to a previous one, as
+ * when switching back and forth between devices or themes, reuse the previous image and view hierarchy instead of rendering again.
+ *
+ * <p>The fingerprint is an opaque object compared with {@link Object#equals}, so it must only contain values that change whenever the
+ * render would change.
+ */
+public class RenderResultCache {
+  private static final AtomicLong ourTotalHitCount = new AtomicLong();
+  private static final AtomicLong ourTotalMissCount = new AtomicLong();
+
+  private final int myMaxSize;
+  @GuardedBy("myResults")
+  private final LinkedHashMap<Object, RenderResult> myResults;
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+
+  /**
+   * @param maxSize the maximum number of results kept, each of them holding a rendered image
+   */
+  public RenderResultCache(int maxSize) {
+    myMaxSize = maxSize;
+    myResults = new LinkedHashMap<Object, RenderResult>(maxSize + 1, 1, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, RenderResult> eldest) {
+        return size() > myMaxSize;
+      }
+    };
+  }
+
+  /**
+   * Returns the result cached for the given fingerprint, or null if there is none.
+   */
+  @Nullable
+  public RenderResult get(@NotNull Object fingerprint) {
+    RenderResult result;
+    synchronized (myResults) {
+      result = myResults.get(fingerprint);
+    }
+    if (result != null) {
+      myHitCount.incrementAndGet();
+      ourTotalHitCount.incrementAndGet();
+    }
+    else {
+      myMissCount.incrementAndGet();
+      ourTotalMissCount.incrementAndGet();
+    }
+    return result;
+  }
+
+  /**
+   * Caches the given result for the given fingerprint, unless the render failed or did not produce an image.
+   */
+  public void put(@NotNull Object fingerprint, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.hasImage()) {
+      return;
+    }
+    synchronized (myResults) {
+      myResults.put(fingerprint, result);
+    }
+  }
+
+  /**
+   * Removes the results rendered by the given task, e.g. once it is disposed.
+   */
+  public void removeResultsOf(@NotNull RenderTask task) {
+    synchronized (myResults) {
+      myResults.values().removeIf(result -> result.getRenderTask() == task);
+    }
+  }
+
+  public void clear() {
+    synchronized (myResults) {
+      myResults.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (myResults) {
+      return myResults.size();
+    }
+  }
+
+  public long getHitCount() {
+    return myHitCount.get();
+  }
+
+  public long getMissCount() {
+    return myMissCount.get();
+  }
+
+  /**
+   * Returns the number of hits of all the caches since the IDE started.
+   */
+  public static long getTotalHitCount() {
+    return ourTotalHitCount.get();
+  }
+
+  /**
+   * Returns the number of misses of all the caches since the IDE started.
+   */
+  public static long getTotalMissCount() {
+    return ourTotalMissCount.get();
+  }
+}
@@ -32,12 +32,12 @@ import com.android.tools.idea.project.AndroidProjectInfo;
 import com.android.tools.idea.ui.designer.EditorDesignSurface;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ui.configuration.ProjectSettingsService;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.LowMemoryWatcher;
 import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.xml.XmlTag;
@@ -56,7 +56,6 @@ import org.jetbrains.annotations.TestOnly;
 import java.io.IOException;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -73,11 +72,15 @@ public class RenderService extends AndroidFacetScopedService {
                                                                               : 6));
   /** Number of ms that we will keep the render thread alive when idle */
   private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+  /**
+   * Number of render threads. Layoutlib serializes the calls of all sessions on a global lock, so additional threads only run the
+   * IDE side of render actions (parsing, class loading, copying images) in parallel.
+   */
+  private static final int RENDER_THREAD_COUNT = Math.max(1, Integer.getInteger("layoutlib.render.threads", 1));
 
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  private static RenderExecutor ourRenderingExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   private static final Key<RenderService> KEY = Key.create(RenderService.class.getName());
@@ -89,17 +92,7 @@ public class RenderService extends AndroidFacetScopedService {
   }
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                             RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread =
-                                 new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
-
-                               return renderingThread;
-                             });
+    ourRenderingExecutor = new RenderExecutor("Layoutlib Render Thread", RENDER_THREAD_COUNT, RENDER_THREAD_IDLE_TIMEOUT_MS);
   }
 
   @TestOnly
@@ -111,10 +104,6 @@ public class RenderService extends AndroidFacetScopedService {
 
   private static void shutdownRenderExecutor() {
     ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
   }
 
   /**
@@ -140,7 +129,13 @@ public class RenderService extends AndroidFacetScopedService {
 
   private final Object myCredential = new Object();
 
-  private final ImagePool myImagePool = new ImagePool();
+  /**
+   * Pool of the rendered images of all the modules. The pooled images are strongly referenced, so the pool is shared to keep them within a
+   * single memory budget, and it drops them when memory is low.
+   */
+  private static final ImagePool ourImagePool = new ImagePool();
+  @SuppressWarnings("unused") // Kept to keep the watcher registered, as LowMemoryWatcher only references it weakly
+  private static final LowMemoryWatcher ourImagePoolLowMemoryWatcher = LowMemoryWatcher.register(ourImagePool::releasePooledImages);
 
   /**
    * @return the {@linkplain RenderService} for the given facet.
@@ -297,7 +292,7 @@ public class RenderService extends AndroidFacetScopedService {
 
     try {
       RenderTask task =
-          new RenderTask(this, configuration, logger, layoutLib, device, myCredential, CrashReporter.getInstance(), myImagePool,
+          new RenderTask(this, configuration, logger, layoutLib, device, myCredential, CrashReporter.getInstance(), ourImagePool,
                          parserFactory);
       if (psiFile != null) {
         task.setPsiFile(psiFile);
@@ -316,7 +311,6 @@ public class RenderService extends AndroidFacetScopedService {
   @Override
   protected void onServiceDisposal(@NotNull AndroidFacet facet) {
     facet.putUserData(KEY, null);
-    myImagePool.dispose();
   }
 
   @NotNull
@@ -368,13 +362,44 @@ public class RenderService extends AndroidFacetScopedService {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, RenderExecutor.Priority.INTERACTIVE, null);
+  }
+
+  /**
+   * Runs an action on the objects of a layoutlib session of a {@link RenderTask} of the given module, like its view objects, and waits for
+   * it. The action runs on the render thread of the session, so that it can't run at the same time as the session's own render actions.
+   */
+  public static void runRenderAction(@NotNull Module module, @NotNull Runnable runnable) throws Exception {
+    runRenderAction(module, Executors.callable(runnable));
+  }
+
+  /**
+   * Runs an action on the objects of a layoutlib session of a {@link RenderTask} of the given module, like its view objects, and waits for
+   * it. The action runs on the render thread of the session, so that it can't run at the same time as the session's own render actions.
+   */
+  public static <T> T runRenderAction(@NotNull Module module, @NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, RenderExecutor.Priority.INTERACTIVE, RenderTask.getShardKey(module));
+  }
+
+  /**
+   * Runs a action that requires the rendering lock with the given priority, on the render thread of the given shard key. All the actions
+   * of a layoutlib session must use the same shard key, normally its module.
+   *
+   * @see RenderExecutor#submit
+   */
+  public static <T> T runRenderAction(@NotNull Callable<T> callable,
+                                      @NotNull RenderExecutor.Priority priority,
+                                      @Nullable Object shardKey) throws Exception {
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(() -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }, priority, shardKey, null).get(50, TimeUnit.MILLISECONDS);
       }
-      T result = ourRenderingExecutor.submit(callable).get(ourRenderThreadTimeoutMs, TimeUnit.MILLISECONDS);
+      T result = ourRenderingExecutor.submit(callable, priority, shardKey, null).get(ourRenderThreadTimeoutMs, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -383,7 +408,7 @@ public class RenderService extends AndroidFacetScopedService {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderingExecutor.getThread(shardKey);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -402,10 +427,24 @@ public class RenderService extends AndroidFacetScopedService {
    */
   @NotNull
   public static <T> ListenableFuture<T> runAsyncRenderAction(@NotNull Callable<T> callable) {
-    ListenableFutureTask<T> future = ListenableFutureTask.create(callable);
-    ourRenderingExecutor.submit(future);
+    return runAsyncRenderAction(callable, RenderExecutor.Priority.INTERACTIVE, null, null);
+  }
 
-    return future;
+  /**
+   * Runs an action that requires the rendering lock with the given priority, on the render thread of the given shard key. All the actions
+   * of a layoutlib session must use the same shard key, normally its module.
+   * <p/>
+   * This method will run the passed action asynchronously and return a {@link ListenableFuture}. If the action has a coalescing key, it
+   * replaces the queued action with the same key if that one hasn't started yet.
+   *
+   * @see RenderExecutor#submit
+   */
+  @NotNull
+  public static <T> ListenableFuture<T> runAsyncRenderAction(@NotNull Callable<T> callable,
+                                                             @NotNull RenderExecutor.Priority priority,
+                                                             @Nullable Object shardKey,
+                                                             @Nullable Object coalescingKey) {
+    return ourRenderingExecutor.submit(callable, priority, shardKey, coalescingKey);
   }
 
   /**
@@ -415,7 +454,26 @@ public class RenderService extends AndroidFacetScopedService {
    * This method will run the passed action asynchronously
    */
   public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.submit(runnable);
+    runAsyncRenderAction(runnable, RenderExecutor.Priority.INTERACTIVE, null);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock with the given priority, on the render thread of the given shard key.
+   * <p/>
+   * This method will run the passed action asynchronously
+   */
+  public static void runAsyncRenderAction(@NotNull Runnable runnable,
+                                          @NotNull RenderExecutor.Priority priority,
+                                          @Nullable Object shardKey) {
+    ourRenderingExecutor.submit(Executors.callable(runnable), priority, shardKey, null);
+  }
+
+  /**
+   * Returns the counters of the render actions of the given priority, like how long they waited in the queue of their render thread.
+   */
+  @NotNull
+  public static RenderExecutor.QueueMetrics getRenderQueueMetrics(@NotNull RenderExecutor.Priority priority) {
+    return ourRenderingExecutor.getMetrics(priority);
   }
 
 
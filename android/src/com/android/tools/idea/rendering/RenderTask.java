@@ -149,6 +149,8 @@ public class RenderTask implements IImageFactory {
 
   private final List<ListenableFuture<?>> myRunningFutures = new LinkedList<>();
   private AtomicBoolean isDisposed = new AtomicBoolean(false);
+  @NotNull private RenderExecutor.Priority myPriority = RenderExecutor.Priority.INTERACTIVE;
+  @Nullable private Object myShardKey;
 
   /**
    * Don't create this task directly; obtain via {@link RenderService}
@@ -282,7 +284,7 @@ public class RenderTask implements IImageFactory {
       myLayoutlibCallback.setResourceResolver(null);
       if (myRenderSession != null) {
         try {
-          RenderService.runAsyncRenderAction(myRenderSession::dispose);
+          RenderService.runAsyncRenderAction(myRenderSession::dispose, myPriority, getShardKey());
           myRenderSession = null;
         }
         catch (Exception ignored) {
@@ -354,6 +356,51 @@ public class RenderTask implements IImageFactory {
     return this;
   }
 
+  /**
+   * Sets the priority of the render actions of this task, relative to the ones of other tasks. The default is
+   * {@link RenderExecutor.Priority#INTERACTIVE}.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderExecutor.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
+  /**
+   * Sets the key that selects the render thread of this task. The default is the module, so that all the tasks of a module share a render
+   * thread. Tasks that can render at the same time, like the ones of the different configurations of a layout, can use different keys to
+   * run on different render threads. Must be called before the first render action of the task. Actions run through
+   * {@link RenderService#runRenderAction(Module, Callable)} only wait for the tasks that keep the default key.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setShardKey(@Nullable Object shardKey) {
+    myShardKey = shardKey;
+    return this;
+  }
+
+  /**
+   * Returns the key of the render thread that runs all the render actions of this task. Layoutlib sessions keep per-thread state, so it
+   * must not change during the life of the task.
+   */
+  @NotNull
+  private Object getShardKey() {
+    return myShardKey != null ? myShardKey : getShardKey(getModule());
+  }
+
+  /**
+   * Returns the default key of the render thread of the tasks of the given module.
+   */
+  @NotNull
+  static Object getShardKey(@NotNull Module module) {
+    return module;
+  }
+
   /**
    * Sets the overriding background color to be used, if any. The color should be a
    * bitmask of AARRGGBB. The default is null.
@@ -635,12 +682,22 @@ public class RenderTask implements IImageFactory {
   @VisibleForTesting
   @NotNull
   <V> ListenableFuture<V> runAsyncRenderAction(@NotNull Callable<V> callable) {
+    return runAsyncRenderAction(callable, null);
+  }
+
+  /**
+   * Executes the passed {@link Callable} as an async render action like {@link #runAsyncRenderAction(Callable)}, replacing the queued
+   * action with the same coalescing key, if any, if it hasn't started yet.
+   */
+  @NotNull
+  private <V> ListenableFuture<V> runAsyncRenderAction(@NotNull Callable<V> callable, @Nullable Object coalescingKey) {
     if (isDisposed.get()) {
       return Futures.immediateFailedFuture(new IllegalStateException("RenderTask was already disposed"));
     }
 
     synchronized (myRunningFutures) {
-      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      // All the actions of the render session run on the same render thread, by default the one of the module.
+      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable, myPriority, getShardKey(), coalescingKey);
       Futures.addCallback(newFuture, new FutureCallback<V>() {
         @Override
         public void onSuccess(@Nullable V result) {
@@ -662,6 +719,14 @@ public class RenderTask implements IImageFactory {
     }
   }
 
+  /**
+   * Runs the passed {@link Callable} as a render action with the priority of this task, and waits for it.
+   * See {@link RenderService#runRenderAction(Callable, RenderExecutor.Priority, Object)}.
+   */
+  private <V> V runRenderAction(@NotNull Callable<V> callable) throws Exception {
+    return RenderService.runRenderAction(callable, myPriority, getShardKey());
+  }
+
   /**
    * Inflates the layout but does not render it.
    * @return A {@link RenderResult} with the result of inflating the inflate call. The result might not contain a result bitmap.
@@ -676,7 +741,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      return RenderService.runRenderAction(() -> createRenderSession((width, height) -> {
+      return runRenderAction(() -> createRenderSession((width, height) -> {
         if (myImageFactoryDelegate != null) {
           return myImageFactoryDelegate.getImage(width, height);
         }
@@ -754,6 +819,7 @@ public class RenderTask implements IImageFactory {
     assert myPsiFile != null;
 
     try {
+      // A queued render of this task is replaced by a newer one, since both render the current state of the session.
       return runAsyncRenderAction(() -> {
         myRenderSession.render();
         RenderResult result =
@@ -764,7 +830,7 @@ public class RenderTask implements IImageFactory {
           myLogger.error(null, renderResult.getErrorMessage(), renderResult.getException(), null, null);
         }
         return result;
-      });
+      }, this);
     }
     catch (final Exception e) {
       reportException(e);
@@ -894,7 +960,7 @@ public class RenderTask implements IImageFactory {
     }
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = runRenderAction(() -> myLayoutLib.renderDrawable(params));
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -975,7 +1041,7 @@ public class RenderTask implements IImageFactory {
     Map<XmlTag, ViewInfo> map = Maps.newHashMap();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = runRenderAction(() -> measure(modelParser));
     }
     catch (Exception ignored) {
     }
@@ -997,7 +1063,7 @@ public class RenderTask implements IImageFactory {
 
         return map;
       } finally {
-        RenderService.runAsyncRenderAction(session::dispose);
+        RenderService.runAsyncRenderAction(session::dispose, myPriority, getShardKey());
       }
     }
 
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.SystemProperties;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.android.SdkConstants.DOT_CLASS;
+import static com.android.tools.idea.rendering.ClassConverter.isValidClassFile;
+
+/**
+ * On-disk cache of the classes rewritten by {@link ClassConverter}, shared by all the {@link RenderClassLoader}s and kept across IDE
+ * restarts, so that the classes of custom views and libraries are only rewritten the first time they're loaded.
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the original class bytes, so changed classes simply get new entries. The entries live in a
+ * directory named after {@link ClassConverter#VERSION} and the class file version the classes are rewritten to; the directories of other
+ * versions are deleted when the cache is first used. Rewritten classes are returned right away and written to disk in the background.
+ *
+ * <p>The size of the cache is capped. Once it grows over the cap, the least recently used entries are deleted until it's back to
+ * three quarters of the cap. Hits refresh the modification time of their entry in the background, so the modification times order the
+ * entries by their last use.
+ */
+final class RewrittenClassCache {
+  private static final Logger LOG = Logger.getInstance(RewrittenClassCache.class);
+
+  private static final boolean ENABLED = SystemProperties.getBooleanProperty("render.class.loader.disk.cache", true);
+  private static final long MAX_SIZE_BYTES =
+    SystemProperties.getIntProperty("render.class.loader.disk.cache.max.size.mb", 256) * 1024L * 1024L;
+
+  private final File myRootDir;
+  private final File myDir;
+  private final int myClassVersion;
+  private final long myMaxSizeBytes;
+  private final Executor myWriteExecutor;
+  /** Approximate size of the entries of {@link #myDir}, in bytes. */
+  private final AtomicLong mySizeBytes = new AtomicLong();
+  private final AtomicLong myHitCount = new AtomicLong();
+  private final AtomicLong myMissCount = new AtomicLong();
+
+  private static class InstanceHolder {
+    private static final RewrittenClassCache INSTANCE = new RewrittenClassCache(
+      new File(PathManager.getSystemPath(), "render-class-cache"), ClassConverter.getCurrentClassVersion(), MAX_SIZE_BYTES,
+      AppExecutorUtil.createBoundedApplicationPoolExecutor("RewrittenClassCache", 2));
+  }
+
+  /**
+   * @param rootDir       the directory of the cache, shared by all versions
+   * @param classVersion  the class file version the classes are rewritten to
+   * @param maxSizeBytes  the size over which the least recently used entries are deleted
+   * @param writeExecutor the executor that writes new entries to disk
+   */
+  @VisibleForTesting
+  RewrittenClassCache(@NotNull File rootDir, int classVersion, long maxSizeBytes, @NotNull Executor writeExecutor) {
+    myRootDir = rootDir;
+    myDir = new File(rootDir, "v" + ClassConverter.VERSION + "-" + classVersion);
+    myClassVersion = classVersion;
+    myMaxSizeBytes = maxSizeBytes;
+    myWriteExecutor = writeExecutor;
+    myWriteExecutor.execute(() -> {
+      deleteOtherVersions();
+      mySizeBytes.addAndGet(listEntries().stream().mapToLong(Entry::getSize).sum());
+      pruneIfNeeded();
+    });
+  }
+
+  /**
+   * Returns the shared cache, or null if it's disabled with the render.class.loader.disk.cache system property.
+   */
+  @Nullable
+  static RewrittenClassCache getInstance() {
+    return ENABLED ? InstanceHolder.INSTANCE : null;
+  }
+
+  /**
+   * Returns the given class rewritten by {@link ClassConverter#rewriteClass(byte[], int, int)} to the class version of this cache, from the
+   * cache if it's there.
+   */
+  @NotNull
+  byte[] rewriteClass(@NotNull byte[] classData) {
+    File file = getFile(Hashing.sha256().hashBytes(classData).toString());
+    byte[] rewritten = read(file);
+    if (rewritten != null) {
+      myHitCount.incrementAndGet();
+      myWriteExecutor.execute(() -> touch(file));
+      return rewritten;
+    }
+
+    myMissCount.incrementAndGet();
+    byte[] converted = ClassConverter.rewriteClass(classData, myClassVersion, 0);
+    myWriteExecutor.execute(() -> {
+      if (write(file, converted)) {
+        mySizeBytes.addAndGet(converted.length);
+        pruneIfNeeded();
+      }
+    });
+    return converted;
+  }
+
+  long getHitCount() {
+    return myHitCount.get();
+  }
+
+  long getMissCount() {
+    return myMissCount.get();
+  }
+
+  @NotNull
+  private File getFile(@NotNull String hash) {
+    // Spread the entries over subdirectories to keep the directories small.
+    return new File(new File(myDir, hash.substring(0, 2)), hash + DOT_CLASS);
+  }
+
+  @Nullable
+  private static byte[] read(@NotNull File file) {
+    try {
+      byte[] data = Files.readAllBytes(file.toPath());
+      return isValidClassFile(data) ? data : null;
+    }
+    catch (NoSuchFileException e) {
+      return null;
+    }
+    catch (IOException e) {
+      LOG.debug(e);
+      return null;
+    }
+  }
+
+  private static boolean write(@NotNull File file, @NotNull byte[] data) {
+    try {
+      FileUtil.createParentDirs(file);
+      // Write to a temporary file first so that readers never see a partially written entry.
+      Path tempFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+      try {
+        Files.write(tempFile, data);
+        Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      }
+      finally {
+        Files.deleteIfExists(tempFile);
+      }
+      return true;
+    }
+    catch (IOException e) {
+      LOG.debug("Failed to cache rewritten class " + file, e);
+      return false;
+    }
+  }
+
+  private static void touch(@NotNull File file) {
+    //noinspection ResultOfMethodCallIgnored
+    file.setLastModified(System.currentTimeMillis());
+  }
+
+  /**
+   * Deletes the least recently used entries once the cache is over {@link #myMaxSizeBytes}, until it's back to three quarters of it.
+   */
+  private synchronized void pruneIfNeeded() {
+    if (mySizeBytes.get() <= myMaxSizeBytes) {
+      return;
+    }
+    List<Entry> entries = listEntries();
+    entries.sort(Comparator.comparingLong(Entry::getLastModified));
+    long size = entries.stream().mapToLong(Entry::getSize).sum();
+    long targetSize = myMaxSizeBytes / 4 * 3;
+    for (int i = 0; i < entries.size() && size > targetSize; i++) {
+      Entry entry = entries.get(i);
+      if (FileUtil.delete(entry.myFile)) {
+        size -= entry.mySize;
+      }
+    }
+    mySizeBytes.set(size);
+  }
+
+  @NotNull
+  private List<Entry> listEntries() {
+    List<Entry> entries = new ArrayList<>();
+    if (!myDir.isDirectory()) {
+      return entries;
+    }
+    try (Stream<Path> paths = Files.walk(myDir.toPath())) {
+      paths.forEach(path -> {
+        File file = path.toFile();
+        if (file.isFile()) {
+          entries.add(new Entry(file, file.length(), file.lastModified()));
+        }
+      });
+    }
+    catch (IOException | UncheckedIOException e) {
+      LOG.debug(e);
+    }
+    return entries;
+  }
+
+  private void deleteOtherVersions() {
+    File[] dirs = myRootDir.listFiles();
+    if (dirs == null) {
+      return;
+    }
+    for (File dir : dirs) {
+      if (!FileUtil.filesEqual(dir, myDir)) {
+        FileUtil.delete(dir);
+      }
+    }
+  }
+
+  private static final class Entry {
+    @NotNull private final File myFile;
+    private final long mySize;
+    private final long myLastModified;
+
+    private Entry(@NotNull File file, long size, long lastModified) {
+      myFile = file;
+      mySize = size;
+      myLastModified = lastModified;
+    }
+
+    private long getSize() {
+      return mySize;
+    }
+
+    private long getLastModified() {
+      return myLastModified;
+    }
+  }
+}
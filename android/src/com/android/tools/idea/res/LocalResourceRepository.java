@@ -46,6 +46,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -224,37 +225,57 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     }
   }
 
-  /** If this repository has not already been visited, merge its items of the given type into result. */
+  /**
+   * Notifies the parents that the items of the given names, type and namespace were added, removed or replaced, so that they only
+   * merge the items of these names again rather than all the items of the type.
+   */
+  protected void invalidateParentCaches(@Nullable String namespace, @NotNull ResourceType type, @NotNull Collection<String> names) {
+    synchronized (ITEM_MAP_LOCK) {
+      if (myParents != null) {
+        for (MultiResourceRepository parent : myParents) {
+          parent.invalidateCache(this, namespace, type, names);
+        }
+      }
+    }
+  }
+
+  /**
+   * If this repository has not already been visited, merge its items of the given type, and of the given name unless it's null, into
+   * result.
+   */
   protected final void merge(@NotNull Set<LocalResourceRepository> visited,
                              @Nullable String namespace,
                              @NotNull ResourceType type,
+                             @Nullable String name,
                              @NotNull SetMultimap<String, String> seenQualifiers,
                              @NotNull ListMultimap<String, ResourceItem> result) {
     if (visited.contains(this)) {
       return;
     }
     visited.add(this);
-    doMerge(visited, namespace, type, seenQualifiers, result);
+    doMerge(visited, namespace, type, name, seenQualifiers, result);
   }
 
   protected void doMerge(@NotNull Set<LocalResourceRepository> visited,
                          @Nullable String namespace,
                          @NotNull ResourceType type,
+                         @Nullable String name,
                          @NotNull SetMultimap<String, String> seenQualifiers,
                          @NotNull ListMultimap<String, ResourceItem> result) {
     ListMultimap<String, ResourceItem> items = getMap(namespace, type, false);
     if (items == null) {
       return;
     }
-    for (ResourceItem item : items.values()) {
-      String name = item.getName();
+    for (ResourceItem item : name == null ? items.values() : items.get(name)) {
+      String itemName = item.getName();
       String qualifiers = item.getQualifiers();
-      if (!result.containsKey(name) || type == ResourceType.DECLARE_STYLEABLE || type == ResourceType.ID || !seenQualifiers.containsEntry(name, qualifiers)) {
+      if (!result.containsKey(itemName) || type == ResourceType.DECLARE_STYLEABLE || type == ResourceType.ID ||
+          !seenQualifiers.containsEntry(itemName, qualifiers)) {
         // We only add a duplicate item if there isn't an item with the same qualifiers (and it's
         // not an id; id's are allowed to be defined in multiple places even with the same
         // qualifiers)
-        result.put(name, item);
-        seenQualifiers.put(name, qualifiers);
+        result.put(itemName, item);
+        seenQualifiers.put(itemName, qualifiers);
       }
     }
   }
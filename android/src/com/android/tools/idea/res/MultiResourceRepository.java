@@ -31,10 +31,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.annotation.concurrent.GuardedBy;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The  is a super class for several of the other repositories; it’s not really used on its own. Its only purpose is to be able to combine
@@ -42,32 +44,43 @@ import java.util.Set;
  * same resource type+name combination will replace/hide any previous definitions of the same resource.
  *
  * <p>In the resource repository hierarchy, the MultiResourceRepository is an internal node, never a leaf.
+ *
+ * <p>The merged data is cached in fields that are only ever replaced, never modified, so that reading it once cached doesn't take
+ * {@code ITEM_MAP_LOCK}. It is computed and invalidated under the lock, the maps of one namespace and type at a time. When a child
+ * reports which items changed, a copy of the merged map is patched and replaces it, so that editing an item only merges the items of
+ * its name again.
  */
 @SuppressWarnings("InstanceGuardedByStatic") // TODO: The whole locking scheme for resource repositories needs to be reworked.
 public abstract class MultiResourceRepository extends LocalResourceRepository {
-  @GuardedBy("ITEM_MAP_LOCK")
-  private List<? extends LocalResourceRepository> myChildren;
+  /**
+   * How many reads of merged data had to take {@code ITEM_MAP_LOCK}, and how long they waited for it in total.
+   */
+  private static final AtomicLong ourLockedReadCount = new AtomicLong();
+  private static final AtomicLong ourLockWaitTimeNs = new AtomicLong();
 
   @GuardedBy("ITEM_MAP_LOCK")
-  private long[] myModificationCounts;
+  private volatile List<? extends LocalResourceRepository> myChildren;
 
+  /** The modification counts of the children, replaced rather than modified. */
   @GuardedBy("ITEM_MAP_LOCK")
-  private ResourceTable myFullTable;
+  private volatile long[] myModificationCounts;
 
   @GuardedBy("ITEM_MAP_LOCK")
-  private Set<String> myCachedNamespaces;
+  private volatile ResourceTable myFullTable;
 
   @GuardedBy("ITEM_MAP_LOCK")
-  private final ResourceTable myCachedMaps = new ResourceTable();
+  private volatile Set<String> myCachedNamespaces;
 
+  /** Not modified once published, nor are the merged maps in it. */
   @GuardedBy("ITEM_MAP_LOCK")
-  private final Map<ResourceType, Boolean> myCachedHasResourcesOfType = Maps.newEnumMap(ResourceType.class);
+  private volatile ResourceTable myCachedMaps = new ResourceTable();
 
+  /** Not modified once published. */
   @GuardedBy("ITEM_MAP_LOCK")
-  private Map<String, DataBindingInfo> myDataBindingResourceFiles = Maps.newHashMap();
+  private volatile Map<ResourceType, Boolean> myCachedHasResourcesOfType = Collections.emptyMap();
 
   @GuardedBy("ITEM_MAP_LOCK")
-  private long myDataBindingResourceFilesModificationCount = Long.MIN_VALUE;
+  @Nullable private volatile DataBindingResourceFiles myDataBindingResourceFiles;
 
   MultiResourceRepository(@NotNull String displayName, @NotNull List<? extends LocalResourceRepository> children) {
     super(displayName);
@@ -85,50 +98,59 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       setModificationCount(ourModificationCounter.incrementAndGet());
       myChildren = children;
       myModificationCounts = new long[children.size()];
+      long[] modificationCounts = new long[children.size()];
       if (children.size() == 1) {
         // Make sure that the modification count of the child and the parent are same. This is
         // done so that we can return child's modification count, instead of ours.
         LocalResourceRepository child = children.get(0);
         child.setModificationCount(getModificationCount());
       }
-      for (int i = myChildren.size() - 1; i >= 0; i--) {
-        LocalResourceRepository resources = myChildren.get(i);
+      for (int i = children.size() - 1; i >= 0; i--) {
+        LocalResourceRepository resources = children.get(i);
         resources.addParent(this);
-        myModificationCounts[i] = resources.getModificationCount();
+        modificationCounts[i] = resources.getModificationCount();
       }
+      myModificationCounts = modificationCounts;
       myFullTable = null;
-      myCachedMaps.clear();
-      myCachedHasResourcesOfType.clear();
+      myCachedNamespaces = null;
+      myCachedMaps = new ResourceTable();
+      myCachedHasResourcesOfType = Collections.emptyMap();
     }
 
     invalidateParentCaches();
   }
 
   public List<? extends LocalResourceRepository> getChildren() {
-    synchronized (ITEM_MAP_LOCK) {
-      return ImmutableList.copyOf(myChildren);
-    }
+    return ImmutableList.copyOf(myChildren);
   }
 
   @Override
   public long getModificationCount() {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myChildren.size() == 1) {
-        return myChildren.get(0).getModificationCount();
-      }
+    List<? extends LocalResourceRepository> children = myChildren;
+    if (children.size() == 1) {
+      return children.get(0).getModificationCount();
+    }
+    if (!haveChildrenChanged(children, myModificationCounts)) {
+      return super.getModificationCount();
+    }
 
+    long startTimeNs = System.nanoTime();
+    synchronized (ITEM_MAP_LOCK) {
+      lockAcquired(startTimeNs);
       // See if any of the delegates have changed
       boolean changed = false;
+      long[] modificationCounts = myModificationCounts.clone();
       for (int i = myChildren.size() - 1; i >= 0; i--) {
         LocalResourceRepository resources = myChildren.get(i);
         long rev = resources.getModificationCount();
-        if (rev != myModificationCounts[i]) {
-          myModificationCounts[i] = rev;
+        if (rev != modificationCounts[i]) {
+          modificationCounts[i] = rev;
           changed = true;
         }
       }
 
       if (changed) {
+        myModificationCounts = modificationCounts;
         setModificationCount(ourModificationCounter.incrementAndGet());
       }
 
@@ -136,6 +158,19 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     }
   }
 
+  private static boolean haveChildrenChanged(@NotNull List<? extends LocalResourceRepository> children,
+                                             @NotNull long[] modificationCounts) {
+    if (children.size() != modificationCounts.length) {
+      return true;
+    }
+    for (int i = children.size() - 1; i >= 0; i--) {
+      if (children.get(i).getModificationCount() != modificationCounts[i]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Nullable
   @Override
   public DataBindingInfo getDataBindingInfoForLayout(String layoutName) {
@@ -153,11 +188,15 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   @NotNull
   @Override
   public Map<String, DataBindingInfo> getDataBindingResourceFiles() {
+    long modificationCount = getModificationCount();
+    DataBindingResourceFiles files = myDataBindingResourceFiles;
+    if (files != null && files.myModificationCount == modificationCount) {
+      return files.myFiles;
+    }
+
+    long startTimeNs = System.nanoTime();
     synchronized (ITEM_MAP_LOCK) {
-      long modificationCount = getModificationCount();
-      if (myDataBindingResourceFilesModificationCount == modificationCount) {
-        return myDataBindingResourceFiles;
-      }
+      lockAcquired(startTimeNs);
       Map<String, DataBindingInfo> selected = Maps.newHashMap();
       for (LocalResourceRepository child : myChildren) {
         Map<String, DataBindingInfo> childFiles = child.getDataBindingResourceFiles();
@@ -165,26 +204,34 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
           selected.putAll(childFiles);
         }
       }
-      myDataBindingResourceFiles = Collections.unmodifiableMap(selected);
-      myDataBindingResourceFilesModificationCount = modificationCount;
-      return myDataBindingResourceFiles;
+      files = new DataBindingResourceFiles(modificationCount, Collections.unmodifiableMap(selected));
+      myDataBindingResourceFiles = files;
+      return files.myFiles;
     }
   }
 
   @NotNull
   @Override
-  public synchronized Set<String> getNamespaces() {
+  public Set<String> getNamespaces() {
+    Set<String> namespaces = myCachedNamespaces;
+    if (namespaces != null) {
+      return namespaces;
+    }
+
+    long startTimeNs = System.nanoTime();
     synchronized (ITEM_MAP_LOCK) {
+      lockAcquired(startTimeNs);
       if (myCachedNamespaces == null) {
         if (myChildren.size() == 1) {
           myCachedNamespaces = myChildren.get(0).getNamespaces();
         } else {
-          myCachedNamespaces = new SmartHashSet<>();
+          namespaces = new SmartHashSet<>();
           for (LocalResourceRepository child : myChildren) {
             for (String namespace : child.getNamespaces()) {
-              myCachedNamespaces.add(ResourceNamespaces.normalizeNamespace(namespace));
+              namespaces.add(ResourceNamespaces.normalizeNamespace(namespace));
             }
           }
+          myCachedNamespaces = namespaces;
         }
       }
 
@@ -195,21 +242,29 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   @NonNull
   @Override
   protected ResourceTable getFullTable() {
+    ResourceTable fullTable = myFullTable;
+    if (fullTable != null) {
+      return fullTable;
+    }
+
+    long startTimeNs = System.nanoTime();
     synchronized (ITEM_MAP_LOCK) {
+      lockAcquired(startTimeNs);
       if (myFullTable == null) {
         if (myChildren.size() == 1) {
           myFullTable = myChildren.get(0).getItems();
         }
         else {
-          myFullTable = new ResourceTable();
+          fullTable = new ResourceTable();
           for (String namespace : getNamespaces()) {
             for (ResourceType type : ResourceType.values()) {
               ListMultimap<String, ResourceItem> map = getMap(namespace, type, false);
               if (map != null) {
-                myFullTable.put(namespace, type, map);
+                fullTable.put(namespace, type, map);
               }
             }
           }
+          myFullTable = fullTable;
         }
       }
 
@@ -222,28 +277,39 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   protected ListMultimap<String, ResourceItem> getMap(@Nullable String namespace,
                                                       @NonNull ResourceType type,
                                                       boolean create) {
+    // Should I assert !create here? If we try to manipulate the cache it won't work right...
+    ListMultimap<String, ResourceItem> map = myCachedMaps.get(namespace, type);
+    if (map != null) {
+      return map;
+    }
+
+    List<? extends LocalResourceRepository> children = myChildren;
+    if (children.size() == 1) {
+      LocalResourceRepository child = children.get(0);
+      if (child instanceof MultiResourceRepository) {
+        return ((MultiResourceRepository)child).getMap(namespace, type);
+      }
+      return child.getItems().get(namespace, type);
+    }
+
+    long startTimeNs = System.nanoTime();
     synchronized (ITEM_MAP_LOCK) {
-      // Should I assert !create here? If we try to manipulate the cache it won't work right...
-      ListMultimap<String, ResourceItem> map = myCachedMaps.get(namespace, type);
+      lockAcquired(startTimeNs);
+      map = myCachedMaps.get(namespace, type);
       if (map != null) {
         return map;
       }
 
-      if (myChildren.size() == 1) {
-        LocalResourceRepository child = myChildren.get(0);
-        if (child instanceof MultiResourceRepository) {
-          return ((MultiResourceRepository)child).getMap(namespace, type);
-        }
-        return child.getItems().get(namespace, type);
-      }
-
       map = ArrayListMultimap.create();
       Set<LocalResourceRepository> visited = Sets.newHashSet();
       SetMultimap<String, String> seenQualifiers = HashMultimap.create();
       // Merge all items of the given type
-      merge(visited, namespace, type, seenQualifiers, map);
+      merge(visited, namespace, type, null, seenQualifiers, map);
 
-      myCachedMaps.put(namespace, type, map);
+      ResourceTable cachedMaps = new ResourceTable();
+      cachedMaps.putAll(myCachedMaps);
+      cachedMaps.put(namespace, type, map);
+      myCachedMaps = cachedMaps;
 
       return map;
     }
@@ -253,30 +319,37 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
   protected void doMerge(@NotNull Set<LocalResourceRepository> visited,
                          @Nullable String namespace,
                          @NotNull ResourceType type,
+                         @Nullable String name,
                          @NotNull SetMultimap<String, String> seenQualifiers,
                          @NotNull ListMultimap<String, ResourceItem> result) {
     synchronized (ITEM_MAP_LOCK) {
       for (int i = myChildren.size() - 1; i >= 0; i--) {
-        myChildren.get(i).merge(visited, namespace, type, seenQualifiers, result);
+        myChildren.get(i).merge(visited, namespace, type, name, seenQualifiers, result);
       }
     }
   }
 
   @Override
   public boolean hasResourcesOfType(@NotNull ResourceType type) {
-    synchronized (ITEM_MAP_LOCK) {
-      if (myChildren.size() == 1) {
-        return myChildren.get(0).hasResourcesOfType(type);
-      }
+    List<? extends LocalResourceRepository> children = myChildren;
+    if (children.size() == 1) {
+      return children.get(0).hasResourcesOfType(type);
+    }
 
-      Boolean cachedResult = myCachedHasResourcesOfType.get(type);
-      if (cachedResult != null) {
-        return cachedResult;
-      }
+    Boolean cachedResult = myCachedHasResourcesOfType.get(type);
+    if (cachedResult != null) {
+      return cachedResult;
+    }
 
+    long startTimeNs = System.nanoTime();
+    synchronized (ITEM_MAP_LOCK) {
+      lockAcquired(startTimeNs);
       Set<LocalResourceRepository> visited = Sets.newHashSet();
       boolean result = computeHasResourcesOfType(type, visited);
-      myCachedHasResourcesOfType.put(type, result);
+      Map<ResourceType, Boolean> cachedHasResourcesOfType = Maps.newEnumMap(ResourceType.class);
+      cachedHasResourcesOfType.putAll(myCachedHasResourcesOfType);
+      cachedHasResourcesOfType.put(type, result);
+      myCachedHasResourcesOfType = cachedHasResourcesOfType;
       return result;
     }
   }
@@ -315,9 +388,10 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       assert myChildren.contains(repository) : repository;
 
       myCachedNamespaces = null;
-      myCachedMaps.clear();
-      myCachedHasResourcesOfType.clear();
+      myCachedMaps = new ResourceTable();
+      myCachedHasResourcesOfType = Collections.emptyMap();
       myFullTable = null;
+      myDataBindingResourceFiles = null;
       setModificationCount(ourModificationCounter.incrementAndGet());
 
       invalidateParentCaches();
@@ -332,14 +406,14 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     synchronized (ITEM_MAP_LOCK) {
       assert myChildren.contains(repository) : repository;
 
+      myCachedNamespaces = null;
+      ResourceTable cachedMaps = new ResourceTable();
+      cachedMaps.putAll(myCachedMaps);
       for (ResourceType type : types) {
-        myCachedNamespaces = null;
-        myCachedMaps.remove(namespace, type);
-
-        if (ResourceNamespaces.isDefaultNamespace(namespace)) {
-          myCachedHasResourcesOfType.remove(type);
-        }
+        cachedMaps.remove(namespace, type);
       }
+      myCachedMaps = cachedMaps;
+      invalidateHasResourcesOfType(namespace, types);
 
       myFullTable = null;
       setModificationCount(ourModificationCounter.incrementAndGet());
@@ -348,6 +422,53 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
     }
   }
 
+  /**
+   * Notifies this delegating repository that the given dependent repository has added, removed or replaced the resources of the given
+   * names, type and namespace. If the merged map of the type is cached, only the items of these names are merged again, into a copy of
+   * it that replaces it, since the published map may be read without the lock.
+   */
+  public void invalidateCache(@NotNull LocalResourceRepository repository,
+                              @Nullable String namespace,
+                              @NotNull ResourceType type,
+                              @NotNull Collection<String> names) {
+    synchronized (ITEM_MAP_LOCK) {
+      assert myChildren.contains(repository) : repository;
+
+      myCachedNamespaces = null;
+      ListMultimap<String, ResourceItem> cachedMap = myCachedMaps.get(namespace, type);
+      if (cachedMap != null) {
+        ListMultimap<String, ResourceItem> map = ArrayListMultimap.create(cachedMap);
+        for (String name : names) {
+          map.removeAll(name);
+          merge(Sets.newHashSet(), namespace, type, name, HashMultimap.create(), map);
+        }
+        ResourceTable cachedMaps = new ResourceTable();
+        cachedMaps.putAll(myCachedMaps);
+        cachedMaps.put(namespace, type, map);
+        myCachedMaps = cachedMaps;
+      }
+      // The full table holds the replaced map, if any. Building it again only collects the cached maps.
+      myFullTable = null;
+      invalidateHasResourcesOfType(namespace, type);
+
+      setModificationCount(ourModificationCounter.incrementAndGet());
+
+      invalidateParentCaches(namespace, type, names);
+    }
+  }
+
+  @GuardedBy("ITEM_MAP_LOCK")
+  private void invalidateHasResourcesOfType(@Nullable String namespace, @NotNull ResourceType... types) {
+    if (ResourceNamespaces.isDefaultNamespace(namespace)) {
+      Map<ResourceType, Boolean> cachedHasResourcesOfType = Maps.newEnumMap(ResourceType.class);
+      cachedHasResourcesOfType.putAll(myCachedHasResourcesOfType);
+      for (ResourceType type : types) {
+        cachedHasResourcesOfType.remove(type);
+      }
+      myCachedHasResourcesOfType = cachedHasResourcesOfType;
+    }
+  }
+
   @Override
   @VisibleForTesting
   public boolean isScanPending(@NonNull PsiFile psiFile) {
@@ -384,4 +505,34 @@ public abstract class MultiResourceRepository extends LocalResourceRepository {
       return result;
     }
   }
+
+  private static void lockAcquired(long startTimeNs) {
+    ourLockedReadCount.incrementAndGet();
+    ourLockWaitTimeNs.addAndGet(System.nanoTime() - startTimeNs);
+  }
+
+  /**
+   * Returns how many reads of merged resources, across all repositories, had to take {@code ITEM_MAP_LOCK} because the data wasn't
+   * cached yet. Along with {@link #getLockWaitTimeNs()}, this shows how much resource reads contend with each other and with updates.
+   */
+  public static long getLockedReadCount() {
+    return ourLockedReadCount.get();
+  }
+
+  /**
+   * Returns how long, in total, reads of merged resources waited to take {@code ITEM_MAP_LOCK}.
+   */
+  public static long getLockWaitTimeNs() {
+    return ourLockWaitTimeNs.get();
+  }
+
+  private static final class DataBindingResourceFiles {
+    private final long myModificationCount;
+    @NotNull private final Map<String, DataBindingInfo> myFiles;
+
+    private DataBindingResourceFiles(long modificationCount, @NotNull Map<String, DataBindingInfo> files) {
+      myModificationCount = modificationCount;
+      myFiles = files;
+    }
+  }
 }
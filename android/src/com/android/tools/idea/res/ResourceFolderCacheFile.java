@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.res2.DataFile;
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.android.utils.XmlUtils;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.*;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The file caching the items of the XML files of a resource directory, written by {@link ResourceFolderRepository} after its initial
+ * scan, so that the next scans don't need to parse the files that haven't changed since.
+ *
+ * <p>The file is memory-mapped and read lazily: opening it only checks its header, and the items of an XML file are only created when
+ * the scan asks for that file and its timestamp and length still match the cached ones. Items can't be materialized any later than
+ * that: the scan puts them in the repository's maps, and {@link ResourceItem} needs the DOM element of its value when it's created. It
+ * consists of:
+ * <ul>
+ *   <li>a header: {@link #MAGIC}, {@link #VERSION}, the counts of strings, files and items, and the string index of the resource
+ *   directory, to detect hash collisions in the names of the cache directories,</li>
+ *   <li>the offsets of the strings in the string data, as ints, so that strings are only decoded when needed,</li>
+ *   <li>one fixed-width record per file, sorted by path: the string indexes of the path relative to the resource directory, of the
+ *   XML holding the values of its items that contain markup, and of its {@link DataFile.FileType}, the last modification time and
+ *   length of the file, and its range of items,</li>
+ *   <li>one fixed-width record per item: the string indexes of its type and name, and how to create its value, if any. Values without
+ *   markup, like most strings, colors, dimensions and ids, are created from the string indexes of their tag, attributes and text, without
+ *   parsing any XML. Other values are referenced by their index among the elements of the file's values XML,</li>
+ *   <li>the string data, in UTF-8. All the names, types, paths, tags, attributes and texts are interned in it.</li>
+ * </ul>
+ */
+final class ResourceFolderCacheFile {
+  private static final Logger LOG = Logger.getInstance(ResourceFolderCacheFile.class);
+
+  static final String FILE_NAME = "resources.bin";
+
+  private static final int MAGIC = 0x52455343; // "RESC"
+  private static final int VERSION = 2;
+
+  private static final int HEADER_SIZE = 6 * 4;
+  private static final int FILE_RECORD_SIZE = 4 + 4 + 4 + 8 + 8 + 4 + 4;
+  private static final int ITEM_RECORD_SIZE = 6 * 4;
+  private static final int NO_STRING = -1;
+  private static final int NO_VALUE = -1;
+  /** Value index of the items whose value is stored as its tag, attributes and text. */
+  private static final int TEXT_VALUE = -2;
+  /** Separates the names and values of the attributes of a text value, which can't contain it. */
+  private static final char ATTRIBUTE_SEPARATOR = '\u0000';
+
+  private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = ThreadLocal.withInitial(() -> {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      return factory.newDocumentBuilder();
+    }
+    catch (ParserConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  });
+
+  @NotNull private final ByteBuffer myBuffer;
+  @NotNull private final File myResourceDir;
+  private final int myFileCount;
+  private final int myFileRecordsStart;
+  private final int myItemRecordsStart;
+  private final int myStringOffsetsStart;
+  private final int myStringDataStart;
+  @NotNull private final String[] myStrings;
+
+  private ResourceFolderCacheFile(@NotNull ByteBuffer buffer, @NotNull File resourceDir) throws IOException {
+    myBuffer = buffer;
+    myResourceDir = resourceDir;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a resource cache file of version " + VERSION);
+    }
+    int stringCount = buffer.getInt(8);
+    myFileCount = buffer.getInt(12);
+    int itemCount = buffer.getInt(16);
+    myStringOffsetsStart = HEADER_SIZE;
+    myFileRecordsStart = myStringOffsetsStart + (stringCount + 1) * 4;
+    myItemRecordsStart = myFileRecordsStart + myFileCount * FILE_RECORD_SIZE;
+    myStringDataStart = myItemRecordsStart + itemCount * ITEM_RECORD_SIZE;
+    if (stringCount < 0 || myFileCount < 0 || itemCount < 0 ||
+        (long)myStringDataStart + buffer.getInt(myStringOffsetsStart + stringCount * 4) != buffer.capacity()) {
+      throw new IOException("Truncated resource cache file");
+    }
+    myStrings = new String[stringCount];
+  }
+
+  /**
+   * Opens the cache file of the given resource directory, or returns null if there's none or if it can't be read.
+   */
+  @Nullable
+  static ResourceFolderCacheFile open(@NotNull File cacheFile, @NotNull File resourceDir) {
+    if (!cacheFile.isFile()) {
+      return null;
+    }
+    try {
+      ResourceFolderCacheFile cache = new ResourceFolderCacheFile(map(cacheFile), resourceDir);
+      // Check that the file actually corresponds to this resource directory.
+      // This could happen if there's a hash collision in naming the cache directory.
+      String cachedResourceDir = cache.getString(cache.myBuffer.getInt(20));
+      if (!FileUtil.filesEqual(new File(cachedResourceDir), resourceDir)) {
+        LOG.warn(String.format("source file %1$s, does not match resource dir %2$s", cachedResourceDir, resourceDir));
+        return null;
+      }
+      return cache;
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.warn("failed to load resource cache file " + cacheFile, e);
+      return null;
+    }
+  }
+
+  @NotNull
+  private static ByteBuffer map(@NotNull File file) throws IOException {
+    if (SystemInfo.isWindows) {
+      // A mapped file can't be replaced on Windows until the mapping is garbage collected, and the cache is written again after scans.
+      return ByteBuffer.wrap(FileUtil.loadFileBytes(file));
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Returns the cached items of the given XML file, in a {@link ResourceFile}, or null if the file isn't cached or has changed since.
+   */
+  @Nullable
+  ResourceFile loadFile(@NotNull File file,
+                        @NotNull String qualifiers,
+                        @NotNull FolderConfiguration folderConfiguration,
+                        @Nullable String namespace,
+                        @Nullable String libraryName) {
+    String path = FileUtil.getRelativePath(myResourceDir, file);
+    if (path == null) {
+      return null;
+    }
+    try {
+      int record = findFileRecord(FileUtil.toSystemIndependentName(path));
+      if (record < 0 || myBuffer.getLong(record + 12) != file.lastModified() || myBuffer.getLong(record + 20) != file.length()) {
+        return null;
+      }
+
+      Document document = null;
+      List<Element> values = Collections.emptyList();
+      int valuesString = myBuffer.getInt(record + 4);
+      if (valuesString != NO_STRING) {
+        document = XmlUtils.parseDocumentSilently(getString(valuesString), true);
+        if (document == null) {
+          return null;
+        }
+        values = getChildElements(document.getDocumentElement());
+      }
+
+      int firstItem = myBuffer.getInt(record + 28);
+      int itemCount = myBuffer.getInt(record + 32);
+      List<ResourceItem> items = new ArrayList<>(itemCount);
+      for (int i = firstItem; i < firstItem + itemCount; i++) {
+        int itemRecord = myItemRecordsStart + i * ITEM_RECORD_SIZE;
+        ResourceType type = ResourceType.getEnum(getString(myBuffer.getInt(itemRecord)));
+        if (type == null) {
+          return null;
+        }
+        int valueIndex = myBuffer.getInt(itemRecord + 8);
+        Node value;
+        if (valueIndex == NO_VALUE) {
+          value = null;
+        }
+        else if (valueIndex == TEXT_VALUE) {
+          if (document == null) {
+            document = DOCUMENT_BUILDER.get().newDocument();
+            document.appendChild(document.createElement("resources"));
+          }
+          value = createTextValue(document, itemRecord);
+        }
+        else {
+          value = values.get(valueIndex);
+        }
+        items.add(new ResourceItem(getString(myBuffer.getInt(itemRecord + 4)), namespace, type, value, libraryName));
+      }
+      return createResourceFile(file, getString(myBuffer.getInt(record + 8)), items, qualifiers, folderConfiguration);
+    }
+    catch (RuntimeException e) {
+      LOG.warn("failed to load " + file + " from the resource cache file", e);
+      return null;
+    }
+  }
+
+  /**
+   * Creates the value of an item stored as {@link #TEXT_VALUE} and adds it to the root element of the given document.
+   */
+  @NotNull
+  private Element createTextValue(@NotNull Document document, int itemRecord) {
+    Element element = document.createElement(getString(myBuffer.getInt(itemRecord + 12)));
+    String attributes = getString(myBuffer.getInt(itemRecord + 16));
+    if (!attributes.isEmpty()) {
+      int start = 0;
+      while (start < attributes.length()) {
+        int nameEnd = attributes.indexOf(ATTRIBUTE_SEPARATOR, start);
+        int valueEnd = attributes.indexOf(ATTRIBUTE_SEPARATOR, nameEnd + 1);
+        element.setAttribute(attributes.substring(start, nameEnd), attributes.substring(nameEnd + 1, valueEnd));
+        start = valueEnd + 1;
+      }
+    }
+    String text = getString(myBuffer.getInt(itemRecord + 20));
+    if (!text.isEmpty()) {
+      element.appendChild(document.createTextNode(text));
+    }
+    document.getDocumentElement().appendChild(element);
+    return element;
+  }
+
+  /**
+   * Creates the {@link ResourceFile} of the given items with the source type the file was parsed with, which tells apart values files,
+   * files defining a single resource, and files that also define ids.
+   */
+  @Nullable
+  private static ResourceFile createResourceFile(@NotNull File file,
+                                                 @NotNull String fileType,
+                                                 @NotNull List<ResourceItem> items,
+                                                 @NotNull String qualifiers,
+                                                 @NotNull FolderConfiguration folderConfiguration) {
+    switch (DataFile.FileType.valueOf(fileType)) {
+      case SINGLE_FILE:
+        return items.size() == 1 ? new ResourceFile(file, items.get(0), qualifiers, folderConfiguration) : null;
+      case GENERATED_FILES:
+        return ResourceFile.generatedFiles(file, items, qualifiers, folderConfiguration);
+      case XML_VALUES:
+        return new ResourceFile(file, items, qualifiers, folderConfiguration);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the offset of the record of the given file, or -1 if it's not cached.
+   */
+  private int findFileRecord(@NotNull String path) {
+    int low = 0;
+    int high = myFileCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int record = myFileRecordsStart + mid * FILE_RECORD_SIZE;
+      int comparison = getString(myBuffer.getInt(record)).compareTo(path);
+      if (comparison < 0) {
+        low = mid + 1;
+      }
+      else if (comparison > 0) {
+        high = mid - 1;
+      }
+      else {
+        return record;
+      }
+    }
+    return -1;
+  }
+
+  @NotNull
+  private String getString(int index) {
+    String string = myStrings[index];
+    if (string == null) {
+      int start = myBuffer.getInt(myStringOffsetsStart + index * 4);
+      int end = myBuffer.getInt(myStringOffsetsStart + (index + 1) * 4);
+      byte[] bytes = new byte[end - start];
+      ByteBuffer data = myBuffer.duplicate();
+      data.position(myStringDataStart + start);
+      data.get(bytes);
+      string = new String(bytes, StandardCharsets.UTF_8);
+      myStrings[index] = string;
+    }
+    return string;
+  }
+
+  @NotNull
+  private static List<Element> getChildElements(@NotNull Element parent) {
+    List<Element> elements = new ArrayList<>();
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        elements.add((Element)child);
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Writes the cache file of the given resource directory, with the items of the given XML files. The files must not have changed
+   * since they were parsed, as their current timestamps and lengths are recorded.
+   */
+  static void write(@NotNull File cacheFile, @NotNull File resourceDir, @NotNull Collection<ResourceFile> resourceFiles)
+    throws IOException {
+    StringTable strings = new StringTable();
+    Map<String, ResourceFile> filesByPath = new TreeMap<>();
+    for (ResourceFile resourceFile : resourceFiles) {
+      String path = FileUtil.getRelativePath(resourceDir, resourceFile.getFile());
+      if (path != null) {
+        filesByPath.put(FileUtil.toSystemIndependentName(path), resourceFile);
+      }
+    }
+
+    ByteArrayOutputStream fileRecords = new ByteArrayOutputStream();
+    DataOutputStream fileOut = new DataOutputStream(fileRecords);
+    ByteArrayOutputStream itemRecords = new ByteArrayOutputStream();
+    DataOutputStream itemOut = new DataOutputStream(itemRecords);
+    int itemCount = 0;
+    for (Map.Entry<String, ResourceFile> entry : filesByPath.entrySet()) {
+      File file = entry.getValue().getFile();
+      Collection<ResourceItem> items = entry.getValue().getItems();
+      Document values = null;
+      fileOut.writeInt(strings.intern(entry.getKey()));
+      int valueCount = 0;
+      for (ResourceItem item : items) {
+        itemOut.writeInt(strings.intern(item.getType().getName()));
+        itemOut.writeInt(strings.intern(item.getName()));
+        Node value = item.getValue();
+        if (value == null) {
+          itemOut.writeInt(NO_VALUE);
+          writeNoStrings(itemOut, 3);
+        }
+        else if (isTextValue(value)) {
+          itemOut.writeInt(TEXT_VALUE);
+          itemOut.writeInt(strings.intern(value.getNodeName()));
+          itemOut.writeInt(strings.intern(encodeAttributes(value.getAttributes())));
+          itemOut.writeInt(strings.intern(value.getTextContent()));
+        }
+        else {
+          if (values == null) {
+            values = createValuesDocument(value.getOwnerDocument());
+          }
+          values.getDocumentElement().appendChild(values.importNode(value, true));
+          itemOut.writeInt(valueCount++);
+          writeNoStrings(itemOut, 3);
+        }
+      }
+      fileOut.writeInt(values == null ? NO_STRING : strings.intern(XmlUtils.toXml(values)));
+      fileOut.writeInt(strings.intern(entry.getValue().getType().name()));
+      fileOut.writeLong(file.lastModified());
+      fileOut.writeLong(file.length());
+      fileOut.writeInt(itemCount);
+      fileOut.writeInt(items.size());
+      itemCount += items.size();
+    }
+    int resourceDirString = strings.intern(resourceDir.getPath());
+
+    File tempFile = new File(cacheFile.getPath() + ".tmp");
+    FileUtil.createParentDirs(tempFile);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(strings.myStrings.size());
+      out.writeInt(filesByPath.size());
+      out.writeInt(itemCount);
+      out.writeInt(resourceDirString);
+      strings.writeOffsets(out);
+      fileRecords.writeTo(out);
+      itemRecords.writeTo(out);
+      strings.myStringData.writeTo(out);
+    }
+    FileUtil.rename(tempFile, cacheFile);
+  }
+
+  private static void writeNoStrings(@NotNull DataOutputStream out, int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      out.writeInt(NO_STRING);
+    }
+  }
+
+  /**
+   * Returns whether the given value is an element with only text content and attributes without namespaces, which
+   * {@link #createTextValue} can create again from its tag, attributes and text.
+   */
+  private static boolean isTextValue(@NotNull Node value) {
+    if (value.getNodeType() != Node.ELEMENT_NODE || value.getNamespaceURI() != null || value.getNodeName().indexOf(':') >= 0) {
+      return false;
+    }
+    NamedNodeMap attributes = value.getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node attribute = attributes.item(i);
+      if (attribute.getNamespaceURI() != null || attribute.getNodeName().indexOf(':') >= 0) {
+        return false;
+      }
+    }
+    for (Node child = value.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() != Node.TEXT_NODE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String encodeAttributes(@NotNull NamedNodeMap attributes) {
+    StringBuilder encoded = new StringBuilder();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Node attribute = attributes.item(i);
+      encoded.append(attribute.getNodeName()).append(ATTRIBUTE_SEPARATOR).append(attribute.getNodeValue()).append(ATTRIBUTE_SEPARATOR);
+    }
+    return encoded.toString();
+  }
+
+  /**
+   * Returns a document whose root element declares the same namespaces as the one of the given document, to hold values copied from it.
+   */
+  @NotNull
+  private static Document createValuesDocument(@NotNull Document source) {
+    Document document = DOCUMENT_BUILDER.get().newDocument();
+    Element root = document.createElement("resources");
+    document.appendChild(root);
+    NamedNodeMap attributes = source.getDocumentElement().getAttributes();
+    for (int i = 0; i < attributes.getLength(); i++) {
+      Attr attribute = (Attr)attributes.item(i);
+      if (attribute.getName().startsWith("xmlns")) {
+        root.setAttributeNS(attribute.getNamespaceURI(), attribute.getName(), attribute.getValue());
+      }
+    }
+    return document;
+  }
+
+  /**
+   * Interns the strings of the file and accumulates their UTF-8 data.
+   */
+  private static final class StringTable {
+    private final Map<String, Integer> myIndexes = new HashMap<>();
+    private final List<String> myStrings = new ArrayList<>();
+    private final ByteArrayOutputStream myStringData = new ByteArrayOutputStream();
+    private final List<Integer> myOffsets = new ArrayList<>();
+
+    private int intern(@NotNull String string) {
+      Integer index = myIndexes.get(string);
+      if (index == null) {
+        index = myStrings.size();
+        myIndexes.put(string, index);
+        myStrings.add(string);
+        myOffsets.add(myStringData.size());
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        myStringData.write(bytes, 0, bytes.length);
+      }
+      return index;
+    }
+
+    private void writeOffsets(@NotNull DataOutputStream out) throws IOException {
+      for (int offset : myOffsets) {
+        out.writeInt(offset);
+      }
+      out.writeInt(myStringData.size());
+    }
+  }
+}
@@ -15,13 +15,18 @@
  */
 package com.android.tools.idea.res;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.intellij.facet.ProjectFacetManager;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ex.ApplicationManagerEx;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
-import com.intellij.openapi.project.DumbModeTask;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.io.FileUtil;
@@ -36,16 +41,37 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Keeps the {@link ResourceFolderRepository} of each resource directory, so that all the modules depending on a resource directory share
+ * the same repository.
+ *
+ * <p>On project open, {@link PopulateCachesTask} schedules the creation of the repositories of all the resource directories of the project
+ * on a bounded pool. Until a scheduled repository is created, {@link #get} looks it up in the pending scans: it runs the scan itself if no
+ * pool thread has started it yet, and otherwise waits for it, so callers only wait for the directories they actually need. A directory
+ * that isn't scheduled is scanned by the first caller of {@link #get}, as a pending scan that the other callers wait for. Scans never run
+ * under the registry's lock.
+ */
 public class ResourceFolderRegistry {
+  private static final Logger LOG = Logger.getInstance(ResourceFolderRegistry.class);
+
   private final static Object DIR_MAP_LOCK = new Object();
 
+  /** How long to wait for a scan running on another thread before checking for cancellation and pending write actions again. */
+  private static final long SCAN_WAIT_SLICE_MS = 10;
+
   @GuardedBy("DIR_MAP_LOCK")
   private final static Map<VirtualFile, ResourceFolderRepository> ourDirMap = Maps.newHashMap();
 
+  @GuardedBy("DIR_MAP_LOCK")
+  private final static Map<VirtualFile, FutureTask<ResourceFolderRepository>> ourPendingScans = Maps.newHashMap();
+
   public static void reset() {
     synchronized (DIR_MAP_LOCK) {
       for (Map.Entry<VirtualFile, ResourceFolderRepository> entry : ourDirMap.entrySet()) {
@@ -55,6 +81,11 @@ public class ResourceFolderRegistry {
         PsiProjectListener.removeRoot(project, dir, repository);
       }
       ourDirMap.clear();
+      // Scans already running finish, but their repositories are dropped since they're no longer pending.
+      for (FutureTask<ResourceFolderRepository> scan : ourPendingScans.values()) {
+        scan.cancel(false);
+      }
+      ourPendingScans.clear();
     }
   }
 
@@ -68,45 +99,150 @@ public class ResourceFolderRegistry {
   public static ResourceFolderRepository get(@NotNull final AndroidFacet facet,
                                              @NotNull final VirtualFile dir,
                                              @Nullable String namespace) {
+    Project project = facet.getModule().getProject();
+    FutureTask<ResourceFolderRepository> scan;
     synchronized (DIR_MAP_LOCK) {
       ResourceFolderRepository repository = ourDirMap.get(dir);
-      if (repository == null) {
-        Project project = facet.getModule().getProject();
+      if (repository != null) {
+        return repository;
+      }
+      scan = ourPendingScans.get(dir);
+      if (scan == null) {
         // TODO: namespaces: use the namespace as the cache key.
-        repository = ResourceFolderRepository.create(facet, dir, namespace);
-        putRepositoryInCache(project, dir, repository);
+        scan = createScan(project, facet, dir, namespace);
+        ourPendingScans.put(dir, scan);
       }
+    }
+
+    ResourceFolderRepository repository = awaitScan(dir, scan);
+    if (repository != null) {
       return repository;
     }
+
+    // The scan failed, the registry was reset, or the scan runs on a thread the current one can't wait for.
+    repository = ResourceFolderRepository.create(facet, dir, namespace);
+    ResourceFolderRepository registered = putRepositoryInCache(project, dir, repository);
+    if (registered != repository) {
+      Disposer.dispose(repository);
+    }
+    return registered;
   }
 
-  private static void putRepositoryInCache(@NotNull Project project, @NotNull final VirtualFile dir,
-                                           @NotNull ResourceFolderRepository repository) {
-    PsiProjectListener.addRoot(project, dir, repository);
-    // Some of the resources in the ResourceFolderRepository might actually contain pointers to the Project instance so we need
-    // to make sure we invalidate those whenever the project is closed.
-    Disposer.register(project, () -> {
-      ResourceFolderRepository repositoryFromMap;
+  /**
+   * Returns a scan creating the repository of the given directory and registering it, unless the scan is no longer pending by then. A
+   * repository that isn't registered is disposed.
+   */
+  @NotNull
+  private static FutureTask<ResourceFolderRepository> createScan(@NotNull Project project,
+                                                                 @NotNull AndroidFacet facet,
+                                                                 @NotNull VirtualFile dir,
+                                                                 @Nullable String namespace) {
+    return new FutureTask<>(() -> {
+      if (project.isDisposed() || facet.isDisposed()) {
+        return null;
+      }
+      ResourceFolderRepository repository = ResourceFolderRepository.create(facet, dir, namespace);
+      ResourceFolderRepository registered = null;
       synchronized (DIR_MAP_LOCK) {
-        repositoryFromMap = ourDirMap.remove(dir);
+        // The registry may have been reset while scanning.
+        if (ourPendingScans.containsKey(dir)) {
+          registered = putRepositoryInCache(project, dir, repository);
+        }
       }
-      if (repositoryFromMap != null) {
-        Disposer.dispose(repositoryFromMap);
+      if (registered != repository) {
+        Disposer.dispose(repository);
       }
+      return registered;
     });
+  }
+
+  /**
+   * Returns the repository created by a pending scan, running the scan on the current thread if it hasn't started yet. Returns null if
+   * the scan failed or was cancelled, or if it runs on another thread and the current thread can't wait for it.
+   */
+  @Nullable
+  private static ResourceFolderRepository awaitScan(@NotNull VirtualFile dir, @NotNull FutureTask<ResourceFolderRepository> scan) {
+    // Does nothing if the scan has already started on another thread.
+    scan.run();
+    try {
+      while (true) {
+        try {
+          return scan.get(SCAN_WAIT_SLICE_MS, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+          ProgressManager.checkCanceled();
+          if (!canWaitForScan()) {
+            return null;
+          }
+        }
+      }
+    }
+    catch (ExecutionException e) {
+      removePendingScan(dir, scan);
+      // A cancelled scan is run again by the caller, which throws if the current thread is the one that was cancelled.
+      if (!(e.getCause() instanceof ProcessCanceledException)) {
+        LOG.warn("Failed to scan resource directory", e.getCause());
+      }
+      return null;
+    }
+    catch (CancellationException e) {
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
 
+  private static void removePendingScan(@NotNull VirtualFile dir, @NotNull FutureTask<ResourceFolderRepository> scan) {
     synchronized (DIR_MAP_LOCK) {
-      ourDirMap.put(dir, repository);
+      ourPendingScans.remove(dir, scan);
     }
   }
 
   /**
-   * Filter out directories that are already cached in the registry.
-   * @param resDirectories
+   * Scans take short read actions, so a thread can only wait for a scan running on another thread if that can't keep a write action from
+   * starting or finishing: write actions run on the UI thread, and a pending write action keeps other threads from starting read actions
+   * until the read actions already running, like the current thread's, are done.
    */
-  private static void filterOutCached(Map<VirtualFile, AndroidFacet> resDirectories) {
+  private static boolean canWaitForScan() {
+    Application application = ApplicationManager.getApplication();
+    if (application.isWriteAccessAllowed()) {
+      return false;
+    }
+    return application.isDispatchThread() ||
+           !application.isReadAccessAllowed() ||
+           !ApplicationManagerEx.getApplicationEx().isWriteActionPending();
+  }
+
+  /**
+   * Registers the repository of the given directory unless a repository has been registered for it in the meantime, and returns the
+   * registered one.
+   */
+  @NotNull
+  private static ResourceFolderRepository putRepositoryInCache(@NotNull Project project, @NotNull final VirtualFile dir,
+                                                               @NotNull ResourceFolderRepository repository) {
     synchronized (DIR_MAP_LOCK) {
-      resDirectories.keySet().removeAll(ourDirMap.keySet());
+      ourPendingScans.remove(dir);
+      ResourceFolderRepository registered = ourDirMap.get(dir);
+      if (registered != null) {
+        return registered;
+      }
+
+      PsiProjectListener.addRoot(project, dir, repository);
+      // Some of the resources in the ResourceFolderRepository might actually contain pointers to the Project instance so we need
+      // to make sure we invalidate those whenever the project is closed.
+      Disposer.register(project, () -> {
+        ResourceFolderRepository repositoryFromMap;
+        synchronized (DIR_MAP_LOCK) {
+          repositoryFromMap = ourDirMap.remove(dir);
+        }
+        if (repositoryFromMap != null) {
+          Disposer.dispose(repositoryFromMap);
+        }
+      });
+      ourDirMap.put(dir, repository);
+      return repository;
     }
   }
 
@@ -129,33 +265,57 @@ public class ResourceFolderRegistry {
     return resDirectories;
   }
 
+  /**
+   * Schedules the creation of the repositories of the given resource directories which aren't registered or pending yet on the given
+   * executor, and returns the scheduled scans.
+   */
+  @VisibleForTesting
+  @NotNull
+  static List<FutureTask<ResourceFolderRepository>> scheduleScans(@NotNull Project project,
+                                                                  @NotNull Map<VirtualFile, AndroidFacet> resDirectories,
+                                                                  @NotNull Executor executor) {
+    List<FutureTask<ResourceFolderRepository>> scans = Lists.newArrayList();
+    synchronized (DIR_MAP_LOCK) {
+      for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
+        VirtualFile dir = entry.getKey();
+        AndroidFacet facet = entry.getValue();
+        if (ourDirMap.containsKey(dir) || ourPendingScans.containsKey(dir)) {
+          continue;
+        }
+        FutureTask<ResourceFolderRepository> scan = createScan(project, facet, dir, null);
+        ourPendingScans.put(dir, scan);
+        scans.add(scan);
+      }
+    }
+    for (FutureTask<ResourceFolderRepository> scan : scans) {
+      executor.execute(scan);
+    }
+    return scans;
+  }
+
   /**
    * Populate the registry's in-memory ResourceFolderRepository caches (if not already cached).
+   *
+   * <p>The repositories are created in the background rather than in dumb mode, since scanning doesn't use indices and the IDE doesn't
+   * need to wait for all of them. Modules that need their resources before the task is done wait only for their own directories.
    */
-  public static class PopulateCachesTask extends DumbModeTask {
+  public static class PopulateCachesTask extends Task.Backgroundable {
     @NotNull private final Project myProject;
 
     public PopulateCachesTask(@NotNull Project project) {
+      super(project, "Loading resources", true);
       myProject = project;
     }
 
     @Override
-    public void performInDumbMode(@NotNull ProgressIndicator indicator) {
-      List<AndroidFacet> facets = ProjectFacetManager.getInstance(myProject).getFacets(AndroidFacet.ID);
+    public void run(@NotNull ProgressIndicator indicator) {
+      Project project = myProject;
+      List<AndroidFacet> facets = ProjectFacetManager.getInstance(project).getFacets(AndroidFacet.ID);
       if (facets.isEmpty()) {
         return;
       }
-      // Some directories in the registry may already be populated by this point, so filter them out.
-      indicator.setText("Indexing resources");
-      indicator.setIndeterminate(false);
-      Map<VirtualFile, AndroidFacet> resDirectories = getResourceDirectoriesForFacets(facets);
-      filterOutCached(resDirectories);
-      // Might already be done, as there can be a race for filling the memory caches.
-      if (resDirectories.isEmpty()) {
-        return;
-      }
       // Make sure the cache root is created before parallel execution to avoid racing to create the root.
-      Path projectCacheRoot = ResourceFolderRepositoryFileCacheService.get().getProjectDir(myProject);
+      Path projectCacheRoot = ResourceFolderRepositoryFileCacheService.get().getProjectDir(project);
       if (projectCacheRoot == null) {
         return;
       }
@@ -165,55 +325,44 @@ public class ResourceFolderRegistry {
       catch (IOException e) {
         return;
       }
-      Application application = ApplicationManager.getApplication();
-      List<ResourceFolderRepository> repositories;
-      // Beware if the current thread is holding the write lock. The current thread will
-      // end up waiting for helper threads to finish, and the helper threads will be
-      // acquiring a read lock (which would then block because of the write lock).
-      assert !application.isWriteAccessAllowed();
-      repositories = executeParallel(indicator, resDirectories);
-      for (ResourceFolderRepository repository : repositories) {
-        putRepositoryInCache(myProject, repository.getResourceDir(), repository);
-      }
-    }
-
-    private static List<ResourceFolderRepository> executeParallel(@NotNull ProgressIndicator indicator,
-                                                                  @NotNull Map<VirtualFile, AndroidFacet> resDirectories) {
-      int numDone = 0;
-      List<ResourceFolderRepository> repositories = Lists.newArrayList();
+      indicator.setIndeterminate(false);
+      Map<VirtualFile, AndroidFacet> resDirectories = getResourceDirectoriesForFacets(facets);
       // Cap the threads to 4 for now. Scaling is okay from 1 to 2, but not necessarily much better as we go higher.
       int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
-      ExecutorService
-        parallelExecutor = AppExecutorUtil.createBoundedApplicationPoolExecutor("ResourceFolderRegistry", maxThreads);
-      List<Future<ResourceFolderRepository>> repositoryJobs = Lists.newArrayList();
-      for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
-        repositoryJobs.add(queueRepositoryFuture(parallelExecutor, entry.getValue(), entry.getKey()));
-      }
-      for (Future<ResourceFolderRepository> job : repositoryJobs) {
+      Executor executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("ResourceFolderRegistry", maxThreads);
+      List<FutureTask<ResourceFolderRepository>> scans = scheduleScans(project, resDirectories, executor);
+
+      int numDone = 0;
+      for (FutureTask<ResourceFolderRepository> scan : scans) {
         if (indicator.isCanceled()) {
+          // Leave the remaining directories to be scanned when they're needed.
+          cancelScans(scans);
           break;
         }
-        indicator.setFraction((double)numDone / resDirectories.size());
+        indicator.setFraction((double)numDone / scans.size());
         try {
-          repositories.add(job.get());
+          scan.get();
         }
-        catch (ExecutionException e) {
-          // If we get an exception, that's okay -- we stop pre-populating the cache, which is just for performance.
+        catch (ExecutionException | CancellationException e) {
+          // If a scan fails, the directory is scanned again when it's needed; pre-populating the cache is just for performance.
         }
         catch (InterruptedException e) {
           Thread.currentThread().interrupt();
+          cancelScans(scans);
+          break;
         }
         ++numDone;
       }
-      return repositories;
     }
 
-    private static Future<ResourceFolderRepository> queueRepositoryFuture(
-      @NotNull final ExecutorService myParallelBuildExecutor,
-      @NotNull final AndroidFacet facet,
-      @NotNull final VirtualFile dir) {
-      return myParallelBuildExecutor.submit(() -> ResourceFolderRepository.create(facet, dir, null));
+    private static void cancelScans(@NotNull List<FutureTask<ResourceFolderRepository>> scans) {
+      synchronized (DIR_MAP_LOCK) {
+        for (FutureTask<ResourceFolderRepository> scan : scans) {
+          if (scan.cancel(false)) {
+            ourPendingScans.values().remove(scan);
+          }
+        }
+      }
     }
   }
-
 }
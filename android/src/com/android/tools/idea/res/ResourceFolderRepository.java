@@ -30,6 +30,7 @@ import com.android.tools.idea.model.MergedManifest;
 import com.android.tools.idea.log.LogWrapper;
 import com.android.tools.lint.detector.api.LintUtils;
 import com.android.utils.ILogger;
+import com.android.utils.SdkUtils;
 import com.google.common.collect.*;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
@@ -118,15 +119,14 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     myResourceDir = resourceDir;
     myNamespace = namespace;
 
-    ResourceMerger merger = loadPreviousStateIfExists();
-    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir));
+    myInitialScanState = new InitialScanState(createFreshResourceMerger(), VfsUtilCore.virtualToIoFile(myResourceDir), loadCacheFile());
     scanRemainingFiles();
     Application app = ApplicationManager.getApplication();
     // For now, automatically save the state. We may want to move this out to a separate task.
     if (!hasFreshFileCache() && !app.isUnitTestMode()) {
       saveStateToFile();
     }
-    // Clear some unneeded state (myInitialScanState's resource merger holds a second map of items).
+    // Clear some unneeded state (myInitialScanState's resource merger holds a second map of items, and it holds the cache file).
     // Skip for unit tests, which may need to test saving separately (saving is normally skipped for unit tests).
     if (!app.isUnitTestMode()) {
       myInitialScanState = null;
@@ -157,8 +157,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   }
 
   /**
-   * Saves the non-Psi XML state as a single blob for faster loading the second time
-   * by {@link #loadPreviousStateIfExists}.
+   * Saves the non-Psi XML state to a {@link ResourceFolderCacheFile} for faster loading the second time
+   * by {@link #loadCacheFile}.
    */
   void saveStateToFile() {
     File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
@@ -167,18 +167,17 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       return;
     }
 
-    try {
-      ResourcePreprocessor preprocessor = NoOpResourcePreprocessor.INSTANCE;
-      File tempDirectory = FileUtil.createTempDirectory("resource", "tmp", false);
-      try {
-        MergeConsumer<ResourceItem> consumer = MergedResourceWriter.createWriterWithoutPngCruncher(
-          blobRoot, null, null, preprocessor, tempDirectory);
-        myInitialScanState.myResourceMerger.writeBlobToWithTimestamps(blobRoot, consumer);
-      } finally {
-        FileUtil.delete(tempDirectory);
+    List<ResourceFile> resourceFiles = new ArrayList<>();
+    for (ResourceFile resourceFile : myResourceFiles.values()) {
+      if (isCacheable(resourceFile)) {
+        resourceFiles.add(resourceFile);
       }
     }
-    catch (MergingException|IOException e) {
+    try {
+      ResourceFolderCacheFile.write(new File(blobRoot, ResourceFolderCacheFile.FILE_NAME), VfsUtilCore.virtualToIoFile(myResourceDir),
+                                    resourceFiles);
+    }
+    catch (IOException e) {
       LOG.error("Failed to saveStateToFile", e);
       // Delete the blob root just in case it's in an inconsistent state.
       FileUtil.delete(blobRoot);
@@ -186,76 +185,29 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   }
 
   /**
-   * Reloads ResourceFile and ResourceItems which have not changed since the last {@link #saveStateToFile}.
-   * Some Resource file and items may not be covered, so {@link #scanRemainingFiles} should be run
-   * to load the rest of the items.
-   *
-   * @return the loaded ResourceMerger -- this can be used to save state again, if the cache isn't fresh
+   * Returns whether the items of the given file are saved by {@link #saveStateToFile}: those parsed from XML files without Psi. Non-XML
+   * single-file items are easily derived from the file path, and it's not yet safe to save the items of density-based resources: their
+   * ResourceValue should be an instance of DensityBasedResourceValue, but nothing is saved to indicate that.
    */
-  private ResourceMerger loadPreviousStateIfExists() {
-    File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(
-      myModule.getProject(), myResourceDir);
-    if (blobRoot == null || !blobRoot.exists()) {
-      return createFreshResourceMerger();
-    }
-    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    // This load may fail if the data is in an inconsistent state or the xml contains illegal
-    // resource names, which the Psi parser would otherwise allow, so load failures are not
-    // strictly an error.
-    // loadFromBlob will check timestamps for stale data and skip.
-    try {
-      if (!merger.loadFromBlob(blobRoot, false)) {
-        LOG.warn("failed to loadPreviousStateIfExists " + blobRoot);
-        return createFreshResourceMerger();
-      }
-    }
-    catch (MergingException e) {
-      LOG.warn("failed to loadPreviousStateIfExists " + blobRoot, e);
-      return createFreshResourceMerger();
-    }
-    // This temp resourceFiles set is just to avoid calling VfsUtil#findFileByIoFile a ton.
-    Set<ResourceFile> resourceFiles = Sets.newHashSet();
-    List<ResourceSet> resourceSets = merger.getDataSets();
-    if (resourceSets.size() != 1) {
-      LOG.error("Expecting exactly one resource set, but found " + resourceSets.size());
-      return createFreshResourceMerger();
-    }
-    ResourceSet dataSet = resourceSets.get(0);
-    List<File> sourceFiles = dataSet.getSourceFiles();
-    if (sourceFiles.size() != 1) {
-      LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
-      return createFreshResourceMerger();
+  private static boolean isCacheable(@NotNull ResourceFile resourceFile) {
+    if (resourceFile instanceof PsiResourceFile || !SdkUtils.endsWithIgnoreCase(resourceFile.getFile().getPath(), DOT_XML)) {
+      return false;
     }
-    File myResourceDirFile = VfsUtilCore.virtualToIoFile(myResourceDir);
-    // Check that the dataSet we're loading actually corresponds to this resource directory.
-    // This could happen if there's a hash collision in naming the cache directory.
-    if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
-      LOG.warn(String.format("source file %1$s, does not match resource dir %2$s",
-                             sourceFiles.get(0), myResourceDirFile));
-      return createFreshResourceMerger();
-    }
-    for (Map.Entry<String, ResourceItem> entry : dataSet.getDataMap().entries()) {
-      ResourceItem item = entry.getValue();
-      ResourceFile file = item.getSource();
-      if (file != null) {
-        if (!resourceFiles.contains(file)) {
-          VirtualFile vFile = VfsUtil.findFileByIoFile(file.getFile(), false);
-          if (vFile == null) {
-            // Cannot handle this item, mark it ignored to that it doesn't persist.
-            item.setIgnoredFromDiskMerge(true);
-            continue;
-          }
-          resourceFiles.add(file);
-          myResourceFiles.put(vFile, file);
-        }
-        ListMultimap<String, ResourceItem> map = getMap(myNamespace, item.getType(), true);
-        map.put(item.getName(), item);
-      } else {
-        // Cannot handle this item, mark it ignored to that it doesn't persist.
-        item.setIgnoredFromDiskMerge(true);
-      }
+    ResourceFolderType folderType = ResourceFolderType.getFolderType(resourceFile.getFile().getParentFile().getName());
+    return folderType != null && folderType != DRAWABLE && folderType != MIPMAP;
+  }
+
+  /**
+   * Opens the file saved by the last {@link #saveStateToFile}, from which the items of the XML files which have not changed since are
+   * loaded during the scan, or returns null if there's none.
+   */
+  @Nullable
+  private ResourceFolderCacheFile loadCacheFile() {
+    File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
+    if (blobRoot == null) {
+      return null;
     }
-    return merger;
+    return ResourceFolderCacheFile.open(new File(blobRoot, ResourceFolderCacheFile.FILE_NAME), VfsUtilCore.virtualToIoFile(myResourceDir));
   }
 
   private ResourceMerger createFreshResourceMerger() {
@@ -285,6 +237,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
    *
    * This also tracks how fresh the repo file-cache is by tracking how many xml file were reparsed during scan.
    * The file cache omits non-XML single-file items, since those are easily derived from the file path.
+   * XML files whose items are loaded from the file cache count as cache hits, and XML files parsed as cache misses.
    */
   static class InitialScanState {
     int numXml; // Doesn't count files that are explicitly skipped
@@ -294,10 +247,11 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     final ResourceSet myResourceSet;
     final ILogger myILogger;
     final File myResourceDir;
+    @Nullable final ResourceFolderCacheFile myCacheFile;
     final Collection<PsiFileResourceQueueEntry> myPsiFileResourceQueue = new ArrayList<>();
     final Collection<PsiValueResourceQueueEntry> myPsiValueResourceQueue = new ArrayList<>();
 
-    InitialScanState(ResourceMerger merger, File resourceDir) {
+    InitialScanState(ResourceMerger merger, File resourceDir, @Nullable ResourceFolderCacheFile cacheFile) {
       myResourceMerger = merger;
       assert myResourceMerger.getDataSets().size() == 1;
       myResourceSet = myResourceMerger.getDataSets().get(0);
@@ -306,6 +260,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       myResourceSet.setTrackSourcePositions(false);
       myILogger = new LogWrapper(LOG).alwaysLogAsDebug(true).allowVerbose(false);
       myResourceDir = resourceDir;
+      myCacheFile = cacheFile;
     }
 
     public void countCacheHit() {
@@ -329,6 +284,18 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       return myResourceSet.loadFile(myResourceDir, file, myILogger);
     }
 
+    /**
+     * Returns the items of the given XML file loaded from the file cache, or null if the file isn't cached or has changed since.
+     */
+    @Nullable
+    ResourceFile loadCachedFile(File file,
+                                String qualifiers,
+                                FolderConfiguration folderConfiguration,
+                                @Nullable String namespace,
+                                @Nullable String libraryName) {
+      return myCacheFile == null ? null : myCacheFile.loadFile(file, qualifiers, folderConfiguration, namespace, libraryName);
+    }
+
     public void queuePsiFileResourceScan(PsiFileResourceQueueEntry data) {
       myPsiFileResourceQueue.add(data);
     }
@@ -525,20 +492,29 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         return;
       }
       try {
-        resourceFile = myInitialScanState.loadFile(VfsUtilCore.virtualToIoFile(file));
-        if (resourceFile == null) {
-          // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
-          myInitialScanState.queuePsiFileResourceScan(
-            new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
-          return;
-        }
-        ListMultimap<String, ResourceItem> idMap = getMap(myNamespace, ResourceType.ID, true);
+        File ioFile = VfsUtilCore.virtualToIoFile(file);
         boolean isDensityBasedResource = folderType == DRAWABLE || folderType == MIPMAP;
-        // We skip caching density-based resources, so don't count those against cache statistics.
-        if (!isDensityBasedResource) {
-          myInitialScanState.countCacheMiss();
+        resourceFile = isDensityBasedResource
+                       ? null
+                       : myInitialScanState.loadCachedFile(ioFile, qualifiers, folderConfiguration, myNamespace, getLibraryName());
+        if (resourceFile != null) {
+          myInitialScanState.countCacheHit();
+        }
+        else {
+          resourceFile = myInitialScanState.loadFile(ioFile);
+          if (resourceFile == null) {
+            // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
+            // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
+            myInitialScanState.queuePsiFileResourceScan(
+              new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
+            return;
+          }
+          // We skip caching density-based resources, so don't count those against cache statistics.
+          if (!isDensityBasedResource) {
+            myInitialScanState.countCacheMiss();
+          }
         }
+        ListMultimap<String, ResourceItem> idMap = getMap(myNamespace, ResourceType.ID, true);
         for (ResourceItem item : resourceFile.getItems()) {
           ListMultimap<String, ResourceItem> itemMap;
           if (item.getType() == ResourceType.ID) {
@@ -921,17 +897,23 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       }
       File file = VfsUtilCore.virtualToIoFile(virtualFile);
       try {
-        ResourceFile resourceFile = myInitialScanState.loadFile(file);
-        if (resourceFile == null) {
-          // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
-          return;
+        ResourceFile resourceFile = myInitialScanState.loadCachedFile(file, qualifiers, folderConfiguration, myNamespace, getLibraryName());
+        if (resourceFile != null) {
+          myInitialScanState.countCacheHit();
+        }
+        else {
+          resourceFile = myInitialScanState.loadFile(file);
+          if (resourceFile == null) {
+            // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
+            myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
+            return;
+          }
+          myInitialScanState.countCacheMiss();
         }
         for (ResourceItem item : resourceFile.getItems()) {
           ListMultimap<String, ResourceItem> map = getMap(myNamespace, item.getType(), true);
           map.put(item.getName(), item);
         }
-        myInitialScanState.countCacheMiss();
         myResourceFiles.put(virtualFile, resourceFile);
       }
       catch (MergingException e) {
@@ -1153,7 +1135,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           }
           scanDataBinding(resourceFile, getModificationCount());
           // Identities may have changed even if the ids are the same, so update maps
-          invalidateParentCaches(myNamespace, ResourceType.ID);
+          invalidateParentCaches(myNamespace, ResourceType.ID, Sets.union(idsBefore, idsAfter));
         }
       } else {
         // Remove old items first, if switching to Psi. Rescan below to add back, but with a possibly different multimap list order.
@@ -1305,7 +1287,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                       map.put(name, item);
                       resourceFile.addItems(Collections.singletonList(item));
                       setModificationCount(ourModificationCounter.incrementAndGet());
-                      invalidateParentCaches(myNamespace, type);
+                      invalidateParentCaches(myNamespace, type, Collections.singletonList(name));
                       return;
                     }
                   }
@@ -1368,7 +1350,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                     PsiResourceFile resourceFile = (PsiResourceFile)resFile;
                     resourceFile.addItems(ids);
                     setModificationCount(ourModificationCounter.incrementAndGet());
-                    invalidateParentCaches(myNamespace, ResourceType.ID);
+                    Set<String> names = ids.stream().map(ResourceItem::getName).collect(Collectors.toSet());
+                    invalidateParentCaches(myNamespace, ResourceType.ID, names);
                   }
                 }
                 return;
@@ -1516,7 +1499,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                       }
                       if (removeItems(resourceFile, type, name, true)) {
                         setModificationCount(ourModificationCounter.incrementAndGet());
-                        invalidateParentCaches(myNamespace, type);
+                        invalidateParentCaches(myNamespace, type, Collections.singletonList(name));
                       }
                     }
                   }
@@ -1699,7 +1682,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                               resourceFile.addItem(newItem);
                             }
                             setModificationCount(ourModificationCounter.incrementAndGet());
-                            invalidateParentCaches(myNamespace, ResourceType.ID);
+                            invalidateParentCaches(myNamespace, ResourceType.ID, Arrays.asList(oldName, newName));
                             return;
                           }
                         }
@@ -1747,7 +1730,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                             resourceFile.addItem(newItem);
                           }
                           setModificationCount(ourModificationCounter.incrementAndGet());
-                          invalidateParentCaches(myNamespace, ResourceType.ID);
+                          invalidateParentCaches(myNamespace, ResourceType.ID, Arrays.asList(oldName, newName));
                           return;
                         }
                       }
@@ -1877,7 +1860,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
                           }
                         }
                         setModificationCount(ourModificationCounter.incrementAndGet());
-                        invalidateParentCaches(myNamespace, type);
+                        invalidateParentCaches(myNamespace, type, Arrays.asList(oldName, newName));
 
                         // Invalidate surrounding declare styleable if any
                         if (type == ResourceType.ATTR) {
@@ -24,6 +24,7 @@ import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbModeTask;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
@@ -46,13 +47,15 @@ import java.util.Set;
 
 /**
  * Manages a local file cache for ResourceFolderRepository state, for faster project reload.
+ * Each resource directory gets a cache directory holding its {@link ResourceFolderCacheFile}.
  */
 class ResourceFolderRepositoryFileCacheImpl implements ResourceFolderRepositoryFileCache {
 
   private static final String CACHE_DIRECTORY = "resource_folder_cache";
   private static final String INVALIDATE_CACHE_STAMP = "invalidate_caches_stamp.dat";
 
-  static final int EXPECTED_CACHE_VERSION = 1;
+  // Version 2 replaced the XML blobs of ResourceMerger with ResourceFolderCacheFile.
+  static final int EXPECTED_CACHE_VERSION = 2;
   private static final String CACHE_VERSION_FILENAME = "cache_version";
   // The cache version previously read from the CACHE_VERSION_FILENAME (to avoid re-reading).
   private Integer myCacheVersion = null;
@@ -438,11 +441,8 @@ class ResourceFolderRepositoryFileCacheImpl implements ResourceFolderRepositoryF
     public void runActivity(@NotNull Project project) {
       if (ApplicationManager.getApplication().isUnitTestMode()) return;
 
-      DumbService dumbService = DumbService.getInstance(project);
-
       // Pre-populate the in-memory resource folder registry for the project.
-      ResourceFolderRegistry.PopulateCachesTask task = new ResourceFolderRegistry.PopulateCachesTask(project);
-      dumbService.queueTask(task);
+      ProgressManager.getInstance().run(new ResourceFolderRegistry.PopulateCachesTask(project));
     }
   }
 }
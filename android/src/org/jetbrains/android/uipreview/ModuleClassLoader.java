@@ -7,6 +7,7 @@ import com.android.tools.idea.layoutlib.LayoutLibrary;
 import com.android.tools.idea.model.AndroidModel;
 import com.android.tools.idea.model.ClassJarProvider;
 import com.android.tools.idea.projectsystem.FilenameConstants;
+import com.android.tools.idea.rendering.ClassConverter;
 import com.android.tools.idea.rendering.RenderClassLoader;
 import com.android.tools.idea.rendering.RenderSecurityManager;
 import com.android.tools.idea.res.AppResourceRepository;
@@ -98,7 +99,8 @@ public final class ModuleClassLoader extends RenderClassLoader {
             if (appResources != null) {
               byte[] data = ResourceClassRegistry.get(module.getProject()).findClassDefinition(name, appResources);
               if (data != null) {
-                data = convertClass(data);
+                // The R classes are generated again for every resource change, so they're not worth caching on disk.
+                data = ClassConverter.rewriteClass(data);
                 if (LOG.isDebugEnabled()) {
                   LOG.debug("  Defining class from AAR registry");
                 }
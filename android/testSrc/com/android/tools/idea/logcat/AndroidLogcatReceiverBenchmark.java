@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.tools.tests.PerfgateRule;
+import org.jetbrains.android.AndroidTestBase;
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how many lines of 'logcat -v long' output {@link AndroidLogcatReceiver} processes per second, fed in chunks of lines as
+ * {@link com.android.ddmlib.MultiLineReceiver} does. The output is a boot log checked in under testData/logcat: many short messages from
+ * a handful of processes and tags, some multi-line messages and stack traces.
+ */
+public class AndroidLogcatReceiverBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final String CAPTURE = "logcat/boot.txt";
+  /**
+   * How many times the capture is fed to the receiver in a run, so that a run is long enough to measure.
+   */
+  private static final int CAPTURE_REPLAYS = 20;
+  private static final int LINES_PER_CHUNK = 256;
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURED_RUNS = 5;
+
+  @Test
+  public void benchmarkProcessNewLines() throws IOException {
+    List<String[]> chunks = readOutput();
+    int lineCount = chunks.stream().mapToInt(chunk -> chunk.length).sum() * CAPTURE_REPLAYS;
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      process(chunks);
+    }
+    long startNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      process(chunks);
+    }
+    long runNs = (System.nanoTime() - startNs) / MEASURED_RUNS;
+
+    ourPerfgate.logSample("Logcat Lines Processed Per Second", lineCount * TimeUnit.SECONDS.toNanos(1) / runNs);
+  }
+
+  private static void process(@NotNull List<String[]> chunks) {
+    AndroidLogcatReceiver receiver = new AndroidLogcatReceiver(AndroidLogcatReceiverTest.createMockDevice(),
+                                                               new AndroidLogcatService.LogcatListener() {
+                                                                 @Override
+                                                                 public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+                                                                 }
+                                                               });
+    for (int i = 0; i < CAPTURE_REPLAYS; i++) {
+      for (String[] chunk : chunks) {
+        receiver.processNewLines(chunk);
+      }
+    }
+  }
+
+  @NotNull
+  private static List<String[]> readOutput() throws IOException {
+    List<String> lines = Files.readAllLines(Paths.get(AndroidTestBase.getTestDataPath(), CAPTURE));
+
+    List<String[]> chunks = new ArrayList<>();
+    for (int i = 0; i < lines.size(); i += LINES_PER_CHUNK) {
+      chunks.add(lines.subList(i, Math.min(lines.size(), i + LINES_PER_CHUNK)).toArray(new String[0]));
+    }
+    return chunks;
+  }
+}
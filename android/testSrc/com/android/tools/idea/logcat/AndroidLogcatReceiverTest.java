@@ -17,11 +17,16 @@
 package com.android.tools.idea.logcat;
 
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.logcat.LogCatMessage;
 import org.easymock.EasyMock;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static com.google.common.truth.Truth.assertThat;
 
 public class AndroidLogcatReceiverTest {
@@ -182,6 +187,28 @@ public class AndroidLogcatReceiverTest {
     assertThat(myLogcatListener.toString()).isEqualTo(expected);
   }
 
+  @Test
+  public void processNewLinesDeliversTheLinesReceivedTogether() {
+    List<List<LogCatMessage>> batches = new ArrayList<>();
+    AndroidLogcatReceiver receiver = new AndroidLogcatReceiver(createMockDevice(), new AndroidLogcatService.LogcatListener() {
+      @Override
+      public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+        batches.add(lines);
+      }
+    });
+
+    receiver.processNewLines(new String[]{"[ 01-23 12:34:56.789 99:99 V/UnknownClient     ]", "Line 1\r", "Line\r 2"});
+    receiver.processNewLines(new String[]{""});
+    receiver.processNewLines(new String[]{"Line 3"});
+
+    assertThat(batches).hasSize(2);
+    assertThat(batches.get(0).stream().map(LogCatMessage::getMessage).collect(Collectors.toList())).containsExactly("Line 1", "Line 2")
+      .inOrder();
+    assertThat(batches.get(1).stream().map(LogCatMessage::getMessage).collect(Collectors.toList())).containsExactly("", "Line 3")
+      .inOrder();
+    assertThat(batches.get(1).get(0).getHeader()).isSameAs(batches.get(0).get(0).getHeader());
+  }
+
   @Test
   public void testParseAllLogLevelsAndHexThreadIds() {
     String[] messages = new String[]{
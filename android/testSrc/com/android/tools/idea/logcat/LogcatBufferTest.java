@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.google.common.base.Strings;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatBufferTest {
+  private static final String[] TAGS = {"ActivityManager", "DummyTag", "ConnectivityService", "Choreographer"};
+  private static final String[] APP_NAMES = {"system_process", "com.android.sample", "?"};
+
+  @Test
+  public void linesAreReplayedInOrder() {
+    LogcatBuffer buffer = new LogcatBuffer(0);
+    List<LogCatMessage> lines = createLines(5000);
+    lines.forEach(buffer::addLine);
+
+    assertThat(buffer.getSize()).isEqualTo(lines.size());
+    assertThat(toStrings(replay(buffer))).containsExactlyElementsIn(toStrings(lines)).inOrder();
+  }
+
+  @Test
+  public void linesOfTheSameMessageShareTheirHeader() {
+    LogcatBuffer buffer = new LogcatBuffer(0);
+    LogCatHeader header = createHeader(LogLevel.WARN, 1493, "DummyFirst", "com.android.sample");
+    buffer.addLine(new LogCatMessage(header, "First Line1"));
+    buffer.addLine(new LogCatMessage(header, "First Line2"));
+    buffer.addLine(new LogCatMessage(createHeader(LogLevel.WARN, 1493, "DummySecond", "com.android.sample"), "Second Line1"));
+
+    List<LogCatMessage> replayed = replay(buffer);
+    assertThat(replayed.get(1).getHeader()).isSameAs(replayed.get(0).getHeader());
+    assertThat(replayed.get(2).getHeader()).isNotSameAs(replayed.get(1).getHeader());
+  }
+
+  @Test
+  public void oldestLinesAreDroppedPastTheMaxTextLength() {
+    LogcatBuffer buffer = new LogcatBuffer(100);
+    List<LogCatMessage> lines = createLines(1000);
+    lines.forEach(buffer::addLine);
+
+    List<LogCatMessage> replayed = replay(buffer);
+    assertThat(replayed.stream().mapToInt(line -> line.getMessage().length()).sum()).isAtMost(100);
+    assertThat(toStrings(replayed)).containsExactlyElementsIn(toStrings(lines.subList(lines.size() - replayed.size(), lines.size())))
+      .inOrder();
+  }
+
+  @Test
+  public void theTextLengthIsCappedWithoutAMaxTextLength() {
+    LogcatBuffer buffer = new LogcatBuffer(0);
+    String text = Strings.repeat("a", LogcatBuffer.DEFAULT_MAX_TEXT_LENGTH / 4);
+    LogCatHeader header = createHeader(LogLevel.INFO, 1, "DummyTag", "com.android.sample");
+    for (int i = 0; i < 10; i++) {
+      buffer.addLine(new LogCatMessage(header, text));
+    }
+
+    assertThat(buffer.getSize()).isEqualTo(4);
+  }
+
+  @Test
+  public void droppedTagsAndPidsAreNotFilteredAnymore() {
+    LogcatBuffer buffer = new LogcatBuffer(100);
+    List<LogCatMessage> lines = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      lines.add(new LogCatMessage(createHeader(LogLevel.INFO, i % 50, "Tag" + i % 30, "App" + i % 20), "Message " + i));
+    }
+    lines.forEach(buffer::addLine);
+    List<LogCatMessage> keptLines = replay(buffer);
+
+    List<AndroidLogcatFilter> filters = new ArrayList<>();
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Dropped Pid").setPid(3).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Kept Pid").setPid(49).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Dropped Tag").setTagPattern(Pattern.compile("^Tag2\\d$")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Kept Tags").setTagPattern(Pattern.compile("^Tag[1-3]$")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Dropped Package").setPackagePattern(Pattern.compile("^App1$")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Kept Package").setPackagePattern(Pattern.compile("^App19$")).build());
+
+    for (AndroidLogcatFilter filter : filters) {
+      List<LogCatMessage> filtered = new ArrayList<>();
+      buffer.forEachLine(filter, filtered::add);
+
+      List<LogCatMessage> expected = keptLines.stream().filter(line -> isApplicable(filter, line)).collect(Collectors.toList());
+      assertThat(toStrings(filtered)).named(filter.getName()).containsExactlyElementsIn(toStrings(expected)).inOrder();
+    }
+  }
+
+  @Test
+  public void filteredLinesMatchTheFilter() {
+    LogcatBuffer buffer = new LogcatBuffer(20_000);
+    List<LogCatMessage> lines = createLines(5000);
+    lines.forEach(buffer::addLine);
+    List<LogCatMessage> keptLines = replay(buffer);
+
+    List<AndroidLogcatFilter> filters = new ArrayList<>();
+    filters.add(new DefaultAndroidLogcatFilter.Builder("No Filter").build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Pid").setPid(3).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Unknown Pid").setPid(42).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Invalid Pid").setPid("abc").build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Tag").setTagPattern(Pattern.compile("Service")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Tags").setTagPattern(Pattern.compile("^(Dummy|Chore)")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Package").setPackagePattern(Pattern.compile("sample")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Level").setLogLevel(LogLevel.WARN).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("Message").setMessagePattern(Pattern.compile("7$")).build());
+    filters.add(new DefaultAndroidLogcatFilter.Builder("All")
+                  .setPid(1)
+                  .setTagPattern(Pattern.compile("Dummy"))
+                  .setLogLevel(LogLevel.INFO)
+                  .setMessagePattern(Pattern.compile("1"))
+                  .build());
+    filters.add(new AndroidLogcatFilter() {
+      @NotNull
+      @Override
+      public String getName() {
+        return "Custom";
+      }
+
+      @Override
+      public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull LogLevel logLevel) {
+        return pid % 2 == 0 && tag.length() > 10;
+      }
+    });
+
+    for (AndroidLogcatFilter filter : filters) {
+      List<LogCatMessage> filtered = new ArrayList<>();
+      buffer.forEachLine(filter, filtered::add);
+
+      List<LogCatMessage> expected = keptLines.stream().filter(line -> isApplicable(filter, line)).collect(Collectors.toList());
+      assertThat(toStrings(filtered)).named(filter.getName()).containsExactlyElementsIn(toStrings(expected)).inOrder();
+    }
+  }
+
+  private static boolean isApplicable(@NotNull AndroidLogcatFilter filter, @NotNull LogCatMessage line) {
+    LogCatHeader header = line.getHeader();
+    return filter.isApplicable(line.getMessage(), header.getTag(), header.getAppName(), header.getPid(), header.getLogLevel());
+  }
+
+  @NotNull
+  private static List<LogCatMessage> createLines(int count) {
+    Random random = new Random(0);
+    List<LogCatMessage> lines = new ArrayList<>();
+    LogCatHeader header = null;
+    for (int i = 0; i < count; i++) {
+      if (header == null || random.nextInt(3) != 0) {
+        header = createHeader(LogLevel.values()[random.nextInt(LogLevel.values().length)], random.nextInt(5),
+                              TAGS[random.nextInt(TAGS.length)], APP_NAMES[random.nextInt(APP_NAMES.length)]);
+      }
+      lines.add(new LogCatMessage(header, "Message " + i));
+    }
+    return lines;
+  }
+
+  @NotNull
+  private static LogCatHeader createHeader(@NotNull LogLevel logLevel, int pid, @NotNull String tag, @NotNull String appName) {
+    return new LogCatHeader(logLevel, pid, pid + 100, appName, tag, LogCatTimestamp.fromString("08-18 16:39:11.439"));
+  }
+
+  @NotNull
+  private static List<LogCatMessage> replay(@NotNull LogcatBuffer buffer) {
+    List<LogCatMessage> lines = new ArrayList<>();
+    buffer.forEachLine(lines::add);
+    return lines;
+  }
+
+  @NotNull
+  private static List<String> toStrings(@NotNull List<LogCatMessage> lines) {
+    return lines.stream().map(LogCatMessage::toString).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.tests.PerfgateRule;
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Measures the time and the garbage collection time it takes to get render-sized images, like the ones of a multi-device preview, from an
+ * {@link ImagePool} and release them, compared to allocating a new {@link BufferedImage} every time.
+ */
+@SuppressWarnings("UndesirableClassUsage")
+public class ImagePoolBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final int WIDTH = 1440;
+  private static final int HEIGHT = 2560;
+  private static final int IMAGES_PER_THREAD = 200;
+  private static final int THREADS = 4;
+
+  private interface Allocation {
+    void run() throws Exception;
+  }
+
+  @Test
+  public void benchmarkAllocation() throws Exception {
+    ImagePool pool = new ImagePool();
+    ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      // Warm up the pool and the JIT
+      allocateWithPool(pool);
+      allocateWithoutPool();
+
+      measure("Image Allocation Without Pool", ImagePoolBenchmark::allocateWithoutPool);
+      measure("Image Allocation With Pool", () -> allocateWithPool(pool));
+      measure("Concurrent Image Allocation Without Pool", () -> runConcurrently(executor, ImagePoolBenchmark::allocateWithoutPool));
+      measure("Concurrent Image Allocation With Pool", () -> runConcurrently(executor, () -> allocateWithPool(pool)));
+
+      assertThat(pool.getStats().getReusedCount()).isGreaterThan(0L);
+    }
+    finally {
+      executor.shutdownNow();
+      pool.dispose();
+    }
+  }
+
+  private static void measure(@NotNull String name, @NotNull Allocation allocation) throws Exception {
+    long startGcMs = getTotalGcTimeMs();
+    long startNs = System.nanoTime();
+    allocation.run();
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+    ourPerfgate.logSample(name + " (ms)", elapsedMs);
+    ourPerfgate.logSample(name + " GC Time (ms)", getTotalGcTimeMs() - startGcMs);
+  }
+
+  private static void allocateWithPool(@NotNull ImagePool pool) {
+    for (int i = 0; i < IMAGES_PER_THREAD; i++) {
+      ImagePool.Image image = pool.create(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+      image.paint(g -> g.fillRect(0, 0, 1, 1));
+      image.dispose();
+    }
+  }
+
+  private static void allocateWithoutPool() {
+    for (int i = 0; i < IMAGES_PER_THREAD; i++) {
+      BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g = image.createGraphics();
+      try {
+        g.fillRect(0, 0, 1, 1);
+      }
+      finally {
+        g.dispose();
+      }
+    }
+  }
+
+  private static void runConcurrently(@NotNull ExecutorService executor, @NotNull Runnable allocation) throws Exception {
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      futures.add(executor.submit(allocation));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+  }
+
+  private static long getTotalGcTimeMs() {
+    long total = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, bean.getCollectionTime());
+    }
+    return total;
+  }
+}
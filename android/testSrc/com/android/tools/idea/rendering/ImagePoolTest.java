@@ -156,6 +156,81 @@ public class ImagePoolTest {
     assertNotEquals(internalPtr, myPool.create(10, 10, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
   }
 
+  @Test
+  public void testMemoryBudget() {
+    // Room for two images of the 128x128 bucket
+    ImagePool pool = new ImagePool(new int[]{128, 500}, (w, h) -> (type) -> 10, 2 * 128 * 128 * 4);
+    try {
+      ImagePool.ImageImpl image1 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      ImagePool.ImageImpl image2 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB_PRE, null);
+      ImagePool.ImageImpl image3 = pool.create(100, 100, BufferedImage.TYPE_INT_RGB, null);
+      BufferedImage internalPtr2 = image2.myBuffer;
+      BufferedImage internalPtr3 = image3.myBuffer;
+      assertEquals(3, pool.getStats().getAllocatedCount());
+
+      image1.dispose();
+      image2.dispose();
+      assertEquals(2 * 128 * 128 * 4, pool.getStats().getPooledBytes());
+      // Going over the budget evicts the image of the least recently used bucket
+      image3.dispose();
+      assertEquals(1, pool.getStats().getEvictedCount());
+      assertEquals(2 * 128 * 128 * 4, pool.getStats().getPooledBytes());
+
+      assertEquals(internalPtr2, pool.create(100, 100, BufferedImage.TYPE_INT_ARGB_PRE, null).myBuffer);
+      assertEquals(internalPtr3, pool.create(100, 100, BufferedImage.TYPE_INT_RGB, null).myBuffer);
+      assertEquals(2, pool.getStats().getReusedCount());
+      assertEquals(0, pool.getStats().getPooledBytes());
+      pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      assertEquals(4, pool.getStats().getAllocatedCount());
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
+  @Test
+  public void testReleasePooledImages() {
+    ImagePool pool = new ImagePool(new int[]{128, 500}, (w, h) -> (type) -> 10);
+    try {
+      ImagePool.ImageImpl image1 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      ImagePool.ImageImpl image2 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      image1.dispose();
+      assertEquals(128 * 128 * 4, pool.getStats().getPooledBytes());
+
+      pool.releasePooledImages();
+      assertEquals(1, pool.getStats().getEvictedCount());
+      assertEquals(0, pool.getStats().getPooledBytes());
+      // Images in use are still pooled once released
+      BufferedImage internalPtr2 = image2.myBuffer;
+      image2.dispose();
+      assertEquals(internalPtr2, pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+      assertEquals(2, pool.getStats().getAllocatedCount());
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
+  @Test
+  public void testBucketSizeLimit() {
+    ImagePool pool = new ImagePool(new int[]{50, 500}, (w, h) -> (type) -> 1);
+    try {
+      ImagePool.ImageImpl image1 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      ImagePool.ImageImpl image2 = pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      BufferedImage internalPtr1 = image1.myBuffer;
+      image1.dispose();
+      // The bucket is full, the second image is not pooled
+      image2.dispose();
+      assertEquals(internalPtr1, pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null).myBuffer);
+      pool.create(100, 100, BufferedImage.TYPE_INT_ARGB, null);
+      assertEquals(1, pool.getStats().getReusedCount());
+      assertEquals(3, pool.getStats().getAllocatedCount());
+    }
+    finally {
+      pool.dispose();
+    }
+  }
+
   @Test
   public void testImageCopy() throws IOException {
     BufferedImage original = getSampleImage();
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.Result;
+import com.android.sdklib.devices.Device;
+import com.android.tools.idea.configurations.Configuration;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.xml.XmlFile;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class MultiConfigurationRendererTest extends AndroidTestCase {
+  @Language("XML")
+  private static final String SIMPLE_LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                              "    android:layout_height=\"match_parent\"\n" +
+                                              "    android:layout_width=\"match_parent\"\n" +
+                                              "    android:orientation=\"vertical\">\n" +
+                                              "\n" +
+                                              "    <LinearLayout\n" +
+                                              "        android:layout_width=\"50dp\"\n" +
+                                              "        android:layout_height=\"50dp\"\n" +
+                                              "        android:background=\"#F00\"/>\n" +
+                                              "\n" +
+                                              "</LinearLayout>";
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    RenderTestUtil.beforeRenderTestCase();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      RenderTestUtil.afterRenderTestCase();
+    } finally {
+      super.tearDown();
+    }
+  }
+
+  public void testRenderConfigurations() throws Exception {
+    VirtualFile file = myFixture.addFileToProject("res/layout/layout.xml", SIMPLE_LAYOUT).getVirtualFile();
+    Configuration nexus4 = RenderTestUtil.getConfiguration(myModule, file, "Nexus 4");
+    Configuration sameAsNexus4 = Configuration.copy(nexus4);
+    Configuration nexus5 = Configuration.copy(nexus4);
+    nexus5.setDevice(findDevice(nexus4, "Nexus 5"), false);
+    XmlFile psiFile = (XmlFile)PsiManager.getInstance(getProject()).findFile(file);
+    assertNotNull(psiFile);
+
+    List<RenderResult> results = MultiConfigurationRenderer.render(RenderService.getInstance(myFacet), psiFile,
+                                                                   Arrays.asList(nexus4, nexus5, sameAsNexus4),
+                                                                   RenderExecutor.Priority.PREVIEW, RenderTask::disableSecurityManager)
+      .get(1, TimeUnit.MINUTES);
+
+    assertEquals(3, results.size());
+    for (RenderResult result : results) {
+      assertEquals(Result.Status.SUCCESS, result.getRenderResult().getStatus());
+      assertEquals(1, result.getRootViews().get(0).getChildren().size());
+    }
+    // Identical configurations are only rendered once
+    assertSame(results.get(0), results.get(2));
+    assertNotSame(results.get(0), results.get(1));
+    assertFalse(results.get(0).getRenderedImage().getWidth() == results.get(1).getRenderedImage().getWidth() &&
+                results.get(0).getRenderedImage().getHeight() == results.get(1).getRenderedImage().getHeight());
+  }
+
+  @NotNull
+  private static Device findDevice(@NotNull Configuration configuration, @NotNull String id) {
+    Device device = configuration.getConfigurationManager().getDevices().stream()
+      .filter(d -> d.getId().equals(id))
+      .findFirst()
+      .orElse(null);
+    assertNotNull(device);
+    return device;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.idea.rendering.RenderExecutor.Priority;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class RenderExecutorTest {
+  private RenderExecutor myExecutor;
+
+  @After
+  public void tearDown() throws Exception {
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+      myExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void queuedActionsRunByPriority() throws Exception {
+    myExecutor = new RenderExecutor("Render Thread", 1, 1000);
+    CountDownLatch blockWorker = blockWorker();
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    ListenableFuture<?> thumbnail = myExecutor.submit(() -> order.add("thumbnail"), Priority.THUMBNAIL, null, null);
+    ListenableFuture<?> preview = myExecutor.submit(() -> order.add("preview"), Priority.PREVIEW, null, null);
+    ListenableFuture<?> interactive1 = myExecutor.submit(() -> order.add("interactive1"), Priority.INTERACTIVE, null, null);
+    ListenableFuture<?> interactive2 = myExecutor.submit(() -> order.add("interactive2"), Priority.INTERACTIVE, null, null);
+
+    blockWorker.countDown();
+    thumbnail.get();
+    preview.get();
+    interactive1.get();
+    interactive2.get();
+    assertThat(order).containsExactly("interactive1", "interactive2", "preview", "thumbnail").inOrder();
+  }
+
+  @Test
+  public void queuedActionsWithTheSameKeyCoalesce() throws Exception {
+    myExecutor = new RenderExecutor("Render Thread", 1, 1000);
+    CountDownLatch blockWorker = blockWorker();
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    Object key = new Object();
+    ListenableFuture<String> first = myExecutor.submit(() -> {
+      order.add("first");
+      return "first";
+    }, Priority.PREVIEW, null, key);
+    ListenableFuture<String> other = myExecutor.submit(() -> {
+      order.add("other");
+      return "other";
+    }, Priority.PREVIEW, null, null);
+    ListenableFuture<String> second = myExecutor.submit(() -> {
+      order.add("second");
+      return "second";
+    }, Priority.PREVIEW, null, key);
+
+    blockWorker.countDown();
+    assertThat(first.get()).isEqualTo("second");
+    assertThat(second.get()).isEqualTo("second");
+    assertThat(other.get()).isEqualTo("other");
+    // The replacing action takes the place of the replaced one in the queue.
+    assertThat(order).containsExactly("second", "other").inOrder();
+
+    RenderExecutor.QueueMetrics metrics = myExecutor.getMetrics(Priority.PREVIEW);
+    assertThat(metrics.getSubmittedCount()).isEqualTo(3);
+    assertThat(metrics.getCoalescedCount()).isEqualTo(1);
+    assertThat(metrics.getCompletedCount()).isEqualTo(2);
+    assertThat(metrics.getPendingCount()).isEqualTo(0);
+
+    // Once an action has started, a new action with the same key runs after it.
+    assertThat(myExecutor.submit(() -> "third", Priority.PREVIEW, null, key).get()).isEqualTo("third");
+    assertThat(second.get()).isEqualTo("second");
+  }
+
+  @Test
+  public void actionsOfAShardKeyRunOnTheSameThread() throws Exception {
+    myExecutor = new RenderExecutor("Render Thread", 4, 1000);
+    assertThat(myExecutor.getWorkerCount()).isEqualTo(4);
+    Set<String> threadNames = ConcurrentHashMap.newKeySet();
+    for (int i = 0; i < 10; i++) {
+      threadNames.add(myExecutor.submit(() -> Thread.currentThread().getName(), Priority.INTERACTIVE, "module", null).get());
+    }
+    assertThat(threadNames).hasSize(1);
+    assertThat(myExecutor.getThread("module").getName()).isEqualTo(threadNames.iterator().next());
+  }
+
+  @Test
+  public void shutdownCancelsQueuedActions() throws Exception {
+    myExecutor = new RenderExecutor("Render Thread", 1, 1000);
+    blockWorker();
+    ListenableFuture<String> queued = myExecutor.submit(() -> "queued", Priority.THUMBNAIL, null, null);
+    myExecutor.shutdownNow();
+    assertThat(queued.isCancelled()).isTrue();
+  }
+
+  /**
+   * Keeps the worker busy until the returned latch is released, so that the actions submitted in the meantime are queued.
+   */
+  private CountDownLatch blockWorker() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    myExecutor.submit(() -> {
+      started.countDown();
+      release.await();
+      return null;
+    }, Priority.INTERACTIVE, null, null);
+    started.await();
+    return release;
+  }
+}
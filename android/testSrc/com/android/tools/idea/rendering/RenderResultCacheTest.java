@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.Result;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RenderResultCacheTest {
+  @Test
+  public void resultsAreFoundByFingerprint() {
+    RenderResultCache cache = new RenderResultCache(2);
+    RenderResult result = createResult(Result.Status.SUCCESS, true);
+    cache.put(Arrays.asList("Nexus 5", "AppTheme", 1L), result);
+
+    assertThat(cache.get(Arrays.asList("Nexus 5", "AppTheme", 1L))).isSameAs(result);
+    assertThat(cache.get(Arrays.asList("Nexus 5", "AppTheme", 2L))).isNull();
+    assertThat(cache.get(Arrays.asList("Pixel", "AppTheme", 1L))).isNull();
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void leastRecentlyUsedResultsAreEvicted() {
+    RenderResultCache cache = new RenderResultCache(2);
+    RenderResult first = createResult(Result.Status.SUCCESS, true);
+    RenderResult second = createResult(Result.Status.SUCCESS, true);
+    cache.put("first", first);
+    cache.put("second", second);
+    cache.get("first");
+    cache.put("third", createResult(Result.Status.SUCCESS, true));
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.get("first")).isSameAs(first);
+    assertThat(cache.get("second")).isNull();
+  }
+
+  @Test
+  public void failedRendersAreNotCached() {
+    RenderResultCache cache = new RenderResultCache(2);
+    cache.put("error", createResult(Result.Status.ERROR_UNKNOWN, true));
+    cache.put("noImage", createResult(Result.Status.SUCCESS, false));
+
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.get("error")).isNull();
+    assertThat(cache.get("noImage")).isNull();
+  }
+
+  @Test
+  public void resultsOfATaskCanBeRemoved() {
+    RenderResultCache cache = new RenderResultCache(2);
+    RenderTask task = mock(RenderTask.class);
+    RenderResult taskResult = createResult(Result.Status.SUCCESS, true);
+    when(taskResult.getRenderTask()).thenReturn(task);
+    RenderResult otherResult = createResult(Result.Status.SUCCESS, true);
+    cache.put("task", taskResult);
+    cache.put("other", otherResult);
+    cache.removeResultsOf(task);
+
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cache.get("task")).isNull();
+    assertThat(cache.get("other")).isSameAs(otherResult);
+  }
+
+  @NotNull
+  private static RenderResult createResult(@NotNull Result.Status status, boolean hasImage) {
+    RenderResult result = mock(RenderResult.class);
+    when(result.getRenderResult()).thenReturn(status.createResult());
+    when(result.hasImage()).thenReturn(hasImage);
+    return result;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.tools.tests.PerfgateRule;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.android.SdkConstants.DOT_CLASS;
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Measures the time the class loaders of the first render spend rewriting the classes of a large library, as Guava's, with
+ * {@link ClassConverter} directly, with an empty {@link RewrittenClassCache} (the first render after installing a new version) and with
+ * the cache populated by an earlier IDE session.
+ */
+public class RewrittenClassCacheBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final int MEASURED_RUNS = 5;
+
+  private File myCacheDir;
+  private List<byte[]> myClasses;
+
+  @Before
+  public void setUp() throws Exception {
+    myCacheDir = FileUtil.createTempDirectory("rewrittenClassCacheBenchmark", null);
+    myClasses = new ArrayList<>();
+    File jar = new File(ImmutableList.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    try (ZipFile zipFile = new ZipFile(jar)) {
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        if (entry.getName().endsWith(DOT_CLASS)) {
+          try (InputStream stream = zipFile.getInputStream(entry)) {
+            myClasses.add(ByteStreams.toByteArray(stream));
+          }
+        }
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myCacheDir);
+  }
+
+  @Test
+  public void benchmarkRewriteClasses() throws Exception {
+    // Warm up the converter and the hashing.
+    for (byte[] classData : myClasses) {
+      ClassConverter.rewriteClass(classData);
+    }
+
+    long withoutCacheNs = 0;
+    long coldCacheNs = 0;
+    long warmCacheNs = 0;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      FileUtil.delete(myCacheDir);
+
+      long startNs = System.nanoTime();
+      for (byte[] classData : myClasses) {
+        ClassConverter.rewriteClass(classData);
+      }
+      withoutCacheNs += System.nanoTime() - startNs;
+
+      ExecutorService writeExecutor = Executors.newFixedThreadPool(2);
+      RewrittenClassCache coldCache = new RewrittenClassCache(myCacheDir, ClassConverter.getCurrentClassVersion(), Long.MAX_VALUE,
+                                                              writeExecutor);
+      startNs = System.nanoTime();
+      for (byte[] classData : myClasses) {
+        coldCache.rewriteClass(classData);
+      }
+      coldCacheNs += System.nanoTime() - startNs;
+      writeExecutor.shutdown();
+      assertThat(writeExecutor.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+      // A new instance on the same directory, like after restarting the IDE.
+      RewrittenClassCache warmCache = new RewrittenClassCache(myCacheDir, ClassConverter.getCurrentClassVersion(), Long.MAX_VALUE,
+                                                              Runnable::run);
+      startNs = System.nanoTime();
+      for (byte[] classData : myClasses) {
+        warmCache.rewriteClass(classData);
+      }
+      warmCacheNs += System.nanoTime() - startNs;
+      assertThat(warmCache.getHitCount()).isEqualTo(myClasses.size());
+    }
+
+    logSample("Class Rewrite Without Cache (ms)", withoutCacheNs);
+    logSample("Class Rewrite With Empty Cache (ms)", coldCacheNs);
+    logSample("Class Rewrite With Populated Cache (ms)", warmCacheNs);
+  }
+
+  private static void logSample(@NotNull String name, long totalNs) {
+    ourPerfgate.logSample(name, TimeUnit.NANOSECONDS.toMillis(totalNs / MEASURED_RUNS));
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.io.ByteStreams;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.org.objectweb.asm.ClassWriter;
+import org.jetbrains.org.objectweb.asm.Opcodes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class RewrittenClassCacheTest {
+  private File myRootDir;
+  private byte[] myClassData;
+
+  @Before
+  public void setUp() throws Exception {
+    myRootDir = FileUtil.createTempDirectory("rewrittenClassCache", null);
+    try (InputStream stream = RewrittenClassCacheTest.class.getResourceAsStream("RewrittenClassCacheTest.class")) {
+      myClassData = ByteStreams.toByteArray(stream);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myRootDir);
+  }
+
+  @Test
+  public void rewrittenClassesAreCachedAcrossInstances() {
+    byte[] expected = ClassConverter.rewriteClass(myClassData, 52, 0);
+
+    RewrittenClassCache cache = new RewrittenClassCache(myRootDir, 52, Long.MAX_VALUE, Runnable::run);
+    assertThat(cache.rewriteClass(myClassData)).isEqualTo(expected);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(cache.rewriteClass(myClassData)).isEqualTo(expected);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+
+    RewrittenClassCache newCache = new RewrittenClassCache(myRootDir, 52, Long.MAX_VALUE, Runnable::run);
+    assertThat(newCache.rewriteClass(myClassData)).isEqualTo(expected);
+    assertThat(newCache.getHitCount()).isEqualTo(1);
+    assertThat(newCache.getMissCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void otherVersionsAreDeleted() {
+    new RewrittenClassCache(myRootDir, 51, Long.MAX_VALUE, Runnable::run).rewriteClass(myClassData);
+    assertThat(myRootDir.list()).hasLength(1);
+
+    RewrittenClassCache cache = new RewrittenClassCache(myRootDir, 52, Long.MAX_VALUE, Runnable::run);
+    assertThat(myRootDir.list()).isEmpty();
+    cache.rewriteClass(myClassData);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+    assertThat(myRootDir.list()).hasLength(1);
+  }
+
+  @Test
+  public void invalidEntriesAreRewrittenAgain() throws Exception {
+    RewrittenClassCache cache = new RewrittenClassCache(myRootDir, 52, Long.MAX_VALUE, Runnable::run);
+    cache.rewriteClass(myClassData);
+    List<File> entries = listEntries();
+    assertThat(entries).hasSize(1);
+    FileUtil.writeToFile(entries.get(0), "not a class file");
+
+    assertThat(cache.rewriteClass(myClassData)).isEqualTo(ClassConverter.rewriteClass(myClassData, 52, 0));
+    assertThat(cache.getMissCount()).isEqualTo(2);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void classesAreRewrittenToTheVersionOfTheCache() {
+    byte[] classData = createClass("Java8", 52);
+    RewrittenClassCache cache51 = new RewrittenClassCache(myRootDir, 51, Long.MAX_VALUE, Runnable::run);
+    assertThat(ClassConverter.getMajorVersion(cache51.rewriteClass(classData))).isEqualTo((short)51);
+    assertThat(ClassConverter.getMajorVersion(cache51.rewriteClass(classData))).isEqualTo((short)51);
+
+    RewrittenClassCache cache52 = new RewrittenClassCache(myRootDir, 52, Long.MAX_VALUE, Runnable::run);
+    assertThat(ClassConverter.getMajorVersion(cache52.rewriteClass(classData))).isEqualTo((short)52);
+    assertThat(cache52.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void leastRecentlyUsedEntriesArePruned() throws Exception {
+    byte[] classA = createClass("A", 52);
+    byte[] classB = createClass("B", 52);
+    byte[] classC = createClass("C", 52);
+    long entrySize = ClassConverter.rewriteClass(classA, 52, 0).length;
+    RewrittenClassCache cache = new RewrittenClassCache(myRootDir, 52, 3 * entrySize - 1, Runnable::run);
+    cache.rewriteClass(classA);
+    cache.rewriteClass(classB);
+    long now = System.currentTimeMillis();
+    List<File> entries = listEntries();
+    assertThat(entries).hasSize(2);
+    for (File entry : entries) {
+      assertThat(entry.setLastModified(now - 3_600_000)).isTrue();
+    }
+
+    // Reading A makes B the least recently used entry, the one deleted when C goes over the cap.
+    cache.rewriteClass(classA);
+    cache.rewriteClass(classC);
+    assertThat(listEntries()).hasSize(2);
+
+    cache.rewriteClass(classA);
+    cache.rewriteClass(classC);
+    cache.rewriteClass(classB);
+    assertThat(cache.getHitCount()).isEqualTo(3);
+    assertThat(cache.getMissCount()).isEqualTo(4);
+  }
+
+  @NotNull
+  private List<File> listEntries() throws IOException {
+    try (Stream<Path> paths = Files.walk(myRootDir.toPath())) {
+      return paths.filter(Files::isRegularFile).map(Path::toFile).collect(Collectors.toList());
+    }
+  }
+
+  @NotNull
+  private static byte[] createClass(@NotNull String name, int version) {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(version, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+}
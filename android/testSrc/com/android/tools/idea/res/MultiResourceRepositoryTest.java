@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.ResourceType;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MultiResourceRepositoryTest {
+  private TestLocalResourceRepository myFirst;
+  private TestLocalResourceRepository mySecond;
+  private MultiResourceRepository myRepository;
+
+  @Before
+  public void setUp() {
+    myFirst = new TestLocalResourceRepository();
+    addItem(myFirst, ResourceType.STRING, "app_name");
+    addItem(myFirst, ResourceType.ID, "button");
+    mySecond = new TestLocalResourceRepository();
+    addItem(mySecond, ResourceType.STRING, "title");
+    myRepository = new MultiResourceRepository("test", ImmutableList.of(myFirst, mySecond)) {};
+  }
+
+  @Test
+  public void cachedReadsDontTakeTheLock() {
+    assertThat(myRepository.getMap(null, ResourceType.STRING, false).keySet()).containsExactly("app_name", "title");
+    assertThat(myRepository.hasResourcesOfType(ResourceType.ID)).isTrue();
+    myRepository.getNamespaces();
+    myRepository.getItems();
+
+    long lockedReadCount = MultiResourceRepository.getLockedReadCount();
+    assertThat(myRepository.getMap(null, ResourceType.STRING, false).keySet()).containsExactly("app_name", "title");
+    assertThat(myRepository.hasResourcesOfType(ResourceType.ID)).isTrue();
+    myRepository.getNamespaces();
+    myRepository.getItems();
+    myRepository.getModificationCount();
+    assertThat(MultiResourceRepository.getLockedReadCount()).isEqualTo(lockedReadCount);
+  }
+
+  @Test
+  public void invalidatingTypesKeepsTheMapsOfOtherTypes() {
+    ListMultimap<String, ResourceItem> strings = myRepository.getMap(null, ResourceType.STRING, false);
+    ListMultimap<String, ResourceItem> ids = myRepository.getMap(null, ResourceType.ID, false);
+
+    addItem(mySecond, ResourceType.STRING, "subtitle");
+    myRepository.invalidateCache(mySecond, null, ResourceType.STRING);
+
+    assertThat(myRepository.getMap(null, ResourceType.STRING, false)).isNotSameAs(strings);
+    assertThat(myRepository.getMap(null, ResourceType.STRING, false).keySet()).containsExactly("app_name", "title", "subtitle");
+    assertThat(myRepository.getMap(null, ResourceType.ID, false)).isSameAs(ids);
+  }
+
+  @Test
+  public void invalidatingAllResourcesDropsAllMaps() {
+    ListMultimap<String, ResourceItem> ids = myRepository.getMap(null, ResourceType.ID, false);
+    assertThat(myRepository.hasResourcesOfType(ResourceType.COLOR)).isFalse();
+
+    addItem(mySecond, ResourceType.COLOR, "accent");
+    myRepository.invalidateCache(mySecond);
+
+    assertThat(myRepository.getMap(null, ResourceType.ID, false)).isNotSameAs(ids);
+    assertThat(myRepository.hasResourcesOfType(ResourceType.COLOR)).isTrue();
+  }
+
+  @Test
+  public void invalidatingNamesMergesOnlyTheirItemsAgain() {
+    ListMultimap<String, ResourceItem> strings = myRepository.getMap(null, ResourceType.STRING, false);
+    ResourceItem title = strings.get("title").get(0);
+    MultiResourceRepository parent =
+      new MultiResourceRepository("parent", ImmutableList.of(myRepository, new TestLocalResourceRepository())) {};
+    ListMultimap<String, ResourceItem> parentStrings = parent.getMap(null, ResourceType.STRING, false);
+
+    // The item of the later child hides the one of the first child with the same qualifiers.
+    addItem(mySecond, ResourceType.STRING, "app_name");
+    addItem(mySecond, ResourceType.STRING, "subtitle");
+    mySecond.invalidateParentCaches(null, ResourceType.STRING, ImmutableList.of("app_name", "subtitle"));
+
+    // The published maps may be read without a lock, so they are replaced rather than modified.
+    assertThat(strings.keySet()).containsExactly("app_name", "title");
+    ListMultimap<String, ResourceItem> newStrings = myRepository.getMap(null, ResourceType.STRING, false);
+    assertThat(newStrings).isNotSameAs(strings);
+    assertThat(newStrings.keySet()).containsExactly("app_name", "title", "subtitle");
+    assertThat(newStrings.get("app_name")).containsExactlyElementsIn(mySecond.getMap(null, ResourceType.STRING, false).get("app_name"));
+    assertThat(newStrings.get("title")).containsExactly(title);
+    assertThat(parent.getMap(null, ResourceType.STRING, false)).isNotSameAs(parentStrings);
+    assertThat(parent.getMap(null, ResourceType.STRING, false)).isEqualTo(newStrings);
+    assertThat(myRepository.getItems().get(null, ResourceType.STRING)).isSameAs(newStrings);
+
+    mySecond.getMap(null, ResourceType.STRING, false).removeAll("subtitle");
+    mySecond.invalidateParentCaches(null, ResourceType.STRING, ImmutableList.of("subtitle"));
+    assertThat(newStrings.keySet()).containsExactly("app_name", "title", "subtitle");
+    assertThat(myRepository.getMap(null, ResourceType.STRING, false).keySet()).containsExactly("app_name", "title");
+    assertThat(parent.getMap(null, ResourceType.STRING, false)).isEqualTo(myRepository.getMap(null, ResourceType.STRING, false));
+  }
+
+  private static void addItem(@NotNull TestLocalResourceRepository repository, @NotNull ResourceType type, @NotNull String name) {
+    ResourceItem item = new ResourceItem(name, null, type, null, null);
+    // Merging reads the qualifiers of the items from their source file.
+    new ResourceFile(new File(name + ".xml"), item, "", new FolderConfiguration());
+    repository.getMap(null, type, true).put(name, item);
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.res2.DataFile;
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.res2.ResourceSet;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.utils.StdLogger;
+import com.android.utils.XmlUtils;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.io.File;
+import java.util.*;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ResourceFolderCacheFileTest {
+  private File myTempDir;
+  private File myResourceDir;
+
+  @Before
+  public void setUp() throws Exception {
+    myTempDir = FileUtil.createTempDirectory("resourceFolderCacheFile", null);
+    myResourceDir = new File(myTempDir, "res");
+    FileUtil.writeToFile(new File(myResourceDir, "values/values.xml"),
+                         "<resources xmlns:xliff=\"urn:oasis:names:tc:xliff:document:1.2\">\n" +
+                         "  <string name=\"app_name\">My &amp; App</string>\n" +
+                         "  <string name=\"count\" translatable=\"false\">Count: <xliff:g id=\"count\">%1$d</xliff:g></string>\n" +
+                         "  <color name=\"accent\">#ff00ff00</color>\n" +
+                         "  <dimen name=\"margin\">16dp</dimen>\n" +
+                         "  <item type=\"id\" name=\"header\"/>\n" +
+                         "  <style name=\"AppTheme\" parent=\"android:Theme\">\n" +
+                         "    <item name=\"android:colorAccent\">@color/accent</item>\n" +
+                         "  </style>\n" +
+                         "  <plurals name=\"items\">\n" +
+                         "    <item quantity=\"one\">One item</item>\n" +
+                         "    <item quantity=\"other\">%d items</item>\n" +
+                         "  </plurals>\n" +
+                         "</resources>\n");
+    FileUtil.writeToFile(new File(myResourceDir, "values-fr/strings.xml"),
+                         "<resources>\n" +
+                         "  <string name=\"app_name\">Mon appli</string>\n" +
+                         "</resources>\n");
+    FileUtil.writeToFile(new File(myResourceDir, "layout/main.xml"),
+                         "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\">\n" +
+                         "  <Button android:id=\"@+id/button\"/>\n" +
+                         "  <TextView android:id=\"@+id/title\"/>\n" +
+                         "</LinearLayout>\n");
+    FileUtil.writeToFile(new File(myResourceDir, "menu/options.xml"),
+                         "<menu xmlns:android=\"http://schemas.android.com/apk/res/android\">\n" +
+                         "  <item android:id=\"@+id/settings\"/>\n" +
+                         "</menu>\n");
+    FileUtil.writeToFile(new File(myResourceDir, "color/selector.xml"),
+                         "<selector xmlns:android=\"http://schemas.android.com/apk/res/android\">\n" +
+                         "  <item android:color=\"#ff000000\"/>\n" +
+                         "</selector>\n");
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myTempDir);
+  }
+
+  @Test
+  public void loadedFilesMatchWrittenFiles() throws Exception {
+    Collection<ResourceFile> resourceFiles = parseResourceFiles();
+    Set<DataFile.FileType> fileTypes = EnumSet.noneOf(DataFile.FileType.class);
+    for (ResourceFile resourceFile : resourceFiles) {
+      fileTypes.add(resourceFile.getType());
+    }
+    assertThat(fileTypes).containsExactly(DataFile.FileType.XML_VALUES, DataFile.FileType.GENERATED_FILES,
+                                          DataFile.FileType.SINGLE_FILE);
+
+    File cacheFile = new File(myTempDir, ResourceFolderCacheFile.FILE_NAME);
+    ResourceFolderCacheFile.write(cacheFile, myResourceDir, resourceFiles);
+    ResourceFolderCacheFile cache = ResourceFolderCacheFile.open(cacheFile, myResourceDir);
+    assertThat(cache).isNotNull();
+
+    for (ResourceFile resourceFile : resourceFiles) {
+      File file = resourceFile.getFile();
+      String folderName = file.getParentFile().getName();
+      int dash = folderName.indexOf('-');
+      String qualifiers = dash < 0 ? "" : folderName.substring(dash + 1);
+      FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForFolder(folderName);
+      assertThat(folderConfiguration).isNotNull();
+
+      ResourceFile loaded = cache.loadFile(file, qualifiers, folderConfiguration, null, null);
+      assertThat(loaded).isNotNull();
+      assertThat(loaded.getType()).named(file.getPath()).isEqualTo(resourceFile.getType());
+      assertThat(describe(loaded.getItems())).isEqualTo(describe(resourceFile.getItems()));
+      for (ResourceItem item : loaded.getItems()) {
+        assertThat(item.getSourceType()).isEqualTo(resourceFile.getType());
+      }
+    }
+  }
+
+  @Test
+  public void changedFilesAreNotLoaded() throws Exception {
+    Collection<ResourceFile> resourceFiles = parseResourceFiles();
+    File cacheFile = new File(myTempDir, ResourceFolderCacheFile.FILE_NAME);
+    ResourceFolderCacheFile.write(cacheFile, myResourceDir, resourceFiles);
+
+    File layout = new File(myResourceDir, "layout/main.xml");
+    FileUtil.writeToFile(layout, "<LinearLayout/>\n");
+    ResourceFolderCacheFile cache = ResourceFolderCacheFile.open(cacheFile, myResourceDir);
+    assertThat(cache).isNotNull();
+    assertThat(cache.loadFile(layout, "", FolderConfiguration.getConfigForFolder("layout"), null, null)).isNull();
+    assertThat(cache.loadFile(new File(myResourceDir, "values/values.xml"), "", FolderConfiguration.getConfigForFolder("values"),
+                              null, null)).isNotNull();
+  }
+
+  @NotNull
+  private Collection<ResourceFile> parseResourceFiles() throws Exception {
+    ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), null, null, false /* validateEnabled */);
+    resourceSet.addSource(myResourceDir);
+    resourceSet.loadFromFiles(new StdLogger(StdLogger.Level.WARNING));
+    Set<ResourceFile> resourceFiles = new LinkedHashSet<>();
+    for (ResourceItem item : resourceSet.getDataMap().values()) {
+      resourceFiles.add(item.getSource());
+    }
+    return resourceFiles;
+  }
+
+  /**
+   * Returns the type, name and value XML of the given items, sorted.
+   */
+  @NotNull
+  private static List<String> describe(@NotNull Collection<ResourceItem> items) {
+    List<String> descriptions = new ArrayList<>();
+    for (ResourceItem item : items) {
+      Node value = item.getValue();
+      descriptions.add(item.getType().getName() + "/" + item.getName() + ": " + (value == null ? null : XmlUtils.toXml(value)));
+    }
+    Collections.sort(descriptions);
+    return descriptions;
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.res2.*;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.tools.tests.PerfgateRule;
+import com.android.utils.StdLogger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Compares how long it takes to load the resources of a large resource folder from the XML blob written by {@link ResourceMerger}, which
+ * {@link ResourceFolderRepository} used to cache its initial scan in, and from a {@link ResourceFolderCacheFile}.
+ */
+public class ResourceFolderRepositoryBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final int VALUES_FILE_COUNT = 200;
+  private static final int STRINGS_PER_FILE = 100;
+  private static final int WARMUP_RUNS = 3;
+  private static final int MEASURED_RUNS = 10;
+
+  private File myTempDir;
+  private File myResourceDir;
+  private Collection<ResourceFile> myResourceFiles;
+
+  @Before
+  public void setUp() throws Exception {
+    myTempDir = FileUtil.createTempDirectory("resourceFolderRepositoryBenchmark", null);
+    myResourceDir = new File(myTempDir, "res");
+    for (int i = 0; i < VALUES_FILE_COUNT; i++) {
+      StringBuilder xml = new StringBuilder("<resources xmlns:xliff=\"urn:oasis:names:tc:xliff:document:1.2\">\n");
+      for (int j = 0; j < STRINGS_PER_FILE; j++) {
+        xml.append(String.format("  <string name=\"string_%1$d_%2$d\">Value <xliff:g id=\"count\">%%1$d</xliff:g> of %1$d</string>\n",
+                                 i, j));
+      }
+      xml.append("  <item type=\"id\" name=\"id_").append(i).append("\"/>\n");
+      xml.append("  <color name=\"color_").append(i).append("\">#ff00ff00</color>\n");
+      xml.append("</resources>\n");
+      FileUtil.writeToFile(new File(myResourceDir, "values/values_" + i + ".xml"), xml.toString());
+    }
+
+    ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), null, null, false /* validateEnabled */);
+    resourceSet.addSource(myResourceDir);
+    resourceSet.loadFromFiles(new StdLogger(StdLogger.Level.WARNING));
+    Set<ResourceFile> resourceFiles = new LinkedHashSet<>();
+    for (ResourceItem item : resourceSet.getDataMap().values()) {
+      resourceFiles.add(item.getSource());
+    }
+    myResourceFiles = resourceFiles;
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myTempDir);
+  }
+
+  @Test
+  public void benchmarkLoadFromCache() throws Exception {
+    File blobRoot = new File(myTempDir, "blob");
+    writeBlob(blobRoot);
+    File cacheFile = new File(myTempDir, ResourceFolderCacheFile.FILE_NAME);
+    ResourceFolderCacheFile.write(cacheFile, myResourceDir, myResourceFiles);
+
+    for (int i = 0; i < WARMUP_RUNS; i++) {
+      loadFromBlob(blobRoot);
+      loadFromCacheFile(cacheFile);
+    }
+    long blobStartNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      loadFromBlob(blobRoot);
+    }
+    long blobRunNs = (System.nanoTime() - blobStartNs) / MEASURED_RUNS;
+    long cacheFileStartNs = System.nanoTime();
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      loadFromCacheFile(cacheFile);
+    }
+    long cacheFileRunNs = (System.nanoTime() - cacheFileStartNs) / MEASURED_RUNS;
+
+    ourPerfgate.logSample("Resource Folder Load From XML Blob (ms)", TimeUnit.NANOSECONDS.toMillis(blobRunNs));
+    ourPerfgate.logSample("Resource Folder Load From Cache File (ms)", TimeUnit.NANOSECONDS.toMillis(cacheFileRunNs));
+  }
+
+  private void writeBlob(@NotNull File blobRoot) throws Exception {
+    ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), null, null, false /* validateEnabled */);
+    resourceSet.addSource(myResourceDir);
+    resourceSet.loadFromFiles(new StdLogger(StdLogger.Level.WARNING));
+    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
+    merger.addDataSet(resourceSet);
+    File tempDirectory = FileUtil.createTempDirectory("resource", "tmp", false);
+    try {
+      MergeConsumer<ResourceItem> consumer = MergedResourceWriter.createWriterWithoutPngCruncher(
+        blobRoot, null, null, NoOpResourcePreprocessor.INSTANCE, tempDirectory);
+      merger.writeBlobToWithTimestamps(blobRoot, consumer);
+    }
+    finally {
+      FileUtil.delete(tempDirectory);
+    }
+  }
+
+  private static void loadFromBlob(@NotNull File blobRoot) throws MergingException {
+    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
+    assertThat(merger.loadFromBlob(blobRoot, false)).isTrue();
+  }
+
+  private void loadFromCacheFile(@NotNull File cacheFile) {
+    ResourceFolderCacheFile cache = ResourceFolderCacheFile.open(cacheFile, myResourceDir);
+    assertThat(cache).isNotNull();
+    FolderConfiguration folderConfiguration = new FolderConfiguration();
+    for (ResourceFile resourceFile : myResourceFiles) {
+      assertThat(cache.loadFile(resourceFile.getFile(), "", folderConfiguration, null, null)).isNotNull();
+    }
+  }
+}
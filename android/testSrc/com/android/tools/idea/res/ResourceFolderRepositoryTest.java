@@ -28,6 +28,7 @@ import com.android.tools.idea.databinding.DataBindingUtil;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.vfs.VfsUtil;
@@ -55,6 +56,7 @@ import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.idea.res.ResourceFolderRepository.ourFullRescans;
@@ -3762,6 +3764,60 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertEquals("en", dupedStringItem.getQualifiers());
   }
 
+  public void testGetRunsPendingScan() throws Exception {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout1.xml");
+    VirtualFile dir = getResourceDirectory();
+    List<Runnable> queuedScans = new ArrayList<>();
+    List<FutureTask<ResourceFolderRepository>> scans =
+      ResourceFolderRegistry.scheduleScans(getProject(), Collections.singletonMap(dir, myFacet), queuedScans::add);
+    assertSize(1, scans);
+    assertSize(1, queuedScans);
+
+    // The scan hasn't started on the pool yet, so the registry runs it instead of scanning the directory a second time.
+    ResourceFolderRepository resources = ResourceFolderRegistry.get(myFacet, dir);
+    assertTrue(scans.get(0).isDone());
+    assertSame(resources, scans.get(0).get());
+    assertTrue(resources.hasResourceItem(ResourceType.LAYOUT, "layout1"));
+
+    queuedScans.get(0).run();
+    assertSame(resources, ResourceFolderRegistry.get(myFacet, dir));
+    assertEmpty(ResourceFolderRegistry.scheduleScans(getProject(), Collections.singletonMap(dir, myFacet), queuedScans::add));
+  }
+
+  public void testGetSharesScanFromHelperThread() throws Exception {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout1.xml");
+    VirtualFile dir = getResourceDirectory();
+    ExecutorService executorService = SequentialTaskExecutor.createSequentialApplicationPoolExecutor(getTestName(false));
+    List<FutureTask<ResourceFolderRepository>> scans =
+      ResourceFolderRegistry.scheduleScans(getProject(), Collections.singletonMap(dir, myFacet), executorService);
+    assertSize(1, scans);
+
+    // Whether or not the scan has started on the helper thread, there's only one repository for the directory.
+    ResourceFolderRepository resources = ResourceFolderRegistry.get(myFacet, dir);
+    assertSame(resources, scans.get(0).get());
+    assertTrue(resources.hasResourceItem(ResourceType.LAYOUT, "layout1"));
+  }
+
+  public void testGetWaitsForScanInReadAction() throws Exception {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout1.xml");
+    VirtualFile dir = getResourceDirectory();
+    List<Runnable> queuedScans = new ArrayList<>();
+    List<FutureTask<ResourceFolderRepository>> scans =
+      ResourceFolderRegistry.scheduleScans(getProject(), Collections.singletonMap(dir, myFacet), queuedScans::add);
+    assertSize(1, scans);
+    ExecutorService executorService = SequentialTaskExecutor.createSequentialApplicationPoolExecutor(getTestName(false));
+    // Start the scan on a pool thread before a background reader asks for the repository.
+    executorService.execute(queuedScans.get(0));
+
+    // A background thread in a read action waits for the pending scan instead of scanning the directory a second time.
+    Future<ResourceFolderRepository> resources = ApplicationManager.getApplication().executeOnPooledThread(
+      () -> ApplicationManager.getApplication().runReadAction((Computable<ResourceFolderRepository>)() -> {
+        return ResourceFolderRegistry.get(myFacet, dir);
+      }));
+    assertSame(scans.get(0).get(), resources.get());
+    assertTrue(resources.get().hasResourceItem(ResourceType.LAYOUT, "layout1"));
+  }
+
   public void testEditColorStateList() throws Exception {
     resetScanCounter();
 
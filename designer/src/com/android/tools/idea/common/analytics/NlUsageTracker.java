@@ -43,6 +43,11 @@ public interface NlUsageTracker {
    */
   void logRenderResult(@Nullable LayoutEditorRenderResult.Trigger trigger, @NotNull RenderResult result, long totalRenderTimeMs);
 
+  /**
+   * Logs how many renders of a layout reused a previous result with the same inputs, and how many did not, once its editor is closed.
+   */
+  void logRenderResultCacheStats(long hitCount, long missCount);
+
   /**
    * Logs a component drop from the palette to either the design surface of the component tree.
    *
@@ -21,6 +21,7 @@ import com.android.tools.analytics.UsageTracker;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.rendering.RenderErrorModelFactory;
 import com.android.tools.idea.rendering.RenderResult;
+import com.android.tools.idea.rendering.RenderResultCache;
 import com.android.tools.idea.rendering.errors.ui.RenderErrorModel;
 import com.android.tools.idea.common.model.NlComponent;
 import com.android.tools.idea.uibuilder.property.NlPropertiesPanel.PropertiesViewMode;
@@ -32,6 +33,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.wireless.android.sdk.stats.*;
 import com.google.wireless.android.sdk.stats.LayoutEditorState.Mode;
 import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.facet.AndroidFacet;
@@ -299,6 +301,14 @@ public class NlUsageTrackerManager implements NlUsageTracker {
     });
   }
 
+  @Override
+  public void logRenderResultCacheStats(long hitCount, long missCount) {
+    // LayoutEditorRenderResult has no fields for the render result cache, so the counts only go to the IDE log for now
+    Logger.getInstance(NlUsageTrackerManager.class).info(String.format(
+      "Render result cache: %1$d hits, %2$d misses for this layout, %3$d hits, %4$d misses in total",
+      hitCount, missCount, RenderResultCache.getTotalHitCount(), RenderResultCache.getTotalMissCount()));
+  }
+
   @Override
   public void logDropFromPalette(@NotNull String viewTagName,
                                  @NotNull String representation,
@@ -38,6 +38,10 @@ class NopTracker implements NlUsageTracker {
   public void logRenderResult(@Nullable LayoutEditorRenderResult.Trigger trigger, @NotNull RenderResult result, long totalRenderTimeMs) {
   }
 
+  @Override
+  public void logRenderResultCacheStats(long hitCount, long missCount) {
+  }
+
 
   @Override
   public void logDropFromPalette(@NotNull String viewTagName,
@@ -95,12 +95,12 @@ public class AttributesTransaction implements NlAttributesHolder {
   /**
    * Triggers a re-layout of the given {@link View}. This might happen asynchronously.
    */
-  private static void triggerViewRelayout(@NotNull View view) {
+  private static void triggerViewRelayout(@NotNull NlModel model, @NotNull View view) {
     try {
       // We run the re-layout as a render action to avoid a render happening at the same time as the re-layout since that
       // might cause problems.
       // TODO: Investigate a more lightweight solution for this.
-      RenderService.runRenderAction(() -> {
+      RenderService.runRenderAction(model.getModule(), () -> {
         view.setLayoutParams(view.getLayoutParams());
         view.forceLayout();
       });
@@ -195,7 +195,7 @@ public class AttributesTransaction implements NlAttributesHolder {
     if (viewInfo != null) {
       applyAllPendingAttributesToView(viewInfo);
       if (hasPendingRelayout) {
-        triggerViewRelayout((View)viewInfo.getViewObject());
+        triggerViewRelayout(myModel, (View)viewInfo.getViewObject());
       }
     }
   }
@@ -61,7 +61,7 @@ public class TransitionLayoutHandler extends ConstraintLayoutHandler {
       }
       if (myCallSetTransitionPosition != null) {
         try {
-          RenderService.runRenderAction(() -> {
+          RenderService.runRenderAction(myTransitionLayoutComponent.getModel().getModule(), () -> {
             try {
               myCallSetTransitionPosition.invoke(instance, Float.valueOf(position));
             }
@@ -88,7 +88,7 @@ public class TransitionLayoutHandler extends ConstraintLayoutHandler {
       }
       if (myCallEvaluate != null) {
         try {
-          RenderService.runRenderAction(() -> {
+          RenderService.runRenderAction(myTransitionLayoutComponent.getModel().getModule(), () -> {
             try {
               myCallEvaluate.invoke(instance);
             }
@@ -134,7 +134,7 @@ public class TransitionLayoutHandler extends ConstraintLayoutHandler {
 
       if (myGetMaxTimeMethod != null) {
         try {
-          return RenderService.runRenderAction(() -> {
+          return RenderService.runRenderAction(myTransitionLayoutComponent.getModel().getModule(), () -> {
             try {
               return (long)myGetMaxTimeMethod.invoke(instance);
             }
@@ -249,6 +249,9 @@ public class PreviewProvider implements Disposable {
       RenderService renderService = RenderService.getInstance(facet);
       RenderLogger logger = renderService.createLogger();
       myRenderTask = renderService.createTask(null, configuration, logger, null);
+      if (myRenderTask != null) {
+        myRenderTask.setPriority(RenderExecutor.Priority.THUMBNAIL);
+      }
     }
 
     return myRenderTask;
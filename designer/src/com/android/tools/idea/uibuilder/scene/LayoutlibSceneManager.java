@@ -16,6 +16,9 @@
 package com.android.tools.idea.uibuilder.scene;
 
 import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
 import com.android.tools.idea.AndroidPsiUtils;
 import com.android.tools.idea.common.analytics.NlUsageTrackerManager;
 import com.android.tools.idea.common.model.*;
@@ -70,6 +73,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -110,6 +114,36 @@ public class LayoutlibSceneManager extends SceneManager {
   private final ReentrantReadWriteLock myRenderResultLock = new ReentrantReadWriteLock();
   @GuardedBy("myRenderResultLock")
   private RenderResult myRenderResult;
+  // Fingerprint of the inputs of myRenderResult if it can be reused for a render with the same inputs, or null
+  @GuardedBy("myRenderResultLock")
+  private Object myRenderResultFingerprint;
+  private static final int MAX_CACHED_RENDER_RESULTS = 4;
+  private final RenderResultCache myRenderResultCache = new RenderResultCache(MAX_CACHED_RENDER_RESULTS);
+  // Incremented when the view objects of the render session are changed directly, without changing the layout file
+  private final AtomicLong myLiveUpdateCount = new AtomicLong();
+  // Inputs the current render task was inflated from
+  @GuardedBy("myRenderingTaskLock")
+  private ResourceNotificationManager.ResourceVersion myRenderTaskResourceVersion;
+  @GuardedBy("myRenderingTaskLock")
+  private Object myRenderTaskConfigurationFingerprint;
+  @GuardedBy("myRenderingTaskLock")
+  private long myRenderTaskLiveUpdateCount;
+  private static final int MAX_INACTIVE_RENDER_TASKS = MAX_CACHED_RENDER_RESULTS - 1;
+  // Render tasks replaced by the inflation of another configuration, keyed by the fingerprint of the configuration they were inflated for.
+  // Going back to one of those configurations, e.g. when switching back and forth between devices or themes, reuses the session and the
+  // last result of its task instead of inflating the layout again. They were all inflated from the resources of the current render task.
+  @GuardedBy("myRenderingTaskLock")
+  private final LinkedHashMap<Object, InactiveRenderTask> myInactiveRenderTasks =
+    new LinkedHashMap<Object, InactiveRenderTask>(MAX_INACTIVE_RENDER_TASKS + 1, 1, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, InactiveRenderTask> eldest) {
+        if (size() > MAX_INACTIVE_RENDER_TASKS) {
+          disposeRenderTask(eldest.getValue().myTask);
+          return true;
+        }
+        return false;
+      }
+    };
   // Variables to track previous values of the configuration bar for tracking purposes
   private String myPreviousDeviceName;
   private Locale myPreviousLocale;
@@ -196,6 +230,8 @@ public class LayoutlibSceneManager extends SceneManager {
       model.getConfiguration().removeListener(myConfigurationChangeListener);
       model.removeListener(myModelChangeListener);
     }
+    NlUsageTrackerManager.getInstance(getDesignSurface())
+      .logRenderResultCacheStats(myRenderResultCache.getHitCount(), myRenderResultCache.getMissCount());
 
     super.dispose();
     // dispose is called by the project close using the read lock. Invoke the render task dispose later without the lock.
@@ -205,14 +241,17 @@ public class LayoutlibSceneManager extends SceneManager {
           myRenderTask.dispose();
           myRenderTask = null;
         }
+        disposeInactiveRenderTasks();
       }
       myRenderResultLock.writeLock().lock();
       try {
         myRenderResult = null;
+        myRenderResultFingerprint = null;
       }
       finally {
         myRenderResultLock.writeLock().unlock();
       }
+      myRenderResultCache.clear();
     });
   }
 
@@ -391,6 +430,7 @@ public class LayoutlibSceneManager extends SceneManager {
 
     @Override
     public void modelLiveUpdate(@NotNull NlModel model, boolean animate) {
+      liveUpdated();
       NlDesignSurface surface = getDesignSurface();
 
       /*
@@ -488,6 +528,8 @@ public class LayoutlibSceneManager extends SceneManager {
 
   @Override
   public void requestLayoutAndRender(boolean animate) {
+    // Layouts are requested after changing the view objects of the session, e.g. while dragging or scrolling a component
+    liveUpdated();
     requestRender(() -> {
       getModel().notifyListenersModelLayoutComplete(animate);
     }, getTriggerFromChangeType(getModel().getLastChangeType()));
@@ -697,6 +739,7 @@ public class LayoutlibSceneManager extends SceneManager {
     LayoutPullParsers.saveFileIfNecessary(getModel().getFile());
 
     RenderResult result = null;
+    Object resultFingerprint = null;
     RenderTask resultTask = null;
     synchronized (myRenderingTaskLock) {
       if (myRenderTask != null && !force) {
@@ -708,23 +751,38 @@ public class LayoutlibSceneManager extends SceneManager {
       // external changes
       myRenderedVersion = resourceNotificationManager.getCurrentVersion(getModel().getFacet(), getModel().getFile(), configuration);
 
-      RenderService renderService = RenderService.getInstance(getModel().getFacet());
-      RenderLogger logger = renderService.createLogger();
-      if (myRenderTask != null && !myRenderTask.isDisposed()) {
-        myRenderTask.dispose();
-      }
-      myRenderTask = renderService.createTask(getModel().getFile(), configuration, logger, getDesignSurface());
-      setupRenderTask(myRenderTask);
-      if (myRenderTask != null) {
-        myRenderTask.getLayoutlibCallback()
-          .setAdaptiveIconMaskPath(getDesignSurface().getAdaptiveIconShape().getPathDescription());
-        result = myRenderTask.inflate();
-        if (result == null || !result.getRenderResult().isSuccess()) {
-          myRenderTask.dispose();
-          myRenderTask = null;
-
-          if (result == null) {
-            result = RenderResult.createBlank(getModel().getFile());
+      ResourceNotificationManager.ResourceVersion resourceVersion = getResourceVersion();
+      Object configurationFingerprint = getConfigurationFingerprint();
+      InactiveRenderTask inactiveTask = replaceRenderTask(resourceVersion, configurationFingerprint);
+      myRenderTaskResourceVersion = resourceVersion;
+      myRenderTaskConfigurationFingerprint = configurationFingerprint;
+      myRenderTaskLiveUpdateCount = myLiveUpdateCount.get();
+      if (inactiveTask != null) {
+        // The session of this task was inflated from the same inputs, and its last render can be shown until the next one
+        myRenderTask = inactiveTask.myTask;
+        result = inactiveTask.myResult;
+        resultFingerprint = inactiveTask.myRenderFingerprint;
+        myRenderResultCache.put(resultFingerprint, result);
+      }
+      else {
+        RenderService renderService = RenderService.getInstance(getModel().getFacet());
+        RenderLogger logger = renderService.createLogger();
+        myRenderTask = renderService.createTask(getModel().getFile(), configuration, logger, getDesignSurface());
+        if (myRenderTask != null && getDesignSurface().isPreviewSurface()) {
+          myRenderTask.setPriority(RenderExecutor.Priority.PREVIEW);
+        }
+        setupRenderTask(myRenderTask);
+        if (myRenderTask != null) {
+          myRenderTask.getLayoutlibCallback()
+            .setAdaptiveIconMaskPath(getDesignSurface().getAdaptiveIconShape().getPathDescription());
+          result = myRenderTask.inflate();
+          if (result == null || !result.getRenderResult().isSuccess()) {
+            disposeRenderTask(myRenderTask);
+            myRenderTask = null;
+
+            if (result == null) {
+              result = RenderResult.createBlank(getModel().getFile());
+            }
           }
         }
       }
@@ -736,6 +794,7 @@ public class LayoutlibSceneManager extends SceneManager {
     myRenderResultLock.writeLock().lock();
     try {
       myRenderResult = result;
+      myRenderResultFingerprint = resultFingerprint;
     }
     finally {
       myRenderResultLock.writeLock().unlock();
@@ -813,18 +872,40 @@ public class LayoutlibSceneManager extends SceneManager {
     boolean inflated = inflate(false);
     long elapsedFrameTimeMs = myElapsedFrameTimeMs;
 
-    Future<RenderResult> futureResult;
+    // Renders explicitly requested by the user always go to layoutlib
+    Object fingerprint = trigger != LayoutEditorRenderResult.Trigger.USER ? getRenderFingerprint(elapsedFrameTimeMs) : null;
+    long liveUpdateCount = myLiveUpdateCount.get();
+    RenderResult cachedResult = fingerprint != null ? myRenderResultCache.get(fingerprint) : null;
+    Future<RenderResult> futureResult = null;
     synchronized (myRenderingTaskLock) {
+      if (trigger == LayoutEditorRenderResult.Trigger.USER) {
+        // Sessions inflated before a refresh requested by the user are not brought back after it
+        disposeInactiveRenderTasks();
+      }
       if (myRenderTask == null) {
         return;
       }
-      if (elapsedFrameTimeMs != -1) {
-        myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
+      if (cachedResult != null && cachedResult.getRenderTask() != myRenderTask) {
+        // The view infos of a result are only valid as long as the session of its task is alive
+        cachedResult = null;
+      }
+      if (cachedResult == null) {
+        if (elapsedFrameTimeMs != -1) {
+          myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
+        }
+        futureResult = myRenderTask.render();
       }
-      futureResult = myRenderTask.render();
     }
 
-    RenderResult result = Futures.getUnchecked(futureResult);
+    RenderResult result = cachedResult != null ? cachedResult : Futures.getUnchecked(futureResult);
+    // Only cache the result if nothing changed while rendering, since the render might have picked up the change
+    boolean reusable = result != null &&
+                       fingerprint != null &&
+                       liveUpdateCount == myLiveUpdateCount.get() &&
+                       fingerprint.equals(getRenderFingerprint(elapsedFrameTimeMs));
+    if (cachedResult == null && reusable) {
+      myRenderResultCache.put(fingerprint, result);
+    }
     // When the layout was inflated in this same call, we do not have to update the hierarchy again
     if (result != null && !inflated) {
       updateHierarchy(result);
@@ -832,6 +913,7 @@ public class LayoutlibSceneManager extends SceneManager {
     myRenderResultLock.writeLock().lock();
     try {
       myRenderResult = result;
+      myRenderResultFingerprint = reusable ? fingerprint : null;
       // Downgrade the write lock to read lock
       myRenderResultLock.readLock().lock();
     }
@@ -855,6 +937,137 @@ public class LayoutlibSceneManager extends SceneManager {
     fireRenderListeners();
   }
 
+  /**
+   * Drops the cached render results, which no longer match the view objects of the session, and makes sure a render running meanwhile
+   * is not cached either.
+   */
+  private void liveUpdated() {
+    myLiveUpdateCount.incrementAndGet();
+    myRenderResultCache.clear();
+  }
+
+  /**
+   * Takes the current render task out. It is kept as an inactive task, with its last result, if its session still matches the inputs it
+   * was inflated from and those are not the given ones. Otherwise it is disposed. The inactive tasks are disposed when the resources
+   * change.
+   *
+   * @return the inactive task inflated for the given inputs, if any, which is no longer kept as inactive
+   */
+  @GuardedBy("myRenderingTaskLock")
+  @Nullable
+  private InactiveRenderTask replaceRenderTask(@NotNull ResourceNotificationManager.ResourceVersion resourceVersion,
+                                               @NotNull Object configurationFingerprint) {
+    boolean sameResources = resourceVersion.equals(myRenderTaskResourceVersion);
+    if (!sameResources) {
+      disposeInactiveRenderTasks();
+    }
+    InactiveRenderTask inactiveTask = myInactiveRenderTasks.remove(configurationFingerprint);
+
+    if (myRenderTask != null) {
+      RenderResult lastResult;
+      Object lastResultFingerprint;
+      myRenderResultLock.readLock().lock();
+      try {
+        lastResult = myRenderResult;
+        lastResultFingerprint = myRenderResultFingerprint;
+      }
+      finally {
+        myRenderResultLock.readLock().unlock();
+      }
+
+      if (sameResources &&
+          myRenderTaskConfigurationFingerprint != null &&
+          !myRenderTaskConfigurationFingerprint.equals(configurationFingerprint) &&
+          myRenderTaskLiveUpdateCount == myLiveUpdateCount.get() &&
+          lastResult != null &&
+          lastResult.getRenderTask() == myRenderTask &&
+          lastResult.getRenderResult().isSuccess() &&
+          lastResult.hasImage() &&
+          lastResultFingerprint != null) {
+        myInactiveRenderTasks.put(myRenderTaskConfigurationFingerprint,
+                                  new InactiveRenderTask(myRenderTask, lastResult, lastResultFingerprint));
+      }
+      else {
+        disposeRenderTask(myRenderTask);
+      }
+      myRenderTask = null;
+    }
+    return inactiveTask;
+  }
+
+  @GuardedBy("myRenderingTaskLock")
+  private void disposeInactiveRenderTasks() {
+    for (InactiveRenderTask inactiveTask : myInactiveRenderTasks.values()) {
+      disposeRenderTask(inactiveTask.myTask);
+    }
+    myInactiveRenderTasks.clear();
+  }
+
+  /**
+   * Disposes the given task and drops its cached results, whose view infos belong to its session.
+   */
+  private void disposeRenderTask(@NotNull RenderTask task) {
+    if (!task.isDisposed()) {
+      task.dispose();
+    }
+    myRenderResultCache.removeResultsOf(task);
+  }
+
+  @NotNull
+  private ResourceNotificationManager.ResourceVersion getResourceVersion() {
+    NlModel model = getModel();
+    return ResourceNotificationManager.getInstance(model.getProject()).getCurrentVersion(model.getFacet(), model.getFile(), null);
+  }
+
+  /**
+   * Returns a fingerprint of the values of the configuration and of the design surface that a render task is inflated for. The
+   * configuration modification count is not used since it changes even when going back to a previous configuration.
+   */
+  @NotNull
+  private Object getConfigurationFingerprint() {
+    Configuration configuration = getModel().getConfiguration();
+    Device device = configuration.getDevice();
+    State deviceState = configuration.getDeviceState();
+    IAndroidTarget target = configuration.getTarget();
+    return Arrays.asList(
+      configuration.getConfigurationManager().getStateVersion(),
+      configuration.getFullConfig().getQualifierString(),
+      device != null ? device.getId() : null,
+      deviceState != null ? deviceState.getName() : null,
+      target != null ? target.hashString() : null,
+      configuration.getTheme(),
+      configuration.getActivity(),
+      getDesignSurface().getAdaptiveIconShape(),
+      isRenderViewPort());
+  }
+
+  /**
+   * Returns a fingerprint of all the inputs of a render of the model: the layout file, the resources, the configuration and the animation
+   * frame. The layout file is identified by its modification stamp rather than by its contents, since the view cookies of a cached result
+   * refer to the tags of the file they were rendered from. Live updates of the view objects are not part of it: they drop the cached
+   * results instead.
+   */
+  @NotNull
+  private Object getRenderFingerprint(long elapsedFrameTimeMs) {
+    return Arrays.asList(getResourceVersion(), getConfigurationFingerprint(), elapsedFrameTimeMs);
+  }
+
+  /**
+   * A render task that is no longer the current one, but whose session is kept to be reused.
+   */
+  private static class InactiveRenderTask {
+    @NotNull private final RenderTask myTask;
+    // The last result of the task, and the fingerprint of the inputs it was rendered from
+    @NotNull private final RenderResult myResult;
+    @NotNull private final Object myRenderFingerprint;
+
+    private InactiveRenderTask(@NotNull RenderTask task, @NotNull RenderResult result, @NotNull Object renderFingerprint) {
+      myTask = task;
+      myResult = result;
+      myRenderFingerprint = renderFingerprint;
+    }
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
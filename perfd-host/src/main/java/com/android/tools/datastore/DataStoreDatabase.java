@@ -15,13 +15,18 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.DataStoreTable;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
@@ -35,7 +40,15 @@ public class DataStoreDatabase {
     return Logger.getInstance(DataStoreDatabase.class);
   }
 
+  /**
+   * Default period between group commits. Rows written in between are only visible to this connection, which is the only one reading
+   * them, so the interval only bounds how much data is lost if Studio goes away without disconnecting.
+   */
+  public static final long DEFAULT_COMMIT_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+
   private final Connection myConnection;
+  private final Object myCommitLock = new Object();
+  @Nullable private final Timer myCommitTimer;
 
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
@@ -48,6 +61,17 @@ public class DataStoreDatabase {
   public DataStoreDatabase(@NotNull String dbPath,
                            @NotNull Characteristic characteristic,
                            @NotNull Consumer<Throwable> noPiiExceptionHandler) {
+    this(dbPath, characteristic, noPiiExceptionHandler, DEFAULT_COMMIT_INTERVAL_MS);
+  }
+
+  /**
+   * @param commitIntervalMs the period at which batched table writes are flushed and the open transaction is committed. A non-positive
+   *                         value disables periodic commits, leaving everything to be committed on {@link #disconnect()}.
+   */
+  public DataStoreDatabase(@NotNull String dbPath,
+                           @NotNull Characteristic characteristic,
+                           @NotNull Consumer<Throwable> noPiiExceptionHandler,
+                           long commitIntervalMs) {
     Connection connection = null;
     try {
       // For older versions of the JDBC we need to force load the sqlite.JDBC driver to trigger static initializer's and register
@@ -79,8 +103,7 @@ public class DataStoreDatabase {
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization: writes are grouped into one transaction per commit interval, see CommitTimerTask.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -93,23 +116,56 @@ public class DataStoreDatabase {
       noPiiExceptionHandler.accept(e);
     }
     myConnection = connection;
+
+    if (myConnection != null && commitIntervalMs > 0) {
+      myCommitTimer = new Timer("DataStoreCommitTimer", true);
+      myCommitTimer.schedule(new CommitTimerTask(), commitIntervalMs, commitIntervalMs);
+    }
+    else {
+      myCommitTimer = null;
+    }
   }
 
   public void disconnect() {
-    try {
-      myConnection.commit();
+    if (myCommitTimer != null) {
+      myCommitTimer.cancel();
     }
-    catch (SQLException e) {
-      getLogger().error(e);
+    synchronized (myCommitLock) {
+      try {
+        DataStoreTable.flushPendingWrites(myConnection);
+        myConnection.commit();
+      }
+      catch (SQLException e) {
+        getLogger().error(e);
+      }
+      finally {
+        try {
+          if (!myConnection.isClosed()) {
+            myConnection.close();
+          }
+        }
+        catch (SQLException e) {
+          getLogger().error(e);
+        }
+        DataStoreTable.releaseTables(myConnection);
+      }
     }
-    finally {
+  }
+
+  /**
+   * Flushes the batched writes of all tables using this database and commits the current transaction.
+   */
+  public void commit() {
+    synchronized (myCommitLock) {
       try {
-        if (!myConnection.isClosed()) {
-          myConnection.close();
+        if (myConnection.isClosed()) {
+          return;
         }
+        DataStoreTable.flushPendingWrites(myConnection);
+        myConnection.commit();
       }
       catch (SQLException e) {
-        getLogger().error(e);
+        getLogger().warn(e);
       }
     }
   }
@@ -117,4 +173,11 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  private final class CommitTimerTask extends TimerTask {
+    @Override
+    public void run() {
+      commit();
+    }
+  }
 }
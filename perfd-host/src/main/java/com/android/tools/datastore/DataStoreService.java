@@ -18,6 +18,7 @@ package com.android.tools.datastore;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.WriteBatchStats;
 import com.android.tools.datastore.service.*;
 import com.android.tools.profiler.proto.*;
 import com.google.wireless.android.sdk.stats.AndroidProfilerDbStats;
@@ -245,6 +246,17 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     return myConnectedClients.containsKey(deviceId) ? myConnectedClients.get(deviceId).getProfilerClient() : null;
   }
 
+  /**
+   * @return the write batching statistics of every table, keyed by "namespace/table".
+   */
+  @NotNull
+  public Map<String, WriteBatchStats> getWriteStats() {
+    Map<String, WriteBatchStats> stats = new LinkedHashMap<>();
+    myDatabases.forEach((namespace, db) -> DataStoreTable.getWriteStats(db.getConnection()).forEach(
+      (table, tableStats) -> stats.put(namespace.myNamespace + "/" + table, tableStats)));
+    return stats;
+  }
+
   @Override
   public void onDataStoreError(Throwable t) {
     myNoPiiExceptionHanlder.accept(t);
@@ -348,6 +360,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       }
       catch (SQLException ignored) {
       }
+
+      // The usage proto has no fields for write throughput, so those are reported to the log alongside each sample.
+      getWriteStats().forEach((table, stats) -> getLogger().info(String.format("Write stats for %s: %s", table, stats)));
     }
   }
 }
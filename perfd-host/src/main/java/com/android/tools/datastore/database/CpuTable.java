@@ -15,12 +15,14 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.CpuProfiler.*;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -49,6 +51,27 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
     INSERT_TRACE_INFO,
   }
 
+  /**
+   * Holds the CPU usage samples when they are stored in memory rather than in Cpu_Data,
+   * see {@link #CpuTable(DataStoreDatabase.Characteristic)}.
+   */
+  @Nullable private final TimeSeriesStore<CpuUsageData> myCpuDataStore;
+
+  public CpuTable() {
+    this(DataStoreDatabase.Characteristic.DURABLE);
+  }
+
+  /**
+   * @param sampleStorage where CPU usage samples are kept. {@link DataStoreDatabase.Characteristic#PERFORMANT} keeps them in a
+   *                      {@link TimeSeriesStore} instead of the database. Traces and thread activities always live in the database.
+   *                      Pass the characteristic of the namespace the table is initialized in, so a durable database keeps its samples.
+   */
+  public CpuTable(@NotNull DataStoreDatabase.Characteristic sampleStorage) {
+    myCpuDataStore = sampleStorage == DataStoreDatabase.Characteristic.PERFORMANT
+                     ? new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.REPLACE)
+                     : null;
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -118,10 +141,17 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
   }
 
   public void insert(Common.Session session, CpuUsageData data) {
-    execute(CpuStatements.INSERT_CPU_DATA, session.getSessionId(), data.getEndTimestamp(), data.toByteArray());
+    if (myCpuDataStore != null) {
+      myCpuDataStore.insert(session.getSessionId(), 0, data.getEndTimestamp(), data);
+      return;
+    }
+    executeBatched(CpuStatements.INSERT_CPU_DATA, session.getSessionId(), data.getEndTimestamp(), data.toByteArray());
   }
 
   public List<CpuUsageData> getCpuDataByRequest(CpuDataRequest request) {
+    if (myCpuDataStore != null) {
+      return myCpuDataStore.getRange(request.getSession().getSessionId(), 0, request.getStartTimestamp(), request.getEndTimestamp());
+    }
     List<CpuUsageData> cpuData = new ArrayList<>();
     try {
       ResultSet results =
@@ -144,9 +174,8 @@ public class CpuTable extends DataStoreTable<CpuTable.CpuStatements> {
                                String name,
                                List<GetThreadsResponse.ThreadActivity> activities) {
     for (GetThreadsResponse.ThreadActivity activity : activities) {
-      // TODO: optimize it by adding the states in batches
-      execute(CpuStatements.INSERT_THREAD_ACTIVITY, session.getSessionId(), tid, activity.getTimestamp(), activity.getNewState().toString(),
-              name);
+      executeBatched(CpuStatements.INSERT_THREAD_ACTIVITY, session.getSessionId(), tid, activity.getTimestamp(),
+                     activity.getNewState().toString(), name);
     }
   }
 
@@ -23,10 +23,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Interface a {@link com.android.tools.datastore.ServicePassThrough} object returns to indicate this object is
@@ -36,9 +33,30 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Logger LOG = Logger.getInstance(DataStoreTable.class.getCanonicalName());
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = new HashSet();
 
+  /**
+   * Maximum number of rows queued per statement by {@link #executeBatched(Enum, Object...)} before they are written out. Rows that don't
+   * fill a batch are written by {@link #flushPendingWrites()}, which {@link com.android.tools.datastore.DataStoreDatabase} calls right
+   * before each group commit.
+   */
+  private static final int MAX_BATCH_SIZE = 256;
+
+  /**
+   * All initialized tables, grouped by the connection they write to, so the owner of a connection can flush every table's pending
+   * writes before committing.
+   */
+  private static final Map<Connection, Set<DataStoreTable<?>>> TABLES_BY_CONNECTION = new IdentityHashMap<>();
+
   private Connection myConnection;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
+  /**
+   * Rows queued by {@link #executeBatched(Enum, Object...)}, per statement, in insertion order. Flushes hold the lock while writing so
+   * that rows from concurrent pollers reach the database in the order they were queued.
+   */
+  private final Map<T, List<Object[]>> myPendingWrites = new LinkedHashMap<>();
+  private final Object myPendingWritesLock = new Object();
+  private final WriteBatchStats myWriteStats = new WriteBatchStats();
+
   public interface DataStoreTableErrorCallback {
     void onDataStoreError(Throwable t);
   }
@@ -50,6 +68,9 @@ public abstract class DataStoreTable<T extends Enum> {
    */
   public void initialize(@NotNull Connection connection) {
     myConnection = connection;
+    synchronized (TABLES_BY_CONNECTION) {
+      TABLES_BY_CONNECTION.computeIfAbsent(connection, c -> new LinkedHashSet<>()).add(this);
+    }
   }
 
   /**
@@ -66,6 +87,49 @@ public abstract class DataStoreTable<T extends Enum> {
     ERROR_CALLBACKS.remove(callback);
   }
 
+  /**
+   * Writes out the pending batched rows of every table initialized with the given connection.
+   */
+  public static void flushPendingWrites(@NotNull Connection connection) {
+    for (DataStoreTable<?> table : getTables(connection)) {
+      table.flushPendingWrites();
+    }
+  }
+
+  /**
+   * Forgets all tables initialized with the given connection. Called by the owner of the connection once it is closed.
+   */
+  public static void releaseTables(@NotNull Connection connection) {
+    synchronized (TABLES_BY_CONNECTION) {
+      TABLES_BY_CONNECTION.remove(connection);
+    }
+  }
+
+  /**
+   * @return the write batching statistics of every table initialized with the given connection, keyed by table class name.
+   */
+  @NotNull
+  public static Map<String, WriteBatchStats> getWriteStats(@NotNull Connection connection) {
+    Map<String, WriteBatchStats> stats = new LinkedHashMap<>();
+    for (DataStoreTable<?> table : getTables(connection)) {
+      stats.put(table.getClass().getSimpleName(), table.getWriteStats());
+    }
+    return stats;
+  }
+
+  @NotNull
+  private static List<DataStoreTable<?>> getTables(@NotNull Connection connection) {
+    synchronized (TABLES_BY_CONNECTION) {
+      Set<DataStoreTable<?>> tables = TABLES_BY_CONNECTION.get(connection);
+      return tables == null ? Collections.emptyList() : new ArrayList<>(tables);
+    }
+  }
+
+  @NotNull
+  public WriteBatchStats getWriteStats() {
+    return myWriteStats;
+  }
+
   /**
    * @return true if the underlying connection is closed, false otherwise.
    */
@@ -117,6 +181,10 @@ public abstract class DataStoreTable<T extends Enum> {
     executeUniqueStatement(statement, indexList);
   }
 
+  protected void dropIndex(@NotNull String table, int indexId) throws SQLException {
+    myConnection.createStatement().execute(String.format("DROP INDEX IF EXISTS idx_%s_%d_pk", table, indexId));
+  }
+
   private void executeUniqueStatement(@NotNull StringBuilder statement, @NotNull String[] params) throws SQLException {
     myConnection.createStatement().execute(String.format("%s ( %s )", statement, String.join(",", params)));
   }
@@ -134,6 +202,8 @@ public abstract class DataStoreTable<T extends Enum> {
       if (isClosed()) {
         return;
       }
+      // Statements may depend on rows that are still queued (e.g. an update of a previously inserted row).
+      flushPendingWrites();
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
       stmt.execute();
@@ -143,11 +213,79 @@ public abstract class DataStoreTable<T extends Enum> {
     }
   }
 
+  /**
+   * Queues a row to be written with the given statement. Rows are written with JDBC batches, either once {@link #MAX_BATCH_SIZE} rows
+   * are queued for the statement or on the next {@link #flushPendingWrites()}. Queued rows are always flushed before this table runs
+   * any other statement or query, so readers never observe a partially written table.
+   */
+  protected void executeBatched(@NotNull T statement, Object... params) {
+    if (isClosed()) {
+      return;
+    }
+    boolean shouldFlush;
+    synchronized (myPendingWritesLock) {
+      List<Object[]> rows = myPendingWrites.computeIfAbsent(statement, s -> new ArrayList<>());
+      rows.add(params);
+      myWriteStats.onEnqueued();
+      shouldFlush = rows.size() >= MAX_BATCH_SIZE;
+    }
+    if (shouldFlush) {
+      flushPendingWrites();
+    }
+  }
+
+  /**
+   * Writes out all rows queued by {@link #executeBatched(Enum, Object...)}.
+   */
+  public void flushPendingWrites() {
+    synchronized (myPendingWritesLock) {
+      if (myPendingWrites.isEmpty()) {
+        return;
+      }
+      for (Map.Entry<T, List<Object[]>> entry : myPendingWrites.entrySet()) {
+        List<Object[]> rows = entry.getValue();
+        long startNs = System.nanoTime();
+        PreparedStatement stmt = getStatementMap().get(entry.getKey());
+        try {
+          if (!isClosed()) {
+            for (Object[] row : rows) {
+              stmt.clearParameters();
+              applyParams(stmt, row);
+              stmt.addBatch();
+            }
+            stmt.executeBatch();
+          }
+        }
+        catch (SQLException ex) {
+          clearBatch(stmt);
+          onError(ex);
+        }
+        finally {
+          myWriteStats.onFlushed(rows.size(), System.nanoTime() - startNs);
+        }
+      }
+      myPendingWrites.clear();
+    }
+  }
+
+  /**
+   * Drops the rows added to the batch of the given statement, e.g. after executing the batch failed, so they are not written again with
+   * the next batch.
+   */
+  protected static void clearBatch(@NotNull PreparedStatement statement) {
+    try {
+      statement.clearBatch();
+    }
+    catch (SQLException ignored) {
+    }
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
     PreparedStatement stmt = getStatementMap().get(statement);
     if (isClosed() || stmt.isClosed()) {
       return new EmptyResultSet();
     }
+    flushPendingWrites();
     applyParams(stmt, params);
     return stmt.executeQuery();
   }
@@ -21,13 +21,16 @@ import com.android.tools.profiler.proto.MemoryProfiler;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TLongHashSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.*;
 
@@ -119,6 +122,32 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   // Note - Google Search app can easily allocate 100k+ temporary objects in an relatively short amount of time (e.g. one search query)
   private int myAllocationCountLimit = 5000000;
 
+  /**
+   * Polls with at least this many allocation events, and at least a quarter as many as Memory_AllocationEvents already holds, are
+   * written without the table's AllocTime/FreeTime indices, which are rebuilt once the poll is written. Sorting every row once is cheaper
+   * than updating the indices row by row when a poll is that large compared to the table, e.g. for the first poll of a session.
+   */
+  @VisibleForTesting
+  static final int BULK_INGEST_MIN_EVENTS = 10000;
+
+  /**
+   * Ids of the classes, stacks, methods and threads already written for each session. Those records are immutable and are inserted
+   * with "INSERT OR IGNORE", so {@link #insertAllocationSamples(Common.Session, List)} drops repeats before they reach SQLite. Ids are
+   * only recorded once the batches that write them have been executed, so records of a failed batch are written again by the next poll.
+   * A session's ids are dropped by {@link #forgetIngestedIds(Common.Session)} once it is no longer monitored.
+   */
+  private final Map<Long, IngestedIds> myIngestedIds = new HashMap<>();
+
+  /**
+   * Whether the AllocTime/FreeTime indices on Memory_AllocationEvents exist. They are only missing while a bulk poll is written.
+   */
+  private boolean myAllocationIndicesCreated;
+
+  /**
+   * Number of rows of Memory_AllocationEvents as of the last poll, to tell whether the next poll is large compared to the table.
+   */
+  private volatile int myAllocationRowCount;
+
   private static Logger getLogger() {
     return Logger.getInstance(MemoryLiveAllocationTable.class);
   }
@@ -145,8 +174,9 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
                   "RefValue INTEGER", "AllocTime INTEGER", "FreeTime INTEGER", "AllocThreadId INTEGER", "FreeThreadId INTEGER",
                   "AllocStackHash INTEGER", "FreeStackHash INTEGER", "PRIMARY KEY(Session, Tag, RefValue)");
 
-      createIndex("Memory_AllocationEvents", 0, "Session", "AllocTime");
-      createIndex("Memory_AllocationEvents", 1, "Session", "FreeTime");
+      myAllocationIndicesCreated = false;
+      myAllocationRowCount = 0;
+      ensureAllocationIndices();
       createIndex("Memory_AllocatedClass", 0, "Session", "AllocTime");
       createIndex("Memory_StackInfos", 0, "Session", "AllocTime");
       createIndex("Memory_ThreadInfos", 0, "Session", "AllocTime");
@@ -159,6 +189,59 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  private synchronized void ensureAllocationIndices() {
+    if (myAllocationIndicesCreated || isClosed()) {
+      return;
+    }
+    try {
+      createIndex("Memory_AllocationEvents", 0, "Session", "AllocTime");
+      createIndex("Memory_AllocationEvents", 1, "Session", "FreeTime");
+      myAllocationIndicesCreated = true;
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+  }
+
+  /**
+   * Drops the AllocTime/FreeTime indices of Memory_AllocationEvents if a poll of the given number of allocation and free events is a
+   * bulk ingest, see {@link #BULK_INGEST_MIN_EVENTS}. The caller must call {@link #ensureAllocationIndices()} once the poll is written.
+   *
+   * @return whether the indices were dropped.
+   */
+  private synchronized boolean dropAllocationIndicesForBulkIngest(int eventCount) {
+    if (eventCount < BULK_INGEST_MIN_EVENTS || eventCount < myAllocationRowCount / 4 || !myAllocationIndicesCreated || isClosed()) {
+      return false;
+    }
+    try {
+      myAllocationIndicesCreated = false;
+      dropIndex("Memory_AllocationEvents", 0);
+      dropIndex("Memory_AllocationEvents", 1);
+      return true;
+    }
+    catch (SQLException ex) {
+      onError(ex);
+      // Restores whichever index was dropped.
+      ensureAllocationIndices();
+      return false;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean hasAllocationIndices() {
+    return myAllocationIndicesCreated;
+  }
+
+  /**
+   * Forgets the classes, stacks, methods and threads written for the given session. Should be called once the session's allocations are
+   * no longer polled. Records that are still sent afterwards are written again, which "INSERT OR IGNORE" makes harmless.
+   */
+  public void forgetIngestedIds(@NotNull Common.Session session) {
+    synchronized (myIngestedIds) {
+      myIngestedIds.remove(session.getSessionId());
+    }
+  }
+
   @VisibleForTesting
   void setAllocationCountLimit(int allocationCountLimit) {
     myAllocationCountLimit = allocationCountLimit;
@@ -444,10 +527,121 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  /**
+   * Bulk-ingest path for everything a single poll returns. Compared to calling {@link #insertMethodInfo}, {@link #insertStackInfo},
+   * {@link #insertThreadInfo} and {@link #insertAllocationData} per sample, this drops already-written classes, stacks, methods and
+   * threads before binding any statement, writes each kind of record as one JDBC batch across all samples instead of one batch per run
+   * of same-typed events, and checks the pruning limit once per poll.
+   */
+  public void insertAllocationSamples(@NotNull Common.Session session, @NotNull List<BatchAllocationSample> samples) {
+    if (samples.isEmpty()) {
+      return;
+    }
+
+    IngestedIds ingested;
+    synchronized (myIngestedIds) {
+      ingested = myIngestedIds.computeIfAbsent(session.getSessionId(), id -> new IngestedIds());
+    }
+
+    long sessionId = session.getSessionId();
+    int allocAndFreeCount = 0;
+    PreparedStatement methodStatement = getStatementMap().get(INSERT_METHOD);
+    PreparedStatement stackStatement = getStatementMap().get(INSERT_ENCODED_STACK);
+    PreparedStatement threadStatement = getStatementMap().get(INSERT_THREAD_INFO);
+    PreparedStatement classStatement = getStatementMap().get(INSERT_CLASS);
+    PreparedStatement allocStatement = getStatementMap().get(INSERT_ALLOC);
+    PreparedStatement freeStatement = getStatementMap().get(UPDATE_ALLOC);
+    try {
+      // Holds the lock until the batches are executed, so concurrent polls of the same session can't skip records that are not written yet.
+      synchronized (ingested) {
+        IngestedIds pending = new IngestedIds();
+        for (BatchAllocationSample sample : samples) {
+          for (AllocationStack.StackFrame method : sample.getMethodsList()) {
+            if (!ingested.myMethods.contains(method.getMethodId()) && pending.myMethods.add(method.getMethodId())) {
+              applyParams(methodStatement, sessionId, method.getMethodId(), method.getMethodName(), jniToJavaName(method.getClassName()));
+              methodStatement.addBatch();
+            }
+          }
+          for (EncodedAllocationStack stack : sample.getStacksList()) {
+            if (!ingested.myStacks.contains(stack.getStackId()) && pending.myStacks.add(stack.getStackId())) {
+              applyParams(stackStatement, sessionId, stack.getStackId(), stack.getTimestamp(), stack.toByteArray());
+              stackStatement.addBatch();
+            }
+          }
+          for (ThreadInfo thread : sample.getThreadInfosList()) {
+            if (!ingested.myThreads.contains(thread.getThreadId()) && pending.myThreads.add(thread.getThreadId())) {
+              applyParams(threadStatement, sessionId, thread.getThreadId(), thread.getTimestamp(), thread.getThreadName());
+              threadStatement.addBatch();
+            }
+          }
+          for (AllocationEvent event : sample.getEventsList()) {
+            switch (event.getEventCase()) {
+              case CLASS_DATA:
+                AllocatedClass klass = event.getClassData();
+                if (!ingested.myClasses.contains(klass.getClassId()) && pending.myClasses.add(klass.getClassId())) {
+                  applyParams(classStatement, sessionId, klass.getClassId(), event.getTimestamp(), jniToJavaName(klass.getClassName()));
+                  classStatement.addBatch();
+                }
+                break;
+              case ALLOC_DATA:
+                allocAndFreeCount++;
+                AllocationEvent.Allocation allocation = event.getAllocData();
+                applyParams(allocStatement, sessionId, allocation.getTag(), allocation.getClassTag(), event.getTimestamp(), Long.MAX_VALUE,
+                            allocation.getSize(), allocation.getLength(), allocation.getThreadId(), allocation.getStackId(),
+                            allocation.getHeapId());
+                allocStatement.addBatch();
+                break;
+              case FREE_DATA:
+                allocAndFreeCount++;
+                AllocationEvent.Deallocation free = event.getFreeData();
+                applyParams(freeStatement, event.getTimestamp(), sessionId, free.getTag());
+                freeStatement.addBatch();
+                break;
+              default:
+                assert false;
+            }
+          }
+        }
+
+        // Frees update rows inserted by allocations of the same poll, so they have to go last. Object tags are never reused, so moving
+        // every free after every allocation does not change the result.
+        methodStatement.executeBatch();
+        stackStatement.executeBatch();
+        threadStatement.executeBatch();
+        classStatement.executeBatch();
+        boolean indicesDropped = dropAllocationIndicesForBulkIngest(allocAndFreeCount);
+        try {
+          allocStatement.executeBatch();
+          freeStatement.executeBatch();
+        }
+        finally {
+          if (indicesDropped) {
+            ensureAllocationIndices();
+          }
+        }
+        ingested.addAll(pending);
+      }
+
+      if (allocAndFreeCount > 0) {
+        pruneAllocations(session);
+      }
+    }
+    catch (SQLException ex) {
+      clearBatch(methodStatement);
+      clearBatch(stackStatement);
+      clearBatch(threadStatement);
+      clearBatch(classStatement);
+      clearBatch(allocStatement);
+      clearBatch(freeStatement);
+      onError(ex);
+    }
+  }
+
   public void insertAllocationData(Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
     MemoryProfiler.AllocationEvent.EventCase currentCase = null;
     PreparedStatement currentStatement = null;
     int allocAndFreeCount = 0;
+    boolean indicesDropped = dropAllocationIndicesForBulkIngest(sample.getEventsCount());
     try {
       for (MemoryProfiler.AllocationEvent event : sample.getEventsList()) {
         if (currentCase != event.getEventCase()) {
@@ -500,14 +694,22 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
 
       // Handles last batch after exiting from for-loop.
       currentStatement.executeBatch();
-
-      if (allocAndFreeCount > 0) {
-        pruneAllocations(session);
-      }
     }
     catch (SQLException ex) {
+      if (currentStatement != null) {
+        clearBatch(currentStatement);
+      }
       onError(ex);
     }
+    finally {
+      if (indicesDropped) {
+        ensureAllocationIndices();
+      }
+    }
+
+    if (allocAndFreeCount > 0) {
+      pruneAllocations(session);
+    }
   }
 
   public void insertMethodInfo(Common.Session session, List<AllocationStack.StackFrame> methods) {
@@ -580,6 +782,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       ResultSet result = executeQuery(COUNT_ALLOC);
       result.next();
       int rowCount = result.getInt(1);
+      myAllocationRowCount = Math.min(rowCount, myAllocationCountLimit);
       if (rowCount > myAllocationCountLimit) {
         int pruneCount = rowCount - myAllocationCountLimit;
         execute(PRUNE_ALLOC, session.getSessionId(), session.getSessionId(), pruneCount);
@@ -609,6 +812,20 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
     }
   }
 
+  private static final class IngestedIds {
+    private final TLongHashSet myClasses = new TLongHashSet();
+    private final TLongHashSet myStacks = new TLongHashSet();
+    private final TLongHashSet myMethods = new TLongHashSet();
+    private final TLongHashSet myThreads = new TLongHashSet();
+
+    private void addAll(@NotNull IngestedIds ids) {
+      myClasses.addAll(ids.myClasses);
+      myStacks.addAll(ids.myStacks);
+      myMethods.addAll(ids.myMethods);
+      myThreads.addAll(ids.myThreads);
+    }
+  }
+
   /**
    * Converts jni class names into java names
    * e.g. Ljava/lang/String; -> java.lang.String
@@ -15,6 +15,7 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
@@ -87,6 +88,28 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     GC_STATS
   }
 
+  /**
+   * Holds the memory, allocation and gc samples, keyed by {@link MemorySamplesType}, when they are stored in memory rather than in
+   * Memory_Samples, see {@link #MemoryStatsTable(DataStoreDatabase.Characteristic)}.
+   */
+  @Nullable private final TimeSeriesStore<GeneratedMessageV3> mySampleStore;
+
+  public MemoryStatsTable() {
+    this(DataStoreDatabase.Characteristic.DURABLE);
+  }
+
+  /**
+   * @param sampleStorage where memory, allocation and gc samples are kept. {@link DataStoreDatabase.Characteristic#PERFORMANT} keeps them
+   *                      in a {@link TimeSeriesStore} instead of the database. Heap dumps and allocation records always live in the
+   *                      database. Pass the characteristic of the namespace the table is initialized in, so a durable database keeps
+   *                      its samples.
+   */
+  public MemoryStatsTable(@NotNull DataStoreDatabase.Characteristic sampleStorage) {
+    mySampleStore = sampleStorage == DataStoreDatabase.Characteristic.PERFORMANT
+                    ? new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE)
+                    : null;
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -126,11 +149,13 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     long startTime = request.getStartTime();
     long endTime = request.getEndTime();
     List<MemoryData.MemorySample> memorySamples =
-      getResultsInfo(QUERY_MEMORY, sessionId, startTime, endTime, MemoryData.MemorySample.getDefaultInstance());
+      getSamples(QUERY_MEMORY, MemorySamplesType.MEMORY, sessionId, startTime, endTime, MemoryData.MemorySample.getDefaultInstance());
     List<MemoryData.AllocStatsSample> allocStatsSamples =
-      getResultsInfo(QUERY_ALLOC_STATS, sessionId, startTime, endTime, MemoryData.AllocStatsSample.getDefaultInstance());
+      getSamples(QUERY_ALLOC_STATS, MemorySamplesType.ALLOC_STATS, sessionId, startTime, endTime,
+                 MemoryData.AllocStatsSample.getDefaultInstance());
     List<MemoryData.GcStatsSample> gcStatsSamples =
-      getResultsInfo(QUERY_GC_STATS, sessionId, startTime, endTime, MemoryData.GcStatsSample.getDefaultInstance());
+      getSamples(QUERY_GC_STATS, MemorySamplesType.GC_STATS, sessionId, startTime, endTime,
+                 MemoryData.GcStatsSample.getDefaultInstance());
     List<HeapDumpInfo> heapDumpSamples =
       getResultsInfo(QUERY_HEAP_INFO_BY_TIME, sessionId, startTime, endTime, HeapDumpInfo.getDefaultInstance());
     List<AllocationsInfo> allocationSamples =
@@ -146,22 +171,34 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
 
   public void insertMemory(Common.Session session, List<MemoryData.MemorySample> samples) {
     for (MemoryData.MemorySample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
-              sample.toByteArray());
+      if (mySampleStore != null) {
+        mySampleStore.insert(session.getSessionId(), MemorySamplesType.MEMORY.ordinal(), sample.getTimestamp(), sample);
+        continue;
+      }
+      executeBatched(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.MEMORY.ordinal(),
+                     sample.toByteArray());
     }
   }
 
   public void insertAllocStats(Common.Session session, List<MemoryData.AllocStatsSample> samples) {
     for (MemoryData.AllocStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
-              sample.toByteArray());
+      if (mySampleStore != null) {
+        mySampleStore.insert(session.getSessionId(), MemorySamplesType.ALLOC_STATS.ordinal(), sample.getTimestamp(), sample);
+        continue;
+      }
+      executeBatched(INSERT_SAMPLE, session.getSessionId(), sample.getTimestamp(), MemorySamplesType.ALLOC_STATS.ordinal(),
+                     sample.toByteArray());
     }
   }
 
   public void insertGcStats(Common.Session session, List<MemoryData.GcStatsSample> samples) {
     for (MemoryData.GcStatsSample sample : samples) {
-      execute(INSERT_SAMPLE, session.getSessionId(), sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
-              sample.toByteArray());
+      if (mySampleStore != null) {
+        mySampleStore.insert(session.getSessionId(), MemorySamplesType.GC_STATS.ordinal(), sample.getStartTime(), sample);
+        continue;
+      }
+      executeBatched(INSERT_SAMPLE, session.getSessionId(), sample.getStartTime(), MemorySamplesType.GC_STATS.ordinal(),
+                     sample.toByteArray());
     }
   }
 
@@ -303,10 +340,10 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
   public void insertLegacyAllocationContext(@NotNull Common.Session session,
                                             @NotNull List<AllocatedClass> classes,
                                             @NotNull List<AllocationStack> stacks) {
-    // TODO: batch insert
-    classes.forEach(klass -> execute(INSERT_LEGACY_ALLOCATED_CLASS, session.getSessionId(), klass.getClassId(), klass.toByteArray()));
-    stacks
-      .forEach(stack -> execute(INSERT_LEGACY_ALLOCATION_STACK, session.getSessionId(), stack.getStackId(), stack.toByteArray()));
+    classes.forEach(
+      klass -> executeBatched(INSERT_LEGACY_ALLOCATED_CLASS, session.getSessionId(), klass.getClassId(), klass.toByteArray()));
+    stacks.forEach(
+      stack -> executeBatched(INSERT_LEGACY_ALLOCATION_STACK, session.getSessionId(), stack.getStackId(), stack.toByteArray()));
   }
 
   @NotNull
@@ -339,6 +376,22 @@ public class MemoryStatsTable extends DataStoreTable<MemoryStatsTable.MemoryStat
     return builder.build();
   }
 
+  /**
+   * Returns the samples of the given type from the in-memory store if there is one, or from Memory_Samples otherwise.
+   */
+  @SuppressWarnings("unchecked")
+  private <T extends GeneratedMessageV3> List<T> getSamples(MemoryStatements query,
+                                                            MemorySamplesType type,
+                                                            long sessionId,
+                                                            long startTime,
+                                                            long endTime,
+                                                            T defaultInstance) {
+    if (mySampleStore != null) {
+      return (List<T>)(List<?>)mySampleStore.getRange(sessionId, type.ordinal(), startTime, endTime);
+    }
+    return getResultsInfo(query, sessionId, startTime, endTime, defaultInstance);
+  }
+
   /**
    * A helper method for querying samples for MemorySample, AllocStatsSample, GcStatsSample, HeapDumpInfo and AllocationsInfo
    */
@@ -15,11 +15,13 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
@@ -52,6 +54,27 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
                                   NetworkProfiler.NetworkDataRequest.Type.CONNECTIVITY.getNumber());
   }
 
+  /**
+   * Holds the speed, connection and connectivity samples, keyed by request type, when they are stored in memory rather than in
+   * Network_Data, see {@link #NetworkTable(DataStoreDatabase.Characteristic)}.
+   */
+  @Nullable private final TimeSeriesStore<NetworkProfiler.NetworkProfilerData> myDataStore;
+
+  public NetworkTable() {
+    this(DataStoreDatabase.Characteristic.DURABLE);
+  }
+
+  /**
+   * @param sampleStorage where network samples are kept. {@link DataStoreDatabase.Characteristic#PERFORMANT} keeps them in a
+   *                      {@link TimeSeriesStore} instead of the database. Http connection data always lives in the database.
+   *                      Pass the characteristic of the namespace the table is initialized in, so a durable database keeps its samples.
+   */
+  public NetworkTable(@NotNull DataStoreDatabase.Characteristic sampleStorage) {
+    myDataStore = sampleStorage == DataStoreDatabase.Characteristic.PERFORMANT
+                  ? new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE)
+                  : null;
+  }
+
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
@@ -113,6 +136,12 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   }
 
   public List<NetworkProfiler.NetworkProfilerData> getNetworkDataByRequest(NetworkProfiler.NetworkDataRequest request) {
+    if (myDataStore != null) {
+      long sessionId = request.getSession().getSessionId();
+      return request.getType() == NetworkProfiler.NetworkDataRequest.Type.ALL
+             ? myDataStore.getRange(sessionId, request.getStartTimestamp(), request.getEndTimestamp())
+             : myDataStore.getRange(sessionId, request.getType().getNumber(), request.getStartTimestamp(), request.getEndTimestamp());
+    }
     List<NetworkProfiler.NetworkProfilerData> datas = new ArrayList<>();
     ResultSet results;
     try {
@@ -139,7 +168,11 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   }
 
   public void insert(@NotNull Common.Session session, NetworkProfiler.NetworkProfilerData data) {
-    execute(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
+    if (myDataStore != null) {
+      myDataStore.insert(session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()), data.getEndTimestamp(), data);
+      return;
+    }
+    executeBatched(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
             data.getEndTimestamp(), data.toByteArray());
   }
 
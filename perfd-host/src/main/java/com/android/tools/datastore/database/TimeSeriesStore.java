@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * An in-memory, column-oriented store for time-series samples, used by the tables as the
+ * {@link com.android.tools.datastore.DataStoreDatabase.Characteristic#PERFORMANT} backend for their sample data.
+ *
+ * Samples are grouped by session and by a table-defined series id. Each series keeps its samples sorted by timestamp in fixed-size
+ * chunks of parallel primitive arrays, so range queries are two binary searches followed by a linear copy, and samples are stored as
+ * the already-parsed values rather than being serialized and decoded again on every query.
+ *
+ * Range queries follow the same convention as the SQL queries they replace: a sample is returned if start < timestamp <= end.
+ *
+ * Like the in-memory database of a PERFORMANT namespace, the store keeps every sample until it is discarded, so it is only meant for
+ * tables whose namespace is not durable.
+ */
+public class TimeSeriesStore<T> {
+  /**
+   * What to do when a sample is inserted at a timestamp that already has a sample in the series, mirroring "INSERT OR REPLACE" and
+   * "INSERT OR IGNORE".
+   */
+  public enum DuplicatePolicy {
+    REPLACE,
+    IGNORE
+  }
+
+  @VisibleForTesting
+  static final int CHUNK_SIZE = 1024;
+
+  @NotNull private final DuplicatePolicy myDuplicatePolicy;
+  @NotNull private final Map<Long, Map<Integer, Series<T>>> mySessions = new HashMap<>();
+
+  /**
+   * Store-wide insertion counter, used to order samples of different series that share a timestamp.
+   */
+  private long myNextSequence;
+
+  public TimeSeriesStore(@NotNull DuplicatePolicy duplicatePolicy) {
+    myDuplicatePolicy = duplicatePolicy;
+  }
+
+  public synchronized void insert(long sessionId, int seriesId, long timestamp, @NotNull T value) {
+    mySessions.computeIfAbsent(sessionId, id -> new HashMap<>())
+      .computeIfAbsent(seriesId, id -> new Series<>())
+      .insert(timestamp, myNextSequence++, value, myDuplicatePolicy);
+  }
+
+  /**
+   * @return the samples of the given series with start < timestamp <= end, in timestamp order.
+   */
+  @NotNull
+  public synchronized List<T> getRange(long sessionId, int seriesId, long start, long end) {
+    List<T> result = new ArrayList<>();
+    Series<T> series = getSeries(sessionId, seriesId);
+    if (series != null) {
+      series.collect(start, end, (timestamp, sequence, value) -> result.add(value));
+    }
+    return result;
+  }
+
+  /**
+   * @return the samples of all the session's series with start < timestamp <= end, in timestamp order. Samples sharing a timestamp are
+   * returned in the order they were inserted.
+   */
+  @NotNull
+  public synchronized List<T> getRange(long sessionId, long start, long end) {
+    Map<Integer, Series<T>> allSeries = mySessions.get(sessionId);
+    if (allSeries == null) {
+      return Collections.emptyList();
+    }
+    if (allSeries.size() == 1) {
+      return getRange(sessionId, allSeries.keySet().iterator().next(), start, end);
+    }
+
+    List<Sample<T>> samples = new ArrayList<>();
+    for (Series<T> series : allSeries.values()) {
+      series.collect(start, end, (timestamp, sequence, value) -> samples.add(new Sample<>(timestamp, sequence, value)));
+    }
+    samples.sort(Comparator.<Sample<T>>comparingLong(sample -> sample.myTimestamp).thenComparingLong(sample -> sample.mySequence));
+    List<T> result = new ArrayList<>(samples.size());
+    for (Sample<T> sample : samples) {
+      result.add(sample.myValue);
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  synchronized int size(long sessionId, int seriesId) {
+    Series<T> series = getSeries(sessionId, seriesId);
+    return series == null ? 0 : series.size();
+  }
+
+  private Series<T> getSeries(long sessionId, int seriesId) {
+    Map<Integer, Series<T>> allSeries = mySessions.get(sessionId);
+    return allSeries == null ? null : allSeries.get(seriesId);
+  }
+
+  private interface SampleConsumer<T> {
+    void accept(long timestamp, long sequence, T value);
+  }
+
+  private static final class Sample<T> {
+    private final long myTimestamp;
+    private final long mySequence;
+    private final T myValue;
+
+    private Sample(long timestamp, long sequence, T value) {
+      myTimestamp = timestamp;
+      mySequence = sequence;
+      myValue = value;
+    }
+  }
+
+  /**
+   * A single series: an ordered list of chunks, where every timestamp of a chunk is greater than every timestamp of the previous one.
+   * Samples usually arrive in order and are appended to the last chunk; out-of-order samples are inserted in place, splitting the
+   * target chunk if it is full.
+   */
+  private static final class Series<T> {
+    private final List<Chunk> myChunks = new ArrayList<>();
+
+    void insert(long timestamp, long sequence, @NotNull T value, @NotNull DuplicatePolicy policy) {
+      if (myChunks.isEmpty()) {
+        myChunks.add(new Chunk());
+      }
+
+      Chunk last = myChunks.get(myChunks.size() - 1);
+      if (last.mySize == 0 || timestamp > last.lastTimestamp()) {
+        if (last.mySize == CHUNK_SIZE) {
+          last = new Chunk();
+          myChunks.add(last);
+        }
+        last.insertAt(last.mySize, timestamp, sequence, value);
+        return;
+      }
+
+      int chunkIndex = findChunk(timestamp);
+      Chunk chunk = myChunks.get(chunkIndex);
+      int index = Arrays.binarySearch(chunk.myTimestamps, 0, chunk.mySize, timestamp);
+      if (index >= 0) {
+        if (policy == DuplicatePolicy.REPLACE) {
+          chunk.myValues[index] = value;
+          chunk.mySequences[index] = sequence;
+        }
+        return;
+      }
+
+      index = -(index + 1);
+      if (chunk.mySize == CHUNK_SIZE) {
+        Chunk upper = chunk.split();
+        myChunks.add(chunkIndex + 1, upper);
+        if (index > chunk.mySize) {
+          index -= chunk.mySize;
+          chunk = upper;
+        }
+      }
+      chunk.insertAt(index, timestamp, sequence, value);
+    }
+
+    /**
+     * @return the index of the first chunk whose last timestamp is >= the given timestamp, or the last chunk if there is none.
+     */
+    private int findChunk(long timestamp) {
+      int low = 0;
+      int high = myChunks.size() - 1;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myChunks.get(mid).lastTimestamp() < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @SuppressWarnings("unchecked")
+    void collect(long start, long end, @NotNull SampleConsumer<T> consumer) {
+      if (myChunks.isEmpty() || end <= start) {
+        return;
+      }
+      // Timestamps are exclusive at the start of the range, so begin at the first sample greater than start.
+      for (int chunkIndex = findChunk(start == Long.MAX_VALUE ? start : start + 1); chunkIndex < myChunks.size(); chunkIndex++) {
+        Chunk chunk = myChunks.get(chunkIndex);
+        int index = upperBound(chunk.myTimestamps, chunk.mySize, start);
+        for (; index < chunk.mySize; index++) {
+          if (chunk.myTimestamps[index] > end) {
+            return;
+          }
+          consumer.accept(chunk.myTimestamps[index], chunk.mySequences[index], (T)chunk.myValues[index]);
+        }
+      }
+    }
+
+    int size() {
+      int size = 0;
+      for (Chunk chunk : myChunks) {
+        size += chunk.mySize;
+      }
+      return size;
+    }
+
+    /**
+     * @return the index of the first timestamp in the array that is greater than the given value.
+     */
+    private static int upperBound(@NotNull long[] timestamps, int size, long value) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (timestamps[mid] <= value) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  private static final class Chunk {
+    private final long[] myTimestamps = new long[CHUNK_SIZE];
+    private final long[] mySequences = new long[CHUNK_SIZE];
+    private final Object[] myValues = new Object[CHUNK_SIZE];
+    private int mySize;
+
+    long lastTimestamp() {
+      return myTimestamps[mySize - 1];
+    }
+
+    void insertAt(int index, long timestamp, long sequence, @NotNull Object value) {
+      assert mySize < CHUNK_SIZE;
+      int tail = mySize - index;
+      if (tail > 0) {
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, tail);
+        System.arraycopy(mySequences, index, mySequences, index + 1, tail);
+        System.arraycopy(myValues, index, myValues, index + 1, tail);
+      }
+      myTimestamps[index] = timestamp;
+      mySequences[index] = sequence;
+      myValues[index] = value;
+      mySize++;
+    }
+
+    /**
+     * Moves the upper half of this chunk's samples into a new chunk, which is returned.
+     */
+    @NotNull
+    Chunk split() {
+      Chunk upper = new Chunk();
+      int half = mySize / 2;
+      int moved = mySize - half;
+      System.arraycopy(myTimestamps, half, upper.myTimestamps, 0, moved);
+      System.arraycopy(mySequences, half, upper.mySequences, 0, moved);
+      System.arraycopy(myValues, half, upper.myValues, 0, moved);
+      Arrays.fill(myValues, half, mySize, null);
+      upper.mySize = moved;
+      mySize = half;
+      return upper;
+    }
+  }
+}
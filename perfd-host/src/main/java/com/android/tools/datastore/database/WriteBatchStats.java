@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the batched write traffic of a single {@link DataStoreTable}. All counters are cumulative since the table was
+ * created, except for the queue depth which reflects the number of rows currently waiting to be flushed.
+ */
+public class WriteBatchStats {
+  private final long myCreationTimeNs = System.nanoTime();
+  private final AtomicLong myRowsWritten = new AtomicLong();
+  private final AtomicLong myFlushCount = new AtomicLong();
+  private final AtomicLong myTotalFlushNs = new AtomicLong();
+  private final AtomicLong myMaxFlushNs = new AtomicLong();
+  private final AtomicLong myQueueDepth = new AtomicLong();
+  private final AtomicLong myMaxQueueDepth = new AtomicLong();
+
+  void onEnqueued() {
+    long depth = myQueueDepth.incrementAndGet();
+    myMaxQueueDepth.accumulateAndGet(depth, Math::max);
+  }
+
+  void onFlushed(int rows, long durationNs) {
+    myQueueDepth.addAndGet(-rows);
+    myRowsWritten.addAndGet(rows);
+    myFlushCount.incrementAndGet();
+    myTotalFlushNs.addAndGet(durationNs);
+    myMaxFlushNs.accumulateAndGet(durationNs, Math::max);
+  }
+
+  public long getRowsWritten() {
+    return myRowsWritten.get();
+  }
+
+  public long getFlushCount() {
+    return myFlushCount.get();
+  }
+
+  public long getQueueDepth() {
+    return myQueueDepth.get();
+  }
+
+  public long getMaxQueueDepth() {
+    return myMaxQueueDepth.get();
+  }
+
+  public long getMaxFlushLatencyNs() {
+    return myMaxFlushNs.get();
+  }
+
+  public long getAverageFlushLatencyNs() {
+    long flushes = myFlushCount.get();
+    return flushes == 0 ? 0 : myTotalFlushNs.get() / flushes;
+  }
+
+  /**
+   * @return the average number of rows written per second since this table was created.
+   */
+  public double getRowsPerSecond() {
+    long elapsedNs = Math.max(System.nanoTime() - myCreationTimeNs, 1);
+    return myRowsWritten.get() / (elapsedNs / (double)TimeUnit.SECONDS.toNanos(1));
+  }
+
+  @NotNull
+  @Override
+  public String toString() {
+    return String.format("rows=%d (%.1f/s), flushes=%d, avgFlush=%dus, maxFlush=%dus, queue=%d (max %d)",
+                         getRowsWritten(), getRowsPerSecond(), getFlushCount(),
+                         TimeUnit.NANOSECONDS.toMicros(getAverageFlushLatencyNs()),
+                         TimeUnit.NANOSECONDS.toMicros(getMaxFlushLatencyNs()),
+                         getQueueDepth(), getMaxQueueDepth());
+  }
+}
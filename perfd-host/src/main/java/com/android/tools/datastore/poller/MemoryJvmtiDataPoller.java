@@ -18,7 +18,6 @@ package com.android.tools.datastore.poller;
 import com.android.tools.datastore.database.MemoryLiveAllocationTable;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.MemoryProfiler;
-import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryData;
 import com.android.tools.profiler.proto.MemoryProfiler.MemoryRequest;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
@@ -46,12 +45,7 @@ public class MemoryJvmtiDataPoller extends PollRunner {
       .setEndTime(Long.MAX_VALUE);
     MemoryData response = myPollingService.getJvmtiData(dataRequestBuilder.build());
 
-    for (BatchAllocationSample sample : response.getAllocationSamplesList()) {
-      myLiveAllocationTable.insertMethodInfo(mySession, sample.getMethodsList());
-      myLiveAllocationTable.insertStackInfo(mySession, sample.getStacksList());
-      myLiveAllocationTable.insertThreadInfo(mySession, sample.getThreadInfosList());
-      myLiveAllocationTable.insertAllocationData(mySession, sample);
-    }
+    myLiveAllocationTable.insertAllocationSamples(mySession, response.getAllocationSamplesList());
     for (MemoryProfiler.BatchJNIGlobalRefEvent batchJniEvent : response.getJniReferenceEventBatchesList()) {
       myLiveAllocationTable.insertJniReferenceData(mySession, batchJniEvent);
     }
@@ -58,7 +58,7 @@ public class CpuService extends CpuServiceGrpc.CpuServiceImplBase implements Ser
                     Consumer<Runnable> fetchExecutor) {
     myFetchExecutor = fetchExecutor;
     myService = dataStoreService;
-    myCpuTable = new CpuTable();
+    myCpuTable = new CpuTable(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE.myCharacteristic);
   }
 
   @Override
@@ -54,7 +54,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
   public MemoryService(@NotNull DataStoreService dataStoreService, Consumer<Runnable> fetchExecutor) {
     myFetchExecutor = fetchExecutor;
     myService = dataStoreService;
-    myStatsTable = new MemoryStatsTable();
+    myStatsTable = new MemoryStatsTable(BackingNamespace.DEFAULT_SHARED_NAMESPACE.myCharacteristic);
     myAllocationsTable = new MemoryLiveAllocationTable();
   }
 
@@ -88,6 +88,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     if (runner != null) {
       runner.stop();
     }
+    myAllocationsTable.forgetIngestedIds(request.getSession());
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
     // to stop monitoring the last app it was monitoring.
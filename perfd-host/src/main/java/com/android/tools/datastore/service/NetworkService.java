@@ -44,7 +44,7 @@ public class NetworkService extends NetworkServiceGrpc.NetworkServiceImplBase im
   public NetworkService(@NotNull DataStoreService service, Consumer<Runnable> fetchExecutor) {
     myFetchExecutor = fetchExecutor;
     myService = service;
-    myNetworkTable = new NetworkTable();
+    myNetworkTable = new NetworkTable(DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE.myCharacteristic);
   }
 
   @Override
@@ -105,6 +105,41 @@ public class DatabaseTableTest {
     }
   }
 
+  @Test
+  public void testBatchedWritesAreVisibleToQueries() throws Exception {
+    myTable.insertDataBatched(1, 2, 3);
+    assertThat(myTable.getWriteStats().getQueueDepth()).isEqualTo(3);
+
+    ResultSet resultSet = myTable.readDataRaw();
+    int count = 0;
+    while (resultSet.next()) {
+      count++;
+    }
+    assertThat(count).isEqualTo(3);
+    assertThat(myTable.getWriteStats().getQueueDepth()).isEqualTo(0);
+    assertThat(myTable.getWriteStats().getRowsWritten()).isEqualTo(3);
+    assertThat(myTable.getWriteStats().getFlushCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testBatchedWritesFlushWhenBatchIsFull() throws Exception {
+    int[] data = new int[1000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = i;
+    }
+    myTable.insertDataBatched(data);
+    assertThat(myTable.getWriteStats().getRowsWritten()).isGreaterThan(0L);
+    assertThat(myTable.getWriteStats().getMaxQueueDepth()).isLessThan((long)data.length);
+  }
+
+  @Test
+  public void testDatabaseCommitFlushesBatchedWrites() throws Exception {
+    myTable.insertDataBatched(1, 2, 3);
+    myDatabase.commit();
+    assertThat(myTable.getWriteStats().getQueueDepth()).isEqualTo(0);
+    assertThat(DataStoreTable.getWriteStats(myDatabase.getConnection())).containsEntry("ThreadTestTable", myTable.getWriteStats());
+  }
+
   /**
    * Runnable class that handles querying the database as fast as possible.
    */
@@ -183,6 +218,12 @@ public class DatabaseTableTest {
       }
     }
 
+    public void insertDataBatched(int... someData) {
+      for (int i = 0; i < someData.length; i++) {
+        executeBatched(ThreadTableStatement.INSERT_DATA, someData[i]);
+      }
+    }
+
     public ResultSet readDataRaw() throws SQLException {
       return executeQuery(ThreadTableStatement.READ_DATA);
     }
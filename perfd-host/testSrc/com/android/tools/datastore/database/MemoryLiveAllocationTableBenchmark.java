@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.DataStoreDatabase;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.MemoryProfiler.*;
+import com.android.tools.tests.PerfgateRule;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Measures the sustained ingest rate of {@link MemoryLiveAllocationTable}, comparing the per-sample insert methods with
+ * {@link MemoryLiveAllocationTable#insertAllocationSamples(Common.Session, List)}.
+ *
+ * By default the input is a synthetic stream of {@link BatchAllocationSample}s. A recorded stream can be replayed instead by pointing
+ * the "profiler.allocation.replay" system property to a file of length-delimited {@link BatchAllocationSample} messages.
+ */
+public class MemoryLiveAllocationTableBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final String REPLAY_PROPERTY = "profiler.allocation.replay";
+  private static final Common.Session SESSION = Common.Session.newBuilder().setSessionId(1L).setDeviceId(1234).setPid(1).build();
+
+  private static final int POLL_COUNT = 20;
+  private static final int SAMPLES_PER_POLL = 5;
+  private static final int EVENTS_PER_SAMPLE = 2000;
+  private static final int CLASS_COUNT = 500;
+  private static final int STACK_COUNT = 2000;
+  private static final int METHOD_COUNT = 1000;
+  private static final int THREAD_COUNT = 20;
+
+  private File myDbFile;
+  private DataStoreDatabase myDatabase;
+  private MemoryLiveAllocationTable myTable;
+
+  @Before
+  public void setUp() throws Exception {
+    myDbFile = FileUtil.createTempFile("MemoryLiveAllocationTableBenchmark", "mysql");
+    myDatabase = new DataStoreDatabase(myDbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.PERFORMANT);
+    myTable = new MemoryLiveAllocationTable();
+    myTable.initialize(myDatabase.getConnection());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    myDatabase.disconnect();
+    //noinspection ResultOfMethodCallIgnored
+    myDbFile.delete();
+  }
+
+  @Test
+  public void benchmarkPerSampleIngest() throws Exception {
+    List<List<BatchAllocationSample>> polls = loadPolls();
+    long start = System.nanoTime();
+    for (List<BatchAllocationSample> poll : polls) {
+      for (BatchAllocationSample sample : poll) {
+        myTable.insertMethodInfo(SESSION, sample.getMethodsList());
+        myTable.insertStackInfo(SESSION, sample.getStacksList());
+        myTable.insertThreadInfo(SESSION, sample.getThreadInfosList());
+        myTable.insertAllocationData(SESSION, sample);
+      }
+    }
+    report("Per-sample ingest", polls, System.nanoTime() - start);
+  }
+
+  @Test
+  public void benchmarkBulkIngest() throws Exception {
+    List<List<BatchAllocationSample>> polls = loadPolls();
+    long start = System.nanoTime();
+    for (List<BatchAllocationSample> poll : polls) {
+      myTable.insertAllocationSamples(SESSION, poll);
+    }
+    report("Bulk ingest", polls, System.nanoTime() - start);
+  }
+
+  private void report(@NotNull String name, @NotNull List<List<BatchAllocationSample>> polls, long elapsedNs) {
+    long eventCount = 0;
+    for (List<BatchAllocationSample> poll : polls) {
+      for (BatchAllocationSample sample : poll) {
+        eventCount += sample.getEventsCount();
+      }
+    }
+    long eventsPerSecond = eventCount * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsedNs, 1);
+    assertThat(myTable.getLatestDataTimestamp(SESSION).getTimestamp()).isGreaterThan(0L);
+
+    ourPerfgate.logSample("Live Allocation " + name + " (events/s)", eventsPerSecond);
+  }
+
+  @NotNull
+  private static List<List<BatchAllocationSample>> loadPolls() throws IOException {
+    String replayPath = System.getProperty(REPLAY_PROPERTY);
+    return replayPath == null ? createSyntheticPolls() : readRecordedPolls(new File(replayPath));
+  }
+
+  /**
+   * Reads a recorded stream, grouping consecutive samples into polls of {@link #SAMPLES_PER_POLL}.
+   */
+  @NotNull
+  private static List<List<BatchAllocationSample>> readRecordedPolls(@NotNull File file) throws IOException {
+    List<List<BatchAllocationSample>> polls = new ArrayList<>();
+    try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+      List<BatchAllocationSample> poll = new ArrayList<>();
+      BatchAllocationSample sample;
+      while ((sample = BatchAllocationSample.parseDelimitedFrom(input)) != null) {
+        poll.add(sample);
+        if (poll.size() == SAMPLES_PER_POLL) {
+          polls.add(poll);
+          poll = new ArrayList<>();
+        }
+      }
+      if (!poll.isEmpty()) {
+        polls.add(poll);
+      }
+    }
+    return polls;
+  }
+
+  /**
+   * Creates a stream shaped like a busy app: every sample repeats the classes, stacks, methods and threads it references, and roughly
+   * a third of the allocated objects are freed in a later sample.
+   */
+  @NotNull
+  private static List<List<BatchAllocationSample>> createSyntheticPolls() {
+    Random random = new Random(0);
+    List<Integer> liveTags = new ArrayList<>();
+    int nextTag = 1;
+    long timestamp = 1;
+    List<List<BatchAllocationSample>> polls = new ArrayList<>();
+    for (int poll = 0; poll < POLL_COUNT; poll++) {
+      List<BatchAllocationSample> samples = new ArrayList<>();
+      for (int s = 0; s < SAMPLES_PER_POLL; s++) {
+        BatchAllocationSample.Builder sample = BatchAllocationSample.newBuilder();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+          sample.addThreadInfos(ThreadInfo.newBuilder().setThreadId(i).setThreadName("Thread" + i).setTimestamp(timestamp));
+        }
+        for (int i = 0; i < EVENTS_PER_SAMPLE / 10; i++) {
+          int methodId = random.nextInt(METHOD_COUNT);
+          sample.addMethods(AllocationStack.StackFrame.newBuilder().setMethodId(methodId).setMethodName("method" + methodId)
+                              .setClassName("Lcom/example/Class" + methodId % CLASS_COUNT + ";"));
+          int stackId = random.nextInt(STACK_COUNT);
+          sample.addStacks(EncodedAllocationStack.newBuilder().setStackId(stackId).setTimestamp(timestamp)
+                             .addMethodIds(methodId).addLineNumbers(stackId));
+        }
+        for (int i = 0; i < EVENTS_PER_SAMPLE; i++) {
+          timestamp++;
+          int classTag = random.nextInt(CLASS_COUNT);
+          if (i % 10 == 0) {
+            sample.addEvents(AllocationEvent.newBuilder().setTimestamp(timestamp).setClassData(
+              AllocatedClass.newBuilder().setClassId(classTag).setClassName("Lcom/example/Class" + classTag + ";")));
+          }
+          if (!liveTags.isEmpty() && random.nextInt(3) == 0) {
+            int tag = liveTags.remove(liveTags.size() - 1);
+            sample.addEvents(AllocationEvent.newBuilder().setTimestamp(timestamp).setFreeData(
+              AllocationEvent.Deallocation.newBuilder().setTag(tag).setClassTag(classTag)));
+          }
+          else {
+            int tag = nextTag++;
+            liveTags.add(tag);
+            sample.addEvents(AllocationEvent.newBuilder().setTimestamp(timestamp).setAllocData(
+              AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(classTag).setSize(16)
+                .setThreadId(random.nextInt(THREAD_COUNT)).setStackId(random.nextInt(STACK_COUNT))));
+          }
+        }
+        Collections.shuffle(liveTags, random);
+        samples.add(sample.build());
+      }
+      polls.add(samples);
+    }
+    return polls;
+  }
+}
@@ -26,8 +26,10 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class MemoryLiveAllocationTableTest {
@@ -311,6 +313,78 @@ public class MemoryLiveAllocationTableTest {
     Truth.assertThat(querySample.getTimestamp()).isEqualTo(alloc2.getTimestamp());
   }
 
+  @Test
+  public void testBulkInsertAllocationSamples() throws Exception {
+    StackFrame method1 = StackFrame.newBuilder().setMethodId(METHOD1).setMethodName(METHOD1_NAME).setClassName(JNI_KLASS1_NAME).build();
+    StackFrame dupMethod1 = StackFrame.newBuilder().setMethodId(METHOD1).setMethodName(METHOD2_NAME).setClassName(JNI_KLASS2_NAME).build();
+    AllocationEvent klass1 = AllocationEvent.newBuilder()
+      .setClassData(AllocatedClass.newBuilder().setClassId(CLASS1).setClassName(JNI_KLASS1_NAME)).setTimestamp(CLASS1_TIME).build();
+    AllocationEvent alloc1 = AllocationEvent.newBuilder()
+      .setAllocData(
+        AllocationEvent.Allocation.newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1)
+          .setHeapId(HEAP0))
+      .setTimestamp(0).build();
+    // The free comes before the allocation of a later instance in the same poll, but after the allocation it frees.
+    AllocationEvent dealloc1 = AllocationEvent.newBuilder()
+      .setFreeData(
+        AllocationEvent.Deallocation.newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1)
+          .setHeapId(HEAP0))
+      .setTimestamp(7).build();
+    AllocationEvent alloc2 = AllocationEvent.newBuilder()
+      .setAllocData(AllocationEvent.Allocation.newBuilder().setTag(KLASS1_INSTANCE2_TAG).setClassTag(CLASS1).setHeapId(HEAP1))
+      .setTimestamp(8).build();
+
+    BatchAllocationSample sample1 = BatchAllocationSample.newBuilder().addMethods(method1).addEvents(klass1).addEvents(alloc1).build();
+    BatchAllocationSample sample2 = BatchAllocationSample.newBuilder().addMethods(dupMethod1).addEvents(klass1).addEvents(dealloc1)
+      .addEvents(alloc2).build();
+    myAllocationTable.insertAllocationSamples(VALID_SESSION, Arrays.asList(sample1, sample2));
+
+    StackFrameInfoResponse convertedMethod1 =
+      StackFrameInfoResponse.newBuilder().setMethodName(METHOD1_NAME).setClassName(JAVA_KLASS1_NAME).build();
+    Truth.assertThat(myAllocationTable.getStackFrameInfo(VALID_SESSION, METHOD1)).isEqualTo(convertedMethod1);
+
+    AllocationContextsResponse contexts = myAllocationTable.getAllocationContexts(VALID_SESSION, 0, Long.MAX_VALUE);
+    Truth.assertThat(contexts.getAllocatedClassesCount()).isEqualTo(1);
+    Truth.assertThat(contexts.getAllocatedClasses(0).getClassName()).isEqualTo(JAVA_KLASS1_NAME);
+
+    BatchAllocationSample querySample = myAllocationTable.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE);
+    Truth.assertThat(querySample.getEventsList()).containsExactly(alloc1, alloc2, dealloc1).inOrder();
+    Truth.assertThat(myAllocationTable.getSnapshot(VALID_SESSION, 9).getEventsList()).containsExactly(alloc2);
+  }
+
+  @Test
+  public void testBulkIngestRebuildsAllocationIndices() throws Exception {
+    BatchAllocationSample.Builder sample = BatchAllocationSample.newBuilder();
+    for (int i = 0; i < MemoryLiveAllocationTable.BULK_INGEST_MIN_EVENTS; i++) {
+      sample.addEvents(AllocationEvent.newBuilder()
+                         .setAllocData(AllocationEvent.Allocation.newBuilder().setTag(i).setClassTag(CLASS1).setHeapId(HEAP0))
+                         .setTimestamp(i));
+    }
+    myAllocationTable.insertAllocationSamples(VALID_SESSION, Collections.singletonList(sample.build()));
+
+    Truth.assertThat(myAllocationTable.hasAllocationIndices()).isTrue();
+    ResultSet indices = myDatabase.getConnection().createStatement().executeQuery(
+      "SELECT count(*) FROM sqlite_master WHERE type = 'index' AND name LIKE 'idx_Memory_AllocationEvents_%'");
+    Truth.assertThat(indices.next()).isTrue();
+    Truth.assertThat(indices.getInt(1)).isEqualTo(2);
+    Truth.assertThat(myAllocationTable.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE).getEventsCount())
+      .isEqualTo(MemoryLiveAllocationTable.BULK_INGEST_MIN_EVENTS);
+    Truth.assertThat(myAllocationTable.getSnapshot(VALID_SESSION, 10).getEventsCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void testForgottenSessionRecordsAreKept() throws Exception {
+    StackFrame method1 = StackFrame.newBuilder().setMethodId(METHOD1).setMethodName(METHOD1_NAME).setClassName(JNI_KLASS1_NAME).build();
+    BatchAllocationSample sample = BatchAllocationSample.newBuilder().addMethods(method1).build();
+    myAllocationTable.insertAllocationSamples(VALID_SESSION, Collections.singletonList(sample));
+    myAllocationTable.forgetIngestedIds(VALID_SESSION);
+    myAllocationTable.insertAllocationSamples(VALID_SESSION, Collections.singletonList(sample));
+
+    StackFrameInfoResponse convertedMethod1 =
+      StackFrameInfoResponse.newBuilder().setMethodName(METHOD1_NAME).setClassName(JAVA_KLASS1_NAME).build();
+    Truth.assertThat(myAllocationTable.getStackFrameInfo(VALID_SESSION, METHOD1)).isEqualTo(convertedMethod1);
+  }
+
   @Test
   public void testLatestDataTimestamp() throws Exception {
     Truth.assertThat(myAllocationTable.getLatestDataTimestamp(VALID_SESSION).getTimestamp()).isEqualTo(0);
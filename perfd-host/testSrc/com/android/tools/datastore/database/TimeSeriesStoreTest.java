@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class TimeSeriesStoreTest {
+  private static final long SESSION = 1;
+  private static final int SERIES = 0;
+
+  @Test
+  public void testRangeExcludesStartIncludesEnd() {
+    TimeSeriesStore<Long> store = new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE);
+    for (long i = 0; i < 10; i++) {
+      store.insert(SESSION, SERIES, i, i);
+    }
+    assertThat(store.getRange(SESSION, SERIES, 2, 5)).containsExactly(3L, 4L, 5L).inOrder();
+    assertThat(store.getRange(SESSION, SERIES, -1, Long.MAX_VALUE)).hasSize(10);
+    assertThat(store.getRange(SESSION, SERIES, 9, Long.MAX_VALUE)).isEmpty();
+    assertThat(store.getRange(SESSION, SERIES + 1, -1, Long.MAX_VALUE)).isEmpty();
+    assertThat(store.getRange(SESSION + 1, SERIES, -1, Long.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void testDuplicatePolicies() {
+    TimeSeriesStore<String> ignore = new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE);
+    ignore.insert(SESSION, SERIES, 1, "first");
+    ignore.insert(SESSION, SERIES, 1, "second");
+    assertThat(ignore.getRange(SESSION, SERIES, 0, 1)).containsExactly("first");
+
+    TimeSeriesStore<String> replace = new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.REPLACE);
+    replace.insert(SESSION, SERIES, 1, "first");
+    replace.insert(SESSION, SERIES, 1, "second");
+    assertThat(replace.getRange(SESSION, SERIES, 0, 1)).containsExactly("second");
+  }
+
+  @Test
+  public void testOutOfOrderInsertsAcrossChunks() {
+    int count = TimeSeriesStore.CHUNK_SIZE * 5 + 7;
+    List<Long> timestamps = new ArrayList<>();
+    for (long i = 0; i < count; i++) {
+      timestamps.add(i * 2);
+    }
+    Collections.shuffle(timestamps, new Random(0));
+
+    TimeSeriesStore<Long> store = new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE);
+    timestamps.forEach(timestamp -> store.insert(SESSION, SERIES, timestamp, timestamp));
+    assertThat(store.size(SESSION, SERIES)).isEqualTo(count);
+
+    List<Long> all = store.getRange(SESSION, SERIES, Long.MIN_VALUE, Long.MAX_VALUE);
+    assertThat(all).isOrdered();
+    assertThat(all).hasSize(count);
+
+    // Odd bounds fall between samples.
+    long start = TimeSeriesStore.CHUNK_SIZE * 2 + 1;
+    long end = TimeSeriesStore.CHUNK_SIZE * 6 + 1;
+    List<Long> range = store.getRange(SESSION, SERIES, start, end);
+    assertThat(range.get(0)).isEqualTo(start + 1);
+    assertThat(range.get(range.size() - 1)).isEqualTo(end - 1);
+    assertThat(range).hasSize((int)((end - start) / 2));
+  }
+
+  @Test
+  public void testSessionRangeMergesSeriesByTimeThenInsertionOrder() {
+    TimeSeriesStore<String> store = new TimeSeriesStore<>(TimeSeriesStore.DuplicatePolicy.IGNORE);
+    store.insert(SESSION, 2, 10, "b@10");
+    store.insert(SESSION, 1, 10, "a@10");
+    store.insert(SESSION, 1, 5, "a@5");
+    store.insert(SESSION, 2, 20, "b@20");
+    assertThat(store.getRange(SESSION, 0, 20)).containsExactly("a@5", "b@10", "a@10", "b@20").inOrder();
+  }
+}
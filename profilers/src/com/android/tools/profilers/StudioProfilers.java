@@ -42,6 +42,7 @@ import org.jetbrains.annotations.Nullable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -97,18 +98,29 @@ public class StudioProfilers extends AspectModel<ProfilerAspect> implements Upda
   private boolean myConnected;
 
   public StudioProfilers(ProfilerClient client, @NotNull IdeProfilerServices ideServices) {
-    this(client, ideServices, new FpsTimer(PROFILERS_UPDATE_RATE));
+    this(client, ideServices, new FpsTimer(PROFILERS_UPDATE_RATE), ideServices.getPoolExecutor());
   }
 
   @VisibleForTesting
   public StudioProfilers(ProfilerClient client, @NotNull IdeProfilerServices ideServices, @NotNull StopwatchTimer timer) {
+    this(client, ideServices, timer, null);
+  }
+
+  /**
+   * @param fetchExecutor the executor the monitors' data is fetched on ahead of each frame, or null to fetch it while updating them.
+   */
+  @VisibleForTesting
+  public StudioProfilers(ProfilerClient client,
+                         @NotNull IdeProfilerServices ideServices,
+                         @NotNull StopwatchTimer timer,
+                         @Nullable Executor fetchExecutor) {
     myClient = client;
     myIdeServices = ideServices;
     myPreferredProcessName = null;
     myStage = new NullMonitorStage(this);
     myStage.enter();
 
-    myUpdater = new Updater(timer);
+    myUpdater = new Updater(timer, fetchExecutor);
     ImmutableList.Builder<StudioProfiler> profilersBuilder = new ImmutableList.Builder<>();
     profilersBuilder.add(new EventProfiler(this));
     profilersBuilder.add(new CpuProfiler(this));
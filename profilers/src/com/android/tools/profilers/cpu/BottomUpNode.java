@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -28,6 +29,17 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
+  /**
+   * Index of the nodes at the top of the call stack (see {@link #update(Range)}), or null if they overlap.
+   */
+  @Nullable private IntervalIndex myOuterNodesIndex;
+
+  /**
+   * Index of the intervals during which the nodes are running their own code, i.e. the nodes' intervals minus their children's, or null
+   * if they can't be indexed.
+   */
+  @Nullable private IntervalIndex mySelfIndex;
+
   private BottomUpNode(String id) {
     super(id);
     myIsRoot = false;
@@ -127,6 +139,13 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
 
   @Override
   public void update(@NotNull Range range) {
+    buildIndices();
+    if (myOuterNodesIndex != null && mySelfIndex != null) {
+      myTotal = myOuterNodesIndex.getIntersectionLength(range);
+      myChildrenTotal = myTotal - mySelfIndex.getIntersectionLength(range);
+      return;
+    }
+
     // how much time was spent in this call stack path, and in the functions it called
     myTotal = 0;
     // how much time was spent doing work directly in this call stack path
@@ -162,6 +181,55 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     myChildrenTotal = myTotal - self;
   }
 
+  @Override
+  public boolean inRange(Range range) {
+    buildIndices();
+    // Every node is nested in one of the outer nodes, so a node intersects the range only if an outer node does.
+    return myOuterNodesIndex != null ? myOuterNodesIndex.intersects(range) : super.inRange(range);
+  }
+
+  /**
+   * Builds the indices equivalent to the iteration done by {@link #update(Range)}.
+   */
+  private void buildIndices() {
+    if (myIndicesBuilt) {
+      return;
+    }
+    IntervalIndex.Builder outerNodes = new IntervalIndex.Builder();
+    IntervalIndex.Builder self = new IntervalIndex.Builder();
+    boolean selfIndexable = true;
+    CaptureNode outerSoFar = null;
+    for (CaptureNode node : myNodes) {
+      if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
+        outerSoFar = node;
+        outerNodes.add(node.getStart(), node.getEnd());
+      }
+
+      // The self time of a node is the time it runs outside of its children, which is only true if the children are sorted, don't overlap
+      // and are within the node.
+      long selfStart = node.getStart();
+      for (CaptureNode child : node.getChildren()) {
+        if (child.getStart() < selfStart || child.getEnd() < child.getStart() || child.getEnd() > node.getEnd()) {
+          selfIndexable = false;
+          break;
+        }
+        addSelfInterval(self, selfStart, child.getStart());
+        selfStart = child.getEnd();
+      }
+      addSelfInterval(self, selfStart, node.getEnd());
+    }
+    myOuterNodesIndex = outerNodes.build();
+    mySelfIndex = selfIndexable ? self.build() : null;
+    myIndicesBuilt = true;
+  }
+
+  private static void addSelfInterval(@NotNull IntervalIndex.Builder self, long start, long end) {
+    // Empty intervals don't count towards the self time, and skipping them avoids reporting them as overlapping their neighbours.
+    if (start != end) {
+      self.add(start, end);
+    }
+  }
+
   @NotNull
   @Override
   public CaptureNodeModel getMethodModel() {
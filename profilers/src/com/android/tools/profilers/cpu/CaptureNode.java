@@ -21,14 +21,15 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.regex.Pattern;
 
 import static com.android.tools.profilers.cpu.CaptureNode.FilterType.UNINITIALIZED;
 
 public class CaptureNode implements HNode<CaptureNode> {
 
+  private static final int INITIAL_CHILDREN_CAPACITY = 2;
+
   /**
    * Start time with GLOBAL clock.
    */
@@ -49,8 +50,12 @@ public class CaptureNode implements HNode<CaptureNode> {
    */
   private long myEndThread;
 
+  /**
+   * Most nodes of a method trace are leaves, so nodes without children share an empty list, and the list is only allocated when the
+   * first child is added. See also {@link #trimChildren()}.
+   */
   @NotNull
-  private final List<CaptureNode> myChildren;
+  private List<CaptureNode> myChildren = Collections.emptyList();
 
   @NotNull
   private ClockType myClockType;
@@ -75,17 +80,38 @@ public class CaptureNode implements HNode<CaptureNode> {
   private final CaptureNodeModel myData;
 
   public CaptureNode(@NotNull CaptureNodeModel model) {
-    myChildren = new ArrayList<>();
     myClockType = ClockType.GLOBAL;
     myDepth = 0;
     myData = model;
   }
 
   public void addChild(CaptureNode node) {
+    if (!(myChildren instanceof ArrayList)) {
+      myChildren = new ArrayList<>(INITIAL_CHILDREN_CAPACITY);
+    }
     myChildren.add(node);
     node.myParent = this;
   }
 
+  /**
+   * Releases the spare capacity of the children lists of this node and all its descendants. Should be called once the tree is complete,
+   * as nodes are not expected to change after that.
+   */
+  void trimChildren() {
+    // Method traces can be very deep, so use an explicit stack rather than recursion.
+    Deque<CaptureNode> stack = new ArrayDeque<>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      CaptureNode node = stack.pop();
+      if (node.myChildren instanceof ArrayList) {
+        ((ArrayList<CaptureNode>)node.myChildren).trimToSize();
+      }
+      for (CaptureNode child : node.myChildren) {
+        stack.push(child);
+      }
+    }
+  }
+
   @NotNull
   public List<CaptureNode> getChildren() {
     return myChildren;
@@ -49,6 +49,8 @@ public class CpuCapture implements ConfigurableDurationData {
     myRange = captureRange;
     myCaptureTrees = captureTrees;
     myDualClock = isDualClock;
+    // The trees are complete at this point.
+    captureTrees.values().forEach(CaptureNode::trimChildren);
 
     // Try to find the main thread. The main thread is called "main" but if we fail
     // to find it we will fall back to the thread with the most information.
@@ -24,13 +24,10 @@ import com.android.tools.profilers.cpu.atrace.AtraceParser;
 import com.android.tools.profilers.cpu.simpleperf.SimpleperfTraceParser;
 import com.google.common.annotations.VisibleForTesting;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.containers.HashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.BufferUnderflowException;
 import java.util.Map;
@@ -42,8 +39,9 @@ import java.util.concurrent.CompletableFuture;
 public class CpuCaptureParser {
 
   /**
-   * Maximum supported trace size, in bytes.
-   * Users should be warned when traces are larger than this value and can opt not to parse them.
+   * Maximum supported trace size, in bytes, for traces whose parser needs a copy of the trace on disk.
+   * Users should be warned when such traces are larger than this value and can opt not to parse them. Traces parsed directly from memory
+   * (see {@link TraceParser#supportsInMemoryParsing()}) are not limited.
    */
   @VisibleForTesting
   static final int MAX_SUPPORTED_TRACE_SIZE = 1024 * 1024 * 100; // 100MB
@@ -89,15 +87,16 @@ public class CpuCaptureParser {
                                              CpuProfilerType profilerType) {
     if (!myCaptures.containsKey(traceId)) {
       // Trace is not being parsed nor is already parsed. We need to start parsing it.
-      if (traceData.size() <= MAX_SUPPORTED_TRACE_SIZE) {
+      TraceParser parser = createParser(session, profilerType);
+      if (traceData.size() <= MAX_SUPPORTED_TRACE_SIZE || (parser != null && parser.supportsInMemoryParsing())) {
         // Trace size is supported. Start parsing normally and create the future object corresponding to the capture.
-        myCaptures.put(traceId, createCaptureFuture(session, traceData, profilerType));
+        myCaptures.put(traceId, createCaptureFuture(parser, traceData, profilerType));
       }
       else {
         Runnable yesCallback = () -> {
           getLogger().warn(String.format("Parsing long (%d bytes) trace file.", traceData.size()));
           // User decided to proceed with capture. Start parsing and create the future object corresponding to the capture.
-          myCaptures.put(traceId, createCaptureFuture(session, traceData, profilerType));
+          myCaptures.put(traceId, createCaptureFuture(parser, traceData, profilerType));
         };
 
         Runnable noCallback = () -> {
@@ -114,42 +113,39 @@ public class CpuCaptureParser {
     return myCaptures.get(traceId);
   }
 
-  private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull Common.Session session,
+  private CompletableFuture<CpuCapture> createCaptureFuture(@Nullable TraceParser parser,
                                                             ByteString traceBytes,
                                                             CpuProfilerType profilerType) {
-    return CompletableFuture.supplyAsync(() -> traceBytesToCapture(session, traceBytes, profilerType), myServices.getPoolExecutor());
+    return CompletableFuture.supplyAsync(() -> traceBytesToCapture(parser, traceBytes, profilerType), myServices.getPoolExecutor());
   }
 
-  private static CpuCapture traceBytesToCapture(@NotNull Common.Session session,
+  /**
+   * Returns the {@link TraceParser} corresponding to the given profiler type, or null if the type is not supported.
+   */
+  @Nullable
+  private static TraceParser createParser(@NotNull Common.Session session, CpuProfilerType profilerType) {
+    switch (profilerType) {
+      case ART:
+        return new ArtTraceParser();
+      case SIMPLEPERF:
+        return new SimpleperfTraceParser();
+      case ATRACE:
+        return new AtraceParser(session.getPid());
+      default:
+        return null;
+    }
+  }
+
+  private static CpuCapture traceBytesToCapture(@Nullable TraceParser parser,
                                                 @NotNull ByteString traceData,
                                                 CpuProfilerType profilerType) {
-    // TODO: Remove layers, analyze whether we can keep the whole file in memory.
+    if (parser == null) {
+      throw new IllegalStateException("Trace file cannot be parsed. Profiler type (ART, simpleperf, or atrace) needs to be set.");
+    }
     try {
-      File trace = FileUtil.createTempFile("cpu_trace", ".trace");
-      try (FileOutputStream out = new FileOutputStream(trace)) {
-        out.write(traceData.toByteArray());
-      }
-
-      TraceParser parser;
-      boolean isCaptureDualClock;
-      if (profilerType == CpuProfilerType.ART) {
-        parser = new ArtTraceParser();
-        isCaptureDualClock = true;
-      }
-      else if (profilerType == CpuProfilerType.SIMPLEPERF) {
-        parser = new SimpleperfTraceParser();
-        isCaptureDualClock = false;
-      }
-      else if (profilerType == CpuProfilerType.ATRACE) {
-        parser = new AtraceParser(session.getPid());
-        isCaptureDualClock = false;
-      }
-      else {
-        throw new IllegalStateException("Trace file cannot be parsed. Profiler type (ART, simpleperf, or atrace) needs to be set.");
-      }
-
-      parser.parse(trace);
-      return new CpuCapture(parser.getRange(), parser.getCaptureTrees(), isCaptureDualClock);
+      // Parsers that can't read the trace from memory write it to a temporary file first.
+      parser.parse(traceData);
+      return new CpuCapture(parser.getRange(), parser.getCaptureTrees(), profilerType == CpuProfilerType.ART);
     }
     catch (IOException | BufferUnderflowException e) {
       throw new IllegalStateException(e);
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -34,6 +35,22 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myTotal = 0;
   protected double myChildrenTotal = 0;
 
+  /**
+   * Whether the interval indices used by {@link #update(Range)} and {@link #inRange(Range)} have been built for the current nodes. They
+   * are built on demand, as most tree nodes are never updated.
+   */
+  protected boolean myIndicesBuilt;
+
+  /**
+   * Index of the intervals of {@link #myNodes}, or null if they overlap.
+   */
+  @Nullable private IntervalIndex myNodesIndex;
+
+  /**
+   * Index of the intervals of the children of {@link #myNodes}, or null if they overlap.
+   */
+  @Nullable private IntervalIndex myNodesChildrenIndex;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -44,6 +61,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myIndicesBuilt = false;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -76,6 +94,13 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public void update(@NotNull Range range) {
+    buildIndices();
+    if (myNodesIndex != null && myNodesChildrenIndex != null) {
+      myTotal = myNodesIndex.getIntersectionLength(range);
+      myChildrenTotal = myNodesChildrenIndex.getIntersectionLength(range);
+      return;
+    }
+
     myTotal = 0.0;
     myChildrenTotal = 0;
 
@@ -93,9 +118,31 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public boolean inRange(Range range) {
+    buildIndices();
+    if (myNodesIndex != null) {
+      return myNodesIndex.intersects(range);
+    }
     return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
   }
 
+  private void buildIndices() {
+    if (myIndicesBuilt) {
+      return;
+    }
+    // The calls along the same call stack don't overlap, and neither do their children.
+    IntervalIndex.Builder nodes = new IntervalIndex.Builder();
+    IntervalIndex.Builder children = new IntervalIndex.Builder();
+    for (CaptureNode node : myNodes) {
+      nodes.add(node.getStart(), node.getEnd());
+      for (CaptureNode child : node.getChildren()) {
+        children.add(child.getStart(), child.getEnd());
+      }
+    }
+    myNodesIndex = nodes.build();
+    myNodesChildrenIndex = children.build();
+    myIndicesBuilt = true;
+  }
+
   public void reset() {
     myTotal = 0;
     myChildrenTotal = 0;
@@ -16,6 +16,7 @@
 package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.DownsampledSeriesBuilder;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -25,7 +26,6 @@ import com.android.tools.profiler.proto.CpuProfiler.CpuUsageData;
 import com.android.tools.profiler.proto.CpuServiceGrpc;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -47,7 +47,8 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+    // Zoomed out ranges hold more samples than there are pixels to draw them on, so reduce them to the peak usage per bucket.
+    DownsampledSeriesBuilder seriesData = new DownsampledSeriesBuilder(timeCurrentRangeUs, DownsampledSeriesBuilder.Aggregation.MAX);
     // Get an extra padding on each side, to have a smooth rendering at the edges.
     // TODO: Change the CPU API to allow specifying this padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -67,14 +68,14 @@ public class CpuUsageDataSeries implements DataSeries<Long> {
       }
       CpuUsageDataSeries.UsageData usageData = getCpuUsageData(data, lastCpuData);
       if (myOtherProcesses) {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getOtherProcessesUsage()));
+        seriesData.add(dataTimestamp, (long)usageData.getOtherProcessesUsage());
       }
       else {
-        seriesData.add(new SeriesData<>(dataTimestamp, (long)usageData.getAppUsage()));
+        seriesData.add(dataTimestamp, (long)usageData.getAppUsage());
       }
       lastCpuData = data;
     }
-    return seriesData;
+    return seriesData.build();
   }
 
   private static UsageData getCpuUsageData(CpuUsageData data, CpuUsageData lastData) {
@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.cpu;
 
+import com.android.tools.adtui.model.AsyncDataSeries;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.profilers.StudioProfilers;
@@ -31,11 +32,14 @@ public class DetailedCpuUsage extends CpuUsage {
 
     myThreadRange = new Range(0, 8);
 
+    Range viewRange = profilers.getTimeline().getViewRange();
     CpuUsageDataSeries others = new CpuUsageDataSeries(profilers.getClient().getCpuClient(), true, profilers.getSession());
-    myOtherCpuSeries = new RangedContinuousSeries("Others", profilers.getTimeline().getViewRange(), getCpuRange(), others);
+    myOtherCpuSeries = new RangedContinuousSeries("Others", viewRange, getCpuRange(),
+                                                  new AsyncDataSeries<>(others, viewRange, profilers.getUpdater()));
 
     CpuThreadCountDataSeries threads = new CpuThreadCountDataSeries(profilers.getClient().getCpuClient(), profilers.getSession());
-    myThreadsCountSeries = new RangedContinuousSeries("Threads", profilers.getTimeline().getViewRange(), myThreadRange, threads);
+    myThreadsCountSeries = new RangedContinuousSeries("Threads", viewRange, myThreadRange,
+                                                      new AsyncDataSeries<>(threads, viewRange, profilers.getUpdater()));
     add(myOtherCpuSeries);
     add(myThreadsCountSeries);
   }
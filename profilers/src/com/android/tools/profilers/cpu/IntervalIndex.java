@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * A set of disjoint intervals sorted by start, along with the prefix sums of their lengths. It answers how much of a range the intervals
+ * cover, and whether any of them intersects a range, with two binary searches.
+ *
+ * {@link CpuTreeNode}s use it to compute their times over a selection range without iterating over all the {@link CaptureNode}s they
+ * represent: the calls of a method along the same call stack, or the parts of them where the method is at the top of the stack, never
+ * overlap.
+ */
+final class IntervalIndex {
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myEnds;
+
+  /**
+   * The i-th element is the total length of the first i intervals.
+   */
+  @NotNull private final long[] myLengthSums;
+
+  private IntervalIndex(@NotNull long[] starts, @NotNull long[] ends) {
+    myStarts = starts;
+    myEnds = ends;
+    myLengthSums = new long[starts.length + 1];
+    for (int i = 0; i < starts.length; i++) {
+      myLengthSums[i + 1] = myLengthSums[i] + ends[i] - starts[i];
+    }
+  }
+
+  /**
+   * Returns the total length of the intersections between the intervals and the given range, i.e. the sum of
+   * {@code range.getIntersection(interval).getLength()} over all the intervals.
+   */
+  double getIntersectionLength(@NotNull Range range) {
+    if (range.isEmpty()) {
+      return 0;
+    }
+    double min = range.getMin();
+    double max = range.getMax();
+    int first = firstEndAfter(min);
+    int last = firstStartNotBefore(max) - 1;
+    if (first > last) {
+      return 0;
+    }
+    double length = myLengthSums[last + 1] - myLengthSums[first];
+    // Remove the parts of the first and last intervals that are outside of the range.
+    length -= Math.max(0, min - myStarts[first]);
+    length -= Math.max(0, myEnds[last] - max);
+    return Math.max(0, length);
+  }
+
+  /**
+   * Returns whether any interval starts before the range's max and ends after the range's min.
+   */
+  boolean intersects(@NotNull Range range) {
+    // As the intervals are disjoint, the ends are sorted too. The first interval ending after the range's min has the smallest start of
+    // all the intervals that end after it.
+    int first = firstEndAfter(range.getMin());
+    return first < myStarts.length && myStarts[first] < range.getMax();
+  }
+
+  int size() {
+    return myStarts.length;
+  }
+
+  private int firstEndAfter(double value) {
+    int low = 0;
+    int high = myEnds.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myEnds[mid] <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int firstStartNotBefore(double value) {
+    int low = 0;
+    int high = myStarts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myStarts[mid] < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  static final class Builder {
+    private long[] myStarts = new long[4];
+    private long[] myEnds = new long[4];
+    private int mySize;
+    private boolean myValid = true;
+
+    @NotNull
+    Builder add(long start, long end) {
+      if (end < start) {
+        // Such intervals can't be represented by the index.
+        myValid = false;
+      }
+      if (mySize == myStarts.length) {
+        myStarts = Arrays.copyOf(myStarts, mySize * 2);
+        myEnds = Arrays.copyOf(myEnds, mySize * 2);
+      }
+      myStarts[mySize] = start;
+      myEnds[mySize] = end;
+      mySize++;
+      return this;
+    }
+
+    /**
+     * Returns the index of the intervals added so far, or null if some of them overlap or end before they start.
+     */
+    @Nullable
+    IntervalIndex build() {
+      if (!myValid) {
+        return null;
+      }
+      long[] starts = Arrays.copyOf(myStarts, mySize);
+      long[] ends = Arrays.copyOf(myEnds, mySize);
+      if (!isSorted(starts)) {
+        // Intervals are usually added in chronological order, so only sort them when they aren't.
+        Integer[] order = new Integer[mySize];
+        for (int i = 0; i < mySize; i++) {
+          order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Long.compare(myStarts[i1], myStarts[i2]));
+        for (int i = 0; i < mySize; i++) {
+          starts[i] = myStarts[order[i]];
+          ends[i] = myEnds[order[i]];
+        }
+      }
+      for (int i = 1; i < mySize; i++) {
+        if (starts[i] < ends[i - 1]) {
+          return null;
+        }
+      }
+      return new IntervalIndex(starts, ends);
+    }
+
+    private static boolean isSorted(@NotNull long[] values) {
+      for (int i = 1; i < values.length; i++) {
+        if (values[i] < values[i - 1]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -16,8 +16,12 @@
 package com.android.tools.profilers.cpu;
 
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Map;
 
@@ -29,6 +33,31 @@ public interface TraceParser {
 
   void parse(File file) throws IOException;
 
+  /**
+   * Parses a trace that is already in memory. Parsers able to read the trace data directly should override this method and return true
+   * from {@link #supportsInMemoryParsing()}, so the trace is not copied to disk first. By default, the data is written to a temporary file
+   * which is passed to {@link #parse(File)}.
+   */
+  default void parse(@NotNull ByteString traceData) throws IOException {
+    File trace = FileUtil.createTempFile("cpu_trace", ".trace");
+    try {
+      try (FileOutputStream out = new FileOutputStream(trace)) {
+        traceData.writeTo(out);
+      }
+      parse(trace);
+    }
+    finally {
+      FileUtil.delete(trace);
+    }
+  }
+
+  /**
+   * Whether {@link #parse(ByteString)} reads the trace data directly instead of going through a temporary file.
+   */
+  default boolean supportsInMemoryParsing() {
+    return false;
+  }
+
   Map<CpuThreadInfo, CaptureNode> getCaptureTrees();
 
   Range getRange();
@@ -57,12 +57,20 @@ public class ArtTraceHandler implements VmTraceHandler {
 
   @Override
   public void addMethod(long id, MethodInfo info) {
-    myMethods.put(id, new JavaMethodModel(info.methodName, info.className, info.signature));
+    addMethod(id, info.methodName, info.className, info.signature);
+  }
+
+  void addMethod(long id, @NotNull String methodName, @NotNull String className, @NotNull String signature) {
+    myMethods.put(id, new JavaMethodModel(methodName, className, signature));
   }
 
   @Override
   public void addMethodAction(int threadId, long methodId, TraceAction methodAction,
                               int threadTime, int globalTime) {
+    addMethodAction(threadId, methodId, methodAction == TraceAction.METHOD_ENTER, threadTime, globalTime);
+  }
+
+  void addMethodAction(int threadId, long methodId, boolean isEntry, int threadTime, int globalTime) {
     // create thread info if it doesn't exist
     if (!myThreads.containsKey(threadId)) {
       myThreads.put(threadId, String.format("Thread id: %1$d", threadId));
@@ -79,7 +87,7 @@ public class ArtTraceHandler implements VmTraceHandler {
       constructor = new CaptureNodeConstructor(topLevelModel);
       myNodeConstructors.put(threadId, constructor);
     }
-    constructor.addTraceAction(myMethods.get(methodId), methodAction, threadTime, globalTime);
+    constructor.addTraceAction(myMethods.get(methodId), isEntry, threadTime, globalTime);
   }
 
   private CaptureNodeModel createUniqueMethodForThread(int threadId) {
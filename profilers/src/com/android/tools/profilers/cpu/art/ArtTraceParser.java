@@ -17,9 +17,11 @@ package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.VmTraceParser;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
+import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
@@ -38,6 +40,16 @@ public class ArtTraceParser implements TraceParser {
     parser.parse();
   }
 
+  @Override
+  public void parse(@NotNull ByteString traceData) throws IOException {
+    ArtTraceReader.read(traceData.asReadOnlyByteBuffer(), myTraceHandler);
+  }
+
+  @Override
+  public boolean supportsInMemoryParsing() {
+    return true;
+  }
+
   @Override
   public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
     return myTraceHandler.getThreadsGraph();
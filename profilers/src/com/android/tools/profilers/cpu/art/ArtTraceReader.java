@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a method trace written by ART, i.e. a text header listing the threads and methods followed by the binary method entry and exit
+ * records, from memory and passes its content to an {@link ArtTraceHandler}. It reads the same format as perflib's
+ * {@link com.android.tools.perflib.vmtrace.VmTraceParser}, which only reads from files, so traces received by the profiler don't have to
+ * be copied to disk to be parsed.
+ */
+final class ArtTraceReader {
+  private static final int TRACE_MAGIC = 0x574f4c53; // "SLOW"
+
+  private static final String SECTION_VERSION = "*version";
+  private static final String SECTION_THREADS = "*threads";
+  private static final String SECTION_METHODS = "*methods";
+  private static final String SECTION_END = "*end";
+
+  private static final String KEY_CLOCK = "clock";
+
+  private static final int METHOD_ACTION_MASK = 0x03;
+  private static final int METHOD_ENTER = 0x00;
+
+  /**
+   * The clocks whose timestamps are recorded for each method action.
+   */
+  private enum TraceClock {
+    THREAD_CPU,
+    WALL,
+    DUAL
+  }
+
+  @NotNull private final ByteBuffer myBuffer;
+  @NotNull private final ArtTraceHandler myHandler;
+
+  private int myVersion;
+  @NotNull private TraceClock myClock = TraceClock.THREAD_CPU;
+
+  private ArtTraceReader(@NotNull ByteBuffer buffer, @NotNull ArtTraceHandler handler) {
+    myBuffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    myHandler = handler;
+  }
+
+  /**
+   * Reads the trace from the position of the given buffer to its limit.
+   *
+   * @throws IOException              if the header of the trace is malformed.
+   * @throws BufferUnderflowException if the trace ends in the middle of a record.
+   */
+  static void read(@NotNull ByteBuffer trace, @NotNull ArtTraceHandler handler) throws IOException {
+    ArtTraceReader reader = new ArtTraceReader(trace, handler);
+    reader.readHeader();
+    int recordSize = reader.readDataHeader();
+    reader.readRecords(recordSize);
+  }
+
+  private void readHeader() throws IOException {
+    if (!SECTION_VERSION.equals(readLine())) {
+      throw new IOException("Method trace does not start with " + SECTION_VERSION);
+    }
+    myVersion = parseInt(readLine());
+    myHandler.setVersion(myVersion);
+
+    String section = SECTION_VERSION;
+    while (true) {
+      String line = readLine();
+      if (line == null) {
+        throw new IOException("Method trace header has no " + SECTION_END + " marker");
+      }
+      if (line.startsWith("*")) {
+        if (line.equals(SECTION_END)) {
+          return;
+        }
+        section = line;
+        continue;
+      }
+
+      switch (section) {
+        case SECTION_VERSION:
+          readProperty(line);
+          break;
+        case SECTION_THREADS:
+          readThread(line);
+          break;
+        case SECTION_METHODS:
+          readMethod(line);
+          break;
+        default:
+          // Sections that are not needed to build the call trees are skipped.
+          break;
+      }
+    }
+  }
+
+  private void readProperty(@NotNull String line) {
+    int separator = line.indexOf('=');
+    if (separator < 0) {
+      return;
+    }
+    String key = line.substring(0, separator);
+    String value = line.substring(separator + 1);
+    if (key.equals(KEY_CLOCK)) {
+      switch (value) {
+        case "wall":
+          myClock = TraceClock.WALL;
+          break;
+        case "dual":
+          myClock = TraceClock.DUAL;
+          break;
+        default:
+          myClock = TraceClock.THREAD_CPU;
+          break;
+      }
+    }
+    myHandler.setProperty(key, value);
+  }
+
+  /**
+   * Reads a thread entry, which is "id name" separated by a tab. Malformed entries are skipped, as the thread can still be shown with a
+   * generated name if it has method actions.
+   */
+  private void readThread(@NotNull String line) {
+    int separator = line.indexOf('\t');
+    if (separator < 0) {
+      return;
+    }
+    try {
+      myHandler.addThread(Integer.decode(line.substring(0, separator)), line.substring(separator + 1));
+    }
+    catch (NumberFormatException ignored) {
+    }
+  }
+
+  /**
+   * Reads a method entry, which is either "id class method signature [source [line]]" or "id class [source line]" separated by tabs.
+   */
+  private void readMethod(@NotNull String line) throws IOException {
+    String[] tokens = line.split("\t");
+    if (tokens.length < 2) {
+      throw new IOException("Malformed method entry: " + line);
+    }
+    long id;
+    try {
+      id = Long.decode(tokens[0]);
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Malformed method entry: " + line, e);
+    }
+    String methodName = "";
+    String signature = "";
+    if (tokens.length > 3 && tokens[3].startsWith("(")) {
+      methodName = tokens[2];
+      signature = tokens[3];
+    }
+    myHandler.addMethod(id, methodName, tokens[1], signature);
+  }
+
+  /**
+   * Reads the header of the binary part of the trace and moves to the first record.
+   *
+   * @return the size of each record, in bytes.
+   */
+  private int readDataHeader() throws IOException {
+    int dataStart = myBuffer.position();
+    if (myBuffer.getInt() != TRACE_MAGIC) {
+      throw new IOException("Method trace data does not start with the expected magic number");
+    }
+    int version = myBuffer.getShort();
+    if (version != myVersion) {
+      throw new IOException(String.format("Method trace data version %d does not match header version %d", version, myVersion));
+    }
+    int dataOffset = myBuffer.getShort() & 0xFFFF;
+    myHandler.setStartTimeUs(myBuffer.getLong());
+
+    int recordSize;
+    switch (version) {
+      case 1:
+        recordSize = 9;
+        break;
+      case 2:
+        recordSize = 10;
+        break;
+      case 3:
+        recordSize = myBuffer.getShort() & 0xFFFF;
+        break;
+      default:
+        throw new IOException("Unsupported method trace version " + version);
+    }
+
+    if (dataStart + dataOffset > myBuffer.limit()) {
+      throw new BufferUnderflowException();
+    }
+    myBuffer.position(dataStart + dataOffset);
+    return recordSize;
+  }
+
+  private void readRecords(int recordSize) {
+    while (myBuffer.hasRemaining()) {
+      int recordStart = myBuffer.position();
+      int threadId = myVersion == 1 ? myBuffer.get() & 0xFF : myBuffer.getShort() & 0xFFFF;
+      int methodValue = myBuffer.getInt();
+      int threadTime;
+      int globalTime;
+      switch (myClock) {
+        case WALL:
+          globalTime = myBuffer.getInt();
+          threadTime = globalTime;
+          break;
+        case DUAL:
+          threadTime = myBuffer.getInt();
+          globalTime = myBuffer.getInt();
+          break;
+        default:
+          threadTime = myBuffer.getInt();
+          globalTime = threadTime;
+          break;
+      }
+
+      // Records can be larger than the fields read above, e.g. if a newer runtime adds fields.
+      int recordEnd = recordStart + recordSize;
+      if (recordEnd > myBuffer.position()) {
+        if (recordEnd > myBuffer.limit()) {
+          throw new BufferUnderflowException();
+        }
+        myBuffer.position(recordEnd);
+      }
+
+      // The two lowest bits of the method id tell whether the method is entered or exited.
+      long methodId = (methodValue & ~METHOD_ACTION_MASK) & 0xFFFFFFFFL;
+      boolean isEntry = (methodValue & METHOD_ACTION_MASK) == METHOD_ENTER;
+      myHandler.addMethodAction(threadId, methodId, isEntry, threadTime, globalTime);
+    }
+  }
+
+  /**
+   * @return the next line of the header, without its line feed, or null if the buffer has no more data.
+   */
+  @Nullable
+  private String readLine() {
+    if (!myBuffer.hasRemaining()) {
+      return null;
+    }
+    int start = myBuffer.position();
+    int end = start;
+    while (end < myBuffer.limit() && myBuffer.get(end) != '\n') {
+      end++;
+    }
+    byte[] bytes = new byte[end - start];
+    myBuffer.get(bytes);
+    if (myBuffer.hasRemaining()) {
+      // Skips the line feed.
+      myBuffer.get();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int parseInt(@Nullable String value) throws IOException {
+    if (value == null) {
+      throw new IOException("Unexpected end of the method trace header");
+    }
+    try {
+      return Integer.decode(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new IOException("Malformed number in the method trace header: " + value, e);
+    }
+  }
+}
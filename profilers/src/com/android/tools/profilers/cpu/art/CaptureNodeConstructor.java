@@ -15,7 +15,6 @@
  */
 package com.android.tools.profilers.cpu.art;
 
-import com.android.tools.perflib.vmtrace.TraceAction;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.Nullable;
@@ -53,8 +52,8 @@ class CaptureNodeConstructor {
     myTopLevelNodeModel = captureNodeModel;
   }
 
-  void addTraceAction(CaptureNodeModel captureNodeModel, TraceAction action, int threadTime, int globalTime) {
-    if (action == TraceAction.METHOD_ENTER) {
+  void addTraceAction(CaptureNodeModel captureNodeModel, boolean isEntry, int threadTime, int globalTime) {
+    if (isEntry) {
       enterMethod(captureNodeModel, threadTime, globalTime);
     } else {
       exitMethod(captureNodeModel, threadTime, globalTime);
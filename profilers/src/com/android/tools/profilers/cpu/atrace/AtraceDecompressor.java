@@ -50,7 +50,15 @@ public class AtraceDecompressor implements BufferProducer {
   private static final ByteString HEADER = ByteString.copyFrom("TRACE:\n", Charsets.UTF_8);
 
   public AtraceDecompressor(File file) throws IOException {
-    myInputStream = new FileInputStream(file);
+    this(new FileInputStream(file));
+  }
+
+  /**
+   * Decompresses the trace from a stream, e.g. {@link ByteString#newInput()} to read a trace already in memory. The end of the trace is
+   * detected using {@link InputStream#available()}, so the stream should report its remaining bytes.
+   */
+  public AtraceDecompressor(InputStream inputStream) throws IOException {
+    myInputStream = inputStream;
     myInflater = new Inflater();
 
     // Read the inital header off the input file.
@@ -16,10 +16,12 @@
 package com.android.tools.profilers.cpu.atrace;
 
 import com.android.tools.adtui.model.Range;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.jetbrains.annotations.NotNull;
 import trebuchet.model.Model;
 import trebuchet.model.ProcessModel;
 import trebuchet.model.ThreadModel;
@@ -50,7 +52,23 @@ public class AtraceParser implements TraceParser {
 
   @Override
   public void parse(File file) throws IOException {
-    AtraceDecompressor reader = new AtraceDecompressor(file);
+    parse(new AtraceDecompressor(file));
+  }
+
+  /**
+   * Decompresses and imports the trace while reading it from memory.
+   */
+  @Override
+  public void parse(@NotNull ByteString traceData) throws IOException {
+    parse(new AtraceDecompressor(traceData.newInput()));
+  }
+
+  @Override
+  public boolean supportsInMemoryParsing() {
+    return true;
+  }
+
+  private void parse(@NotNull AtraceDecompressor reader) {
     ImportTask task = new ImportTask(new PrintlnImportFeedback());
     myModel = task.importBuffer(reader);
     myCaptureTreeNodes = buildCaptureTreeNodes();
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.simpleperf;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.proto.SimpleperfReport;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.cpu.*;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.NoSymbolModel;
@@ -25,6 +26,7 @@ import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -34,6 +36,9 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -87,11 +92,35 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private List<String> myEventTypes;
 
+  /**
+   * Models of the symbols found in call chains, keyed by file id (high 32 bits) and symbol id (low 32 bits). All the calls of a symbol
+   * share the same model, rather than each node parsing the symbol name into its own model. The maps are accessed concurrently by the
+   * tasks building the call trees.
+   */
+  private final Map<Long, CaptureNodeModel> mySymbolModels = new ConcurrentHashMap<>();
+
+  /**
+   * Models of the call chain entries that don't have a symbol, keyed by their name (see {@link #methodModelFromCallchainEntry}).
+   */
+  private final Map<String, CaptureNodeModel> myNoSymbolModels = new ConcurrentHashMap<>();
+
+  /**
+   * Pool used to build the call trees of the different threads in parallel.
+   */
+  @NotNull private final ForkJoinPool myPool;
+
   public SimpleperfTraceParser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  @VisibleForTesting
+  SimpleperfTraceParser(@NotNull ForkJoinPool pool) {
     myFiles = new HashMap<>();
     mySamples = new ArrayList<>();
-    myCaptureTrees = new HashMap<>();
+    // Trees are added ordered by thread id, so iterating through them doesn't depend on how the parsing tasks were scheduled.
+    myCaptureTrees = new LinkedHashMap<>();
     myThreads = new HashMap<>();
+    myPool = pool;
   }
 
   /**
@@ -134,6 +163,21 @@ public class SimpleperfTraceParser implements TraceParser {
     parseSampleData();
   }
 
+  /**
+   * Parses the records straight from the trace bytes. Unless the {@link ByteString} is made of several concatenated pieces, no copy of
+   * the trace is made.
+   */
+  @Override
+  public void parse(@NotNull ByteString traceData) throws IOException {
+    parseTraceBuffer(traceData.asReadOnlyByteBuffer().order(ByteOrder.LITTLE_ENDIAN));
+    parseSampleData();
+  }
+
+  @Override
+  public boolean supportsInMemoryParsing() {
+    return true;
+  }
+
   @Override
   public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
     return myCaptureTrees;
@@ -175,7 +219,13 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   @VisibleForTesting
   void parseTraceFile(File trace) throws IOException {
-    ByteBuffer buffer = byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN);
+    parseTraceBuffer(byteBufferFromFile(trace, ByteOrder.LITTLE_ENDIAN));
+  }
+
+  /**
+   * Same as {@link #parseTraceFile(File)}, reading the records from a little-endian {@link ByteBuffer}.
+   */
+  private void parseTraceBuffer(@NotNull ByteBuffer buffer) throws IOException {
     // Read the first record size
     int recordSize = buffer.getInt();
 
@@ -238,9 +288,21 @@ public class SimpleperfTraceParser implements TraceParser {
     // Split the samples per thread.
     Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
 
-    // Process the sampels for each thread
-    for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+    // Process the samples of each thread. The call trees of different threads are independent from each other, and the data they share
+    // (files, symbols and thread names) is only read at this point, so they can be built in parallel.
+    List<Integer> threadIds = new ArrayList<>(threadSamples.keySet());
+    Collections.sort(threadIds);
+    List<ForkJoinTask<CaptureNode>> tasks = new ArrayList<>(threadIds.size());
+    for (int threadId : threadIds) {
+      tasks.add(myPool.submit(() -> parseThreadSamples(threadId, threadSamples.get(threadId), endTimestamp)));
+    }
+    for (int i = 0; i < threadIds.size(); i++) {
+      int threadId = threadIds.get(i);
+      // join() rethrows the exception thrown by the task, if any (e.g. when the trace is malformed).
+      CaptureNode root = tasks.get(i).join();
+      if (root != null) {
+        myCaptureTrees.put(new CpuThreadInfo(threadId, myThreads.get(threadId)), root);
+      }
     }
   }
 
@@ -272,12 +334,16 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Parses the list of samples of a thread into a {@link CaptureNode} tree, whose root is returned. Returns null if the thread has no
+   * samples. {@code lastTimestamp} is the timestamp of the last sample of the trace, used as the end of the nodes still on the stack.
+   *
+   * This method can be called for several threads at the same time, so it should only read the parser's state.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
+  @Nullable
+  private CaptureNode parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples, long lastTimestamp) {
     if (threadSamples.isEmpty()) {
       getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
+      return null;
     }
 
     if (!myThreads.containsKey(threadId)) {
@@ -288,7 +354,6 @@ public class SimpleperfTraceParser implements TraceParser {
     long firstTimestamp = threadSamples.get(0).getTime();
     CaptureNode root = createCaptureNode(new SingleNameModel(myThreads.get(threadId)), firstTimestamp);
     root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, myThreads.get(threadId)), root);
 
     // Parse the first call chain so we have a value for lastCallchain
     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
@@ -308,10 +373,10 @@ public class SimpleperfTraceParser implements TraceParser {
 
     // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
     // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
-    long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
     updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
     // update the root timestamp
     setNodeEndTime(root, lastTimestamp);
+    return root;
   }
 
   /**
@@ -401,9 +466,10 @@ public class SimpleperfTraceParser implements TraceParser {
       // if symbol_id is -1, we report the method as fileName+vAddress (e.g. program.so+0x3039)
       String hexAddress = "0x" + Long.toHexString(callChainEntry.getVaddrInFile());
       String methodName = fileNameFromPath(symbolFile.getPath()) + "+" + hexAddress;
-      return new NoSymbolModel(methodName);
+      return myNoSymbolModels.computeIfAbsent(methodName, NoSymbolModel::new);
     }
     // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel
-    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId));
+    long key = ((long)callChainEntry.getFileId() << 32) | (symbolId & 0xFFFFFFFFL);
+    return mySymbolModels.computeIfAbsent(key, unused -> NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId)));
   }
 }
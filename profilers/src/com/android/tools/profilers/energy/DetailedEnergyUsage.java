@@ -13,6 +13,7 @@
 // limitations under the License.
 package com.android.tools.profilers.energy;
 
+import com.android.tools.adtui.model.AsyncDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -28,13 +29,16 @@ public class DetailedEnergyUsage extends LineChartModel {
 
   public DetailedEnergyUsage(@NotNull StudioProfilers profilers) {
     myUsageRange = new Range(0, 100);
+    Range viewRange = profilers.getTimeline().getViewRange();
     EnergyUsageDataSeries cpuDataSeries =
       new EnergyUsageDataSeries(profilers.getClient(), profilers.getSession(), EnergySample::getCpuUsage);
-    myCpuUsageSeries = new RangedContinuousSeries("CPU", profilers.getTimeline().getViewRange(), myUsageRange, cpuDataSeries);
+    myCpuUsageSeries = new RangedContinuousSeries("CPU", viewRange, myUsageRange,
+                                                  new AsyncDataSeries<>(cpuDataSeries, viewRange, profilers.getUpdater()));
     add(myCpuUsageSeries);
     EnergyUsageDataSeries networkDataSeries =
       new EnergyUsageDataSeries(profilers.getClient(), profilers.getSession(), EnergySample::getNetworkUsage);
-    myNetworkUsageSeries = new RangedContinuousSeries("NETWORK", profilers.getTimeline().getViewRange(), myUsageRange, networkDataSeries);
+    myNetworkUsageSeries = new RangedContinuousSeries("NETWORK", viewRange, myUsageRange,
+                                                      new AsyncDataSeries<>(networkDataSeries, viewRange, profilers.getUpdater()));
     add(myNetworkUsageSeries);
   }
 
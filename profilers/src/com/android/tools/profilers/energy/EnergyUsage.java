@@ -13,6 +13,7 @@
 // limitations under the License.
 package com.android.tools.profilers.energy;
 
+import com.android.tools.adtui.model.AsyncDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -26,8 +27,10 @@ public class EnergyUsage extends LineChartModel {
 
   public EnergyUsage(@NotNull StudioProfilers profilers) {
     myUsageRange = new Range(0, 100);
+    Range viewRange = profilers.getTimeline().getViewRange();
     EnergyUsageDataSeries dataSeries = new EnergyUsageDataSeries(profilers.getClient(), profilers.getSession());
-    myUsageSeries = new RangedContinuousSeries(getSeriesLabel(), profilers.getTimeline().getViewRange(), myUsageRange, dataSeries);
+    myUsageSeries = new RangedContinuousSeries(getSeriesLabel(), viewRange, myUsageRange,
+                                               new AsyncDataSeries<>(dataSeries, viewRange, profilers.getUpdater()));
     add(myUsageSeries);
   }
 
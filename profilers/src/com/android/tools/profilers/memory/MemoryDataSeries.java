@@ -16,6 +16,7 @@
 package com.android.tools.profilers.memory;
 
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.DownsampledSeriesBuilder;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -25,7 +26,6 @@ import com.android.tools.profiler.proto.MemoryProfiler.MemoryRequest;
 import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
@@ -53,11 +53,13 @@ public final class MemoryDataSeries implements DataSeries<Long> {
       .setEndTime(TimeUnit.MICROSECONDS.toNanos((long)timeCurrentRangeUs.getMax()) + bufferNs);
     MemoryData response = myClient.getData(dataRequestBuilder.build());
 
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+    // Zoomed out ranges keep both the peaks and the drops of each bucket. The points of a bucket do not depend on the values, so the
+    // stacked series built from the same samples stay aligned.
+    DownsampledSeriesBuilder seriesData = new DownsampledSeriesBuilder(timeCurrentRangeUs, DownsampledSeriesBuilder.Aggregation.MIN_MAX);
     for (MemoryData.MemorySample sample : response.getMemSamplesList()) {
       long dataTimestamp = TimeUnit.NANOSECONDS.toMicros(sample.getTimestamp());
-      seriesData.add(new SeriesData<>(dataTimestamp, mySampleTransformer.apply(sample)));
+      seriesData.add(dataTimestamp, mySampleTransformer.apply(sample));
     }
-    return seriesData;
+    return seriesData.build();
   }
 }
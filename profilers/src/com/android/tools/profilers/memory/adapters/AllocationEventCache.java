@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Client-side cache of the allocation and free events of a {@link LiveAllocationCaptureObject}, so that moving a selection back and forth
+ * over the same time span doesn't query the same events again.
+ *
+ * Events are cached in chunks of {@link #CHUNK_DURATION_NS}, aligned to multiples of that duration. Only chunks that end before the latest
+ * known event are cached, as later ones can still receive events. Missing chunks are loaded with up to {@link #MAX_PARALLEL_QUERIES}
+ * parallel queries, and the least recently used chunks are evicted once the cache holds about {@link #MAX_CACHED_EVENTS} events.
+ *
+ * This class is not thread-safe: a capture only uses it from its load thread.
+ */
+final class AllocationEventCache {
+  @VisibleForTesting static final long CHUNK_DURATION_NS = TimeUnit.MILLISECONDS.toNanos(10);
+  @VisibleForTesting static final int MAX_PARALLEL_QUERIES = 4;
+  private static final int MAX_CACHED_EVENTS = 1_000_000;
+
+  interface Loader {
+    /**
+     * @return the allocation events with startTimeNs <= timestamp < endTimeNs, followed by the free events in the same range.
+     */
+    @NotNull
+    List<AllocationEvent> load(long startTimeNs, long endTimeNs);
+  }
+
+  @NotNull private final Loader myLoader;
+  @NotNull private final Executor myLoadExecutor;
+
+  /**
+   * Chunk index to the chunk's events, in access order.
+   */
+  @NotNull private final LinkedHashMap<Long, List<AllocationEvent>> myChunks = new LinkedHashMap<>(16, 0.75f, true);
+
+  /**
+   * The number of cached events, plus one per chunk so that empty chunks aren't free.
+   */
+  private int myCachedWeight;
+
+  AllocationEventCache(@NotNull Loader loader, @NotNull Executor loadExecutor) {
+    myLoader = loader;
+    myLoadExecutor = loadExecutor;
+  }
+
+  /**
+   * Returns the allocation events with startTimeNs <= timestamp < endTimeNs followed by the free events in the same range, as the
+   * {@link Loader} would, or null if {@code isCancelled} became true before all of them were loaded.
+   *
+   * @param completeEndTimeNs the time before which all the events are known to have been received.
+   */
+  @Nullable
+  List<AllocationEvent> getEvents(long startTimeNs, long endTimeNs, long completeEndTimeNs, @NotNull BooleanSupplier isCancelled) {
+    if (startTimeNs >= endTimeNs) {
+      return Collections.emptyList();
+    }
+
+    long firstChunk = Math.floorDiv(startTimeNs, CHUNK_DURATION_NS);
+    long endChunk = Math.min(Math.floorDiv(endTimeNs - 1, CHUNK_DURATION_NS) + 1, Math.floorDiv(completeEndTimeNs, CHUNK_DURATION_NS));
+    List<List<AllocationEvent>> parts = new ArrayList<>();
+    long uncachedStartTimeNs = startTimeNs;
+    if (firstChunk < endChunk) {
+      Map<Long, List<AllocationEvent>> chunks = getChunks(firstChunk, endChunk, isCancelled);
+      if (chunks == null) {
+        return null;
+      }
+      for (long chunk = firstChunk; chunk < endChunk; chunk++) {
+        parts.add(chunks.get(chunk));
+      }
+      uncachedStartTimeNs = endChunk * CHUNK_DURATION_NS;
+    }
+    if (uncachedStartTimeNs < endTimeNs) {
+      if (isCancelled.getAsBoolean()) {
+        return null;
+      }
+      parts.add(myLoader.load(uncachedStartTimeNs, endTimeNs));
+    }
+
+    List<AllocationEvent> allocations = new ArrayList<>();
+    List<AllocationEvent> frees = new ArrayList<>();
+    for (List<AllocationEvent> part : parts) {
+      for (AllocationEvent event : part) {
+        // The first and last chunks can extend beyond the requested range.
+        if (event.getTimestamp() < startTimeNs || event.getTimestamp() >= endTimeNs) {
+          continue;
+        }
+        (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA ? allocations : frees).add(event);
+      }
+    }
+    allocations.addAll(frees);
+    return allocations;
+  }
+
+  @VisibleForTesting
+  int getCachedChunkCount() {
+    return myChunks.size();
+  }
+
+  /**
+   * Returns the events of the chunks in [firstChunk, endChunk), loading and caching the ones that aren't cached yet.
+   *
+   * @return the events of each chunk, or null if {@code isCancelled} became true before all of them were loaded.
+   */
+  @Nullable
+  private Map<Long, List<AllocationEvent>> getChunks(long firstChunk, long endChunk, @NotNull BooleanSupplier isCancelled) {
+    // Keep the cached chunks aside first, as caching the loaded ones can evict them. Group the missing chunks into runs of consecutive
+    // chunks, each of which can be loaded with a single query.
+    Map<Long, List<AllocationEvent>> chunks = new HashMap<>();
+    List<long[]> runs = new ArrayList<>();
+    long missingCount = 0;
+    for (long chunk = firstChunk; chunk < endChunk; chunk++) {
+      List<AllocationEvent> events = myChunks.get(chunk);
+      if (events != null) {
+        chunks.put(chunk, events);
+        continue;
+      }
+      long[] lastRun = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+      if (lastRun != null && lastRun[1] == chunk) {
+        lastRun[1]++;
+      }
+      else {
+        runs.add(new long[]{chunk, chunk + 1});
+      }
+      missingCount++;
+    }
+    if (runs.isEmpty()) {
+      return chunks;
+    }
+
+    // Split the runs so that the chunks are spread over about MAX_PARALLEL_QUERIES queries.
+    long piecesLength = (missingCount + MAX_PARALLEL_QUERIES - 1) / MAX_PARALLEL_QUERIES;
+    List<long[]> pieces = new ArrayList<>();
+    for (long[] run : runs) {
+      for (long start = run[0]; start < run[1]; start += piecesLength) {
+        pieces.add(new long[]{start, Math.min(run[1], start + piecesLength)});
+      }
+    }
+
+    Map<Long, List<AllocationEvent>> loadedChunks = new HashMap<>();
+    if (pieces.size() == 1) {
+      long[] piece = pieces.get(0);
+      addPiece(loadedChunks, piece, myLoader.load(piece[0] * CHUNK_DURATION_NS, piece[1] * CHUNK_DURATION_NS));
+    }
+    else {
+      List<CompletableFuture<List<AllocationEvent>>> futures = new ArrayList<>(pieces.size());
+      for (long[] piece : pieces) {
+        futures.add(CompletableFuture.supplyAsync(() -> myLoader.load(piece[0] * CHUNK_DURATION_NS, piece[1] * CHUNK_DURATION_NS),
+                                                  myLoadExecutor));
+      }
+      for (int i = 0; i < pieces.size(); i++) {
+        if (isCancelled.getAsBoolean()) {
+          futures.forEach(future -> future.cancel(false));
+          // Still keep the pieces that were already loaded, as the next selection is likely to need them.
+          for (int j = i; j < pieces.size(); j++) {
+            if (futures.get(j).isDone() && !futures.get(j).isCompletedExceptionally()) {
+              addPiece(loadedChunks, pieces.get(j), futures.get(j).join());
+            }
+          }
+          loadedChunks.forEach(this::cacheChunk);
+          return null;
+        }
+        addPiece(loadedChunks, pieces.get(i), futures.get(i).join());
+      }
+    }
+
+    loadedChunks.forEach(this::cacheChunk);
+    chunks.putAll(loadedChunks);
+    return chunks;
+  }
+
+  private static void addPiece(@NotNull Map<Long, List<AllocationEvent>> loadedChunks,
+                               @NotNull long[] piece,
+                               @NotNull List<AllocationEvent> events) {
+    for (long chunk = piece[0]; chunk < piece[1]; chunk++) {
+      loadedChunks.put(chunk, new ArrayList<>());
+    }
+    for (AllocationEvent event : events) {
+      List<AllocationEvent> chunkEvents = loadedChunks.get(Math.floorDiv(event.getTimestamp(), CHUNK_DURATION_NS));
+      if (chunkEvents != null) {
+        chunkEvents.add(event);
+      }
+    }
+  }
+
+  private void cacheChunk(long chunk, @NotNull List<AllocationEvent> events) {
+    List<AllocationEvent> previous = myChunks.put(chunk, events);
+    if (previous != null) {
+      myCachedWeight -= previous.size() + 1;
+    }
+    myCachedWeight += events.size() + 1;
+
+    Iterator<List<AllocationEvent>> eldest = myChunks.values().iterator();
+    while (myCachedWeight > MAX_CACHED_EVENTS && myChunks.size() > 1) {
+      myCachedWeight -= eldest.next().size() + 1;
+      eldest.remove();
+    }
+  }
+}
@@ -34,11 +34,11 @@ public abstract class ClassifierSet implements MemoryObject {
   @Nullable private Supplier<String> myNameSupplier = null;
 
   // The set of instances that make up our baseline snapshot (e.g. live objects at the left of a selection range).
-  @NotNull protected final Set<InstanceObject> mySnapshotInstances = new LinkedHashSet<>(0);
+  @NotNull protected final Set<InstanceObject> mySnapshotInstances = new InstanceSet();
   // The set of instances that have delta events (e.g. delta allocations/deallocations within a selection range).
   // Note that instances here can also appear in the set of snapshot instances (e.g. when a instance is allocated before the selection
   // and deallocation within the selection).
-  @NotNull protected final Set<InstanceObject> myDeltaInstances = new LinkedHashSet<>(0);
+  @NotNull protected final Set<InstanceObject> myDeltaInstances = new InstanceSet();
 
   // Lazily create the Classifier, as it is configurable and isn't necessary until nodes under this node needs to be classified.
   @Nullable protected Classifier myClassifier = null;
@@ -124,8 +124,8 @@ public abstract class ClassifierSet implements MemoryObject {
       myClassifier.getClassifierSet(instanceObject, true).addSnapshotInstanceObject(instanceObject);
     }
     else {
-      assert !mySnapshotInstances.contains(instanceObject);
-      mySnapshotInstances.add(instanceObject);
+      boolean added = mySnapshotInstances.add(instanceObject);
+      assert added;
     }
 
     mySnapshotObjectCount++;
@@ -148,8 +148,8 @@ public abstract class ClassifierSet implements MemoryObject {
       classifierSet.removeSnapshotInstanceObject(instanceObject);
     }
     else {
-      assert mySnapshotInstances.contains(instanceObject);
-      mySnapshotInstances.remove(instanceObject);
+      boolean removed = mySnapshotInstances.remove(instanceObject);
+      assert removed;
     }
 
     mySnapshotObjectCount--;
@@ -197,10 +197,7 @@ public abstract class ClassifierSet implements MemoryObject {
       instanceAdded = myClassifier.getClassifierSet(instanceObject, true).addDeltaInstanceInformation(instanceObject, isAllocation);
     }
     else {
-      if (!myDeltaInstances.contains(instanceObject)) {
-        instanceAdded = true;
-        myDeltaInstances.add(instanceObject);
-      }
+      instanceAdded = myDeltaInstances.add(instanceObject);
     }
 
     if (isAllocation) {
@@ -235,11 +232,8 @@ public abstract class ClassifierSet implements MemoryObject {
       assert classifierSet != null;
       instanceRemoved = classifierSet.removeDeltaInstanceInformation(instanceObject, isAllocation);
     }
-    else {
-      if (!instanceObject.hasTimeData() && myDeltaInstances.contains(instanceObject)) {
-        myDeltaInstances.remove(instanceObject);
-        instanceRemoved = true;
-      }
+    else if (!instanceObject.hasTimeData()) {
+      instanceRemoved = myDeltaInstances.remove(instanceObject);
     }
 
     if (isAllocation) {
@@ -280,9 +274,14 @@ public abstract class ClassifierSet implements MemoryObject {
 
   public int getInstancesCount() {
     if (myClassifier == null) {
-      Set<InstanceObject> total = new HashSet<>(mySnapshotInstances);
-      total.addAll(myDeltaInstances);
-      return total.size();
+      // Count the instances in both sets once, without building their union.
+      int count = mySnapshotInstances.size();
+      for (InstanceObject instance : myDeltaInstances) {
+        if (!mySnapshotInstances.contains(instance)) {
+          count++;
+        }
+      }
+      return count;
     }
     else {
       return (int)getInstancesStream().count();
@@ -294,7 +293,8 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @NotNull
   public Stream<InstanceObject> getInstancesStream() {
-    Stream<InstanceObject> total = Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).distinct();
+    Stream<InstanceObject> total =
+      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream().filter(instance -> !mySnapshotInstances.contains(instance)));
     if (myClassifier == null) {
       return total;
     }
@@ -354,18 +354,14 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @Nullable
   public ClassifierSet findContainingClassifierSet(@NotNull InstanceObject target) {
-    boolean instancesContainsTarget =
-      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
-        .isPresent();
+    boolean instancesContainsTarget = mySnapshotInstances.contains(target) || myDeltaInstances.contains(target);
     if (instancesContainsTarget && myClassifier != null) {
       return this;
     }
     else if (instancesContainsTarget || myClassifier != null) {
       List<ClassifierSet> childrenClassifierSets = getChildrenClassifierSets();
       // mySnapshotInstances/myDeltaInstances can be updated after getChildrenClassiferSets so rebuild the stream.
-      boolean stillContainsTarget =
-        Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
-          .isPresent();
+      boolean stillContainsTarget = mySnapshotInstances.contains(target) || myDeltaInstances.contains(target);
       if (instancesContainsTarget && stillContainsTarget) {
         return this; // If after the partition the target still falls within the instances within this set, then return this set.
       }
@@ -390,7 +386,7 @@ public abstract class ClassifierSet implements MemoryObject {
       return false;
     }
 
-    Set<InstanceObject> instances = getInstancesStream().collect(Collectors.toSet());
+    Set<InstanceObject> instances = getInstancesStream().collect(Collectors.toCollection(InstanceSet::new));
     return targetSet.getInstancesStream().allMatch(instances::contains);
   }
 
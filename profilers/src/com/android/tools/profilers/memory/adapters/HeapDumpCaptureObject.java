@@ -16,6 +16,8 @@
 package com.android.tools.profilers.memory.adapters;
 
 import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.captures.DataBuffer;
+import com.android.tools.perflib.captures.MemoryMappedFileBuffer;
 import com.android.tools.perflib.heap.ClassObj;
 import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
@@ -27,12 +29,17 @@ import com.android.tools.profiler.proto.MemoryProfiler.DumpDataRequest;
 import com.android.tools.profiler.proto.MemoryProfiler.DumpDataResponse;
 import com.android.tools.profiler.proto.MemoryProfiler.HeapDumpInfo;
 import com.android.tools.profiler.proto.MemoryServiceGrpc.MemoryServiceBlockingStub;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.*;
@@ -43,6 +50,10 @@ import java.util.stream.Stream;
 import static com.android.tools.profilers.memory.adapters.CaptureObject.ClassifierAttribute.*;
 
 public class HeapDumpCaptureObject implements CaptureObject {
+  /**
+   * Default size from which heap dumps are memory-mapped instead of being read from the IDE heap.
+   */
+  private static final int DEFAULT_MEMORY_MAPPED_LOADING_THRESHOLD_BYTES = 64 * 1024 * 1024;
 
   @NotNull
   private final MemoryServiceBlockingStub myClient;
@@ -78,6 +89,8 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private boolean myHasNativeAllocations;
 
+  private int myMemoryMappedLoadingThresholdBytes = DEFAULT_MEMORY_MAPPED_LOADING_THRESHOLD_BYTES;
+
   public HeapDumpCaptureObject(@NotNull MemoryServiceBlockingStub client,
                                @NotNull Common.Session session,
                                @NotNull HeapDumpInfo heapDumpInfo,
@@ -120,6 +133,11 @@ public class HeapDumpCaptureObject implements CaptureObject {
     }
   }
 
+  @VisibleForTesting
+  void setMemoryMappedLoadingThresholdBytes(int thresholdBytes) {
+    myMemoryMappedLoadingThresholdBytes = thresholdBytes;
+  }
+
   @VisibleForTesting
   @NotNull
   ClassDb getClassDb() {
@@ -192,7 +210,18 @@ public class HeapDumpCaptureObject implements CaptureObject {
       return false;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getData().asReadOnlyByteBuffer());
+    DataBuffer buffer;
+    try {
+      buffer = createBuffer(response.getData());
+    }
+    catch (IOException e) {
+      getLogger().warn("Unable to map the heap dump", e);
+      myIsLoadingError = true;
+      return false;
+    }
+    // The dump can be large, so don't keep a reference to it while the snapshot is created if it was written to a file.
+    response = null;
+
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
     if (myProguardMap != null) {
@@ -201,6 +230,9 @@ public class HeapDumpCaptureObject implements CaptureObject {
     else {
       snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Arrays.asList(nativeRegistryPostProcessor));
     }
+
+    // The snapshot isn't thread-safe (its instances read their data from the shared buffer), so the dominators are computed before the
+    // instances are iterated, not concurrently.
     snapshot.computeDominators();
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
     mySnapshot = snapshot;
@@ -256,6 +288,33 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return true;
   }
 
+  /**
+   * Returns the buffer the snapshot is read from. Large dumps are written to a temporary file which is memory-mapped, so their content
+   * doesn't take IDE heap for as long as the capture is loaded (perflib reads field values from the buffer on demand). The dump is still
+   * received as a single message, so it's entirely on the IDE heap until it's written to the file; avoiding that requires a streaming
+   * heap dump RPC. The instances and the index of their {@link InstanceObject}s stay on the IDE heap, as perflib creates them there.
+   */
+  @NotNull
+  private DataBuffer createBuffer(@NotNull ByteString data) throws IOException {
+    if (data.size() <= myMemoryMappedLoadingThresholdBytes) {
+      return new InMemoryBuffer(data.asReadOnlyByteBuffer());
+    }
+
+    File file = FileUtil.createTempFile("heap_dump", ".hprof", true);
+    try (OutputStream out = new FileOutputStream(file)) {
+      data.writeTo(out);
+    }
+    DataBuffer buffer = new MemoryMappedFileBuffer(file);
+    // The mapping stays valid once the file is deleted, except on platforms that don't allow deleting mapped files, where the file is
+    // deleted on exit instead.
+    FileUtil.delete(file);
+    return buffer;
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
   @Override
   public boolean isDoneLoading() {
     return mySnapshot != null || myIsLoadingError;
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * An insertion-ordered set of {@link InstanceObject}s, used by {@link ClassifierSet}s in place of a {@link LinkedHashSet}.
+ *
+ * Captures can hold millions of instances, each of which is in the sets of a node at every level of the classifier hierarchy, so the
+ * entries are kept in flat arrays rather than in a node per entry: the instances along with their hash codes in insertion order, and an
+ * open-addressing table of positions in that order. Hash codes are computed once per insertion, and neither adding nor removing an
+ * instance allocates, other than to grow the arrays.
+ */
+final class InstanceSet extends AbstractSet<InstanceObject> {
+  private static final int MIN_CAPACITY = 4;
+
+  private static final Object[] EMPTY_ELEMENTS = new Object[0];
+  private static final int[] EMPTY_INTS = new int[0];
+
+  /**
+   * The instances in insertion order. Removed instances leave a null slot, which is reclaimed when the arrays are full.
+   */
+  @NotNull private Object[] myElements = EMPTY_ELEMENTS;
+  @NotNull private int[] myHashes = EMPTY_INTS;
+
+  /**
+   * Linear-probing table whose slots hold the position in {@link #myElements} plus one, 0 being an empty slot. Its length is a power of two
+   * at least twice the length of {@link #myElements}.
+   */
+  @NotNull private int[] myTable = EMPTY_INTS;
+
+  /**
+   * The number of slots of {@link #myElements} in use, including removed ones.
+   */
+  private int myEnd;
+  private int mySize;
+  private int myModCount;
+
+  @Override
+  public int size() {
+    return mySize;
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return o != null && find(o, hash(o)) >= 0;
+  }
+
+  @Override
+  public boolean add(@NotNull InstanceObject instance) {
+    int hash = hash(instance);
+    if (find(instance, hash) >= 0) {
+      return false;
+    }
+    if (myEnd == myElements.length) {
+      makeRoom(mySize + 1);
+    }
+    myElements[myEnd] = instance;
+    myHashes[myEnd] = hash;
+    insertInTable(myEnd, hash);
+    myEnd++;
+    mySize++;
+    myModCount++;
+    return true;
+  }
+
+  @Override
+  public boolean addAll(@NotNull Collection<? extends InstanceObject> instances) {
+    if (myElements.length - myEnd < instances.size()) {
+      makeRoom(mySize + instances.size());
+    }
+    return super.addAll(instances);
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    int slot = find(o, hash(o));
+    if (slot < 0) {
+      return false;
+    }
+    removeAt(slot);
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    myElements = EMPTY_ELEMENTS;
+    myHashes = EMPTY_INTS;
+    myTable = EMPTY_INTS;
+    myEnd = 0;
+    mySize = 0;
+    myModCount++;
+  }
+
+  @NotNull
+  @Override
+  public Iterator<InstanceObject> iterator() {
+    return new Iterator<InstanceObject>() {
+      private int myNext = advance(0);
+      private int myLast = -1;
+      private int myExpectedModCount = myModCount;
+
+      @Override
+      public boolean hasNext() {
+        return myNext < myEnd;
+      }
+
+      @Override
+      public InstanceObject next() {
+        if (myExpectedModCount != myModCount) {
+          throw new ConcurrentModificationException();
+        }
+        if (myNext >= myEnd) {
+          throw new NoSuchElementException();
+        }
+        myLast = myNext;
+        myNext = advance(myNext + 1);
+        return (InstanceObject)myElements[myLast];
+      }
+
+      @Override
+      public void remove() {
+        if (myLast < 0) {
+          throw new IllegalStateException();
+        }
+        if (myExpectedModCount != myModCount) {
+          throw new ConcurrentModificationException();
+        }
+        // Removing only clears the element's position, so the positions of the elements left to iterate over don't change.
+        removeAt(findPosition(myLast));
+        myLast = -1;
+        myExpectedModCount = myModCount;
+      }
+
+      private int advance(int position) {
+        while (position < myEnd && myElements[position] == null) {
+          position++;
+        }
+        return position;
+      }
+    };
+  }
+
+  private static int hash(@NotNull Object o) {
+    int hash = o.hashCode();
+    // Spread the high bits, as the table is indexed with the low ones.
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Returns the table slot of the given object, or -1 if it isn't in the set.
+   */
+  private int find(@NotNull Object o, int hash) {
+    if (mySize == 0) {
+      return -1;
+    }
+    int mask = myTable.length - 1;
+    for (int slot = hash & mask; myTable[slot] != 0; slot = (slot + 1) & mask) {
+      int position = myTable[slot] - 1;
+      if (myHashes[position] == hash && o.equals(myElements[position])) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the table slot pointing to the given position of {@link #myElements}.
+   */
+  private int findPosition(int position) {
+    int mask = myTable.length - 1;
+    int slot = myHashes[position] & mask;
+    while (myTable[slot] != position + 1) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void insertInTable(int position, int hash) {
+    int mask = myTable.length - 1;
+    int slot = hash & mask;
+    while (myTable[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    myTable[slot] = position + 1;
+  }
+
+  private void removeAt(int slot) {
+    int position = myTable[slot] - 1;
+    myElements[position] = null;
+    mySize--;
+    myModCount++;
+
+    // Shift back the entries following the removed one in their probe sequence, so lookups never need to skip removed slots.
+    int mask = myTable.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; myTable[next] != 0; next = (next + 1) & mask) {
+      int home = myHashes[myTable[next] - 1] & mask;
+      // The entry can fill the hole if its home slot isn't cyclically in (hole, next].
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        myTable[hole] = myTable[next];
+        hole = next;
+      }
+    }
+    myTable[hole] = 0;
+  }
+
+  /**
+   * Makes room for at least {@code minSize} instances in {@link #myElements}, either by reclaiming the slots of removed instances or by
+   * growing the arrays, and rebuilds the table.
+   */
+  private void makeRoom(int minSize) {
+    int capacity = myElements.length;
+    // Only reclaim the removed slots when that leaves the arrays at most half full, so instances are copied O(1) times on average.
+    if (minSize > capacity / 2) {
+      capacity = Math.max(MIN_CAPACITY, Math.max(minSize, capacity * 2));
+    }
+
+    Object[] elements = new Object[capacity];
+    int[] hashes = new int[capacity];
+    int size = 0;
+    for (int i = 0; i < myEnd; i++) {
+      if (myElements[i] != null) {
+        elements[size] = myElements[i];
+        hashes[size] = myHashes[i];
+        size++;
+      }
+    }
+    myElements = elements;
+    myHashes = hashes;
+    myEnd = size;
+
+    myTable = new int[Integer.highestOneBit(capacity - 1) << 2];
+    for (int i = 0; i < size; i++) {
+      insertInTable(i, hashes[i]);
+    }
+  }
+}
@@ -39,6 +39,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -59,6 +61,13 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   // ID for JNI pseudo-heap, it should not overlap with real Android heaps
   public static final int JNI_HEAP_ID = 4;
 
+  /**
+   * Shared by all the captures to load the chunks of allocation events they don't have in their {@link AllocationEventCache}.
+   */
+  private static final ExecutorService EVENTS_LOAD_SERVICE = Executors.newFixedThreadPool(
+    AllocationEventCache.MAX_PARALLEL_QUERIES,
+    new ThreadFactoryBuilder().setNameFormat("profiler-live-allocation-events-%d").setDaemon(true).build());
+
   @Nullable private MemoryProfilerStage myStage;
 
   @VisibleForTesting final ExecutorService myExecutorService;
@@ -68,6 +77,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final TIntObjectHashMap<AllocationStack> myCallstackMap;
   private final TIntObjectHashMap<ThreadId> myThreadIdMap;
   private final TLongObjectHashMap<StackFrameInfoResponse> myFrameInfoResponseMap;
+  private final AllocationEventCache myEventCache;
 
   private final MemoryServiceBlockingStub myClient;
   private final Common.Session mySession;
@@ -85,6 +95,11 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   private Future myCurrentTask;
 
+  /**
+   * Incremented on every selection change, so that the load of a selection can tell when it has been superseded by a newer one.
+   */
+  private final AtomicInteger myLoadRequestId = new AtomicInteger();
+
   public LiveAllocationCaptureObject(@NotNull MemoryServiceBlockingStub client,
                                      @NotNull Common.Session session,
                                      long captureStartTime,
@@ -105,6 +120,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     myFrameInfoResponseMap = new TLongObjectHashMap<>();
 
     myClient = client;
+    myEventCache = new AllocationEventCache(this::queryJavaInstanceEvents, EVENTS_LOAD_SERVICE);
     mySession = session;
     myCaptureStartTime = captureStartTime;
     myAspectObserver = new AspectObserver();
@@ -285,8 +301,14 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   /**
    * Load allocation data corresponding to the input time range. Note that load operation is expensive and happens on a different thread
    * (via myExecutorService). When loading is done, it informs the listener (e.g. UI) to update via the input joiner.
+   *
+   * Only the events between the previous and the new range's edges are loaded, and all of them are fetched before any instance or heap
+   * set is updated, so that a load superseded by a newer selection can stop as soon as it notices, without leaving a partial update.
    */
   private void loadTimeRange(@NotNull Range queryRange, @NotNull Executor joiner) {
+    long selectionTimeNs = System.nanoTime();
+    int requestId = myLoadRequestId.incrementAndGet();
+    BooleanSupplier isSuperseded = () -> myLoadRequestId.get() != requestId;
     try {
       if (myCurrentTask != null) {
         myCurrentTask.cancel(false);
@@ -315,6 +337,31 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           }
         }
 
+        // Clear and recreate the instance/heap sets if previous range does not intersect with the new one
+        boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs;
+
+        // Fetch the events first. When clearing, the left delta holds the events of the whole new range.
+        List<AllocationEvent> javaSnapshotEvents = Collections.emptyList();
+        List<JNIGlobalReferenceEvent> jniSnapshotEvents = Collections.emptyList();
+        DeltaEvents leftDelta;
+        DeltaEvents rightDelta;
+        if (clear) {
+          javaSnapshotEvents = fetchJavaInstanceSnapshot(newStartTimeNs);
+          jniSnapshotEvents = fetchJniReferencesSnapshot(newStartTimeNs);
+          leftDelta = fetchDelta(newStartTimeNs, newEndTimeNs, isSuperseded);
+          rightDelta = DeltaEvents.EMPTY;
+        }
+        else {
+          leftDelta = fetchDelta(Math.min(newStartTimeNs, myPreviousQueryStartTimeNs), Math.max(newStartTimeNs, myPreviousQueryStartTimeNs),
+                                 isSuperseded);
+          rightDelta = fetchDelta(Math.min(newEndTimeNs, myPreviousQueryEndTimeNs), Math.max(newEndTimeNs, myPreviousQueryEndTimeNs),
+                                  isSuperseded);
+        }
+        if (leftDelta == null || rightDelta == null || isSuperseded.getAsBoolean()) {
+          // The next load starts from the previous range, which is still the one the heap sets reflect.
+          return null;
+        }
+
         // Snapshots data
         List<InstanceObject> snapshotList = new ArrayList<>();
         List<InstanceObject> resetSnapshotList = new ArrayList<>();
@@ -324,17 +371,14 @@ public class LiveAllocationCaptureObject implements CaptureObject {
         List<InstanceObject> deltaFreeList = new ArrayList<>();
         List<InstanceObject> resetDeltaFreeList = new ArrayList<>();
 
-        // Clear and recreate the instance/heap sets if previous range does not intersect with the new one
-        boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs;
         if (clear) {
           myInstanceMap.clear();
           // If we are resetting, then first establish the object snapshot at the query range's start point.
-          queryJavaInstanceSnapshot(newStartTimeNs, snapshotList);
-          queryJniReferencesSnapshot(newStartTimeNs, snapshotList);
+          processJavaInstanceSnapshot(javaSnapshotEvents, snapshotList);
+          processJniReferencesSnapshot(jniSnapshotEvents, snapshotList);
 
           // Update the delta allocations and deallocations within the selection range on the snapshot.
-          queryJavaInstanceDelta(newStartTimeNs, newEndTimeNs, deltaAllocationList, deltaFreeList, false);
-          queryJniReferencesDelta(newStartTimeNs, newEndTimeNs, deltaAllocationList, deltaFreeList, false);
+          processDelta(leftDelta, deltaAllocationList, deltaFreeList, false);
         }
         else {
           // Compute selection left differences.
@@ -342,8 +386,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           List<InstanceObject> leftDeallocations = new ArrayList<>();
           if (newStartTimeNs < myPreviousQueryStartTimeNs) {
             // Selection's min shifts left
-            queryJavaInstanceDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftAllocations, leftDeallocations, false);
-            queryJniReferencesDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftAllocations, leftDeallocations, false);
+            processDelta(leftDelta, leftAllocations, leftDeallocations, false);
             // add data within this range to the deltas
             deltaAllocationList.addAll(leftAllocations);
             deltaFreeList.addAll(leftDeallocations);
@@ -354,8 +397,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           }
           else if (newStartTimeNs > myPreviousQueryStartTimeNs) {
             // Selection's min shifts right
-            queryJavaInstanceDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftAllocations, leftDeallocations, true);
-            queryJniReferencesDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftAllocations, leftDeallocations, true);
+            processDelta(leftDelta, leftAllocations, leftDeallocations, true);
             // Remove data within this range from the deltas
             resetDeltaAllocationList.addAll(leftAllocations);
             resetDeltaFreeList.addAll(leftDeallocations);
@@ -370,15 +412,13 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           List<InstanceObject> rightDeallocations = new ArrayList<>();
           if (newEndTimeNs < myPreviousQueryEndTimeNs) {
             // Selection's max shifts left: remove data within this range from the deltas
-            queryJavaInstanceDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightAllocations, rightDeallocations, true);
-            queryJniReferencesDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightAllocations, rightDeallocations, true);
+            processDelta(rightDelta, rightAllocations, rightDeallocations, true);
             resetDeltaAllocationList.addAll(rightAllocations);
             resetDeltaFreeList.addAll(rightDeallocations);
           }
           else if (newEndTimeNs > myPreviousQueryEndTimeNs) {
             // Selection's max shifts right: add data within this range to the deltas
-            queryJavaInstanceDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightAllocations, rightDeallocations, false);
-            queryJniReferencesDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightAllocations, rightDeallocations, false);
+            processDelta(rightDelta, rightAllocations, rightDeallocations, false);
             deltaAllocationList.addAll(rightAllocations);
             deltaFreeList.addAll(rightDeallocations);
           }
@@ -407,6 +447,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
             resetDeltaFreeList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeFreedDeltaInstanceObject(instance));
             myStage.refreshSelectedHeap();
           }
+          getLogger().debug(String.format("Live allocation selection updated in %d ms",
+                                          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - selectionTimeNs)));
         });
         return null;
       });
@@ -476,15 +518,19 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     return result;
   }
 
-  private void queryJavaInstanceSnapshot(long newTimeNs, @NotNull List<InstanceObject> setAllocationList) {
+  @NotNull
+  private List<AllocationEvent> fetchJavaInstanceSnapshot(long newTimeNs) {
     if (!myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isMemorySnapshotEnabled()) {
-      return;
+      return Collections.emptyList();
     }
 
     BatchAllocationSample sampleResponse = myClient.getAllocations(AllocationSnapshotRequest.newBuilder().setSession(mySession)
                                                                      .setEndTime(newTimeNs).setLiveObjectsOnly(true).build());
+    return sampleResponse.getEventsList();
+  }
 
-    for (AllocationEvent event : sampleResponse.getEventsList()) {
+  private void processJavaInstanceSnapshot(@NotNull List<AllocationEvent> events, @NotNull List<InstanceObject> setAllocationList) {
+    for (AllocationEvent event : events) {
       if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
         AllocationEvent.Allocation allocation = event.getAllocData();
         LiveAllocationInstanceObject instance =
@@ -499,15 +545,19 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
-  private void queryJniReferencesSnapshot(long newTimeNs, @NotNull List<InstanceObject> setAllocationList) {
+  @NotNull
+  private List<JNIGlobalReferenceEvent> fetchJniReferencesSnapshot(long newTimeNs) {
     if (!myEnableJniRefsTracking) {
-      return;
+      return Collections.emptyList();
     }
     JNIGlobalRefsEventsRequest request = JNIGlobalRefsEventsRequest.newBuilder().setSession(mySession)
       .setLiveObjectsOnly(true).setEndTime(newTimeNs).build();
-    BatchJNIGlobalRefEvent jniBatch = myClient.getJNIGlobalRefsEvents(request);
+    return myClient.getJNIGlobalRefsEvents(request).getEventsList();
+  }
 
-    for (JNIGlobalReferenceEvent event : jniBatch.getEventsList()) {
+  private void processJniReferencesSnapshot(@NotNull List<JNIGlobalReferenceEvent> events,
+                                            @NotNull List<InstanceObject> setAllocationList) {
+    for (JNIGlobalReferenceEvent event : events) {
       if (event.getEventType() != JNIGlobalReferenceEvent.Type.CREATE_GLOBAL_REF) {
         continue;
       }
@@ -524,28 +574,62 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   }
 
   /**
-   * @param startTimeNs      start time to query data for.
-   * @param endTimeNs        end time to query data for.
-   * @param allocationList   Instances that were allocated within the query range will be added here.
-   * @param deallocatoinList Instances that were deallocated within the query range will be added here.
-   * @param resetInstance    Whether the InstanceObject's alloc/dealloc time information should reset if a corresponding allocation or
-   *                         deallocation event has occurred. The {@link ClassifierSet} rely on the presence (or absence) of these time data
-   *                         to determine whether the InstanceObject should be added (or removed) from the ClassifierSet. Also see {@link
-   *                         ClassifierSet#removeDeltaInstanceInformation(InstanceObject, boolean)}.
+   * Fetches the Java and JNI events within [startTimeNs, endTimeNs). Java events come from {@link #myEventCache}.
+   *
+   * @return the events, or null if the load was superseded before all of them were fetched.
    */
-  private void queryJavaInstanceDelta(long startTimeNs,
-                                      long endTimeNs,
-                                      @NotNull List<InstanceObject> allocationList,
-                                      @NotNull List<InstanceObject> deallocatoinList,
-                                      boolean resetInstance) {
+  @Nullable
+  private DeltaEvents fetchDelta(long startTimeNs, long endTimeNs, @NotNull BooleanSupplier isSuperseded) {
     if (startTimeNs == endTimeNs) {
-      return;
+      return DeltaEvents.EMPTY;
+    }
+
+    List<AllocationEvent> javaEvents = myEventCache.getEvents(startTimeNs, endTimeNs, myEventsEndTimeNs, isSuperseded);
+    if (javaEvents == null) {
+      return null;
     }
+    List<JNIGlobalReferenceEvent> jniEvents = Collections.emptyList();
+    if (myEnableJniRefsTracking) {
+      JNIGlobalRefsEventsRequest request =
+        JNIGlobalRefsEventsRequest.newBuilder().setSession(mySession).setStartTime(startTimeNs).setEndTime(endTimeNs).build();
+      jniEvents = myClient.getJNIGlobalRefsEvents(request).getEventsList();
+    }
+    return new DeltaEvents(javaEvents, jniEvents);
+  }
+
+  private void processDelta(@NotNull DeltaEvents delta,
+                            @NotNull List<InstanceObject> allocationList,
+                            @NotNull List<InstanceObject> deallocationList,
+                            boolean resetInstance) {
+    processJavaInstanceDelta(delta.myJavaEvents, allocationList, deallocationList, resetInstance);
+    processJniReferencesDelta(delta.myJniEvents, allocationList, deallocationList, resetInstance);
+  }
 
+  /**
+   * Queries the Java allocation and free events within [startTimeNs, endTimeNs). Used by {@link #myEventCache} to load the events it
+   * doesn't have, possibly from several threads at once.
+   */
+  @NotNull
+  private List<AllocationEvent> queryJavaInstanceEvents(long startTimeNs, long endTimeNs) {
     BatchAllocationSample sampleResponse = myClient.getAllocations(
       AllocationSnapshotRequest.newBuilder().setSession(mySession).setStartTime(startTimeNs).setEndTime(endTimeNs).build());
+    return sampleResponse.getEventsList();
+  }
 
-    for (AllocationEvent event : sampleResponse.getEventsList()) {
+  /**
+   * @param events           the allocation and free events within the range of the delta.
+   * @param allocationList   Instances that were allocated within the query range will be added here.
+   * @param deallocatoinList Instances that were deallocated within the query range will be added here.
+   * @param resetInstance    Whether the InstanceObject's alloc/dealloc time information should reset if a corresponding allocation or
+   *                         deallocation event has occurred. The {@link ClassifierSet} rely on the presence (or absence) of these time data
+   *                         to determine whether the InstanceObject should be added (or removed) from the ClassifierSet. Also see {@link
+   *                         ClassifierSet#removeDeltaInstanceInformation(InstanceObject, boolean)}.
+   */
+  private void processJavaInstanceDelta(@NotNull List<AllocationEvent> events,
+                                        @NotNull List<InstanceObject> allocationList,
+                                        @NotNull List<InstanceObject> deallocatoinList,
+                                        boolean resetInstance) {
+    for (AllocationEvent event : events) {
       if (event.getEventCase() == AllocationEvent.EventCase.ALLOC_DATA) {
         AllocationEvent.Allocation allocation = event.getAllocData();
         LiveAllocationInstanceObject instance =
@@ -568,19 +652,11 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
-  private void queryJniReferencesDelta(long startTimeNs,
-                                       long endTimeNs,
-                                       @NotNull List<InstanceObject> allocationList,
-                                       @NotNull List<InstanceObject> deallocatoinList,
-                                       boolean resetInstance) {
-    if (!myEnableJniRefsTracking || startTimeNs == endTimeNs) {
-      return;
-    }
-    JNIGlobalRefsEventsRequest request =
-      JNIGlobalRefsEventsRequest.newBuilder().setSession(mySession).setStartTime(startTimeNs).setEndTime(endTimeNs).build();
-    BatchJNIGlobalRefEvent jniBatch = myClient.getJNIGlobalRefsEvents(request);
-
-    for (JNIGlobalReferenceEvent event : jniBatch.getEventsList()) {
+  private void processJniReferencesDelta(@NotNull List<JNIGlobalReferenceEvent> events,
+                                         @NotNull List<InstanceObject> allocationList,
+                                         @NotNull List<InstanceObject> deallocatoinList,
+                                         boolean resetInstance) {
+    for (JNIGlobalReferenceEvent event : events) {
       JniReferenceInstanceObject refObject = getOrCreateJniRefObject(event.getObjectTag(), event.getRefValue(), event.getThreadId());
       if (refObject == null) {
         // JNI reference object can't be constructed, most likely allocation for underlying java object was not
@@ -611,4 +687,19 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       }
     }
   }
+
+  /**
+   * The events between two edges of the previous and new selection ranges.
+   */
+  private static final class DeltaEvents {
+    static final DeltaEvents EMPTY = new DeltaEvents(Collections.emptyList(), Collections.emptyList());
+
+    @NotNull private final List<AllocationEvent> myJavaEvents;
+    @NotNull private final List<JNIGlobalReferenceEvent> myJniEvents;
+
+    DeltaEvents(@NotNull List<AllocationEvent> javaEvents, @NotNull List<JNIGlobalReferenceEvent> jniEvents) {
+      myJavaEvents = javaEvents;
+      myJniEvents = jniEvents;
+    }
+  }
 }
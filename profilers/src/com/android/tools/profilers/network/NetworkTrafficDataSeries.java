@@ -16,6 +16,7 @@
 package com.android.tools.profilers.network;
 
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.DownsampledSeriesBuilder;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profiler.proto.Common;
@@ -23,7 +24,6 @@ import com.android.tools.profiler.proto.NetworkProfiler;
 import com.android.tools.profiler.proto.NetworkServiceGrpc;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -77,7 +77,8 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
 
   @Override
   public List<SeriesData<Long>> getDataForXRange(@NotNull Range timeCurrentRangeUs) {
-    List<SeriesData<Long>> seriesData = new ArrayList<>();
+    // Zoomed out ranges hold more samples than there are pixels to draw them on, so reduce them to the peak speed per bucket.
+    DownsampledSeriesBuilder seriesData = new DownsampledSeriesBuilder(timeCurrentRangeUs, DownsampledSeriesBuilder.Aggregation.MAX);
 
     // TODO: Change the Network API to allow specifying padding in the request as number of samples.
     long bufferNs = TimeUnit.SECONDS.toNanos(1);
@@ -90,8 +91,8 @@ public class NetworkTrafficDataSeries implements DataSeries<Long> {
     for (NetworkProfiler.NetworkProfilerData data : response.getDataList()) {
       long xTimestamp = TimeUnit.NANOSECONDS.toMicros(data.getEndTimestamp());
       NetworkProfiler.SpeedData speedData = data.getSpeedData();
-      seriesData.add(new SeriesData<>(xTimestamp, myType.getBytes(speedData)));
+      seriesData.add(xTimestamp, myType.getBytes(speedData));
     }
-    return seriesData;
+    return seriesData.build();
   }
 }
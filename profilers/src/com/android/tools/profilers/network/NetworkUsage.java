@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.network;
 
+import com.android.tools.adtui.model.AsyncDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -38,11 +39,13 @@ public class NetworkUsage extends LineChartModel {
     myRxSeries = new RangedContinuousSeries(NetworkTrafficDataSeries.Type.BYTES_RECEIVED.getLabel(false),
                                             viewRange,
                                             myTrafficRange,
-                                            createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_RECEIVED));
+                                            new AsyncDataSeries<>(createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_RECEIVED),
+                                                                  viewRange, profilers.getUpdater()));
     myTxSeries = new RangedContinuousSeries(NetworkTrafficDataSeries.Type.BYTES_SENT.getLabel(false),
                                             viewRange,
                                             myTrafficRange,
-                                            createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_SENT));
+                                            new AsyncDataSeries<>(createSeries(profilers, NetworkTrafficDataSeries.Type.BYTES_SENT),
+                                                                  viewRange, profilers.getUpdater()));
 
     add(myRxSeries);
     add(myTxSeries);
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.tests.PerfgateRule;
+import org.jetbrains.annotations.NotNull;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the heap retained per {@link CaptureNode} by complete capture trees. Each internal node of the trees has the same number of
+ * children, so the share of leaves grows with it, as in method traces where most calls are leaves.
+ */
+public class CaptureNodeBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final int NODE_COUNT = 1_000_000;
+
+  @Test
+  public void benchmarkHeapPerNode() {
+    CaptureNodeModel model = new StubCaptureNodeModel();
+    for (int fanout : new int[]{2, 4, 8}) {
+      ourPerfgate.logSample("Capture Tree Fanout " + fanout + " Heap Per Node (bytes)", measureHeapPerNode(model, fanout));
+    }
+  }
+
+  /**
+   * Returns the heap retained per node by a tree of the given fanout. The tree is unreachable once this returns, so it does not count in
+   * the next measurement.
+   */
+  private static long measureHeapPerNode(@NotNull CaptureNodeModel model, int fanout) {
+    long before = getUsedHeapBytes();
+    CaptureNode root = createTree(model, fanout);
+    root.trimChildren();
+    long after = getUsedHeapBytes();
+    assertEquals(fanout, root.getChildCount());
+    return (after - before) / NODE_COUNT;
+  }
+
+  @NotNull
+  private static CaptureNode createTree(@NotNull CaptureNodeModel model, int fanout) {
+    CaptureNode root = new CaptureNode(model);
+    Deque<CaptureNode> parents = new ArrayDeque<>();
+    parents.add(root);
+    int count = 1;
+    while (count < NODE_COUNT) {
+      CaptureNode parent = parents.poll();
+      for (int i = 0; i < fanout && count < NODE_COUNT; i++, count++) {
+        CaptureNode child = new CaptureNode(model);
+        child.setStartGlobal(count);
+        child.setEndGlobal(count + 1);
+        child.setDepth(parent.getDepth() + 1);
+        parent.addChild(child);
+        parents.add(child);
+      }
+    }
+    return root;
+  }
+
+  private static long getUsedHeapBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -20,7 +20,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class CaptureNodeTest {
 
@@ -62,4 +62,29 @@ public class CaptureNodeTest {
     assertEquals(10, node.getEnd());
     assertEquals(10, node.getDuration());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void childrenShouldBeKeptWhenTrimmed() {
+    CaptureNode root = new CaptureNode(new StubCaptureNodeModel());
+    assertEquals(0, root.getChildCount());
+    assertTrue(root.getChildren().isEmpty());
+
+    CaptureNode child = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode grandChild1 = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode grandChild2 = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode grandChild3 = new CaptureNode(new StubCaptureNodeModel());
+    root.addChild(child);
+    child.addChild(grandChild1);
+    child.addChild(grandChild2);
+    child.addChild(grandChild3);
+    root.trimChildren();
+
+    assertEquals(1, root.getChildCount());
+    assertSame(child, root.getChildAt(0));
+    assertSame(root, child.getParent());
+    assertEquals(3, child.getChildCount());
+    assertSame(grandChild1, child.getChildAt(0));
+    assertSame(grandChild3, child.getLastChild());
+    assertEquals(0, grandChild2.getChildCount());
+  }
+}
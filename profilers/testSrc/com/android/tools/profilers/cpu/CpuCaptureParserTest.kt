@@ -49,7 +49,9 @@ class CpuCaptureParserTest {
     // Decide not to parse long trace files
     fakeServices.setShouldParseLongTraces(false)
     val parser = CpuCaptureParser(fakeServices)
-    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, CpuProfiler.CpuProfilerType.ART)).isNull()
+    // Traces of an unknown profiler type have no parser that can read them from memory, so they are still limited.
+    val profilerType = CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER
+    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, profilerType)).isNull()
   }
 
   @Test
@@ -59,7 +61,30 @@ class CpuCaptureParserTest {
     // Decide to parse long trace files
     fakeServices.setShouldParseLongTraces(true)
     val parser = CpuCaptureParser(fakeServices)
-    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, CpuProfiler.CpuProfilerType.ART)).isNotNull()
+    val profilerType = CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER
+    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, profilerType)).isNotNull()
+  }
+
+  @Test
+  fun longTraceParsedFromMemoryShouldNotNeedConfirmation() {
+    val largeTraceFile = ByteString.copyFrom(ByteArray(CpuCaptureParser.MAX_SUPPORTED_TRACE_SIZE + 1))
+    val fakeServices = FakeIdeProfilerServices()
+    // Even if the user would decide not to parse long trace files, simpleperf traces don't need to be copied to disk and are not limited.
+    fakeServices.setShouldParseLongTraces(false)
+    val parser = CpuCaptureParser(fakeServices)
+    val profilerType = CpuProfiler.CpuProfilerType.SIMPLEPERF
+    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, profilerType)).isNotNull()
+  }
+
+  @Test
+  fun longArtTraceShouldNotNeedConfirmation() {
+    val largeTraceFile = ByteString.copyFrom(ByteArray(CpuCaptureParser.MAX_SUPPORTED_TRACE_SIZE + 1))
+    val fakeServices = FakeIdeProfilerServices()
+    // ART traces are also read directly from the trace bytes.
+    fakeServices.setShouldParseLongTraces(false)
+    val parser = CpuCaptureParser(fakeServices)
+    val profilerType = CpuProfiler.CpuProfilerType.ART
+    assertThat(parser.parse(ProfilersTestData.SESSION_DATA, ANY_TRACE_ID, largeTraceFile, profilerType)).isNotNull()
   }
 
   @Test
@@ -864,9 +864,9 @@ public class CpuProfilerStageTest extends AspectObserver {
 
   @Test
   public void cpuMetadataFailureUserAbort() throws InterruptedException, IOException {
-    // Try to parse a simpleperf trace with ART config. Parsing should fail.
+    // Try to parse a large trace of an unknown profiler type, which can't be parsed from memory. The user is asked whether to parse it.
     ProfilingConfiguration config = new ProfilingConfiguration("My Config",
-                                                               CpuProfiler.CpuProfilerType.ART,
+                                                               CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER,
                                                                CpuProfiler.CpuProfilingAppStartRequest.Mode.SAMPLED);
     config.setProfilingSamplingIntervalUs(10);
     config.setProfilingBufferSizeInMb(15);
@@ -885,7 +885,7 @@ public class CpuProfilerStageTest extends AspectObserver {
     ProfilingConfiguration metadataConfig = metadata.getProfilingConfiguration();
     assertThat(metadataConfig.getProfilingSamplingIntervalUs()).isEqualTo(10);
     assertThat(metadataConfig.getProfilingBufferSizeInMb()).isEqualTo(15);
-    assertThat(metadataConfig.getProfilerType()).isEqualTo(CpuProfiler.CpuProfilerType.ART);
+    assertThat(metadataConfig.getProfilerType()).isEqualTo(CpuProfiler.CpuProfilerType.UNSPECIFIED_PROFILER);
     assertThat(metadataConfig.getMode()).isEqualTo(CpuProfiler.CpuProfilingAppStartRequest.Mode.SAMPLED);
     // Trace was generated, so trace size should be greater than 0
     assertThat(metadata.getTraceFileSizeBytes()).isGreaterThan(0);
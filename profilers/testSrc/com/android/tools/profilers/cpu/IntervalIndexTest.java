@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.adtui.model.Range;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class IntervalIndexTest {
+
+  @Test
+  public void intersectionLength() {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(20, 30).add(30, 35).add(50, 60).build();
+    assertThat(index).isNotNull();
+
+    assertThat(index.getIntersectionLength(new Range(0, 100))).isWithin(0).of(35);
+    assertThat(index.getIntersectionLength(new Range(5, 25))).isWithin(0).of(10);
+    assertThat(index.getIntersectionLength(new Range(22, 28))).isWithin(0).of(6);
+    assertThat(index.getIntersectionLength(new Range(10, 20))).isWithin(0).of(0);
+    assertThat(index.getIntersectionLength(new Range(-10, -5))).isWithin(0).of(0);
+    assertThat(index.getIntersectionLength(new Range(70, 80))).isWithin(0).of(0);
+    assertThat(index.getIntersectionLength(new Range())).isWithin(0).of(0);
+  }
+
+  @Test
+  public void intersects() {
+    IntervalIndex index = new IntervalIndex.Builder().add(0, 10).add(20, 30).build();
+    assertThat(index).isNotNull();
+
+    assertThat(index.intersects(new Range(5, 6))).isTrue();
+    assertThat(index.intersects(new Range(9, 21))).isTrue();
+    // Touching an interval isn't intersecting it.
+    assertThat(index.intersects(new Range(10, 20))).isFalse();
+    assertThat(index.intersects(new Range(30, 40))).isFalse();
+    assertThat(index.intersects(new Range())).isFalse();
+  }
+
+  @Test
+  public void intervalsAreSortedByStart() {
+    IntervalIndex index = new IntervalIndex.Builder().add(20, 30).add(0, 10).build();
+    assertThat(index).isNotNull();
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(index.getIntersectionLength(new Range(5, 25))).isWithin(0).of(10);
+  }
+
+  @Test
+  public void overlappingIntervalsCantBeIndexed() {
+    assertThat(new IntervalIndex.Builder().add(0, 10).add(5, 15).build()).isNull();
+    assertThat(new IntervalIndex.Builder().add(0, 10).add(2, 3).build()).isNull();
+    assertThat(new IntervalIndex.Builder().add(10, 5).build()).isNull();
+  }
+
+  @Test
+  public void intersectionLengthMatchesRangeIntersection() {
+    Random random = new Random(0);
+    List<Range> intervals = new ArrayList<>();
+    long time = 0;
+    for (int i = 0; i < 1000; i++) {
+      time += random.nextInt(10);
+      long end = time + 1 + random.nextInt(10);
+      intervals.add(new Range(time, end));
+      time = end;
+    }
+    // Intervals don't need to be added in order.
+    Collections.shuffle(intervals, random);
+    IntervalIndex.Builder builder = new IntervalIndex.Builder();
+    intervals.forEach(interval -> builder.add((long)interval.getMin(), (long)interval.getMax()));
+    IntervalIndex index = builder.build();
+    assertThat(index).isNotNull();
+
+    for (int i = 0; i < 200; i++) {
+      double min = random.nextInt((int)time + 20) - 10;
+      Range range = new Range(min, min + random.nextInt((int)time / 4));
+      double expectedLength = 0;
+      boolean expectedIntersects = false;
+      for (Range interval : intervals) {
+        Range intersection = range.getIntersection(interval);
+        expectedLength += intersection.isEmpty() ? 0 : intersection.getLength();
+        expectedIntersects |= interval.getMin() < range.getMax() && range.getMin() < interval.getMax();
+      }
+      assertThat(index.getIntersectionLength(range)).isWithin(0).of(expectedLength);
+      assertThat(index.intersects(range)).isEqualTo(expectedIntersects);
+    }
+  }
+}
@@ -97,6 +97,44 @@ public class ArtTraceHandlerTest {
     }
   }
 
+  @Test
+  public void testReadingFromMemoryMatchesVmTraceParser() throws IOException {
+    ArtTraceHandler fileHandler = new ArtTraceHandler();
+    new VmTraceParser(CpuProfilerTestUtils.getTraceFile("valid_trace.trace"), fileHandler).parse();
+    ArtTraceHandler memoryHandler = new ArtTraceHandler();
+    ArtTraceReader.read(CpuProfilerTestUtils.traceFileToByteString("valid_trace.trace").asReadOnlyByteBuffer(), memoryHandler);
+
+    assertEquals(fileHandler.getStartTimeUs(), memoryHandler.getStartTimeUs());
+    assertEquals(fileHandler.getElapsedTimeUs(), memoryHandler.getElapsedTimeUs());
+    Map<Integer, CaptureNode> fileTrees = treesByThreadId(fileHandler);
+    Map<Integer, CaptureNode> memoryTrees = treesByThreadId(memoryHandler);
+    assertEquals(fileTrees.keySet(), memoryTrees.keySet());
+    for (Map.Entry<Integer, CaptureNode> entry : fileTrees.entrySet()) {
+      assertSameTree(entry.getValue(), memoryTrees.get(entry.getKey()));
+    }
+  }
+
+  private static Map<Integer, CaptureNode> treesByThreadId(ArtTraceHandler handler) {
+    Map<Integer, CaptureNode> trees = new HashMap<>();
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : handler.getThreadsGraph().entrySet()) {
+      trees.put(entry.getKey().getId(), entry.getValue());
+    }
+    return trees;
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertEquals(expected.getData().getFullName(), actual.getData().getFullName());
+    assertEquals(expected.getStartGlobal(), actual.getStartGlobal());
+    assertEquals(expected.getEndGlobal(), actual.getEndGlobal());
+    assertEquals(expected.getStartThread(), actual.getStartThread());
+    assertEquals(expected.getEndThread(), actual.getEndThread());
+    assertEquals(expected.getDepth(), actual.getDepth());
+    assertEquals(expected.getChildren().size(), actual.getChildren().size());
+    for (int i = 0; i < expected.getChildren().size(); ++i) {
+      assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+    }
+  }
+
   private static CaptureNode parseCaptureNode() throws IOException {
     ArtTraceHandler handler = new ArtTraceHandler();
     VmTraceParser parser = new VmTraceParser(CpuProfilerTestUtils.getTraceFile("basic.trace"), handler);
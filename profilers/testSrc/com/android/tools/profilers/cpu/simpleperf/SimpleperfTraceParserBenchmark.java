@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.simpleperf;
+
+import com.android.tools.profiler.proto.SimpleperfReport;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import com.android.tools.tests.PerfgateRule;
+import org.jetbrains.annotations.NotNull;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the time {@link SimpleperfTraceParser} takes to build the call trees of a trace sequentially (on a single worker) and in
+ * parallel (on the common fork-join pool).
+ *
+ * The synthetic trace has {@link #SYNTHETIC_THREAD_COUNT} threads sampled round-robin. The recorded trace is simpleperf.trace from the
+ * test data, unless the "profiler.simpleperf.replay" system property points to another simpleperf trace.
+ */
+public class SimpleperfTraceParserBenchmark {
+  @ClassRule public static final PerfgateRule ourPerfgate = new PerfgateRule();
+
+  private static final String REPLAY_PROPERTY = "profiler.simpleperf.replay";
+
+  private static final int WARMUP_ITERATIONS = 2;
+  private static final int MEASURED_ITERATIONS = 5;
+
+  private static final int SYNTHETIC_THREAD_COUNT = 16;
+  private static final int SYNTHETIC_SAMPLE_COUNT = 200_000;
+  private static final int SYNTHETIC_SYMBOL_COUNT = 5000;
+  private static final int SYNTHETIC_MAX_DEPTH = 40;
+
+  private static ForkJoinPool ourSequentialPool;
+  private static ByteString ourSyntheticTrace;
+  private static ByteString ourRecordedTrace;
+
+  @BeforeClass
+  public static void setUpClass() throws IOException {
+    ourSequentialPool = new ForkJoinPool(1);
+    ourSyntheticTrace = createSyntheticTrace();
+    String replayPath = System.getProperty(REPLAY_PROPERTY);
+    ourRecordedTrace = replayPath == null
+                       ? traceFileToByteString("simpleperf.trace")
+                       : ByteString.copyFrom(Files.readAllBytes(new File(replayPath).toPath()));
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    ourSequentialPool.shutdown();
+  }
+
+  @Test
+  public void benchmarkSyntheticTrace() throws IOException {
+    report("Synthetic", ourSyntheticTrace);
+  }
+
+  @Test
+  public void benchmarkRecordedTrace() throws IOException {
+    report("Recorded", ourRecordedTrace);
+  }
+
+  private static void report(@NotNull String traceName, @NotNull ByteString trace) throws IOException {
+    long sequentialMs = measure(trace, ourSequentialPool);
+    long parallelMs = measure(trace, ForkJoinPool.commonPool());
+
+    ourPerfgate.logSample("Simpleperf " + traceName + " Sequential Parse (ms)", sequentialMs);
+    ourPerfgate.logSample("Simpleperf " + traceName + " Parallel Parse (ms)", parallelMs);
+  }
+
+  /**
+   * Returns the median time, in milliseconds, taken to parse the trace using the given pool.
+   */
+  private static long measure(@NotNull ByteString trace, @NotNull ForkJoinPool pool) throws IOException {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      parse(trace, pool);
+    }
+    long[] timesNs = new long[MEASURED_ITERATIONS];
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      parse(trace, pool);
+      timesNs[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(timesNs);
+    return TimeUnit.NANOSECONDS.toMillis(timesNs[MEASURED_ITERATIONS / 2]);
+  }
+
+  private static void parse(@NotNull ByteString trace, @NotNull ForkJoinPool pool) throws IOException {
+    SimpleperfTraceParser parser = new SimpleperfTraceParser(pool);
+    parser.parse(trace);
+    assertFalse(parser.getCaptureTrees().isEmpty());
+  }
+
+  /**
+   * Creates a trace in the format read by {@link SimpleperfTraceParser}. Each thread's call chain changes a little between two consecutive
+   * samples, like the stack of a running program, so the call trees have a realistic shape.
+   */
+  @NotNull
+  private static ByteString createSyntheticTrace() throws IOException {
+    Random random = new Random(0);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    SimpleperfReport.File.Builder file = SimpleperfReport.File.newBuilder().setId(0).setPath("/system/lib/libsynthetic.so");
+    for (int i = 0; i < SYNTHETIC_SYMBOL_COUNT; i++) {
+      file.addSymbol("com.example.Class" + i % 100 + ".method" + i);
+    }
+    writeRecord(out, SimpleperfReport.Record.newBuilder().setFile(file).build());
+
+    List<List<Integer>> stacks = new ArrayList<>();
+    for (int tid = 0; tid < SYNTHETIC_THREAD_COUNT; tid++) {
+      stacks.add(new ArrayList<>());
+      writeRecord(out, SimpleperfReport.Record.newBuilder().setThread(
+        SimpleperfReport.Thread.newBuilder().setThreadId(tid).setThreadName("Thread" + tid)).build());
+    }
+
+    for (int i = 0; i < SYNTHETIC_SAMPLE_COUNT; i++) {
+      int tid = i % SYNTHETIC_THREAD_COUNT;
+      List<Integer> stack = stacks.get(tid);
+      int pops = Math.min(stack.size(), random.nextInt(4));
+      stack.subList(stack.size() - pops, stack.size()).clear();
+      // Samples always have at least one frame.
+      int pushes = Math.max(stack.isEmpty() ? 1 : 0, Math.min(SYNTHETIC_MAX_DEPTH - stack.size(), random.nextInt(4)));
+      for (int j = 0; j < pushes; j++) {
+        stack.add(random.nextInt(SYNTHETIC_SYMBOL_COUNT));
+      }
+
+      SimpleperfReport.Sample.Builder sample =
+        SimpleperfReport.Sample.newBuilder().setTime(TimeUnit.MICROSECONDS.toNanos(i)).setThreadId(tid);
+      // Simpleperf call chains go from the leaf to the root.
+      for (int j = stack.size() - 1; j >= 0; j--) {
+        sample.addCallchain(SimpleperfReport.Sample.CallChainEntry.newBuilder().setFileId(0).setSymbolId(stack.get(j)));
+      }
+      writeRecord(out, SimpleperfReport.Record.newBuilder().setSample(sample).build());
+    }
+
+    writeRecord(out, SimpleperfReport.Record.newBuilder().setLost(
+      SimpleperfReport.LostSituation.newBuilder().setSampleCount(SYNTHETIC_SAMPLE_COUNT)).build());
+    // A record size of 0 marks the end of the trace.
+    out.write(littleEndianInt(0));
+    return ByteString.copyFrom(out.toByteArray());
+  }
+
+  private static void writeRecord(@NotNull ByteArrayOutputStream out, @NotNull SimpleperfReport.Record record) throws IOException {
+    byte[] bytes = record.toByteArray();
+    out.write(littleEndianInt(bytes.length));
+    out.write(bytes);
+  }
+
+  @NotNull
+  private static byte[] littleEndianInt(int value) {
+    return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+  }
+}
@@ -19,6 +19,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.protobuf3jarjar.ByteString;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.intellij.openapi.util.io.FileUtil;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,7 +27,8 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
@@ -56,6 +58,66 @@ public class SimpleperfTraceParserTest {
     assertEquals(10396, myParser.getLostSampleCount());
   }
 
+  @Test
+  public void parsingFromMemoryShouldMatchParsingFromFile() throws IOException {
+    myParser.parse(myTraceFile);
+    SimpleperfTraceParser inMemoryParser = new SimpleperfTraceParser();
+    inMemoryParser.parse(traceFileToByteString("simpleperf.trace"));
+
+    assertEquals(myParser.getSampleCount(), inMemoryParser.getSampleCount());
+    assertEquals(myParser.getRange().getMin(), inMemoryParser.getRange().getMin(), 0);
+    assertEquals(myParser.getRange().getMax(), inMemoryParser.getRange().getMax(), 0);
+    assertEquals(myParser.getCaptureTrees().size(), inMemoryParser.getCaptureTrees().size());
+
+    Map<Integer, CaptureNode> inMemoryTrees = new HashMap<>();
+    inMemoryParser.getCaptureTrees().forEach((thread, tree) -> inMemoryTrees.put(thread.getId(), tree));
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : myParser.getCaptureTrees().entrySet()) {
+      CaptureNode inMemoryTree = inMemoryTrees.get(entry.getKey().getId());
+      assertNotNull(inMemoryTree);
+      assertEquals(entry.getValue().getChildCount(), inMemoryTree.getChildCount());
+      assertEquals(entry.getValue().getEnd(), inMemoryTree.getEnd());
+    }
+  }
+
+  @Test
+  public void parallelParsingShouldMatchSequentialParsing() throws IOException {
+    myParser.parse(myTraceFile);
+    SimpleperfTraceParser sequentialParser = new SimpleperfTraceParser(new ForkJoinPool(1));
+    sequentialParser.parse(myTraceFile);
+
+    // Trees should be returned in the same (thread id) order, regardless of the order in which they were built.
+    List<CpuThreadInfo> threads = new ArrayList<>(myParser.getCaptureTrees().keySet());
+    List<CpuThreadInfo> sequentialThreads = new ArrayList<>(sequentialParser.getCaptureTrees().keySet());
+    assertEquals(sequentialThreads.size(), threads.size());
+    for (int i = 0; i < threads.size(); i++) {
+      assertEquals(sequentialThreads.get(i).getId(), threads.get(i).getId());
+      CaptureNode tree = myParser.getCaptureTrees().get(threads.get(i));
+      CaptureNode sequentialTree = sequentialParser.getCaptureTrees().get(sequentialThreads.get(i));
+      assertEquals(sequentialTree.getChildCount(), tree.getChildCount());
+      assertEquals(sequentialTree.getStart(), tree.getStart());
+      assertEquals(sequentialTree.getEnd(), tree.getEnd());
+    }
+  }
+
+  @Test
+  public void callsOfTheSameSymbolShouldShareTheirModel() throws IOException {
+    myParser.parse(myTraceFile);
+    Set<CaptureNodeModel> models = Collections.newSetFromMap(new IdentityHashMap<>());
+    int nodeCount = 0;
+    for (CaptureNode tree : myParser.getCaptureTrees().values()) {
+      // Skip the root, whose model represents the thread.
+      List<CaptureNode> nodes = new ArrayList<>(tree.getChildren());
+      while (!nodes.isEmpty()) {
+        CaptureNode node = nodes.remove(nodes.size() - 1);
+        models.add(node.getData());
+        nodeCount++;
+        nodes.addAll(node.getChildren());
+      }
+    }
+    // Symbols such as the entry points of the threads are called many times, but there should be a single model for each of them.
+    assertTrue(models.size() < nodeCount);
+  }
+
   @Test
   public void allTreesShouldStartWithThreadName() throws IOException {
     myParser.parse(myTraceFile);
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.profilers.memory.adapters.AllocationEventCache.CHUNK_DURATION_NS;
+import static com.google.common.truth.Truth.assertThat;
+
+public class AllocationEventCacheTest {
+  private static final long EVENT_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long ALLOCATION_DURATION_NS = EVENT_INTERVAL_NS / 2;
+
+  private int myLoadCount;
+
+  private final AllocationEventCache myCache = new AllocationEventCache(this::load, MoreExecutors.directExecutor());
+
+  @Test
+  public void eventsMatchTheLoadedOnes() {
+    Random random = new Random(0);
+    long completeEndTimeNs = 50 * CHUNK_DURATION_NS;
+    for (int i = 0; i < 100; i++) {
+      long startTimeNs = random.nextInt(60 * (int)EVENT_INTERVAL_NS * 10);
+      long endTimeNs = startTimeNs + random.nextInt(20 * (int)EVENT_INTERVAL_NS * 10);
+      List<AllocationEvent> events = myCache.getEvents(startTimeNs, endTimeNs, completeEndTimeNs, () -> false);
+      assertThat(events).containsExactlyElementsIn(load(startTimeNs, endTimeNs)).inOrder();
+    }
+  }
+
+  @Test
+  public void chunksAreOnlyLoadedOnce() {
+    long completeEndTimeNs = 10 * CHUNK_DURATION_NS;
+    myCache.getEvents(CHUNK_DURATION_NS / 2, 3 * CHUNK_DURATION_NS, completeEndTimeNs, () -> false);
+    assertThat(myCache.getCachedChunkCount()).isEqualTo(3);
+    int loadCount = myLoadCount;
+
+    myCache.getEvents(CHUNK_DURATION_NS, 2 * CHUNK_DURATION_NS, completeEndTimeNs, () -> false);
+    assertThat(myLoadCount).isEqualTo(loadCount);
+    // Only the two chunks after the ones already cached are loaded, in parallel.
+    myCache.getEvents(0, 5 * CHUNK_DURATION_NS, completeEndTimeNs, () -> false);
+    assertThat(myLoadCount).isEqualTo(loadCount + 2);
+    assertThat(myCache.getCachedChunkCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void chunksAfterTheCompleteEndTimeAreNotCached() {
+    long completeEndTimeNs = 2 * CHUNK_DURATION_NS + CHUNK_DURATION_NS / 2;
+    List<AllocationEvent> events = myCache.getEvents(0, 4 * CHUNK_DURATION_NS, completeEndTimeNs, () -> false);
+    assertThat(events).containsExactlyElementsIn(load(0, 4 * CHUNK_DURATION_NS)).inOrder();
+    assertThat(myCache.getCachedChunkCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void cancelledLoadReturnsNull() {
+    long completeEndTimeNs = 10 * CHUNK_DURATION_NS;
+    assertThat(myCache.getEvents(0, 8 * CHUNK_DURATION_NS, completeEndTimeNs, () -> true)).isNull();
+  }
+
+  @NotNull
+  private List<AllocationEvent> load(long startTimeNs, long endTimeNs) {
+    myLoadCount++;
+    List<AllocationEvent> allocations = new ArrayList<>();
+    List<AllocationEvent> frees = new ArrayList<>();
+    for (long time = Math.floorDiv(startTimeNs - ALLOCATION_DURATION_NS, EVENT_INTERVAL_NS) * EVENT_INTERVAL_NS;
+         time < endTimeNs;
+         time += EVENT_INTERVAL_NS) {
+      int tag = (int)(time / EVENT_INTERVAL_NS);
+      if (time >= startTimeNs) {
+        allocations.add(AllocationEvent.newBuilder().setTimestamp(time)
+                          .setAllocData(AllocationEvent.Allocation.newBuilder().setTag(tag)).build());
+      }
+      long freeTime = time + ALLOCATION_DURATION_NS;
+      if (freeTime >= startTimeNs && freeTime < endTimeNs) {
+        frees.add(AllocationEvent.newBuilder().setTimestamp(freeTime)
+                    .setFreeData(AllocationEvent.Deallocation.newBuilder().setTag(tag)).build());
+      }
+    }
+    allocations.addAll(frees);
+    return allocations;
+  }
+}
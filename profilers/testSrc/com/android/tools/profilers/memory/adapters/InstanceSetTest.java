@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class InstanceSetTest {
+  private final FakeCaptureObject myCaptureObject = new FakeCaptureObject.Builder().build();
+
+  @Test
+  public void instancesAreIteratedInInsertionOrder() {
+    List<InstanceObject> instances = createInstances(10);
+    InstanceSet set = new InstanceSet();
+    assertThat(set.addAll(instances)).isTrue();
+    assertThat(set.add(instances.get(3))).isFalse();
+    assertThat(set).containsExactlyElementsIn(instances).inOrder();
+
+    assertThat(set.remove(instances.get(3))).isTrue();
+    assertThat(set.remove(instances.get(3))).isFalse();
+    assertThat(set.add(instances.get(3))).isTrue();
+    List<InstanceObject> expected = new ArrayList<>(instances);
+    expected.add(expected.remove(3));
+    assertThat(set).containsExactlyElementsIn(expected).inOrder();
+  }
+
+  @Test
+  public void iteratorRemovesInstances() {
+    List<InstanceObject> instances = createInstances(10);
+    InstanceSet set = new InstanceSet();
+    set.addAll(instances);
+    set.removeIf(instance -> instances.indexOf(instance) % 2 == 0);
+    assertThat(set).hasSize(5);
+    for (int i = 0; i < instances.size(); i++) {
+      assertThat(set.contains(instances.get(i))).isEqualTo(i % 2 != 0);
+    }
+  }
+
+  @Test
+  public void clearEmptiesTheSet() {
+    InstanceSet set = new InstanceSet();
+    set.addAll(createInstances(10));
+    set.clear();
+    assertThat(set).isEmpty();
+    assertThat(set.iterator().hasNext()).isFalse();
+  }
+
+  @Test
+  public void behavesLikeLinkedHashSet() {
+    Random random = new Random(0);
+    List<InstanceObject> instances = createInstances(2000);
+    InstanceSet set = new InstanceSet();
+    Set<InstanceObject> expected = new LinkedHashSet<>();
+    for (int i = 0; i < 50000; i++) {
+      InstanceObject instance = instances.get(random.nextInt(instances.size()));
+      // Remove a bit less often than add, so the set both grows and reuses the slots of removed instances.
+      if (random.nextInt(5) < 2) {
+        assertThat(set.remove(instance)).isEqualTo(expected.remove(instance));
+      }
+      else {
+        assertThat(set.add(instance)).isEqualTo(expected.add(instance));
+      }
+      assertThat(set.size()).isEqualTo(expected.size());
+    }
+    assertThat(set).containsExactlyElementsIn(expected).inOrder();
+    for (InstanceObject instance : instances) {
+      assertThat(set.contains(instance)).isEqualTo(expected.contains(instance));
+    }
+  }
+
+  private List<InstanceObject> createInstances(int count) {
+    List<InstanceObject> instances = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      instances.add(new FakeInstanceObject.Builder(myCaptureObject, "Class" + i % 10).setName("Instance" + i).build());
+    }
+    return instances;
+  }
+}